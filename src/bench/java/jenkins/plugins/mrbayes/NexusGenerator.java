@@ -0,0 +1,285 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Writes synthetic MrBayes inputs and outputs for the benchmarks: NEXUS files
+ * with a given number of taxa and characters, MrBayes progress output, and
+ * parameter (.p) and tree (.t) files. The content is random but depends only
+ * on the seed, so that every run of a benchmark reads the same data.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public final class NexusGenerator {
+
+	private static final char[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+	/**
+	 * Width of the blocks of an interleaved matrix.
+	 */
+	private static final int INTERLEAVE_WIDTH = 60;
+
+	/**
+	 * How the NEXUS file is laid out. The scanner reads every character of
+	 * the file, so the layout changes how much of it is matrix, comments or
+	 * commands.
+	 */
+	public enum Layout {
+
+		/**
+		 * One line per taxon, followed by the mrbayes block.
+		 */
+		SEQUENTIAL,
+
+		/**
+		 * The matrix split in blocks of 60 characters, as written by most
+		 * alignment tools.
+		 */
+		INTERLEAVED,
+
+		/**
+		 * Sequential, with a comment per taxon, a sets block and a commented
+		 * out mrbayes block before the real one.
+		 */
+		COMMENTED;
+
+	}
+
+	private NexusGenerator() {
+	}
+
+	/**
+	 * @param ntax number of taxa
+	 * @return the taxa names, taxon_1 to taxon_ntax
+	 */
+	public static String[] taxa(int ntax) {
+		final String[] taxa = new String[ntax];
+		for(int i = 0; i < ntax; ++i) {
+			taxa[i] = "taxon_" + (i + 1);
+		}
+		return taxa;
+	}
+
+	/**
+	 * Writes a NEXUS file with a DNA matrix and a mrbayes block.
+	 *
+	 * @param writer where the file is written
+	 * @param ntax number of taxa
+	 * @param nchar number of characters
+	 * @param layout layout of the file
+	 * @param seed seed of the characters
+	 */
+	public static void writeNexus(Writer writer, int ntax, int nchar, Layout layout, long seed) throws IOException {
+		final Random random = new Random(seed);
+		final String[] taxa = taxa(ntax);
+		final boolean interleaved = (layout == Layout.INTERLEAVED);
+		writer.write("#NEXUS\n\n");
+		writer.write("[Synthetic data set: " + ntax + " taxa, " + nchar + " characters]\n\n");
+		writer.write("begin data;\n");
+		writer.write("    dimensions ntax=" + ntax + " nchar=" + nchar + ";\n");
+		writer.write("    format datatype=dna interleave=" + (interleaved ? "yes" : "no") + " gap=- missing=?;\n");
+		writer.write("    matrix\n");
+		if(interleaved) {
+			final char[][] matrix = new char[ntax][nchar];
+			for(int t = 0; t < ntax; ++t) {
+				fill(matrix[t], random);
+			}
+			for(int start = 0; start < nchar; start += INTERLEAVE_WIDTH) {
+				final int end = Math.min(nchar, start + INTERLEAVE_WIDTH);
+				for(int t = 0; t < ntax; ++t) {
+					writer.write(pad(taxa[t]));
+					writer.write(matrix[t], start, end - start);
+					writer.write('\n');
+				}
+				writer.write('\n');
+			}
+		} else {
+			final char[] row = new char[nchar];
+			for(int t = 0; t < ntax; ++t) {
+				if(layout == Layout.COMMENTED) {
+					writer.write("[sequence " + (t + 1) + " of " + ntax + "; aligned with the others]\n");
+				}
+				fill(row, random);
+				writer.write(pad(taxa[t]));
+				writer.write(row);
+				writer.write('\n');
+			}
+		}
+		writer.write("    ;\nend;\n\n");
+		if(layout == Layout.COMMENTED) {
+			writer.write("begin sets;\n    charset first = 1-" + Math.max(1, nchar / 2) + ";\n");
+			writer.write("    charset second = " + Math.min(nchar, nchar / 2 + 1) + "-" + nchar + ";\nend;\n\n");
+			writer.write("[begin mrbayes;\n    set autoclose=no;\n    mcmc ngen=1000000;\nend;]\n\n");
+		}
+		writer.write("begin mrbayes;\n");
+		writer.write("    set autoclose=yes nowarn=yes seed=1234 swapseed=5678;\n");
+		writer.write("    lset nst=6 rates=invgamma;\n");
+		writer.write("    mcmcp ngen=100000 samplefreq=100 printfreq=1000 nruns=2 nchains=4;\n");
+		writer.write("    mcmc;\n    sump;\n    sumt;\nend;\n");
+	}
+
+	/**
+	 * Writes what MrBayes prints while running: a header, one progress line
+	 * per print frequency and, as with diagnfreq, the average standard
+	 * deviation of split frequencies after some of them.
+	 *
+	 * @param writer where the output is written
+	 * @param generations number of generations
+	 * @param printfreq generations between progress lines
+	 * @param diagnfreq generations between diagnostics
+	 * @param chains chains per run, two runs are printed
+	 * @param seed seed of the likelihoods
+	 */
+	public static void writeOutput(Writer writer, int generations, int printfreq, int diagnfreq, int chains, long seed)
+	throws IOException {
+		final Random random = new Random(seed);
+		writer.write("\n   Running Markov chain\n   MCMC stamp = 8372910465\n");
+		writer.write("   Seed = 1234\n   Swapseed = 5678\n");
+		writer.write("   Chain results (" + generations + " generations requested):\n\n");
+		final StringBuilder line = new StringBuilder();
+		for(int gen = 0; gen <= generations; gen += printfreq) {
+			line.setLength(0);
+			line.append(String.format(Locale.ENGLISH, "%7d --", gen));
+			for(int run = 0; run < 2; ++run) {
+				if(run > 0) {
+					line.append(" *");
+				}
+				final int cold = random.nextInt(chains);
+				for(int chain = 0; chain < chains; ++chain) {
+					final double lnl = -6000.0d + random.nextGaussian() * 20.0d;
+					line.append(String.format(Locale.ENGLISH, chain == cold ? " [%.3f]" : " (%.3f)", lnl));
+				}
+			}
+			line.append(" -- 0:01:23\n");
+			writer.write(line.toString());
+			if(gen > 0 && gen % diagnfreq == 0) {
+				writer.write(String.format(Locale.ENGLISH,
+						"\n   Average standard deviation of split frequencies: %.6f\n\n",
+						0.2d * diagnfreq / gen + random.nextDouble() * 0.001d));
+			}
+		}
+		writer.write("\n   Analysis completed in 1 mins 23 seconds\n");
+	}
+
+	/**
+	 * Writes a parameter file, with the columns of a GTR+I+G model.
+	 *
+	 * @param writer where the file is written
+	 * @param samples number of samples
+	 * @param seed seed of the values
+	 */
+	public static void writeTrace(Writer writer, int samples, long seed) throws IOException {
+		final Random random = new Random(seed);
+		writer.write("[ID: 9409050143]\n");
+		writer.write("Gen\tLnL\tLnPr\tTL\tr(A<->C)\tr(A<->G)\tr(A<->T)\tr(C<->G)\tr(C<->T)\tr(G<->T)\t");
+		writer.write("pi(A)\tpi(C)\tpi(G)\tpi(T)\talpha\tpinvar\n");
+		final StringBuilder line = new StringBuilder();
+		double lnl = -9000.0d;
+		for(int i = 0; i < samples; ++i) {
+			lnl = Math.max(lnl + 50.0d * random.nextDouble(), -6000.0d) + random.nextGaussian() * 5.0d;
+			line.setLength(0);
+			line.append(i * 100).append('\t');
+			line.append(String.format(Locale.ENGLISH, "%.3f\t%.3f\t%.3f", lnl, random.nextGaussian() + 3.0d,
+					1.5d + random.nextGaussian() * 0.1d));
+			for(int p = 0; p < 12; ++p) {
+				line.append(String.format(Locale.ENGLISH, "\t%.6f", random.nextDouble()));
+			}
+			line.append('\n');
+			writer.write(line.toString());
+		}
+	}
+
+	/**
+	 * Writes a tree file with random unrooted trees. Each tree is a small
+	 * change of the previous one, so that splits repeat as in a real sample.
+	 *
+	 * @param writer where the file is written
+	 * @param ntax number of taxa, at least four
+	 * @param trees number of trees
+	 * @param seed seed of the trees
+	 */
+	public static void writeTrees(Writer writer, int ntax, int trees, long seed) throws IOException {
+		final Random random = new Random(seed);
+		final String[] taxa = taxa(ntax);
+		writer.write("#NEXUS\n[ID: 9409050143]\n[Param: tree]\nbegin trees;\n   translate\n");
+		for(int i = 0; i < ntax; ++i) {
+			writer.write("      " + (i + 1) + " " + taxa[i] + (i == ntax - 1 ? ";\n" : ",\n"));
+		}
+		final int[] order = new int[ntax];
+		for(int i = 0; i < ntax; ++i) {
+			order[i] = i + 1;
+		}
+		for(int t = 0; t < trees; ++t) {
+			// swap two neighbouring leaves, changing a few splits
+			final int i = random.nextInt(ntax - 1);
+			final int tmp = order[i];
+			order[i] = order[i + 1];
+			order[i + 1] = tmp;
+			writer.write("   tree gen." + (t * 100) + " = [&U] " + newick(order, random) + ";\n");
+		}
+		writer.write("end;\n");
+	}
+
+	/**
+	 * Joins the leaves, in the given order, into a caterpillar-like tree
+	 * with a basal trifurcation.
+	 */
+	private static String newick(int[] order, Random random) {
+		final List<String> nodes = new ArrayList<String>();
+		for(int leaf : order) {
+			nodes.add(leaf + String.format(Locale.ENGLISH, ":%.6f", random.nextDouble() * 0.1d));
+		}
+		while(nodes.size() > 3) {
+			final int i = random.nextInt(nodes.size() - 1);
+			final String joined = "(" + nodes.get(i) + "," + nodes.get(i + 1) + ")" +
+					String.format(Locale.ENGLISH, ":%.6f", random.nextDouble() * 0.05d);
+			nodes.set(i, joined);
+			nodes.remove(i + 1);
+		}
+		return "(" + nodes.get(0) + "," + nodes.get(1) + "," + nodes.get(2) + ")";
+	}
+
+	private static void fill(char[] row, Random random) {
+		for(int i = 0; i < row.length; ++i) {
+			row[i] = NUCLEOTIDES[random.nextInt(NUCLEOTIDES.length)];
+		}
+	}
+
+	private static String pad(String taxon) {
+		final StringBuilder padded = new StringBuilder(taxon);
+		do {
+			padded.append(' ');
+		} while(padded.length() < 20);
+		return padded.toString();
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the check of the mrbayes block of NEXUS files of growing size and
+ * different layouts, without the validation cache, as done the first time a 
+ * file is seen in a node.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class NexusValidationBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int ntax;
+	
+	@Param({"1000", "10000"})
+	public int nchar;
+	
+	@Param({"SEQUENTIAL", "INTERLEAVED", "COMMENTED"})
+	public NexusGenerator.Layout layout;
+	
+	private File nexusFile;
+	
+	private MrBayesBuilder builder;
+	
+	private PrintStream out;
+	
+	@Setup
+	public void setUp() throws IOException {
+		nexusFile = File.createTempFile("mrbayes-bench", ".nex");
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(nexusFile), "UTF-8"));
+		try {
+			NexusGenerator.writeNexus(writer, ntax, nchar, layout, 42L);
+		} finally {
+			writer.close();
+		}
+		builder = new MrBayesBuilder("mb", nexusFile.getName(), Boolean.TRUE);
+		out = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+	}
+	
+	@TearDown
+	public void tearDown() {
+		nexusFile.delete();
+	}
+	
+	@Benchmark
+	public NexusSummary checkMrBayesBlock() throws IOException {
+		return builder.checkMrBayesBlock(nexusFile, out);
+	}
+	
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the filters the standard output of MrBayes goes through in the 
+ * node running it, one at a time and chained as in a build. The output is 
+ * written in chunks of 8 KB, as it comes from the pipe.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class OutputParsingBenchmark {
+
+	private static final int CHUNK = 8192;
+	
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+	
+	@Param({"100000", "1000000"})
+	public int generations;
+	
+	@Param({"4", "8"})
+	public int chains;
+	
+	private byte[] output;
+	
+	@Setup
+	public void setUp() throws IOException {
+		final StringWriter writer = new StringWriter();
+		NexusGenerator.writeOutput(writer, generations, 100, 1000, chains, 42L);
+		output = writer.toString().getBytes("US-ASCII");
+	}
+	
+	@Benchmark
+	public long condensed() throws IOException {
+		final CondensedOutputStream stream = OutputLevel.CONDENSED.filter(DISCARD);
+		copy(stream);
+		return output.length;
+	}
+	
+	@Benchmark
+	public boolean convergence() throws IOException {
+		// a threshold that is never reached, so that every line is parsed
+		final ConvergenceMonitor stream = new ConvergenceMonitor(DISCARD, 0.0d, 1);
+		copy(stream);
+		return stream.isConverged();
+	}
+	
+	@Benchmark
+	public double progress() throws IOException {
+		final ProgressMonitor stream = new ProgressMonitor(DISCARD);
+		copy(stream);
+		return stream.getGenerationsPerSecond();
+	}
+	
+	@Benchmark
+	public double chained() throws IOException {
+		final CondensedOutputStream condensed = OutputLevel.CONDENSED.filter(DISCARD);
+		final ConvergenceMonitor monitor = new ConvergenceMonitor(condensed, 0.0d, 1);
+		final ProgressMonitor stream = new ProgressMonitor(monitor);
+		copy(stream);
+		monitor.close();
+		return stream.getGenerationsPerSecond();
+	}
+	
+	private void copy(OutputStream stream) throws IOException {
+		for(int off = 0; off < output.length; off += CHUNK) {
+			stream.write(output, off, Math.min(CHUNK, output.length - off));
+		}
+		stream.close();
+	}
+	
+}
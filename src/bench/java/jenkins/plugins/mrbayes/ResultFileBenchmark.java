@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the readers of the files MrBayes writes: the parameter trace 
+ * (.p) summarized by the trace recorder, and the tree sample (.t) counted 
+ * into splits for the consensus. Both run single-threaded here, the 
+ * recorder runs one per file.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ResultFileBenchmark {
+
+	@Param({"1000", "10000"})
+	public int samples;
+	
+	@Param({"20", "200"})
+	public int ntax;
+	
+	private File traceFile;
+	
+	private File treeFile;
+	
+	@Setup
+	public void setUp() throws IOException {
+		traceFile = File.createTempFile("mrbayes-bench", TraceFile.EXTENSION);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(traceFile), "UTF-8"));
+		try {
+			NexusGenerator.writeTrace(writer, samples, 42L);
+		} finally {
+			writer.close();
+		}
+		treeFile = File.createTempFile("mrbayes-bench", TreeFile.EXTENSION);
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(treeFile), "UTF-8"));
+		try {
+			NexusGenerator.writeTrees(writer, ntax, samples, 42L);
+		} finally {
+			writer.close();
+		}
+	}
+	
+	@TearDown
+	public void tearDown() {
+		traceFile.delete();
+		treeFile.delete();
+	}
+	
+	@Benchmark
+	public double traceSummary() throws IOException, ParseException {
+		final TraceFile trace = TraceFile.read(traceFile);
+		final double[] lnl = trace.getColumn(trace.indexOf("LnL"));
+		return TraceStatistics.ess(lnl, lnl.length / 4, lnl.length);
+	}
+	
+	@Benchmark
+	public int treeSplits() throws IOException, ParseException {
+		final TreeFile trees = TreeFile.open(treeFile);
+		try {
+			final SplitTable table = new SplitTable(trees.getTaxa(), 1);
+			final SplitTable.Batch batch = table.newBatch(0);
+			String tree;
+			while((tree = trees.nextTree()) != null) {
+				batch.add(trees.parse(tree));
+			}
+			batch.merge();
+			return table.size();
+		} finally {
+			trees.close();
+		}
+	}
+	
+}
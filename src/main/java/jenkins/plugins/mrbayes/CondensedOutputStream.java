@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.regex.Pattern;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+/**
+ * Collapses the progress lines MrBayes prints every printfreq generations 
+ * (e.g. <code>   1000 -- (-5986.3) (-5992.1) ...</code>). Only one progress 
+ * line per interval is written, preceded by the number of lines omitted. 
+ * The diagnostics MrBayes prints every diagnfreq generations (<code>Average 
+ * standard deviation of split frequencies: ...</code>) are progress too: 
+ * the last one omitted is written with the next progress line written. Blank 
+ * lines between omitted lines are dropped. Any other line, such as warnings, 
+ * errors and summaries, is written verbatim, after the last omitted progress 
+ * lines when context is kept. The last progress lines are always written when 
+ * the stream is closed.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class CondensedOutputStream extends LineTransformationOutputStream {
+
+	private static final Pattern PROGRESS = Pattern.compile("^\\s*\\d+\\s+--\\s");
+	
+	private static final Pattern DIAGNOSTIC = Pattern.compile("^\\s*(Average|Maximum) standard deviation of split frequencies");
+	
+	private final OutputStream out;
+	
+	private final long interval;
+	
+	private final boolean keepContext;
+	
+	private long lastWritten;
+	
+	/**
+	 * Last progress line omitted.
+	 */
+	private byte[] pending;
+	
+	/**
+	 * Last diagnostic line omitted.
+	 */
+	private byte[] pendingDiagnostic;
+	
+	/**
+	 * Whether the last diagnostic line omitted came after the last progress 
+	 * line omitted.
+	 */
+	private boolean diagnosticLast = false;
+	
+	/**
+	 * Progress and diagnostic lines omitted, including the pending ones.
+	 */
+	private int omitted = 0;
+	
+	/**
+	 * @param out underlying output stream
+	 * @param interval minimum time between two progress lines, in 
+	 * milliseconds. Zero writes every line.
+	 * @param keepContext whether the last omitted progress line is written 
+	 * before other lines
+	 */
+	public CondensedOutputStream(OutputStream out, long interval, boolean keepContext) {
+		this.out = out;
+		this.interval = interval;
+		this.keepContext = keepContext;
+		this.lastWritten = System.currentTimeMillis();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#eol(byte[], int)
+	 */
+	@Override
+	protected void eol(byte[] b, int len) throws IOException {
+		if(interval > 0) {
+			final String start = new String(b, 0, Math.min(len, 64), "US-ASCII");
+			final boolean progress = PROGRESS.matcher(start).find();
+			final boolean diagnostic = !progress && DIAGNOSTIC.matcher(start).find();
+			if(progress || diagnostic) {
+				final long now = System.currentTimeMillis();
+				if(now - lastWritten < interval) {
+					final byte[] line = new byte[len];
+					System.arraycopy(b, 0, line, 0, len);
+					if(progress) {
+						pending = line;
+					} else {
+						pendingDiagnostic = line;
+					}
+					diagnosticLast = diagnostic;
+					omitted++;
+					return;
+				}
+				// the line replaces the omitted one of its kind
+				if(progress) {
+					pending = null;
+				} else {
+					pendingDiagnostic = null;
+				}
+				writePending();
+				lastWritten = now;
+			} else if(omitted > 0 && start.trim().length() == 0) {
+				return;
+			} else if(keepContext) {
+				writePending();
+			}
+		}
+		out.write(b, 0, len);
+	}
+	
+	/**
+	 * Writes the number of lines omitted and the last omitted lines, in the 
+	 * order they came.
+	 */
+	private void writePending() throws IOException {
+		final byte[] first = (diagnosticLast ? pending : pendingDiagnostic);
+		final byte[] second = (diagnosticLast ? pendingDiagnostic : pending);
+		writeOmitted(omitted - (first != null ? 1 : 0) - (second != null ? 1 : 0));
+		if(first != null) {
+			out.write(first);
+		}
+		if(second != null) {
+			out.write(second);
+		}
+		pending = null;
+		pendingDiagnostic = null;
+		omitted = 0;
+	}
+	
+	private void writeOmitted(int lines) throws IOException {
+		if(lines > 0) {
+			out.write((Messages.MrBayesBuilder_ProgressLinesOmitted(lines) + "\n").getBytes());
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		super.close();
+		writePending();
+		out.flush();
+	}
+	
+}
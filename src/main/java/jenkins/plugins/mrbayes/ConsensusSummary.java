@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.Serializable;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Summary of the trees sampled by the runs of an analysis: the majority rule 
+ * consensus tree and the agreement among runs. The split frequencies are 
+ * written to the workspace, next to the tree files.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@ExportedBean
+public class ConsensusSummary implements Serializable {
+
+	private static final long serialVersionUID = 3354019371522707405L;
+
+	/**
+	 * Analysis, i.e. the NEXUS file run, relative to the module root.
+	 */
+	private final String analysis;
+	
+	private final int runs;
+	
+	/**
+	 * Trees summarized, over all runs, after the burn-in.
+	 */
+	private final long trees;
+	
+	/**
+	 * Distinct splits found in the trees.
+	 */
+	private final int splits;
+	
+	/**
+	 * Average standard deviation of split frequencies among runs.
+	 */
+	private final double averageStdev;
+	
+	/**
+	 * Majority rule consensus tree, in newick.
+	 */
+	private final String consensus;
+	
+	/**
+	 * Time spent reading and parsing the trees, in milliseconds.
+	 */
+	private final long parseTime;
+	
+	public ConsensusSummary(String analysis, int runs, long trees, int splits, double averageStdev, 
+			String consensus, long parseTime) {
+		this.analysis = analysis;
+		this.runs = runs;
+		this.trees = trees;
+		this.splits = splits;
+		this.averageStdev = averageStdev;
+		this.consensus = consensus;
+		this.parseTime = parseTime;
+	}
+	
+	/**
+	 * @return the analysis
+	 */
+	@Exported
+	public String getAnalysis() {
+		return analysis;
+	}
+	
+	/**
+	 * @return the number of runs
+	 */
+	@Exported
+	public int getRuns() {
+		return runs;
+	}
+	
+	/**
+	 * @return the trees summarized after the burn-in
+	 */
+	@Exported
+	public long getTrees() {
+		return trees;
+	}
+	
+	/**
+	 * @return the distinct splits
+	 */
+	@Exported
+	public int getSplits() {
+		return splits;
+	}
+	
+	/**
+	 * @return the average standard deviation of split frequencies, or NaN 
+	 * with a single run
+	 */
+	@Exported
+	public double getAverageStdev() {
+		return averageStdev;
+	}
+	
+	/**
+	 * @return the consensus tree
+	 */
+	@Exported
+	public String getConsensus() {
+		return consensus;
+	}
+	
+	/**
+	 * @return the time spent parsing the trees, in milliseconds
+	 */
+	public long getParseTime() {
+		return parseTime;
+	}
+	
+	/**
+	 * @return trees parsed per second
+	 */
+	public long getTreesPerSecond() {
+		return trees * 1000L / Math.max(parseTime, 1L);
+	}
+	
+}
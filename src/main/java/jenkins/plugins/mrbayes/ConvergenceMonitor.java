@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Watches the output of MrBayes as it is written, looking for the average 
+ * standard deviation of split frequencies that MrBayes prints every 
+ * diagnfreq generations when more than one run is used. The analysis is 
+ * considered converged once the value stays at or below a threshold for a 
+ * number of consecutive samples. The output is passed through unchanged.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class ConvergenceMonitor extends LineTransformationOutputStream {
+
+	private static final Pattern SPLIT_FREQUENCIES = Pattern.compile(
+			"Average standard deviation of split frequencies:\\s*([0-9]*\\.?[0-9]+(?:[eE][-+]?[0-9]+)?)");
+	
+	/**
+	 * Progress lines, e.g. <code>   1000 -- (-5986.3) (-5992.1) ...</code>
+	 */
+	private static final Pattern GENERATION = Pattern.compile("^\\s*(\\d+)\\s+--\\s");
+	
+	private final OutputStream out;
+	
+	private final double threshold;
+	
+	private final int samples;
+	
+	private int consecutive = 0;
+	
+	private long generation = -1L;
+	
+	private volatile boolean converged = false;
+	
+	private volatile long convergedAt = -1L;
+	
+	/**
+	 * @param out stream where the output is passed to
+	 * @param threshold maximum average standard deviation of split frequencies
+	 * @param samples number of consecutive samples at or below the threshold
+	 */
+	public ConvergenceMonitor(OutputStream out, double threshold, int samples) {
+		this.out = out;
+		this.threshold = threshold;
+		this.samples = samples;
+	}
+	
+	/**
+	 * @return whether the analysis converged
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+	
+	/**
+	 * @return the last generation printed before convergence, or -1
+	 */
+	public long getConvergedAt() {
+		return convergedAt;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#eol(byte[], int)
+	 */
+	@Override
+	protected void eol(byte[] b, int len) throws IOException {
+		out.write(b, 0, len);
+		if(!converged) {
+			parse(new String(b, 0, len, "US-ASCII"));
+		}
+	}
+	
+	void parse(String line) {
+		Matcher m = GENERATION.matcher(line);
+		if(m.find()) {
+			try {
+				generation = Long.parseLong(m.group(1));
+			} catch (NumberFormatException nfe) {
+				// not a progress line
+			}
+			return;
+		}
+		m = SPLIT_FREQUENCIES.matcher(line);
+		if(m.find()) {
+			final double value = Double.parseDouble(m.group(1));
+			consecutive = (value <= threshold ? consecutive + 1 : 0);
+			if(consecutive >= samples) {
+				convergedAt = generation;
+				converged = true;
+			}
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		super.close();
+		out.flush();
+	}
+	
+}
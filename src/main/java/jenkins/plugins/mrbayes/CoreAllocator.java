@@ -0,0 +1,516 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.remoting.Callable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Gives each MrBayes process started in a node a set of cores that no other
+ * MrBayes process of the node uses, on a single NUMA node when one has
+ * enough free cores, so that concurrent runs do not share cores nor read
+ * their memory across sockets. The process is started through
+ * <code>numactl</code>, which also binds its memory to the NUMA node, or
+ * through <code>taskset</code> when numactl is not installed. MPI ranks
+ * inherit the cores of the MPI launcher.
+ * <p>
+ * There is one allocator per node, in the JVM of its agent, shared by all the
+ * builds running there. Cores are taken with {@link Allocate} and given back
+ * with {@link Release}. The cores of a detached MrBayes process are also
+ * written next to its control directory, so that the build that reattaches
+ * to it takes them again with {@link Reattach}, even after the agent
+ * restarted, and they are not given to another process while it still
+ * runs. The NUMA nodes are read from
+ * <code>/sys/devices/system/node</code>; elsewhere, all the cores are taken
+ * as a single NUMA node.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class CoreAllocator {
+
+	private static final String NUMA_NODES = "/sys/devices/system/node";
+
+	private static final Pattern NUMA_NODE = Pattern.compile("node(\\d+)");
+
+	private static CoreAllocator instance;
+
+	/**
+	 * Cores of each NUMA node, by its number.
+	 */
+	private final Map<Integer, List<Integer>> numaNodes;
+
+	/**
+	 * Cores in use, by owner.
+	 */
+	private final Map<String, Placement> allocations = new HashMap<String, Placement>();
+
+	/**
+	 * @param numaNodes cores of each NUMA node, by its number
+	 */
+	CoreAllocator(Map<Integer, List<Integer>> numaNodes) {
+		this.numaNodes = numaNodes;
+	}
+
+	/**
+	 * @return the allocator of the node where it is called
+	 */
+	static synchronized CoreAllocator getInstance() {
+		if(instance == null) {
+			instance = new CoreAllocator(readNumaNodes(new File(NUMA_NODES), Runtime.getRuntime().availableProcessors()));
+		}
+		return instance;
+	}
+
+	/**
+	 * Takes free cores: on the NUMA node with the fewest free cores that has
+	 * enough, keeping the others free for larger runs, or else on several
+	 * NUMA nodes, the freest first.
+	 *
+	 * @param owner the process the cores are for
+	 * @param count number of cores
+	 * @param tool numactl or taskset
+	 * @return the cores taken, or <code>null</code> if not enough are free
+	 */
+	synchronized Placement allocate(String owner, int count, String tool) {
+		allocations.remove(owner);
+		final Set<Integer> used = new HashSet<Integer>();
+		for(Placement placement : allocations.values()) {
+			used.addAll(placement.getCores());
+		}
+		final Map<Integer, List<Integer>> free = new TreeMap<Integer, List<Integer>>();
+		Integer bestFit = null;
+		for(Map.Entry<Integer, List<Integer>> numaNode : numaNodes.entrySet()) {
+			final List<Integer> cores = new ArrayList<Integer>(numaNode.getValue());
+			cores.removeAll(used);
+			free.put(numaNode.getKey(), cores);
+			if(cores.size() >= count && (bestFit == null || cores.size() < free.get(bestFit).size())) {
+				bestFit = numaNode.getKey();
+			}
+		}
+		Placement placement = null;
+		if(bestFit != null) {
+			placement = new Placement(owner, free.get(bestFit).subList(0, count), bestFit.intValue(), tool);
+		} else {
+			final List<Integer> nodes = new ArrayList<Integer>(free.keySet());
+			Collections.sort(nodes, new Comparator<Integer>() {
+				public int compare(Integer n1, Integer n2) {
+					return free.get(n2).size() - free.get(n1).size();
+				}
+			});
+			final List<Integer> cores = new ArrayList<Integer>();
+			for(Integer node : nodes) {
+				for(Integer core : free.get(node)) {
+					if(cores.size() < count) {
+						cores.add(core);
+					}
+				}
+			}
+			if(cores.size() < count) {
+				return null;
+			}
+			Collections.sort(cores);
+			placement = new Placement(owner, cores, -1, tool);
+		}
+		allocations.put(owner, placement);
+		return placement;
+	}
+
+	/**
+	 * Takes again the cores of a process started earlier, whether or not
+	 * another process took them since.
+	 *
+	 * @param placement the cores of the process
+	 */
+	synchronized void register(Placement placement) {
+		allocations.put(placement.getOwner(), placement);
+	}
+
+	/**
+	 * Gives back the cores of a process.
+	 *
+	 * @param owner the process the cores were for
+	 */
+	synchronized void release(String owner) {
+		allocations.remove(owner);
+	}
+
+	/**
+	 * @param controlDirectory control directory of a detached process
+	 * @return the file where the cores of the process are written
+	 */
+	static File getPlacementFile(String controlDirectory) {
+		return new File(controlDirectory + ".cores");
+	}
+
+	/**
+	 * Reads the cores of each NUMA node.
+	 *
+	 * @param directory <code>/sys/devices/system/node</code>
+	 * @param cores cores of the node, used when the NUMA nodes are unknown
+	 * @return the cores of each NUMA node, by its number, at least one
+	 */
+	static Map<Integer, List<Integer>> readNumaNodes(File directory, int cores) {
+		final Map<Integer, List<Integer>> numaNodes = new TreeMap<Integer, List<Integer>>();
+		final String[] names = directory.list();
+		if(names != null) {
+			for(String name : names) {
+				final Matcher m = NUMA_NODE.matcher(name);
+				if(!m.matches()) {
+					continue;
+				}
+				try {
+					final List<Integer> cpus = parseCpuList(readLine(new File(new File(directory, name), "cpulist")));
+					if(!cpus.isEmpty()) {
+						numaNodes.put(Integer.valueOf(m.group(1)), cpus);
+					}
+				} catch (IOException ioe) {
+					// not a NUMA node with cores
+				} catch (NumberFormatException nfe) {
+					// not a NUMA node with cores
+				}
+			}
+		}
+		if(numaNodes.isEmpty()) {
+			final List<Integer> all = new ArrayList<Integer>();
+			for(int i = 0; i < cores; ++i) {
+				all.add(i);
+			}
+			numaNodes.put(Integer.valueOf(0), all);
+		}
+		return numaNodes;
+	}
+
+	private static String readLine(File file) throws IOException {
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			return reader.readLine();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @param cpuList list of cores in the format of Linux, e.g.
+	 * <code>0-3,8,10-11</code>
+	 * @return the cores
+	 */
+	static List<Integer> parseCpuList(String cpuList) {
+		final List<Integer> cores = new ArrayList<Integer>();
+		if(StringUtils.isBlank(cpuList)) {
+			return cores;
+		}
+		for(String range : cpuList.trim().split(",")) {
+			final int dash = range.indexOf('-');
+			if(dash < 0) {
+				cores.add(Integer.valueOf(range.trim()));
+			} else {
+				final int last = Integer.parseInt(range.substring(dash + 1).trim());
+				for(int core = Integer.parseInt(range.substring(0, dash).trim()); core <= last; ++core) {
+					cores.add(core);
+				}
+			}
+		}
+		return cores;
+	}
+
+	/**
+	 * @param cores sorted cores
+	 * @return the cores in the format of Linux, e.g. <code>0-3,8</code>
+	 */
+	static String formatCpuList(List<Integer> cores) {
+		final StringBuilder sb = new StringBuilder();
+		int i = 0;
+		while(i < cores.size()) {
+			int j = i;
+			while(j + 1 < cores.size() && cores.get(j + 1).intValue() == cores.get(j).intValue() + 1) {
+				j++;
+			}
+			if(sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(cores.get(i));
+			if(j > i) {
+				sb.append('-').append(cores.get(j));
+			}
+			i = j + 1;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Cores given to a MrBayes process.
+	 */
+	public static class Placement implements Serializable {
+
+		private static final long serialVersionUID = 2418047652280395714L;
+
+		private final String owner;
+
+		private final List<Integer> cores;
+
+		private final int numaNode;
+
+		private final String tool;
+
+		public Placement(String owner, List<Integer> cores, int numaNode, String tool) {
+			this.owner = owner;
+			this.cores = new ArrayList<Integer>(cores);
+			this.numaNode = numaNode;
+			this.tool = tool;
+		}
+
+		/**
+		 * @return the process the cores are for
+		 */
+		public String getOwner() {
+			return owner;
+		}
+
+		/**
+		 * @return the cores
+		 */
+		public List<Integer> getCores() {
+			return Collections.unmodifiableList(cores);
+		}
+
+		/**
+		 * @return the NUMA node of the cores, or -1 if they are on several
+		 */
+		public int getNumaNode() {
+			return numaNode;
+		}
+
+		/**
+		 * @return the command that runs a process on the cores, put before
+		 * its command line
+		 */
+		public List<String> getPrefix() {
+			final String cpuList = formatCpuList(cores);
+			if(tool.endsWith("taskset")) {
+				return Arrays.asList(tool, "-c", cpuList);
+			}
+			if(numaNode < 0) {
+				return Arrays.asList(tool, "--physcpubind=" + cpuList);
+			}
+			return Arrays.asList(tool, "--physcpubind=" + cpuList, "--membind=" + numaNode);
+		}
+
+		/**
+		 * Writes the cores, the NUMA node and the tool, one per line.
+		 */
+		void write(File file) throws IOException {
+			final FileWriter writer = new FileWriter(file);
+			try {
+				writer.write(formatCpuList(cores) + "\n" + numaNode + "\n" + tool + "\n");
+			} finally {
+				writer.close();
+			}
+		}
+
+		/**
+		 * @param owner the process the cores are for
+		 * @param file file written by {@link #write(File)}
+		 * @return the cores written in the file, or <code>null</code> if it
+		 * does not exist or can't be read
+		 */
+		static Placement read(String owner, File file) throws IOException {
+			if(!file.isFile()) {
+				return null;
+			}
+			final BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				final List<Integer> cores = parseCpuList(reader.readLine());
+				final String numaNode = reader.readLine();
+				final String tool = reader.readLine();
+				if(cores.isEmpty() || numaNode == null || StringUtils.isBlank(tool)) {
+					return null;
+				}
+				return new Placement(owner, cores, Integer.parseInt(numaNode.trim()), tool);
+			} catch (NumberFormatException nfe) {
+				return null;
+			} finally {
+				reader.close();
+			}
+		}
+
+	}
+
+	/**
+	 * Takes cores for a MrBayes process in the node where it is executed.
+	 * Returns <code>null</code> when neither numactl nor taskset is
+	 * installed, or not enough cores are free.
+	 */
+	public static class Allocate implements Callable<Placement, IOException> {
+
+		private static final long serialVersionUID = -1185436286049211574L;
+
+		private final int count;
+
+		/**
+		 * Control directory of a detached process, or <code>null</code>.
+		 */
+		private final String controlDirectory;
+
+		/**
+		 * @param count number of cores
+		 */
+		public Allocate(int count) {
+			this(count, null);
+		}
+
+		/**
+		 * @param count number of cores
+		 * @param controlDirectory control directory of the process, if it
+		 * runs detached, or <code>null</code>
+		 */
+		public Allocate(int count, String controlDirectory) {
+			this.count = Math.max(1, count);
+			this.controlDirectory = controlDirectory;
+		}
+
+		/* (non-Javadoc)
+		 * @see hudson.remoting.Callable#call()
+		 */
+		public Placement call() throws IOException {
+			final String path = System.getenv("PATH");
+			File tool = InstallationCapabilities.Probe.resolve("numactl", path);
+			if(tool == null) {
+				tool = InstallationCapabilities.Probe.resolve("taskset", path);
+			}
+			if(tool == null) {
+				return null;
+			}
+			if(controlDirectory == null) {
+				return getInstance().allocate(UUID.randomUUID().toString(), count, tool.getAbsolutePath());
+			}
+			final Placement placement = getInstance().allocate(controlDirectory, count, tool.getAbsolutePath());
+			if(placement != null) {
+				final File file = getPlacementFile(controlDirectory);
+				file.getParentFile().mkdirs();
+				placement.write(file);
+			}
+			return placement;
+		}
+
+	}
+
+	/**
+	 * Takes again, in the node where it is executed, the cores of a detached
+	 * MrBayes process started by an earlier build. Returns <code>null</code>
+	 * when the process was not pinned.
+	 */
+	public static class Reattach implements Callable<Placement, IOException> {
+
+		private static final long serialVersionUID = 4409126713262371906L;
+
+		private final String controlDirectory;
+
+		/**
+		 * @param controlDirectory control directory of the process
+		 */
+		public Reattach(String controlDirectory) {
+			this.controlDirectory = controlDirectory;
+		}
+
+		/* (non-Javadoc)
+		 * @see hudson.remoting.Callable#call()
+		 */
+		public Placement call() throws IOException {
+			final Placement placement = Placement.read(controlDirectory, getPlacementFile(controlDirectory));
+			if(placement != null) {
+				getInstance().register(placement);
+			}
+			return placement;
+		}
+
+	}
+
+	/**
+	 * Gives back the cores of a MrBayes process in the node where it is
+	 * executed.
+	 */
+	public static class Release implements Callable<Void, IOException> {
+
+		private static final long serialVersionUID = 6652430917238127830L;
+
+		private final String owner;
+
+		/**
+		 * Control directory of a detached process, or <code>null</code>.
+		 */
+		private final String controlDirectory;
+
+		/**
+		 * @param owner the process the cores were for
+		 */
+		public Release(String owner) {
+			this(owner, null);
+		}
+
+		/**
+		 * @param owner the process the cores were for
+		 * @param controlDirectory control directory of the process, if it
+		 * ran detached, or <code>null</code>
+		 */
+		public Release(String owner, String controlDirectory) {
+			this.owner = owner;
+			this.controlDirectory = controlDirectory;
+		}
+
+		/* (non-Javadoc)
+		 * @see hudson.remoting.Callable#call()
+		 */
+		public Void call() throws IOException {
+			getInstance().release(owner);
+			if(controlDirectory != null) {
+				getPlacementFile(controlDirectory).delete();
+			}
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,336 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * MrBayes process running detached from the node agent, so that it is not 
+ * killed when the master restarts or the agent loses its connection. The 
+ * process is started with nohup and setsid by a small shell script, which 
+ * writes its pid, output and exit code to a control directory. A build can 
+ * then follow the process by reading these files, and a later build can 
+ * reattach to it. MrBayes runs in a process group of its own, so that 
+ * killing it kills the processes it started too, such as the ones of mpirun.
+ * <p>
+ * The process is started with the environment of the build, except for the 
+ * variables Jenkins uses to find and kill the processes left behind by a 
+ * build, so that it survives the end of the build that started it.
+ * <p>
+ * Only available in Unix nodes.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class DetachedProcess {
+
+	/**
+	 * Directory with the control directories, relative to the directory 
+	 * where MrBayes runs.
+	 */
+	public static final String CONTROL_DIRECTORY = ".mrbayes";
+	
+	/**
+	 * Time given to MrBayes to stop after SIGTERM before it is sent SIGKILL, 
+	 * in milliseconds.
+	 */
+	public static final long KILL_GRACE_PERIOD = Long.getLong(DetachedProcess.class.getName() + ".killGracePeriod", 30000L);
+	
+	/**
+	 * Runs the command in a new process group, with setsid, or with job 
+	 * control where there is no setsid. Either way the pid of the command is 
+	 * the id of its group.
+	 */
+	private static final String SCRIPT = 
+		"control=\"$1\"; shift\n" + 
+		"if command -v setsid > /dev/null 2>&1; then\n" + 
+		"  setsid \"$@\" > \"$control/log\" 2>&1 &\n" + 
+		"else\n" + 
+		"  set -m\n" + 
+		"  \"$@\" > \"$control/log\" 2>&1 &\n" + 
+		"fi\n" + 
+		"echo $! > \"$control/pid.tmp\" && mv \"$control/pid.tmp\" \"$control/pid\"\n" + 
+		"wait $!\n" + 
+		"echo $? > \"$control/exit.tmp\" && mv \"$control/exit.tmp\" \"$control/exit\"\n";
+	
+	/**
+	 * Variables of the build environment that Jenkins looks for when it kills 
+	 * the processes left behind by a build.
+	 */
+	private static final String[] KILL_COOKIES = {"BUILD_ID", "HUDSON_COOKIE", "JENKINS_NODE_COOKIE", 
+		"HUDSON_SERVER_COOKIE", "JENKINS_SERVER_COOKIE"};
+	
+	/**
+	 * Value given to the variables in {@link #KILL_COOKIES}, the one Jenkins 
+	 * documents for processes that must outlive their build.
+	 */
+	private static final String DONT_KILL_ME = "dontKillMe";
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private static final long KILL_POLL_INTERVAL = 500L;
+	
+	private final File control;
+	
+	/**
+	 * @param control control directory of the process
+	 */
+	public DetachedProcess(File control) {
+		this.control = control;
+	}
+	
+	/**
+	 * @param input NEXUS file run by MrBayes
+	 * @return the control directory for a NEXUS file, relative to the 
+	 * directory where MrBayes runs
+	 */
+	public static String getControlDirectory(String input) {
+		return CONTROL_DIRECTORY + "/" + Util.getDigestOf(input);
+	}
+	
+	/**
+	 * @param control control directory
+	 * @return whether a process was started in the control directory and 
+	 * not collected yet by a build
+	 */
+	public static boolean isStarted(FilePath control) throws IOException, InterruptedException {
+		return control.child("pid").exists() || control.child("exit").exists();
+	}
+	
+	/**
+	 * @return whether the process was started and not collected yet
+	 */
+	public boolean isStarted() {
+		return new File(control, "pid").isFile() || new File(control, "exit").isFile();
+	}
+	
+	/**
+	 * Starts the process and returns immediately.
+	 */
+	public void start(TaskListener listener, List<String> cmds, Map<String, String> env, File pwd) 
+	throws IOException, InterruptedException {
+		if(File.pathSeparatorChar != ':') {
+			throw new IOException("Detached MrBayes runs are only available in Unix nodes");
+		}
+		delete();
+		if(!control.mkdirs()) {
+			throw new IOException("Failed to create " + control);
+		}
+		final File script = new File(control, "run.sh");
+		final FileWriter writer = new FileWriter(script);
+		try {
+			writer.write(SCRIPT);
+		} finally {
+			writer.close();
+		}
+		final List<String> args = new ArrayList<String>();
+		args.add("sh");
+		args.add("-c");
+		args.add("if command -v setsid > /dev/null 2>&1; then s=setsid; else s=; fi; " + 
+				"$s nohup sh \"$0\" \"$@\" > /dev/null 2>&1 < /dev/null &");
+		args.add(script.getAbsolutePath());
+		args.add(control.getAbsolutePath());
+		args.addAll(cmds);
+		final ProcessBuilder builder = new ProcessBuilder(args).directory(pwd).redirectErrorStream(true);
+		builder.environment().putAll(getEnvironment(env));
+		final Process process = builder.start();
+		process.getOutputStream().close();
+		Util.copyStream(process.getInputStream(), listener.getLogger());
+		final int exitCode = process.waitFor();
+		if(exitCode != 0) {
+			throw new IOException("Failed to start MrBayes in the background: " + exitCode);
+		}
+	}
+	
+	/**
+	 * @param env environment of the build
+	 * @return the environment of the process, without the variables Jenkins 
+	 * uses to kill the processes of the build
+	 */
+	static Map<String, String> getEnvironment(Map<String, String> env) {
+		final Map<String, String> detached = new HashMap<String, String>(env);
+		for(String cookie : KILL_COOKIES) {
+			if(cookie.equals("BUILD_ID") || detached.containsKey(cookie)) {
+				detached.put(cookie, DONT_KILL_ME);
+			}
+		}
+		return detached;
+	}
+	
+	/**
+	 * @return the exit code, or <code>null</code> if the process did not 
+	 * finish yet
+	 */
+	public Integer getExitCode() throws IOException {
+		final String exitCode = read(new File(control, "exit"));
+		if(exitCode == null) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(exitCode);
+		} catch (NumberFormatException nfe) {
+			throw new IOException("Invalid exit code: " + exitCode);
+		}
+	}
+	
+	/**
+	 * @return whether the process is still running. Assumed to be running 
+	 * while its pid is not known yet, or when the node has no /proc.
+	 */
+	public boolean isAlive() throws IOException {
+		final String pid = read(new File(control, "pid"));
+		if(pid == null || !new File("/proc/self").exists()) {
+			return true;
+		}
+		return new File("/proc/" + pid).exists();
+	}
+	
+	/**
+	 * Copies the output written by the process since the last call.
+	 * 
+	 * @param offset number of bytes already copied
+	 * @param out where the output is copied to
+	 * @return the new offset
+	 */
+	public long copyOutput(long offset, OutputStream out) throws IOException {
+		return copy(new File(control, "log"), offset, out);
+	}
+	
+	static long copy(File file, long offset, OutputStream out) throws IOException {
+		if(!file.isFile() || file.length() <= offset) {
+			return offset;
+		}
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(offset);
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while((read = raf.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+				offset += read;
+			}
+			return offset;
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Sends SIGTERM to the process, if it is running, and SIGKILL if it did 
+	 * not stop after the grace period.
+	 * 
+	 * @param gracePeriod milliseconds to wait before sending SIGKILL
+	 */
+	public void kill(long gracePeriod) throws IOException, InterruptedException {
+		if(!signal("TERM")) {
+			return;
+		}
+		final long end = System.currentTimeMillis() + gracePeriod;
+		while(System.currentTimeMillis() < end) {
+			if(getExitCode() != null || !isAlive()) {
+				return;
+			}
+			Thread.sleep(Math.min(KILL_POLL_INTERVAL, Math.max(1L, end - System.currentTimeMillis())));
+		}
+		signal("KILL");
+	}
+	
+	/**
+	 * Sends SIGTERM to the process, if it is running, without waiting.
+	 */
+	public void terminate() throws IOException, InterruptedException {
+		signal("TERM");
+	}
+	
+	/**
+	 * Sends SIGKILL to the process, if it is running.
+	 */
+	public void forceKill() throws IOException, InterruptedException {
+		signal("KILL");
+	}
+	
+	/**
+	 * Sends a signal to the process group of the process, or to the process 
+	 * alone if it has no group of its own.
+	 * 
+	 * @return whether the process was running
+	 */
+	private boolean signal(String signal) throws IOException, InterruptedException {
+		final String pid = read(new File(control, "pid"));
+		if(pid == null || getExitCode() != null) {
+			return false;
+		}
+		if(new ProcessBuilder("kill", "-" + signal, "--", "-" + pid).start().waitFor() != 0) {
+			new ProcessBuilder("kill", "-" + signal, pid).start().waitFor();
+		}
+		return true;
+	}
+	
+	/**
+	 * Deletes the control directory.
+	 */
+	public void delete() {
+		final File[] files = control.listFiles();
+		if(files != null) {
+			for(File f : files) {
+				f.delete();
+			}
+		}
+		control.delete();
+	}
+	
+	/**
+	 * @return the first line of a file, trimmed, or <code>null</code> if the 
+	 * file does not exist or is empty
+	 */
+	private static String read(File file) throws IOException {
+		if(!file.isFile()) {
+			return null;
+		}
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			final String line = reader.readLine();
+			return (StringUtils.isBlank(line) ? null : line.trim());
+		} finally {
+			reader.close();
+		}
+	}
+	
+}
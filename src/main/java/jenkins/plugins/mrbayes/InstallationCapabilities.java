@@ -0,0 +1,527 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.remoting.Callable;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * What a MrBayes executable supports in a node: its version, and whether it
+ * was built with BEAGLE, MPI, SSE and AVX. SSE and AVX count only if the
+ * processors of the node have them too. Retrieved by running {@link Probe}
+ * in the node.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class InstallationCapabilities implements Serializable {
+
+	private static final long serialVersionUID = -7417062829365216385L;
+
+	/**
+	 * Orders the installations from the fastest to the slowest: BEAGLE first,
+	 * then AVX, SSE and MPI, then the newest version. Unavailable ones go
+	 * last.
+	 */
+	public static final Comparator<InstallationCapabilities> FASTEST = new Comparator<InstallationCapabilities>() {
+		public int compare(InstallationCapabilities c1, InstallationCapabilities c2) {
+			int diff = compare(c1.isAvailable(), c2.isAvailable());
+			if(diff == 0) {
+				diff = compare(c1.isBeagle(), c2.isBeagle());
+			}
+			if(diff == 0) {
+				diff = compare(c1.isAvx(), c2.isAvx());
+			}
+			if(diff == 0) {
+				diff = compare(c1.isSse(), c2.isSse());
+			}
+			if(diff == 0) {
+				diff = compare(c1.isMpi(), c2.isMpi());
+			}
+			if(diff == 0) {
+				diff = compareVersions(c2.getVersion(), c1.getVersion());
+			}
+			return diff;
+		}
+		private int compare(boolean b1, boolean b2) {
+			return (b1 == b2 ? 0 : (b1 ? -1 : 1));
+		}
+	};
+
+	/**
+	 * Version numbers, e.g. <code>Version:   3.2.7a</code> or
+	 * <code>MrBayes v3.1.2</code>.
+	 */
+	private static final Pattern VERSION = Pattern.compile(
+			"(?:Version:\\s*|MrBayes\\s+v?)(\\d+(?:\\.\\d+)+[a-z]?)", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Features line printed by <code>mb -v</code> since 3.2.
+	 */
+	private static final Pattern FEATURES = Pattern.compile("^\\s*Features:\\s*(.*)$", Pattern.MULTILINE);
+
+	private final String name;
+
+	/**
+	 * Resolved path of the executable, or <code>null</code> if not found.
+	 */
+	private final String executable;
+
+	private final String version;
+
+	private final boolean beagle;
+
+	private final boolean mpi;
+
+	private final boolean sse;
+
+	private final boolean avx;
+
+	/**
+	 * Why the installation can't be used in the node, or <code>null</code>.
+	 */
+	private final String problem;
+
+	public InstallationCapabilities(String name, String executable, String version, boolean beagle, boolean mpi,
+			boolean sse, boolean avx, String problem) {
+		this.name = name;
+		this.executable = executable;
+		this.version = version;
+		this.beagle = beagle;
+		this.mpi = mpi;
+		this.sse = sse;
+		this.avx = avx;
+		this.problem = problem;
+	}
+
+	/**
+	 * @param name name of the installation
+	 * @param problem why it can't be used
+	 * @return an installation that can't be used
+	 */
+	public static InstallationCapabilities unavailable(String name, String problem) {
+		return new InstallationCapabilities(name, null, null, false, false, false, false, problem);
+	}
+
+	/**
+	 * @return the name of the installation
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the resolved path of the executable, or <code>null</code>
+	 */
+	public String getExecutable() {
+		return executable;
+	}
+
+	/**
+	 * @return the version, or <code>null</code> if not printed by MrBayes
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return whether MrBayes was built with the BEAGLE library
+	 */
+	public boolean isBeagle() {
+		return beagle;
+	}
+
+	/**
+	 * @return whether MrBayes was built with MPI
+	 */
+	public boolean isMpi() {
+		return mpi;
+	}
+
+	/**
+	 * @return whether MrBayes and the processors of the node support SSE
+	 */
+	public boolean isSse() {
+		return sse;
+	}
+
+	/**
+	 * @return whether MrBayes and the processors of the node support AVX
+	 */
+	public boolean isAvx() {
+		return avx;
+	}
+
+	/**
+	 * @return why the installation can't be used in the node, or
+	 * <code>null</code>
+	 */
+	public String getProblem() {
+		return problem;
+	}
+
+	/**
+	 * @return whether the installation can be used in the node
+	 */
+	public boolean isAvailable() {
+		return problem == null;
+	}
+
+	/**
+	 * @return the features found, e.g. <code>BEAGLE AVX SSE</code>, or
+	 * <code>none</code>
+	 */
+	public String getFeatures() {
+		final List<String> features = new ArrayList<String>();
+		if(beagle) {
+			features.add("BEAGLE");
+		}
+		if(avx) {
+			features.add("AVX");
+		}
+		if(sse) {
+			features.add("SSE");
+		}
+		if(mpi) {
+			features.add("MPI");
+		}
+		return (features.isEmpty() ? "none" : StringUtils.join(features, " "));
+	}
+
+	/**
+	 * Reads the capabilities of an executable from what it printed when
+	 * started.
+	 *
+	 * @param name name of the installation
+	 * @param executable resolved path of the executable
+	 * @param output output of MrBayes
+	 * @param cpuFlags flags of the processors of the node, in lower case, or
+	 * <code>null</code> if unknown
+	 * @return the capabilities
+	 */
+	static InstallationCapabilities parse(String name, String executable, String output, Set<String> cpuFlags) {
+		String version = null;
+		final Matcher v = VERSION.matcher(output);
+		if(v.find()) {
+			version = v.group(1);
+		}
+		final Set<String> features = new HashSet<String>();
+		final Matcher f = FEATURES.matcher(output);
+		if(f.find()) {
+			for(String feature : f.group(1).trim().split("[\\s,]+")) {
+				features.add(feature.toLowerCase(Locale.ENGLISH));
+			}
+		}
+		final String lower = output.toLowerCase(Locale.ENGLISH);
+		final boolean beagle = features.contains("beagle") || lower.contains("beagle library");
+		final boolean mpi = features.contains("mpi") || lower.contains("parallel version");
+		final boolean sse = features.contains("sse") && (cpuFlags == null || cpuFlags.contains("sse2"));
+		final boolean avx = features.contains("avx") && (cpuFlags == null || cpuFlags.contains("avx"));
+		if(version == null && features.isEmpty()) {
+			return unavailable(name, "not a MrBayes executable: " + StringUtils.abbreviate(output.trim(), 200));
+		}
+		return new InstallationCapabilities(name, executable, version, beagle, mpi, sse, avx, null);
+	}
+
+	/**
+	 * Compares version numbers part by part, so that 3.2.10 is newer than
+	 * 3.2.7. Unknown versions are the oldest.
+	 */
+	static int compareVersions(String v1, String v2) {
+		if(v1 == null || v2 == null) {
+			return (v1 == null ? (v2 == null ? 0 : -1) : 1);
+		}
+		final String[] p1 = v1.split("\\.");
+		final String[] p2 = v2.split("\\.");
+		for(int i = 0; i < Math.max(p1.length, p2.length); ++i) {
+			final String s1 = (i < p1.length ? p1[i] : "0");
+			final String s2 = (i < p2.length ? p2[i] : "0");
+			final int n1 = Integer.parseInt(s1.replaceAll("\\D+$", ""));
+			final int n2 = Integer.parseInt(s2.replaceAll("\\D+$", ""));
+			if(n1 != n2) {
+				return (n1 < n2 ? -1 : 1);
+			}
+			final int diff = s1.compareTo(s2);
+			if(diff != 0) {
+				return diff;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param installations capabilities of the installations in a node
+	 * @return the fastest installation that can be used, or
+	 * <code>null</code>
+	 */
+	public static InstallationCapabilities fastest(List<InstallationCapabilities> installations) {
+		final List<InstallationCapabilities> sorted = new ArrayList<InstallationCapabilities>(installations);
+		Collections.sort(sorted, FASTEST);
+		if(sorted.isEmpty() || !sorted.get(0).isAvailable()) {
+			return null;
+		}
+		return sorted.get(0);
+	}
+
+	/**
+	 * Probes the MrBayes executables of the given installations in the node
+	 * where it is executed. The result of each executable is kept in the node
+	 * until the executable changes.
+	 */
+	public static class Probe implements Callable<List<InstallationCapabilities>, IOException> {
+
+		private static final long serialVersionUID = 2051947387734502649L;
+
+		private static final Logger LOGGER = Logger.getLogger(Probe.class.getName());
+
+		/**
+		 * Time MrBayes has to print its version, in milliseconds.
+		 */
+		public static final long TIMEOUT = Long.getLong(Probe.class.getName() + ".timeout", 30000L).longValue();
+
+		private static final String CPUINFO = "/proc/cpuinfo";
+
+		/**
+		 * Most MrBayes prints when started; the rest is discarded.
+		 */
+		private static final int MAX_OUTPUT = 64 * 1024;
+
+		/**
+		 * Capabilities by executable, with the size and modification time of
+		 * the executable when probed, shared by the builds of this node.
+		 */
+		private static final Map<String, Object[]> CACHE = new HashMap<String, Object[]>();
+
+		private final String[] names;
+
+		private final String[] executables;
+
+		private final String[] mpiLaunchers;
+
+		public Probe(List<MrBayesInstallation> installations) {
+			final int size = installations.size();
+			names = new String[size];
+			executables = new String[size];
+			mpiLaunchers = new String[size];
+			for(int i = 0; i < size; ++i) {
+				final MrBayesInstallation installation = installations.get(i);
+				names[i] = installation.getName();
+				executables[i] = installation.getPathToExecutable();
+				mpiLaunchers[i] = (installation.isMpi() ? installation.getMpiLauncher() : null);
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see hudson.remoting.Callable#call()
+		 */
+		public List<InstallationCapabilities> call() throws IOException {
+			final Set<String> cpuFlags = readCpuFlags(new File(CPUINFO));
+			final String path = System.getenv("PATH");
+			final List<InstallationCapabilities> capabilities = new ArrayList<InstallationCapabilities>();
+			for(int i = 0; i < names.length; ++i) {
+				final File executable = resolve(executables[i], path);
+				if(executable == null) {
+					capabilities.add(unavailable(names[i], "executable not found: " + executables[i]));
+					continue;
+				}
+				if(mpiLaunchers[i] != null && resolve(mpiLaunchers[i], path) == null) {
+					capabilities.add(unavailable(names[i], "MPI launcher not found: " + mpiLaunchers[i]));
+					continue;
+				}
+				InstallationCapabilities c = probe(names[i], executable, cpuFlags);
+				if(mpiLaunchers[i] != null && c.isAvailable() && !c.isMpi()) {
+					c = unavailable(names[i], "not built with MPI, but started with " + mpiLaunchers[i]);
+				}
+				capabilities.add(c);
+			}
+			return capabilities;
+		}
+
+		/**
+		 * Returns the capabilities of an executable, running it only if it
+		 * changed since it was last probed.
+		 */
+		static InstallationCapabilities probe(String name, File executable, Set<String> cpuFlags) {
+			final String key = executable.getAbsolutePath();
+			final String stamp = executable.length() + "|" + executable.lastModified();
+			synchronized (CACHE) {
+				final Object[] cached = CACHE.get(key);
+				if(cached != null && stamp.equals(cached[0])) {
+					return rename((InstallationCapabilities)cached[1], name);
+				}
+			}
+			InstallationCapabilities c;
+			try {
+				c = parse(name, key, run(executable), cpuFlags);
+			} catch (IOException ioe) {
+				LOGGER.log(Level.FINE, "Failed to run " + executable, ioe);
+				c = unavailable(name, "failed to run " + executable + ": " + ioe.getMessage());
+			}
+			synchronized (CACHE) {
+				CACHE.put(key, new Object[] {stamp, c});
+			}
+			return c;
+		}
+
+		private static InstallationCapabilities rename(InstallationCapabilities c, String name) {
+			return new InstallationCapabilities(name, c.getExecutable(), c.getVersion(), c.isBeagle(), c.isMpi(),
+					c.isSse(), c.isAvx(), c.getProblem());
+		}
+
+		/**
+		 * Runs <code>mb -v</code>, which prints the version and features in
+		 * MrBayes 3.2. Older versions print their banner and wait for
+		 * commands, so quit is written to their input.
+		 */
+		private static String run(File executable) throws IOException {
+			final ProcessBuilder builder = new ProcessBuilder(Arrays.asList(executable.getAbsolutePath(), "-v"));
+			builder.redirectErrorStream(true);
+			final Process process = builder.start();
+			final Thread watchdog = new Thread("MrBayes probe of " + executable) {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(TIMEOUT);
+						process.destroy();
+					} catch (InterruptedException ie) {
+						// finished in time
+					}
+				}
+			};
+			watchdog.setDaemon(true);
+			watchdog.start();
+			try {
+				final OutputStream in = process.getOutputStream();
+				try {
+					in.write("quit\n".getBytes("US-ASCII"));
+				} catch (IOException ioe) {
+					// already exited
+				} finally {
+					try {
+						in.close();
+					} catch (IOException ioe) {
+						// already exited
+					}
+				}
+				final InputStream out = process.getInputStream();
+				final ByteArrayOutputStream output = new ByteArrayOutputStream();
+				final byte[] buffer = new byte[8192];
+				int read;
+				while((read = out.read(buffer)) != -1) {
+					if(output.size() < MAX_OUTPUT) {
+						output.write(buffer, 0, Math.min(read, MAX_OUTPUT - output.size()));
+					}
+				}
+				return output.toString("ISO-8859-1");
+			} finally {
+				watchdog.interrupt();
+				process.destroy();
+			}
+		}
+
+		/**
+		 * Finds an executable given by path, or by name in the PATH.
+		 *
+		 * @return the executable, or <code>null</code> if not found
+		 */
+		static File resolve(String executable, String path) {
+			if(StringUtils.isBlank(executable)) {
+				return null;
+			}
+			final String trimmed = executable.trim();
+			if(trimmed.indexOf('/') >= 0 || trimmed.indexOf('\\') >= 0) {
+				final File file = new File(trimmed);
+				return (file.isFile() ? file : null);
+			}
+			if(path != null) {
+				for(String dir : path.split(File.pathSeparator)) {
+					if(dir.length() == 0) {
+						continue;
+					}
+					for(String suffix : new String[] {"", ".exe"}) {
+						final File file = new File(dir, trimmed + suffix);
+						if(file.isFile()) {
+							return file;
+						}
+					}
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Reads the flags of the first processor in /proc/cpuinfo.
+		 *
+		 * @return the flags, or <code>null</code> if unknown
+		 */
+		static Set<String> readCpuFlags(File cpuinfo) throws IOException {
+			if(!cpuinfo.isFile()) {
+				return null;
+			}
+			final BufferedReader reader = new BufferedReader(new FileReader(cpuinfo));
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					if(line.startsWith("flags")) {
+						final int colon = line.indexOf(':');
+						final Set<String> flags = new HashSet<String>();
+						for(String flag : line.substring(colon + 1).trim().split("\\s+")) {
+							flags.add(flag.toLowerCase(Locale.ENGLISH));
+						}
+						return flags;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+/**
+ * Estimates the peak memory used by MrBayes for an analysis.
+ * <p>
+ * Most of the memory of MrBayes goes to the conditional likelihoods of each 
+ * chain: one array per node of the tree, twice (the current state and the 
+ * proposed one), with one value per character, state and rate category. 
+ * Values are single precision floats. The estimate assumes no repeated site 
+ * patterns and four gamma rate categories, so it is a ceiling rather than a 
+ * prediction: for most analyses MrBayes uses a fraction of it, as alignments 
+ * have many repeated patterns and not every model has rate categories.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class MemoryEstimate {
+
+	/**
+	 * Memory used by MrBayes regardless of the data, in bytes.
+	 */
+	public static final long BASE_MEMORY = 64L * 1024L * 1024L;
+	
+	private static final int RATE_CATEGORIES = 4;
+	
+	private static final int BYTES_PER_VALUE = 4;
+	
+	/**
+	 * Current and proposed states.
+	 */
+	private static final int COPIES = 2;
+	
+	private MemoryEstimate() {
+	}
+	
+	/**
+	 * @param nexus what was found in the NEXUS file
+	 * @return the estimated peak memory, in bytes, or -1 if the file does 
+	 * not have the dimensions of the data
+	 */
+	public static long estimate(NexusSummary nexus) {
+		if(nexus == null || nexus.getNtax() == null || nexus.getNchar() == null) {
+			return -1L;
+		}
+		final long nodes = 2L * nexus.getNtax().intValue() - 1L;
+		return BASE_MEMORY + (long)nexus.getTotalChains() * COPIES * nodes 
+				* nexus.getNchar().intValue() * getStates(nexus.getDatatype()) 
+				* RATE_CATEGORIES * BYTES_PER_VALUE;
+	}
+	
+	/**
+	 * @param datatype data type of the NEXUS file
+	 * @return the number of states of the data type. Mixed data are taken 
+	 * as protein, and standard (morphological) data with ten states.
+	 */
+	static int getStates(String datatype) {
+		if(datatype == null || datatype.equals("dna") || datatype.equals("rna") || datatype.equals("nucleotide")) {
+			return 4;
+		} else if(datatype.equals("restriction")) {
+			return 2;
+		} else if(datatype.equals("standard")) {
+			return 10;
+		}
+		return 20;
+	}
+	
+	/**
+	 * @param bytes memory, in bytes
+	 * @return the memory in megabytes, rounded up, for messages
+	 */
+	public static long toMegabytes(long bytes) {
+		return (bytes + 1024L * 1024L - 1L) / (1024L * 1024L);
+	}
+	
+}
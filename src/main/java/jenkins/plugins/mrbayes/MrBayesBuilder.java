@@ -27,28 +27,38 @@ import hudson.Extension;
 import hudson.FilePath;
 import hudson.FilePath.FileCallable;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.BuildListener;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.Result;
+import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
 import hudson.remoting.VirtualChannel;
 import hudson.tasks.Builder;
 import hudson.util.ArgumentListBuilder;
+import hudson.util.StreamTaskListener;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import jenkins.plugins.mrbayes.util.Messages;
 
 import org.apache.commons.lang.StringUtils;
-import org.biojava.bio.seq.io.ParseException;
-import org.biojavax.bio.phylo.io.nexus.MrBayesBlock;
-import org.biojavax.bio.phylo.io.nexus.NexusBlock;
-import org.biojavax.bio.phylo.io.nexus.NexusFile;
-import org.biojavax.bio.phylo.io.nexus.NexusFileBuilder;
-import org.biojavax.bio.phylo.io.nexus.NexusFileFormat;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 /**
@@ -62,17 +72,163 @@ public class MrBayesBuilder extends Builder {
 	@Extension
 	public static final MrBayesBuilderDescriptor DESCRIPTOR = new MrBayesBuilderDescriptor();
 	
+	/**
+	 * Encoding used to read NEXUS files.
+	 */
+	static final String NEXUS_CHARSET = "UTF-8";
+	
+	/**
+	 * NEXUS validation cache, relative to the root of the node.
+	 */
+	private static final String VALIDATION_CACHE = "mrbayes/nexus-validation.cache";
+	
+	/**
+	 * MrBayes result cache, relative to the root of the node.
+	 */
+	private static final String RESULT_CACHE = "mrbayes/results";
+	
+	/**
+	 * Consecutive samples below the convergence threshold, when not set.
+	 */
+	private static final int DEFAULT_CONVERGENCE_SAMPLES = 3;
+	
     private final String name;
     
     private final String inputFile;
     
     private final Boolean enableMrBayesBlockCheck;
+    
+    /**
+     * Number of MPI processes. When blank, it is chosen from the number of 
+     * cores of the node and the number of chains of the analysis.
+     */
+    private final String mpiProcesses;
+    
+    /**
+     * In batch mode, whether the first failure stops the other runs.
+     */
+    private final Boolean failFast;
+    
+    /**
+     * Whether to resume from the checkpoint left by a previous build that 
+     * did not finish successfully.
+     */
+    private final Boolean resumeFromCheckpoint;
+    
+    /**
+     * Average standard deviation of split frequencies below which the 
+     * analysis is stopped. When blank, MrBayes runs all the generations.
+     */
+    private final String convergenceThreshold;
+    
+    /**
+     * Number of consecutive samples that must be below the threshold.
+     */
+    private final String convergenceSamples;
+    
+    /**
+     * How much of the progress output of MrBayes goes to the build log.
+     */
+    private final String outputLevel;
+    
+    /**
+     * Whether MrBayes runs detached from the node agent, surviving restarts 
+     * of the master.
+     */
+    private final Boolean detached;
+    
+    /**
+     * Whether to restore the results of a previous run of the same analysis, 
+     * with the same seed, instead of running MrBayes.
+     */
+    private final Boolean useResultCache;
+    
+    /**
+     * Whether to stop the build when the node doesn't have the memory 
+     * estimated for the analysis. Off by default, as the estimate is an upper 
+     * bound; otherwise a warning is written.
+     */
+    private final Boolean checkMemory;
+    
+    /**
+     * Whether to run the fastest installation that works in the node, 
+     * instead of the one selected.
+     */
+    private final Boolean autoSelectInstallation;
+    
+    /**
+     * Whether to set the BEAGLE and thread settings of MrBayes from the 
+     * resources of the node, in the wrapper command file.
+     */
+    private final Boolean resourceSettings;
+    
+    /**
+     * Settings replacing the ones chosen from the resources of the node, 
+     * e.g. <code>beagleprecision=single beagleresource=1</code>.
+     */
+    private final String resourceOverrides;
+    
+    /**
+     * Whether to run the independent runs of the analysis as separate 
+     * MrBayes processes, at the same time.
+     */
+    private final Boolean splitRuns;
+    
+    /**
+     * Minutes without a new generation nor output written after which 
+     * MrBayes is killed. When blank, it is never killed for that.
+     */
+    private final String stallTimeout;
+    
+    /**
+     * Hours MrBayes may run, or is projected to run at the speed measured, 
+     * before it is killed. When blank, it has no deadline.
+     */
+    private final String deadline;
+    
+    /**
+     * Whether to run each MrBayes process on its own cores, on one NUMA node 
+     * when possible.
+     */
+    private final Boolean pinCores;
+    
+    /**
+     * Whether to set the temperature of the heated chains from the rates of 
+     * the chain swaps of the previous builds.
+     */
+    private final Boolean tuneTemperature;
 
-    @DataBoundConstructor
     public MrBayesBuilder(String name, String inputFile, Boolean enableMrBayesBlockCheck) {
+    	this(name, inputFile, enableMrBayesBlockCheck, null, null, null, null, null, null, null, null, null, null, null, null, null, 
+    			null, null, null, null);
+    }
+    
+    @DataBoundConstructor
+    public MrBayesBuilder(String name, String inputFile, Boolean enableMrBayesBlockCheck, String mpiProcesses, 
+    		Boolean failFast, Boolean resumeFromCheckpoint, String convergenceThreshold, String convergenceSamples, 
+    		String outputLevel, Boolean detached, Boolean useResultCache, Boolean checkMemory, 
+    		Boolean autoSelectInstallation, Boolean resourceSettings, String resourceOverrides, Boolean splitRuns, 
+    		String stallTimeout, String deadline, Boolean pinCores, Boolean tuneTemperature) {
         this.name = name;
         this.inputFile = inputFile;
         this.enableMrBayesBlockCheck = ((enableMrBayesBlockCheck == null) ? Boolean.TRUE : enableMrBayesBlockCheck);
+        this.mpiProcesses = mpiProcesses;
+        this.failFast = ((failFast == null) ? Boolean.FALSE : failFast);
+        this.resumeFromCheckpoint = ((resumeFromCheckpoint == null) ? Boolean.TRUE : resumeFromCheckpoint);
+        this.convergenceThreshold = convergenceThreshold;
+        this.convergenceSamples = convergenceSamples;
+        this.outputLevel = outputLevel;
+        this.detached = ((detached == null) ? Boolean.FALSE : detached);
+        this.useResultCache = ((useResultCache == null) ? Boolean.TRUE : useResultCache);
+        this.checkMemory = ((checkMemory == null) ? Boolean.FALSE : checkMemory);
+        this.autoSelectInstallation = ((autoSelectInstallation == null) ? Boolean.FALSE : autoSelectInstallation);
+        this.resourceSettings = ((resourceSettings == null) ? Boolean.FALSE : resourceSettings);
+        this.resourceOverrides = resourceOverrides;
+        this.splitRuns = ((splitRuns == null) ? Boolean.FALSE : splitRuns);
+        this.stallTimeout = stallTimeout;
+        this.deadline = deadline;
+        this.pinCores = ((pinCores == null) ? Boolean.FALSE : pinCores);
+        this.tuneTemperature = ((tuneTemperature == null) ? Boolean.FALSE : tuneTemperature);
     }
 
     /**
@@ -95,6 +251,125 @@ public class MrBayesBuilder extends Builder {
 	public Boolean getEnableMrBayesBlockCheck() {
 		return ((enableMrBayesBlockCheck==null ? Boolean.TRUE : enableMrBayesBlockCheck));
 	}
+	
+	/**
+	 * @return the mpiProcesses
+	 */
+	public String getMpiProcesses() {
+		return mpiProcesses;
+	}
+	
+	/**
+	 * @return the failFast
+	 */
+	public Boolean getFailFast() {
+		return ((failFast==null ? Boolean.FALSE : failFast));
+	}
+	
+	/**
+	 * @return the resumeFromCheckpoint
+	 */
+	public Boolean getResumeFromCheckpoint() {
+		return ((resumeFromCheckpoint==null ? Boolean.TRUE : resumeFromCheckpoint));
+	}
+	
+	/**
+	 * @return the convergenceThreshold
+	 */
+	public String getConvergenceThreshold() {
+		return convergenceThreshold;
+	}
+	
+	/**
+	 * @return the convergenceSamples
+	 */
+	public String getConvergenceSamples() {
+		return convergenceSamples;
+	}
+	
+	/**
+	 * @return the outputLevel
+	 */
+	public OutputLevel getOutputLevel() {
+		return OutputLevel.fromString(outputLevel);
+	}
+	
+	/**
+	 * @return the detached
+	 */
+	public Boolean getDetached() {
+		return ((detached==null ? Boolean.FALSE : detached));
+	}
+	
+	/**
+	 * @return the useResultCache
+	 */
+	public Boolean getUseResultCache() {
+		return ((useResultCache==null ? Boolean.TRUE : useResultCache));
+	}
+	
+	/**
+	 * @return the checkMemory
+	 */
+	public Boolean getCheckMemory() {
+		return ((checkMemory==null ? Boolean.FALSE : checkMemory));
+	}
+	
+	/**
+	 * @return the autoSelectInstallation
+	 */
+	public Boolean getAutoSelectInstallation() {
+		return ((autoSelectInstallation==null ? Boolean.FALSE : autoSelectInstallation));
+	}
+	
+	/**
+	 * @return the resourceSettings
+	 */
+	public Boolean getResourceSettings() {
+		return ((resourceSettings==null ? Boolean.FALSE : resourceSettings));
+	}
+	
+	/**
+	 * @return the resourceOverrides
+	 */
+	public String getResourceOverrides() {
+		return resourceOverrides;
+	}
+	
+	/**
+	 * @return the splitRuns
+	 */
+	public Boolean getSplitRuns() {
+		return ((splitRuns==null ? Boolean.FALSE : splitRuns));
+	}
+	
+	/**
+	 * @return the stallTimeout
+	 */
+	public String getStallTimeout() {
+		return stallTimeout;
+	}
+	
+	/**
+	 * @return the deadline
+	 */
+	public String getDeadline() {
+		return deadline;
+	}
+	
+	/**
+	 * @return the pinCores
+	 */
+	public Boolean getPinCores() {
+		return ((pinCores==null ? Boolean.FALSE : pinCores));
+	}
+	
+	/**
+	 * @return the tuneTemperature
+	 */
+	public Boolean getTuneTemperature() {
+		return ((tuneTemperature==null ? Boolean.FALSE : tuneTemperature));
+	}
 
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, final BuildListener listener) 
@@ -102,6 +377,9 @@ public class MrBayesBuilder extends Builder {
         listener.getLogger().println(Messages.MrBayesBuilder_InvokingMrBayes());
         
         MrBayesInstallation mrBayesInstallation = DESCRIPTOR.getInstallationByName(this.name);
+        if(this.getAutoSelectInstallation()) {
+        	mrBayesInstallation = selectInstallation(launcher, listener, mrBayesInstallation);
+        }
         if(mrBayesInstallation == null) {
         	throw new AbortException(Messages.MrBayesBuilder_InvalidMrBayesInstallation());
         }
@@ -110,110 +388,890 @@ public class MrBayesBuilder extends Builder {
         	throw new AbortException(Messages.MrBayesBuilder_InvalidMrBayesInputFile());
         }
         
+        // before any MrBayes process starts
+        if(StringUtils.isNotBlank(this.convergenceThreshold)) {
+        	parseConvergenceThreshold();
+        	parseConvergenceSamples();
+        }
+        
         final FilePath workspace = build.getWorkspace();
         
+        if(build.getAction(MrBayesTimingAction.class) == null) {
+        	build.addAction(new MrBayesTimingAction());
+        }
+        
+        final Node node = build.getBuiltOn();
+        final FilePath nodeRoot = (node != null ? node.getRootPath() : null);
+        final String validationCache = (nodeRoot != null ? nodeRoot.child(VALIDATION_CACHE).getRemote() : null);
+        final String resultCache = (nodeRoot != null && this.getUseResultCache() ? nodeRoot.child(RESULT_CACHE).getRemote() : null);
+        
+        final NodeResources resources = NodeResources.of(launcher.getChannel());
+        if(node != null) {
+        	MrBayesQueueTaskDispatcher.setCores(node, resources.getCores());
+        }
+        
+        final Map<String, String> env = build.getEnvironment(listener);
+        
+        if(!isBatch()) {
+        	final int exitCode = runMrBayes(build, launcher, listener, mrBayesInstallation, resources, resources.getCores(), env, 
+        			validationCache, resultCache, this.inputFile);
+        	if(exitCode != 0) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_ErrorExecutingMrBayes(exitCode));
+        		return Boolean.FALSE;
+        	} else {
+        		listener.getLogger().println(Messages.MrBayesBuilder_Success());
+        		return Boolean.TRUE;
+        	}
+        }
+        
+        final List<String> inputs = workspace.act(new ListFiles(this.inputFile));
+        if(inputs.isEmpty()) {
+        	throw new AbortException(Messages.MrBayesBuilder_NoInputFilesFound(this.inputFile));
+        }
+        return runBatch(build, launcher, listener, mrBayesInstallation, resources, env, validationCache, resultCache, inputs);
+    }
+    
+    /**
+     * Probes every installation in the node of the launcher and returns the 
+     * fastest one that works there.
+     * 
+     * @param selected installation selected in the job, used when none works
+     * @return the fastest installation, or the selected one
+     */
+    private MrBayesInstallation selectInstallation(Launcher launcher, TaskListener listener, MrBayesInstallation selected) 
+    throws IOException, InterruptedException {
+    	final List<MrBayesInstallation> installations = Arrays.asList(DESCRIPTOR.getInstallations());
+    	if(installations.isEmpty()) {
+    		return selected;
+    	}
+    	final List<InstallationCapabilities> capabilities = MrBayesInstallation.probe(launcher.getChannel(), installations);
+    	for(InstallationCapabilities c : capabilities) {
+    		if(c.isAvailable()) {
+    			listener.getLogger().println(Messages.MrBayesBuilder_InstallationCapabilities(c.getName(), 
+    					StringUtils.defaultIfEmpty(c.getVersion(), "?"), c.getFeatures()));
+    		} else {
+    			listener.getLogger().println(Messages.MrBayesBuilder_InstallationUnavailable(c.getName(), c.getProblem()));
+    		}
+    	}
+    	final InstallationCapabilities fastest = InstallationCapabilities.fastest(capabilities);
+    	if(fastest == null) {
+    		listener.getLogger().println(Messages.MrBayesBuilder_NoInstallationAvailable());
+    		return selected;
+    	}
+    	listener.getLogger().println(Messages.MrBayesBuilder_InstallationSelected(fastest.getName()));
+    	return installations.get(capabilities.indexOf(fastest));
+    }
+    
+    /**
+     * @return whether inputFile is a pattern matching several NEXUS files
+     */
+    public boolean isBatch() {
+    	return this.inputFile != null && StringUtils.containsAny(this.inputFile, "*?,");
+    }
+    
+    /**
+     * Checks a NEXUS file, if enabled, and runs MrBayes with it.
+     * 
+     * @param cores cores of the node left to this NEXUS file, less than all 
+     * of them when other files run at the same time
+     * @return the exit code of MrBayes
+     */
+    private int runMrBayes(AbstractBuild<?, ?> build, Launcher launcher, final TaskListener listener, 
+    		MrBayesInstallation mrBayesInstallation, NodeResources resources, int cores, Map<String, String> env, 
+    		final String validationCache, final String resultCache, final String input) 
+    throws AbortException, InterruptedException, IOException {
+        final FilePath workspace = build.getWorkspace();
+        
+        final MrBayesTimingAction.Record timing = new MrBayesTimingAction.Record(input, 
+        		mrBayesInstallation.getName(), Util.fixNull(build.getBuiltOnStr()));
+        final MrBayesTimingAction timingAction = build.getAction(MrBayesTimingAction.class);
+        if(timingAction != null) {
+        	timingAction.add(timing);
+        }
+        long phaseStart = System.currentTimeMillis();
+        
+        NexusSummary nexus = null;
         if(this.getEnableMrBayesBlockCheck() != null && this.getEnableMrBayesBlockCheck() == Boolean.TRUE) {
-        	workspace.act(new FileCallable<Void>() {
-
-        		private static final long serialVersionUID = -1120251038503180781L;
-
-				/* (non-Javadoc)
-        		 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
-        		 */
-        		public Void invoke(File f, VirtualChannel channel)
-        				throws IOException, InterruptedException {
-        			checkMrBayesBlock(new File(f, inputFile), listener.getLogger()); // TBD: adapt to run in remote slave too
-        			return null;
+        	final NexusValidation.Result validation = workspace.act(new NexusValidation(input, validationCache));
+        	nexus = checkMrBayesBlock(validation, listener.getLogger());
+        	timing.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.VALIDATION, System.currentTimeMillis() - phaseStart));
+        }
+        
+        final long memory = MemoryEstimate.estimate(nexus);
+        if(nexus != null) {
+        	// read by the queue to place the next builds of the project
+        	build.addAction(new MrBayesMemoryAction(input, memory, 
+        			nexus.getNruns() != null ? nexus.getNruns().intValue() : NexusSummary.DEFAULT_NRUNS, nexus.getTotalChains()));
+        }
+        if(memory >= 0) {
+        	listener.getLogger().println(Messages.MrBayesBuilder_MemoryEstimate(input, MemoryEstimate.toMegabytes(memory)));
+        	if(resources.getAvailableMemory() >= 0 && memory > resources.getAvailableMemory()) {
+        		if(this.getCheckMemory()) {
+        			throw new AbortException(Messages.MrBayesBuilder_NotEnoughMemory(input, 
+        					MemoryEstimate.toMegabytes(memory), MemoryEstimate.toMegabytes(resources.getAvailableMemory())));
         		}
-			});
+        		// the estimate is an upper bound, MrBayes may still fit
+        		listener.getLogger().println(Messages.MrBayesBuilder_MayNotHaveEnoughMemory(input, 
+        				MemoryEstimate.toMegabytes(memory), MemoryEstimate.toMegabytes(resources.getAvailableMemory())));
+        	}
+        }
+        
+        int processes = 0;
+        if(mrBayesInstallation.isMpi()) {
+        	processes = getMpiProcesses(resources.getCores(), nexus);
+        	listener.getLogger().println(Messages.MrBayesBuilder_MpiProcesses(processes, resources.getCores()));
         }
         
-        final String command = mrBayesInstallation.getPathToExecutable() + " " + this.inputFile;
-        listener.getLogger().println(Messages.MrBayesBuilder_MrBayesCommand(command));
+        final FilePath moduleRoot = build.getModuleRoot();
+        final WrapperCommandFile wrapper = new WrapperCommandFile();
         
-        final ArgumentListBuilder args = new ArgumentListBuilder();
-        args.add(mrBayesInstallation.getPathToExecutable());
+        final boolean reattaching = this.getDetached() && 
+        		DetachedProcess.isStarted(moduleRoot.child(DetachedProcess.getControlDirectory(input)));
         
-        args.add(this.inputFile);
-
-        Map<String, String> env = build.getEnvironment(listener);
+        final int nruns = (nexus != null && nexus.getNruns() != null ? nexus.getNruns().intValue() : 0);
+        final boolean split = this.getSplitRuns() && !reattaching && nruns > 1;
+        
+        // MPI processes and cores of each MrBayes process, split runs share 
+        // the cores of the file
+        int runProcesses = processes;
+        int splitWorkers = 1;
+        if(split) {
+        	final int nchains = (nexus.getNchains() != null ? nexus.getNchains().intValue() : NexusSummary.DEFAULT_NCHAINS);
+        	runProcesses = (mrBayesInstallation.isMpi() ? getSplitProcesses(processes, nruns, nchains) : 0);
+        	splitWorkers = Math.max(1, Math.min(nruns, cores / Math.max(1, runProcesses)));
+        }
+        final int runCores = Math.max(1, cores / splitWorkers);
+        
+        String settings = null;
+        if(this.getResourceSettings() || StringUtils.isNotBlank(this.resourceOverrides)) {
+        	final InstallationCapabilities capabilities = (this.getResourceSettings() ? 
+        			mrBayesInstallation.probe(launcher.getChannel()) : null);
+        	try {
+        		settings = ResourceSettings.getSettings(capabilities, runCores, runProcesses, this.resourceOverrides);
+        	} catch (IllegalArgumentException iae) {
+        		throw new AbortException(Messages.MrBayesBuilder_InvalidResourceOverride(iae.getMessage()));
+        	}
+        	if(settings != null) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_ResourceSettings(input, settings));
+        		wrapper.add("set " + settings);
+        	}
+        }
+        // cores pinned to each MrBayes process, as many as the threads it 
+        // was told to run, and none for a run started by a previous build
+        final int pinnedCores = (this.getPinCores() && !reattaching ? 
+        		ResourceSettings.getThreads(settings, runCores, runProcesses) : 0);
+        
+        double temperature = -1.0d;
+        if(this.getTuneTemperature()) {
+        	if(nexus != null && nexus.getTemp() != null) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_TemperatureInNexusFile(input, nexus.getTemp()));
+        	} else {
+        		final MrBayesSwapAction previous = MrBayesSwapAction.findPrevious(build, input);
+        		if(previous != null && previous.getNextTemperature() > 0.0d) {
+        			temperature = previous.getNextTemperature();
+        			listener.getLogger().println(Messages.MrBayesBuilder_TemperatureTuned(input, 
+        					MrBayesSwapAction.format(temperature), MrBayesSwapAction.format(previous.getTemperature()), 
+        					MrBayesTraceAction.format(previous.getMeanAdjacentRate())));
+        			wrapper.add("mcmcp temp=" + MrBayesSwapAction.format(temperature));
+        		}
+        	}
+        }
+        
+        String resultKey = null;
+        long resultSince = 0L;
+        if(!reattaching && resultCache != null) {
+        	phaseStart = System.currentTimeMillis();
+        	// the settings of the wrapper may change the results, e.g. the precision
+        	final List<String> keyCommand = new ArrayList<String>(getCommand(mrBayesInstallation, input, processes).toList());
+        	keyCommand.addAll(wrapper.getCommands());
+        	if(split) {
+        		// each run has its own seeds
+        		keyCommand.add("splitruns");
+        	}
+        	if(!split && StringUtils.isNotBlank(this.convergenceThreshold)) {
+        		// runs stopped on convergence have fewer generations than ngen
+        		keyCommand.add("convergence=" + this.convergenceThreshold.trim() + "/" 
+        				+ (StringUtils.isBlank(this.convergenceSamples) ? 
+        						String.valueOf(DEFAULT_CONVERGENCE_SAMPLES) : this.convergenceSamples.trim()));
+        	}
+        	resultKey = moduleRoot.act(new ResultCache.Key(input, keyCommand));
+        	if(resultKey == null) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_ResultCacheNoSeed(input));
+        	} else {
+        		final int restored = moduleRoot.act(new ResultCache.Restore(resultCache, resultKey, input));
+        		if(restored > 0) {
+        			listener.getLogger().println(Messages.MrBayesBuilder_ResultCacheHit(restored, input));
+        			timing.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.CACHE, System.currentTimeMillis() - phaseStart));
+        			return 0;
+        		}
+        		resultSince = moduleRoot.act(new ResultCache.Clock()).longValue();
+        	}
+        	timing.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.CACHE, System.currentTimeMillis() - phaseStart));
+        }
         
-        final Integer exitCode = launcher.launch().cmds(args).envs(env).stdout(listener).pwd(build.getModuleRoot()).join();
+        // the checkpoints written by this run must match its input to be resumed
+        final List<String> checkpointCommands = new ArrayList<String>(wrapper.getCommands());
+        if(!reattaching && !split && this.getResumeFromCheckpoint() && isPreviousBuildUnsuccessful(build)) {
+        	final MrBayesCheckpoint checkpoint = MrBayesCheckpoint.find(moduleRoot, input, checkpointCommands);
+        	if(checkpoint != null && !checkpoint.isCurrent()) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_CheckpointMismatch(
+        				input + MrBayesCheckpoint.CHECKPOINT_EXTENSION, input));
+        	} else if(checkpoint != null) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_ResumingFromCheckpoint(
+        				input + MrBayesCheckpoint.CHECKPOINT_EXTENSION, checkpoint.getGeneration(), checkpoint.getLostGenerations()));
+        		wrapper.add("mcmcp append=yes");
+        		// the results of a resumed analysis may differ from a complete one
+        		resultKey = null;
+        		build.addAction(new MrBayesResumeAction(input, checkpoint.getGeneration(), checkpoint.getLostGenerations()));
+        	}
+        }
         
-        if(exitCode != 0) {
-        	listener.getLogger().println(Messages.MrBayesBuilder_ErrorExecutingMrBayes(exitCode));
-        	return Boolean.FALSE;
+        int exitCode;
+        boolean summaries;
+        final SwapAcceptance swaps = new SwapAcceptance();
+        if(split) {
+        	phaseStart = System.currentTimeMillis();
+        	exitCode = runSplit(launcher, listener, env, moduleRoot, mrBayesInstallation, nexus, runProcesses, splitWorkers, 
+        			pinnedCores, wrapper, input, swaps);
+        	timing.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.MCMC, System.currentTimeMillis() - phaseStart));
+        	phaseStart = System.currentTimeMillis();
+        	summaries = (exitCode == 0);
         } else {
-        	listener.getLogger().println(Messages.MrBayesBuilder_Success());
-        	return Boolean.TRUE;
+        	String command = input;
+        	FilePath wrapperFile = null;
+        	if(!wrapper.isEmpty()) {
+        		command = input + WrapperCommandFile.EXTENSION;
+        		wrapperFile = moduleRoot.child(command);
+        		final String content = wrapper.getContent(input);
+        		wrapperFile.write(content, NEXUS_CHARSET);
+        		listener.getLogger().println(Messages.MrBayesBuilder_WrapperCommandFile(command));
+        		listener.getLogger().print(content);
+        	}
+        	
+        	final ArgumentListBuilder args = getCommand(mrBayesInstallation, command, processes);
+        	listener.getLogger().println(Messages.MrBayesBuilder_MrBayesCommand(StringUtils.join(args.toList(), " ")));
+        	if(!reattaching) {
+        		MrBayesCheckpoint.writeStamp(moduleRoot, input, checkpointCommands);
+        	}
+        	
+        	final MrBayesProcess.Result result;
+        	phaseStart = System.currentTimeMillis();
+        	try {
+        		result = launch(launcher, listener, env, moduleRoot, input, args, processes, pinnedCores, true, input);
+        	} finally {
+        		if(wrapperFile != null) {
+        			wrapperFile.delete();
+        		}
+        	}
+        	if(result.isStalled()) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_Stalled(input));
+        	}
+        	if(result.getStartupTime() >= 0) {
+        		timing.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.STARTUP, result.getStartupTime()));
+        	}
+        	timing.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.MCMC, System.currentTimeMillis() - phaseStart, 
+        			result.getCpuTime(), result.getPeakRss()));
+        	timing.setGenerationsPerSecond(result.getGenerationsPerSecond());
+        	if(result.getGenerationsPerSecond() >= 0) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_GenerationsPerSecond(input, 
+        				MrBayesTraceAction.format(result.getGenerationsPerSecond())));
+        	}
+        	phaseStart = System.currentTimeMillis();
+        	
+        	exitCode = result.getExitCode();
+        	// the analysis was stopped before sump and sumt, run them now
+        	summaries = result.isConverged();
+        	swaps.add(result.getSwapAcceptance());
         }
+        
+        if(!swaps.getRuns().isEmpty() || temperature > 0.0d) {
+        	final MrBayesSwapAction swapAction = new MrBayesSwapAction(input, swaps, temperature);
+        	build.addAction(swapAction);
+        	if(!swaps.getRuns().isEmpty()) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_SwapRates(input, swapAction.getAdjacentRatesText(), 
+        				MrBayesSwapAction.format(swapAction.getTemperature())));
+        	}
+        	if(swapAction.getNextTemperature() > 0.0d && swapAction.getNextTemperature() != swapAction.getTemperature()) {
+        		listener.getLogger().println(Messages.MrBayesBuilder_TemperatureProposed(input, 
+        				MrBayesSwapAction.format(swapAction.getNextTemperature())));
+        	}
+        }
+        
+        if(summaries) {
+        	exitCode = writeSummaries(launcher, listener, env, moduleRoot, mrBayesInstallation, input, processes, 
+        			this.getPinCores() ? Math.max(1, processes) : 0);
+        }
+        
+        if(exitCode == 0 && resultKey != null) {
+        	final int stored = moduleRoot.act(new ResultCache.Store(resultCache, resultKey, input, resultSince));
+        	listener.getLogger().println(Messages.MrBayesBuilder_ResultCacheStored(stored, input));
+        }
+        if(summaries || resultKey != null) {
+        	timing.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.POSTPROCESSING, System.currentTimeMillis() - phaseStart));
+        }
+        return exitCode;
+    }
+    
+    /**
+     * Runs MrBayes in the node of the launcher, where its output is filtered 
+     * before being sent to the listener.
+     * 
+     * @param input NEXUS file run by MrBayes
+     * @param processes MPI processes, or 0 when not run with MPI
+     * @param pinnedCores cores MrBayes is pinned to, or 0 to not pin it
+     * @param watchConvergence whether to stop MrBayes when the analysis 
+     * converges, if a convergence threshold is set
+     * @param outputFiles name of the output files of the analysis, watched 
+     * by the {@link StallWatchdog}, or <code>null</code> to not watch MrBayes
+     */
+    private MrBayesProcess.Result launch(Launcher launcher, TaskListener listener, Map<String, String> env, 
+    		FilePath moduleRoot, String input, ArgumentListBuilder args, int processes, int pinnedCores, 
+    		boolean watchConvergence, 
+    		String outputFiles) 
+    throws IOException, InterruptedException {
+    	double threshold = 0.0d;
+    	int samples = 0;
+    	if(watchConvergence && StringUtils.isNotBlank(this.convergenceThreshold)) {
+    		threshold = parseConvergenceThreshold();
+    		samples = parseConvergenceSamples();
+    	}
+    	final String controlDirectory = (this.getDetached() ? 
+    			moduleRoot.child(DetachedProcess.getControlDirectory(input)).getRemote() : null);
+    	final StallWatchdog watchdog = getWatchdog(outputFiles);
+    	final List<String> cmds = new ArrayList<String>();
+    	CoreAllocator.Placement placement = null;
+    	if(pinnedCores > 0) {
+    		placement = launcher.getChannel().call(new CoreAllocator.Allocate(pinnedCores, controlDirectory));
+    		if(placement == null) {
+    			listener.getLogger().println(Messages.MrBayesBuilder_NotPinned(input, pinnedCores));
+    		} else {
+    			cmds.addAll(placement.getPrefix());
+    			listener.getLogger().println(Messages.MrBayesBuilder_Pinned(input, 
+    					CoreAllocator.formatCpuList(placement.getCores()), 
+    					placement.getNumaNode() >= 0 ? Integer.toString(placement.getNumaNode()) : "-", 
+    					StringUtils.join(placement.getPrefix(), " ")));
+    		}
+    	} else if(controlDirectory != null) {
+    		// a run left running by an earlier build keeps the cores it was 
+    		// pinned to until it finishes
+    		placement = launcher.getChannel().call(new CoreAllocator.Reattach(controlDirectory));
+    	}
+    	cmds.addAll(args.toList());
+    	final MrBayesProcess process = new MrBayesProcess(cmds, env, moduleRoot.getRemote(), listener, 
+    			this.getOutputLevel(), threshold, samples, controlDirectory, watchdog);
+    	boolean leftRunning = false;
+    	try {
+    		return launcher.getChannel().call(process);
+    	} catch (InterruptedException ie) {
+    		if(controlDirectory != null && isTerminating()) {
+    			// the executors are interrupted when Jenkins shuts down, the 
+    			// next build reattaches to the run, and to its cores
+    			leftRunning = true;
+    			listener.getLogger().println(Messages.MrBayesBuilder_LeftRunning(input));
+    		} else {
+    			// the build was aborted
+    			launcher.getChannel().call(process.killer());
+    		}
+    		throw ie;
+    	} finally {
+    		if(placement != null && !leftRunning) {
+    			launcher.getChannel().call(new CoreAllocator.Release(placement.getOwner(), controlDirectory));
+    		}
+    	}
+    }
+    
+    /**
+     * @return whether Jenkins is shutting down
+     */
+    private static boolean isTerminating() {
+    	final Hudson hudson = Hudson.getInstance();
+    	return hudson != null && hudson.isTerminating();
+    }
+    
+    /**
+     * @param outputFiles name of the output files of the analysis, or 
+     * <code>null</code>
+     * @return the watchdog of a run, or <code>null</code> if neither a stall 
+     * timeout nor a deadline is set
+     */
+    private StallWatchdog getWatchdog(String outputFiles) throws AbortException {
+    	if(outputFiles == null || (StringUtils.isBlank(this.stallTimeout) && StringUtils.isBlank(this.deadline))) {
+    		return null;
+    	}
+    	long timeout = 0L;
+    	if(StringUtils.isNotBlank(this.stallTimeout)) {
+    		try {
+    			timeout = (long)(parsePositiveDecimal(this.stallTimeout) * 60L * 1000L);
+    		} catch (NumberFormatException nfe) {
+    			throw new AbortException(Messages.MrBayesBuilder_InvalidStallTimeout(this.stallTimeout));
+    		}
+    	}
+    	long deadline = 0L;
+    	if(StringUtils.isNotBlank(this.deadline)) {
+    		try {
+    			deadline = (long)(parsePositiveDecimal(this.deadline) * 60L * 60L * 1000L);
+    		} catch (NumberFormatException nfe) {
+    			throw new AbortException(Messages.MrBayesBuilder_InvalidDeadline(this.deadline));
+    		}
+    	}
+    	return new StallWatchdog(timeout, deadline, outputFiles);
+    }
+    
+    /**
+     * @return the convergence threshold
+     * @throws AbortException if it is not a positive decimal number
+     */
+    double parseConvergenceThreshold() throws AbortException {
+    	try {
+    		return parsePositiveDecimal(this.convergenceThreshold);
+    	} catch (NumberFormatException nfe) {
+    		throw new AbortException(Messages.MrBayesBuilder_InvalidConvergenceThreshold(this.convergenceThreshold));
+    	}
+    }
+    
+    /**
+     * @return the number of samples compared for convergence, or the default 
+     * one if none is set
+     * @throws AbortException if it is not a positive whole number
+     */
+    int parseConvergenceSamples() throws AbortException {
+    	if(StringUtils.isBlank(this.convergenceSamples)) {
+    		return DEFAULT_CONVERGENCE_SAMPLES;
+    	}
+    	try {
+    		final int samples = Integer.parseInt(this.convergenceSamples.trim());
+    		if(samples > 0) {
+    			return samples;
+    		}
+    	} catch (NumberFormatException nfe) {
+    		// invalid, as a number that is not positive
+    	}
+    	throw new AbortException(Messages.MrBayesBuilder_InvalidConvergenceSamples(this.convergenceSamples));
+    }
+    
+    /**
+     * @return the value, a positive decimal number
+     * @throws NumberFormatException if it is not a positive decimal number
+     */
+    static double parsePositiveDecimal(String value) throws NumberFormatException {
+    	final double number = Double.parseDouble(value.trim());
+    	if(!(number > 0.0d) || Double.isInfinite(number)) {
+    		throw new NumberFormatException(value);
+    	}
+    	return number;
+    }
+    
+    /**
+     * Runs the sump and sumt commands of the NEXUS file with the files left 
+     * by an analysis that was stopped or split in runs.
+     * 
+     * @return the exit code of MrBayes
+     */
+    private int writeSummaries(Launcher launcher, TaskListener listener, Map<String, String> env, FilePath moduleRoot, 
+    		MrBayesInstallation mrBayesInstallation, String input, int processes, int pinnedCores) 
+    throws IOException, InterruptedException {
+    	final String summary = moduleRoot.act(new SummaryCommandFile(input, NEXUS_CHARSET));
+    	try {
+    		final ArgumentListBuilder summaryArgs = getCommand(mrBayesInstallation, summary, processes);
+    		listener.getLogger().println(Messages.MrBayesBuilder_WritingSummaries(summary));
+    		listener.getLogger().println(Messages.MrBayesBuilder_MrBayesCommand(StringUtils.join(summaryArgs.toList(), " ")));
+    		return launch(launcher, listener, env, moduleRoot, summary, summaryArgs, processes, pinnedCores, false, null)
+    				.getExitCode();
+    	} finally {
+    		moduleRoot.child(summary).delete();
+    	}
+    }
+    
+    /**
+     * Runs each independent run of the analysis as a separate MrBayes 
+     * process, with its own seeds, at most as many at a time as the node has 
+     * cores (or cores / MPI processes of a run). The output of each run is 
+     * prefixed by its number. Once all the runs succeed, their output files 
+     * get the names of a multi-run analysis, so that sump and sumt read them 
+     * as usual. The first run that fails stops the others.
+     * 
+     * @param runProcesses MPI processes of each run, or 0 when not run with 
+     * MPI
+     * @param workers runs at a time
+     * @param pinnedCores cores pinned to each run, or 0 to not pin them
+     * @param swaps where the rates of the chain swaps of each run are added
+     * @return the exit code of the first run that failed, or 0
+     */
+    private int runSplit(final Launcher launcher, final TaskListener listener, final Map<String, String> env, 
+    		final FilePath moduleRoot, MrBayesInstallation mrBayesInstallation, NexusSummary nexus, 
+    		final int runProcesses, int workers, final int pinnedCores, WrapperCommandFile wrapper, String input, 
+    		final SwapAcceptance swaps) 
+    throws IOException, InterruptedException {
+    	final PrintStream logger = listener.getLogger();
+    	final int nruns = nexus.getNruns().intValue();
+    	logger.println(Messages.MrBayesBuilder_SplitRunsStarted(input, nruns, workers));
+    	
+    	final ExecutorService executor = Executors.newFixedThreadPool(workers);
+    	final CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(executor);
+    	final Map<Future<Integer>, Integer> futures = new HashMap<Future<Integer>, Integer>();
+    	String fileName = input;
+    	int exitCode = 0;
+    	try {
+    		for(int run = 1; run <= nruns; ++run) {
+    			final String runFile = SplitRunFile.getName(input, run);
+    			final SplitRunFile splitRunFile = new SplitRunFile(input, NEXUS_CHARSET, run, 
+    					nexus.getSeed(), nexus.getSwapseed(), wrapper.getCommands());
+    			fileName = moduleRoot.act(splitRunFile);
+    			logger.println(Messages.MrBayesBuilder_SplitRun(run, nruns, runFile, 
+    					Integer.toString(splitRunFile.getSeed()), Integer.toString(splitRunFile.getSwapseed())));
+    			final ArgumentListBuilder args = getCommand(mrBayesInstallation, runFile, runProcesses);
+    			final String prefix = "[" + input + " run " + run + "] ";
+    			final String outputFiles = fileName + ".run" + run;
+    			final Future<Integer> future = completion.submit(new Callable<Integer>() {
+    				public Integer call() throws Exception {
+    					final PrefixedOutputStream out = new PrefixedOutputStream(logger, prefix);
+    					try {
+    						final TaskListener runListener = new StreamTaskListener(out);
+    						runListener.getLogger().println(Messages.MrBayesBuilder_MrBayesCommand(StringUtils.join(args.toList(), " ")));
+    						final MrBayesProcess.Result result = launch(launcher, runListener, env, moduleRoot, runFile, args, 
+    								runProcesses, pinnedCores, false, outputFiles);
+    						if(result.isStalled()) {
+    							runListener.getLogger().println(Messages.MrBayesBuilder_Stalled(runFile));
+    						}
+    						swaps.add(result.getSwapAcceptance());
+    						return result.getExitCode();
+    					} finally {
+    						out.close();
+    					}
+    				}
+    			});
+    			futures.put(future, run);
+    		}
+    		
+    		for(int i = 0; i < nruns; i++) {
+    			final Future<Integer> future = completion.take();
+    			final int run = futures.get(future);
+    			try {
+    				exitCode = future.get();
+    			} catch (ExecutionException ee) {
+    				exitCode = -1;
+    				logger.println(Messages.MrBayesBuilder_SplitRunError(run, nruns, 
+    						ee.getCause() != null ? ee.getCause().getMessage() : ee.getMessage()));
+    			}
+    			if(exitCode != 0) {
+    				logger.println(Messages.MrBayesBuilder_SplitRunFailed(run, nruns, exitCode));
+    				break;
+    			}
+    		}
+    	} finally {
+    		// interrupting the workers kills the processes still running
+    		executor.shutdownNow();
+    		for(int run = 1; run <= nruns; ++run) {
+    			moduleRoot.child(SplitRunFile.getName(input, run)).delete();
+    		}
+    	}
+    	
+    	if(exitCode == 0) {
+    		final int renamed = moduleRoot.act(new SplitRunFile.Merge(fileName, nruns));
+    		logger.println(Messages.MrBayesBuilder_SplitRunsMerged(nruns, fileName, renamed));
+    	}
+    	return exitCode;
+    }
+    
+    /**
+     * @return whether the previous build of the project finished without 
+     * success, e.g. failed, was aborted or lost its node
+     */
+    private boolean isPreviousBuildUnsuccessful(AbstractBuild<?, ?> build) {
+    	final AbstractBuild<?, ?> previous = build.getPreviousBuild();
+    	return previous != null && previous.getResult() != null && previous.getResult().isWorseThan(Result.SUCCESS);
+    }
+    
+    /**
+     * Runs MrBayes for each NEXUS file concurrently, with at most as many 
+     * files at a time as the node has cores (or cores / MPI processes). The 
+     * output of each run is prefixed by its file name. Unless fail fast is 
+     * enabled, all files are run and the exit status of each is reported at 
+     * the end; otherwise the first failure stops the other runs.
+     * 
+     * @return whether MrBayes succeeded for all files
+     */
+    private boolean runBatch(final AbstractBuild<?, ?> build, final Launcher launcher, final BuildListener listener, 
+    		final MrBayesInstallation mrBayesInstallation, final NodeResources resources, final Map<String, String> env, 
+    		final String validationCache, final String resultCache, final List<String> inputs) 
+    throws InterruptedException, IOException {
+    	final PrintStream logger = listener.getLogger();
+    	
+    	int slots = resources.getCores();
+    	if(mrBayesInstallation.isMpi()) {
+    		slots = slots / getMpiProcesses(resources.getCores(), null);
+    	}
+    	final int workers = Math.max(1, Math.min(slots, inputs.size()));
+    	logger.println(Messages.MrBayesBuilder_BatchStarted(inputs.size(), workers));
+    	// the files running at the same time share the cores
+    	final int cores = Math.max(1, resources.getCores() / workers);
+    	
+    	final ExecutorService executor = Executors.newFixedThreadPool(workers);
+    	final CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(executor);
+    	final Map<Future<Integer>, String> futures = new HashMap<Future<Integer>, String>();
+    	final Map<String, String> results = new LinkedHashMap<String, String>();
+    	boolean success = true;
+    	
+    	try {
+    		for(final String input : inputs) {
+    			results.put(input, Messages.MrBayesBuilder_BatchNotRun());
+    			final Future<Integer> future = completion.submit(new Callable<Integer>() {
+    				public Integer call() throws Exception {
+    					final PrefixedOutputStream out = new PrefixedOutputStream(logger, "[" + input + "] ");
+    					try {
+    						return runMrBayes(build, launcher, new StreamTaskListener(out), mrBayesInstallation, resources, cores, env, 
+    								validationCache, resultCache, input);
+    					} finally {
+    						out.close();
+    					}
+    				}
+    			});
+    			futures.put(future, input);
+    		}
+    		
+    		for(int i = 0; i < inputs.size(); i++) {
+    			final Future<Integer> future = completion.take();
+    			final String input = futures.get(future);
+    			int exitCode;
+    			try {
+    				exitCode = future.get();
+    				results.put(input, Messages.MrBayesBuilder_BatchExitCode(exitCode));
+    			} catch (ExecutionException ee) {
+    				exitCode = -1;
+    				results.put(input, ee.getCause() != null ? ee.getCause().getMessage() : ee.getMessage());
+    			}
+    			if(exitCode != 0) {
+    				success = false;
+    				if(this.getFailFast()) {
+    					logger.println(Messages.MrBayesBuilder_BatchFailingFast(input));
+    					break;
+    				}
+    			}
+    		}
+    	} finally {
+    		// interrupting the workers kills the processes still running
+    		executor.shutdownNow();
+    	}
+    	
+    	for(Map.Entry<String, String> result : results.entrySet()) {
+    		logger.println(Messages.MrBayesBuilder_BatchResult(result.getKey(), result.getValue()));
+    	}
+    	
+    	if(success) {
+    		logger.println(Messages.MrBayesBuilder_Success());
+    	} else {
+    		logger.println(Messages.MrBayesBuilder_BatchFailed());
+    	}
+    	return success;
     }
 
     /**
      * Checks if a NEXUS file contains mrbayes block and, if so, if the proper 
      * settings for running as non-interactive have been enabled. Raises an 
      * AbortException if any of the previous predicates are not true.
+     * <p>
+     * The file, and the files it calls with execute, are read with 
+     * {@link NexusValidation}, which skips the other blocks without keeping 
+     * them in memory.
      */
-    protected void checkMrBayesBlock(final File nexusFile, PrintStream out) throws AbortException {
-    	
-    	FileInputStream fis = null;
-    	
+    protected NexusSummary checkMrBayesBlock(final File nexusFile, PrintStream out) throws AbortException {
+    	final NexusValidation.Result validation;
     	try {
-    		fis = new FileInputStream(nexusFile);
-	    	final NexusFileBuilder builder = new NexusFileBuilder();
-	    	NexusFileFormat.parseInputStream(builder, fis);
-	    	final NexusFile nexus1 = builder.getNexusFile();
-	    	final MrBayesBlock block = getMrBayesBlock(nexus1);
-	    	
-	    	if(block == null) {
-	    		throw new AbortException(Messages.MrBayesBuilder_MissingMrBayesBlock(nexusFile));
-	    	}
-	    	
-	    	if(block.getAutoclose() == null || block.getAutoclose() == Boolean.FALSE) {
-	    		throw new AbortException(Messages.MrBayesBuilder_NotConfiguredToAutoclose());
-	    	}
-	    	
-	    	out.println("autoclose=yes");
-	    	out.println("nowarn="+((block.getNowarn()!=null&&block.getNowarn()==Boolean.TRUE)?"yes":"no"));
-	    	
-	    	if(StringUtils.isNotBlank(block.getExecute())) {
-	    		out.println(Messages.MrBayesBuilder_CallingExternalFile(block.getExecute().trim()));
-	    	}
+    		validation = NexusValidation.validate(nexusFile, nexusFile.getParentFile(), null);
     	} catch (IOException ioe) {
-    		ioe.printStackTrace(out);
     		throw new AbortException(Messages.MrBayesBuilder_ErrorReadingNexus(nexusFile, ioe.getMessage()));
-    	} catch (ParseException pe) {
-    		pe.printStackTrace(out);
-    		throw new AbortException(Messages.MrBayesBuilder_ErrorParsingNexus(nexusFile, pe.getMessage()));
-    	} finally {
-    		if(fis!=null) {
-    			try {
-					fis.close();
-				} catch (IOException ioe) {
-					ioe.printStackTrace(out);
-				}
+    	} catch (InterruptedException ie) {
+    		Thread.currentThread().interrupt();
+    		throw new AbortException(Messages.MrBayesBuilder_ErrorReadingNexus(nexusFile, ie.getMessage()));
+    	}
+    	return checkMrBayesBlock(validation, out);
+    }
+    
+    /**
+     * Writes the result of the validation of a NEXUS file, done in the node 
+     * where it is, to the build log.
+     * 
+     * @param validation what was found in the file and in the files it calls
+     * @return what was found in the NEXUS file
+     * @throws AbortException if MrBayes must not run the file
+     */
+    protected NexusSummary checkMrBayesBlock(NexusValidation.Result validation, PrintStream out) throws AbortException {
+    	if(validation.getNexus().isCached()) {
+    		out.println(Messages.MrBayesBuilder_UsingCachedValidation(validation.getNexus().getPath()));
+    	}
+    	for(NexusValidation.FileCheck included : validation.getIncluded()) {
+    		if(!included.isFound()) {
+    			out.println(Messages.MrBayesBuilder_ExternalFileNotFound(included.getPath()));
+    		} else if(included.getError() == null) {
+    			out.println(Messages.MrBayesBuilder_ExternalFileChecked(included.getPath(), 
+    					String.valueOf(included.getBlocks()), String.valueOf(included.getMillis()), 
+    					(included.isCached() ? " " + Messages.MrBayesBuilder_Cached() : "")));
+    		}
+    	}
+    	if(validation.getError() != null) {
+    		throw new AbortException(validation.getError());
+    	}
+    	
+    	final NexusSummary nexus = validation.getSummary();
+    	out.println("autoclose=yes");
+    	out.println("nowarn="+((nexus.getNowarn()!=null&&nexus.getNowarn()==Boolean.TRUE)?"yes":"no"));
+    	
+    	for(String execute : nexus.getExecutes()) {
+    		if(StringUtils.isNotBlank(execute)) {
+    			out.println(Messages.MrBayesBuilder_CallingExternalFile(execute.trim()));
     		}
     	}
+    	out.println(Messages.MrBayesBuilder_Validated(validation.getNexus().getPath(), 
+    			String.valueOf(validation.getIncluded().size()), String.valueOf(validation.getMillis())));
+    	
+    	return nexus;
 	}
+
+    /**
+     * Returns the number of MPI processes: the one set in the job, or else 
+     * as many as the cores of the node, but not more than the number of 
+     * chains of the analysis (nruns x nchains), and dividing it evenly.
+     * 
+     * @param cores number of cores of the node
+     * @param nexus what was found in the NEXUS file, or <code>null</code> if 
+     * the file was not checked
+     * @return the number of MPI processes
+     */
+    protected int getMpiProcesses(int cores, NexusSummary nexus) {
+    	return getMpiProcesses(cores, nexus != null ? nexus.getTotalChains() : 0);
+    }
+    
+    /**
+     * @param cores cores of the node
+     * @param chains chains of all the runs of the analysis, or 0 if unknown
+     * @return the number of MPI processes
+     * @see #getMpiProcesses(int, NexusSummary)
+     */
+    protected int getMpiProcesses(int cores, int chains) {
+    	if(StringUtils.isNotBlank(this.mpiProcesses)) {
+    		try {
+    			final int configured = Integer.parseInt(this.mpiProcesses.trim());
+    			if(configured > 0) {
+    				return configured;
+    			}
+    		} catch (NumberFormatException nfe) {
+    			// use the default value
+    		}
+    	}
+    	final int total = (chains > 0 ? chains : cores);
+    	int processes = Math.max(1, Math.min(cores, total));
+    	while(total % processes != 0) {
+    		processes--;
+    	}
+    	return processes;
+    }
     
     /**
-     * Returns the mrbayes block in a NEXUS file.
+     * Returns the number of cores a build of this step keeps busy in a node: 
+     * the MPI processes of an MPI installation, the runs of a split analysis, 
+     * or one core per analysis otherwise. A batch runs its analyses at the 
+     * same time, so it needs the cores of all of them.
      * 
-     * @param nexus a NEXUS file.
-     * @return the mrbayes block or <code>null</code>.
-     */
-    private MrBayesBlock getMrBayesBlock(NexusFile nexus) {
-		Iterator<?> it = nexus.blockIterator();
-		NexusBlock block;
-		while (it.hasNext()) {
-			block = (NexusBlock) it.next();
-			if (block.getBlockName().equals(MrBayesBlock.MRBAYES_BLOCK)) {
-				return (MrBayesBlock) block;
-			}
+     * @param cores cores of the node
+     * @param analyses analyses run by a build of the project, with their 
+     * runs and chains; when empty, an analysis with the defaults of MrBayes
+     * @return the number of cores, not more than the cores of the node
+     */
+    public int getRequiredCores(int cores, List<MrBayesMemoryAction> analyses) {
+    	final MrBayesInstallation installation = DESCRIPTOR.getInstallationByName(this.name);
+    	final boolean mpi = (installation != null && installation.isMpi());
+    	final List<MrBayesMemoryAction> known = new ArrayList<MrBayesMemoryAction>(analyses);
+    	if(known.isEmpty()) {
+    		known.add(new MrBayesMemoryAction(this.inputFile, -1L, NexusSummary.DEFAULT_NRUNS, 
+    				NexusSummary.DEFAULT_NRUNS * NexusSummary.DEFAULT_NCHAINS));
+    	}
+    	int required = 0;
+    	for(MrBayesMemoryAction analysis : known) {
+    		int analysisCores = 1;
+    		if(mpi) {
+    			analysisCores = getMpiProcesses(cores, analysis.getChains());
+    		} else if(this.getSplitRuns() && analysis.getRuns() > 1) {
+    			analysisCores = analysis.getRuns();
+    		}
+    		required = (isBatch() ? required + analysisCores : Math.max(required, analysisCores));
+    	}
+    	return Math.max(1, Math.min(cores, required));
+    }
+    
+    /**
+     * Returns the number of MPI processes of each run of a split analysis: 
+     * its share of the processes of the whole analysis, but not more than 
+     * its chains, and dividing them evenly.
+     * 
+     * @param processes MPI processes of the whole analysis
+     * @param nruns number of runs
+     * @param nchains chains per run
+     * @return the number of MPI processes of a run
+     */
+    protected static int getSplitProcesses(int processes, int nruns, int nchains) {
+    	int runProcesses = Math.max(1, Math.min(nchains, processes / Math.max(1, nruns)));
+    	while(nchains % runProcesses != 0) {
+    		runProcesses--;
+    	}
+    	return runProcesses;
+    }
+    
+    /**
+     * Returns the command line to run MrBayes. With an MPI installation, 
+     * MrBayes is started through the MPI launcher, as in 
+     * <code>mpirun -np 8 [mpiArguments] mb input.nex</code>.
+     * 
+     * @param installation MrBayes installation
+     * @param input NEXUS file
+     * @param processes number of MPI processes, ignored if the installation 
+     * does not use MPI
+     * @return the command line
+     */
+    protected ArgumentListBuilder getCommand(MrBayesInstallation installation, String input, int processes) {
+    	final ArgumentListBuilder args = new ArgumentListBuilder();
+    	if(installation.isMpi()) {
+    		args.add(installation.getMpiLauncher());
+    		args.add("-np");
+    		args.add(Integer.toString(processes));
+    		if(StringUtils.isNotBlank(installation.getMpiArguments())) {
+    			args.addTokenized(installation.getMpiArguments());
+    		}
+    	}
+    	args.add(installation.getPathToExecutable());
+    	args.add(input);
+    	return args;
+    }
+
+    /**
+     * Lists the files of a directory matching an Ant pattern, relative to the 
+     * directory.
+     */
+    private static final class ListFiles implements FileCallable<List<String>> {
+
+		private static final long serialVersionUID = 2966158347219264302L;
+		
+		private final String includes;
+		
+		public ListFiles(String includes) {
+			this.includes = includes;
 		}
-		return null;
-	}
 
+		/* (non-Javadoc)
+		 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+		 */
+		public List<String> invoke(File f, VirtualChannel channel) 
+				throws IOException, InterruptedException {
+			final String[] files = Util.createFileSet(f, includes).getDirectoryScanner().getIncludedFiles();
+			Arrays.sort(files);
+			final List<String> inputs = new ArrayList<String>(files.length);
+			for(String file : files) {
+				inputs.add(file.replace(File.separatorChar, '/'));
+			}
+			return inputs;
+		}
+		
+    }
+    
 	// Overridden for better type safety.
     // If your plugin doesn't really define any property on Descriptor,
     // you don't have to do this.
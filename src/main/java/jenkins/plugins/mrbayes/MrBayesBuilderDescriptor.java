@@ -67,6 +67,19 @@ public class MrBayesBuilderDescriptor extends Descriptor<Builder> {
 		return this.installations;
 	}
 	
+	/**
+	 * @param installations the MrBayes installations, replacing the current 
+	 * ones
+	 */
+	public void setInstallations(MrBayesInstallation... installations) {
+		this.installations = installations;
+		save();
+	}
+	
+	public OutputLevel[] getOutputLevels() {
+		return OutputLevel.values();
+	}
+	
 	public MrBayesInstallation getInstallationByName(String name) {
 		MrBayesInstallation found = null;
 		for(MrBayesInstallation installation : this.installations) {
@@ -99,4 +112,42 @@ public class MrBayesBuilderDescriptor extends Descriptor<Builder> {
 		return returnValue;
 	}
 	
+	public FormValidation doPositiveNumber(@QueryParameter String value) {
+		FormValidation returnValue = FormValidation.ok();
+		if(StringUtils.isNotBlank(value)) {
+			try {
+				if(Integer.parseInt(value.trim()) <= 0) {
+					returnValue = FormValidation.error(Messages.MrBayesDescriptor_PositiveNumber());
+				}
+			} catch (NumberFormatException nfe) {
+				returnValue = FormValidation.error(Messages.MrBayesDescriptor_PositiveNumber());
+			}
+		}
+		return returnValue;
+	}
+	
+	public FormValidation doResourceOverrides(@QueryParameter String value) {
+		FormValidation returnValue = FormValidation.ok();
+		try {
+			ResourceSettings.parseOverrides(value);
+		} catch (IllegalArgumentException iae) {
+			returnValue = FormValidation.error(Messages.MrBayesDescriptor_ResourceOverrides(iae.getMessage()));
+		}
+		return returnValue;
+	}
+	
+	public FormValidation doPositiveDecimal(@QueryParameter String value) {
+		FormValidation returnValue = FormValidation.ok();
+		if(StringUtils.isNotBlank(value)) {
+			try {
+				if(Double.parseDouble(value.trim()) <= 0.0d) {
+					returnValue = FormValidation.error(Messages.MrBayesDescriptor_PositiveDecimal());
+				}
+			} catch (NumberFormatException nfe) {
+				returnValue = FormValidation.error(Messages.MrBayesDescriptor_PositiveDecimal());
+			}
+		}
+		return returnValue;
+	}
+	
 }
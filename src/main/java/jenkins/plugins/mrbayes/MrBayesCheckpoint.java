@@ -0,0 +1,328 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checkpoint left by a previous MrBayes run. MrBayes writes the state of the 
+ * chains to <code>&lt;input&gt;.ckp</code> every checkfreq generations, and 
+ * can continue from it with <code>mcmc append=yes</code>.
+ * <p>
+ * MrBayes does not check that a checkpoint belongs to the analysis it runs, 
+ * so the hash of the NEXUS file, of the files it executes and of the 
+ * commands added to it is written 
+ * to <code>&lt;input&gt;.ckp.input</code> before each run. A checkpoint is 
+ * resumed only if the hash is the same, or, without that file, if it is 
+ * newer than the NEXUS file.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class MrBayesCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = -4415470384018342466L;
+	
+	public static final String CHECKPOINT_EXTENSION = ".ckp";
+	
+	/**
+	 * Extension of the file with the hash of the input of the run that 
+	 * wrote the checkpoint.
+	 */
+	public static final String STAMP_EXTENSION = CHECKPOINT_EXTENSION + ".input";
+	
+	private static final Pattern GENERATION = Pattern.compile("\\[\\s*generation\\s*:\\s*(\\d+)\\s*\\]", Pattern.CASE_INSENSITIVE);
+	
+	/**
+	 * Number of lines of the checkpoint header where the generation is 
+	 * looked for.
+	 */
+	private static final int HEADER_LINES = 10;
+	
+	/**
+	 * How much of the end of a trace file is read to find its last sample.
+	 */
+	private static final int TAIL_SIZE = 64 * 1024;
+	
+	/**
+	 * Generation of the checkpoint.
+	 */
+	private final long generation;
+	
+	/**
+	 * Last generation sampled in the trace file of the first run, or the 
+	 * generation of the checkpoint if the trace file was not found.
+	 */
+	private final long lastSampledGeneration;
+	
+	/**
+	 * Whether the checkpoint was written by a run of the same input.
+	 */
+	private final boolean current;
+	
+	public MrBayesCheckpoint(long generation, long lastSampledGeneration) {
+		this(generation, lastSampledGeneration, true);
+	}
+	
+	public MrBayesCheckpoint(long generation, long lastSampledGeneration, boolean current) {
+		this.generation = generation;
+		this.lastSampledGeneration = Math.max(generation, lastSampledGeneration);
+		this.current = current;
+	}
+	
+	/**
+	 * @return the generation
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * @return the lastSampledGeneration
+	 */
+	public long getLastSampledGeneration() {
+		return lastSampledGeneration;
+	}
+	
+	/**
+	 * @return generations run after the checkpoint, which are run again when 
+	 * resuming from it
+	 */
+	public long getLostGenerations() {
+		return lastSampledGeneration - generation;
+	}
+	
+	/**
+	 * @return whether the checkpoint was written by a run of the same NEXUS 
+	 * file and commands, and can be resumed
+	 */
+	public boolean isCurrent() {
+		return current;
+	}
+	
+	/**
+	 * Looks for the checkpoint of a NEXUS file.
+	 * 
+	 * @param dir directory where MrBayes runs
+	 * @param input NEXUS file, relative to dir
+	 * @param commands commands added to the NEXUS file for the run
+	 * @return the checkpoint, or <code>null</code> if there is none
+	 */
+	public static MrBayesCheckpoint find(FilePath dir, final String input, List<String> commands) 
+	throws IOException, InterruptedException {
+		return dir.act(new Finder(input, commands));
+	}
+	
+	/**
+	 * Writes the hash of the input of a run, which the checkpoints it writes 
+	 * must match to be resumed.
+	 * 
+	 * @param dir directory where MrBayes runs
+	 * @param input NEXUS file, relative to dir
+	 * @param commands commands added to the NEXUS file for the run, without 
+	 * <code>mcmcp append=yes</code>
+	 */
+	public static void writeStamp(FilePath dir, String input, List<String> commands) 
+	throws IOException, InterruptedException {
+		final String stamp = dir.act(new Stamp(input, commands));
+		dir.child(input + STAMP_EXTENSION).write(stamp, "US-ASCII");
+	}
+	
+	/**
+	 * @param workingDirectory directory where MrBayes runs, to which the 
+	 * files called with execute are relative
+	 * @return SHA-1 of the content of the NEXUS file, of the files it 
+	 * executes and of the commands, in hexadecimal
+	 */
+	static String stamp(File nexusFile, File workingDirectory, List<String> commands) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(NexusValidation.digest(nexusFile, workingDirectory)).append('\n');
+		for(String command : commands) {
+			sb.append(command).append('\n');
+		}
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			return Util.toHexString(md.digest(sb.toString().getBytes("UTF-8")));
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new IOException("SHA-1 not available: " + nsae.getMessage());
+		}
+	}
+	
+	/**
+	 * @param checkpoint checkpoint file
+	 * @param nexusFile NEXUS file
+	 * @param workingDirectory directory where MrBayes runs
+	 * @param commands commands added to the NEXUS file for the run
+	 * @return whether the checkpoint was written by a run of the NEXUS file 
+	 * and commands
+	 */
+	static boolean isCurrent(File checkpoint, File nexusFile, File workingDirectory, List<String> commands) 
+	throws IOException {
+		final File stamp = new File(checkpoint.getPath().substring(0, 
+				checkpoint.getPath().length() - CHECKPOINT_EXTENSION.length()) + STAMP_EXTENSION);
+		if(stamp.isFile()) {
+			final BufferedReader reader = new BufferedReader(new FileReader(stamp));
+			try {
+				return stamp(nexusFile, workingDirectory, commands).equals(reader.readLine());
+			} finally {
+				reader.close();
+			}
+		}
+		// written before the stamps, or by MrBayes run outside Jenkins
+		return checkpoint.lastModified() > nexusFile.lastModified();
+	}
+	
+	/**
+	 * @return the generation in the header of a checkpoint file, or -1
+	 */
+	static long readGeneration(File checkpoint) throws IOException {
+		final BufferedReader reader = new BufferedReader(new FileReader(checkpoint));
+		try {
+			String line;
+			for(int i = 0; i < HEADER_LINES && (line = reader.readLine()) != null; i++) {
+				final Matcher m = GENERATION.matcher(line);
+				if(m.find()) {
+					return Long.parseLong(m.group(1));
+				}
+			}
+			return -1L;
+		} finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * @return the generation of the last sample of a trace (.p) file, or -1. 
+	 * Only the end of the file is read.
+	 */
+	static long readLastSampledGeneration(File trace) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(trace, "r");
+		try {
+			final long length = raf.length();
+			final int size = (int)Math.min(length, TAIL_SIZE);
+			final byte[] tail = new byte[size];
+			raf.seek(length - size);
+			raf.readFully(tail);
+			final String[] lines = new String(tail, "US-ASCII").split("\r?\n");
+			for(int i = lines.length - 1; i >= 0; i--) {
+				final String line = lines[i].trim();
+				final int end = indexOfWhitespace(line);
+				if(end > 0) {
+					try {
+						return Long.parseLong(line.substring(0, end));
+					} catch (NumberFormatException nfe) {
+						// header, or line cut in the middle
+					}
+				}
+			}
+			return -1L;
+		} finally {
+			raf.close();
+		}
+	}
+	
+	private static int indexOfWhitespace(String s) {
+		for(int i = 0; i < s.length(); i++) {
+			if(Character.isWhitespace(s.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private static final class Finder implements FileCallable<MrBayesCheckpoint> {
+
+		private static final long serialVersionUID = -4030693186434108733L;
+		
+		private final String input;
+		
+		private final List<String> commands;
+		
+		public Finder(String input, List<String> commands) {
+			this.input = input;
+			this.commands = new ArrayList<String>(commands);
+		}
+
+		/* (non-Javadoc)
+		 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+		 */
+		public MrBayesCheckpoint invoke(File f, VirtualChannel channel) 
+				throws IOException, InterruptedException {
+			final File checkpoint = new File(f, input + CHECKPOINT_EXTENSION);
+			if(!checkpoint.isFile()) {
+				return null;
+			}
+			final long generation = readGeneration(checkpoint);
+			if(generation < 0) {
+				return null;
+			}
+			File trace = new File(f, input + ".run1.p");
+			if(!trace.isFile()) {
+				trace = new File(f, input + ".p");
+			}
+			final long lastSampled = (trace.isFile() ? readLastSampledGeneration(trace) : -1L);
+			return new MrBayesCheckpoint(generation, lastSampled, isCurrent(checkpoint, new File(f, input), f, commands));
+		}
+		
+	}
+	
+	private static final class Stamp implements FileCallable<String> {
+
+		private static final long serialVersionUID = 7260180426535561218L;
+		
+		private final String input;
+		
+		private final List<String> commands;
+		
+		public Stamp(String input, List<String> commands) {
+			this.input = input;
+			this.commands = new ArrayList<String>(commands);
+		}
+
+		/* (non-Javadoc)
+		 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+		 */
+		public String invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+			return stamp(new File(f, input), f, commands);
+		}
+		
+	}
+	
+}
@@ -23,8 +23,14 @@
  */
 package jenkins.plugins.mrbayes;
 
+import hudson.remoting.VirtualChannel;
+
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 
+import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 /**
@@ -50,14 +56,38 @@ public class MrBayesInstallation implements Serializable {
 	 */
 	private final String pathToExecutable;
 	
+	/**
+	 * Path to the MPI launcher (mpirun, mpiexec). When set, MrBayes is 
+	 * started through it, with the number of processes given by -np.
+	 */
+	private final String mpiLauncher;
+	
+	/**
+	 * Extra arguments for the MPI launcher.
+	 */
+	private final String mpiArguments;
+	
 	/**
 	 * @param name the name for a MrBayes installation
 	 * @param pathToExecutable the path for a MrBayes executable 
 	 */
-	@DataBoundConstructor
 	public MrBayesInstallation(String name, String pathToExecutable) {
+		this(name, pathToExecutable, null, null);
+	}
+	
+	/**
+	 * @param name the name for a MrBayes installation
+	 * @param pathToExecutable the path for a MrBayes executable 
+	 * @param mpiLauncher the path for the MPI launcher, or blank to run 
+	 * MrBayes directly
+	 * @param mpiArguments extra arguments for the MPI launcher
+	 */
+	@DataBoundConstructor
+	public MrBayesInstallation(String name, String pathToExecutable, String mpiLauncher, String mpiArguments) {
 		this.name = name;
 		this.pathToExecutable = pathToExecutable;
+		this.mpiLauncher = mpiLauncher;
+		this.mpiArguments = mpiArguments;
 	}
 	
 	/**
@@ -74,4 +104,49 @@ public class MrBayesInstallation implements Serializable {
 		return pathToExecutable;
 	}
 	
+	/**
+	 * @return the mpiLauncher
+	 */
+	public String getMpiLauncher() {
+		return mpiLauncher;
+	}
+	
+	/**
+	 * @return the mpiArguments
+	 */
+	public String getMpiArguments() {
+		return mpiArguments;
+	}
+	
+	/**
+	 * @return whether MrBayes is started through an MPI launcher
+	 */
+	public boolean isMpi() {
+		return StringUtils.isNotBlank(mpiLauncher);
+	}
+	
+	/**
+	 * Probes the executable of this installation in a node. The node runs 
+	 * it only the first time, and again when the executable changes.
+	 * 
+	 * @param channel channel of the node
+	 * @return what the executable supports in the node
+	 */
+	public InstallationCapabilities probe(VirtualChannel channel) throws IOException, InterruptedException {
+		return probe(channel, Arrays.asList(this)).get(0);
+	}
+	
+	/**
+	 * Probes the executables of several installations in a node, in one 
+	 * call.
+	 * 
+	 * @param channel channel of the node
+	 * @param installations installations to probe
+	 * @return what each executable supports in the node, in the same order
+	 */
+	public static List<InstallationCapabilities> probe(VirtualChannel channel, List<MrBayesInstallation> installations) 
+	throws IOException, InterruptedException {
+		return channel.call(new InstallationCapabilities.Probe(installations));
+	}
+	
 }
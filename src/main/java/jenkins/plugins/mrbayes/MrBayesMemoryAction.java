@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.Action;
+import hudson.model.AbstractBuild;
+
+import java.io.Serializable;
+import java.util.List;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Memory estimated for an analysis run by a build, and its runs and chains as 
+ * parsed from the NEXUS file. Read by {@link MrBayesQueueTaskDispatcher} to 
+ * keep the next builds of the project away from nodes without enough memory 
+ * or cores.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@ExportedBean
+public class MrBayesMemoryAction implements Action, Serializable {
+
+	private static final long serialVersionUID = -2265802337814270139L;
+
+	/**
+	 * NEXUS file analysed.
+	 */
+	private final String inputFile;
+	
+	/**
+	 * Estimated peak memory, in bytes.
+	 */
+	private final long estimatedMemory;
+	
+	/**
+	 * Independent runs of the analysis, or 0 if unknown.
+	 */
+	private final int runs;
+	
+	/**
+	 * Chains of all the runs of the analysis, or 0 if unknown.
+	 */
+	private final int chains;
+	
+	public MrBayesMemoryAction(String inputFile, long estimatedMemory) {
+		this(inputFile, estimatedMemory, 0, 0);
+	}
+	
+	public MrBayesMemoryAction(String inputFile, long estimatedMemory, int runs, int chains) {
+		this.inputFile = inputFile;
+		this.estimatedMemory = estimatedMemory;
+		this.runs = runs;
+		this.chains = chains;
+	}
+	
+	/**
+	 * @return the inputFile
+	 */
+	@Exported
+	public String getInputFile() {
+		return inputFile;
+	}
+	
+	/**
+	 * @return the estimated memory, in bytes
+	 */
+	@Exported
+	public long getEstimatedMemory() {
+		return estimatedMemory;
+	}
+	
+	/**
+	 * @return the runs of the analysis, or 0 if unknown
+	 */
+	@Exported
+	public int getRuns() {
+		return runs;
+	}
+	
+	/**
+	 * @return the chains of all the runs of the analysis, or 0 if unknown
+	 */
+	@Exported
+	public int getChains() {
+		return chains;
+	}
+	
+	/**
+	 * @return the estimated memory, in megabytes
+	 */
+	public long getEstimatedMemoryMegabytes() {
+		return MemoryEstimate.toMegabytes(estimatedMemory);
+	}
+	
+	/**
+	 * @param build a build
+	 * @return the largest memory estimated for the analyses of the build, in 
+	 * bytes, or -1 if none was estimated
+	 */
+	public static long getRequiredMemory(AbstractBuild<?, ?> build) {
+		long required = -1L;
+		if(build != null) {
+			final List<MrBayesMemoryAction> actions = build.getActions(MrBayesMemoryAction.class);
+			if(actions != null) {
+				for(MrBayesMemoryAction action : actions) {
+					required = Math.max(required, action.getEstimatedMemory());
+				}
+			}
+		}
+		return required;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getDisplayName()
+	 */
+	public String getDisplayName() {
+		return Messages.MrBayesMemoryAction_DisplayName();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getIconFileName()
+	 */
+	public String getIconFileName() {
+		return null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getUrlName()
+	 */
+	public String getUrlName() {
+		return null;
+	}
+	
+}
@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
+import hudson.model.RootAction;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Exposes the timings recorded by {@link MrBayesTimingAction} in the
+ * Prometheus text format, aggregated by MrBayes installation and node, at
+ * <code>/mrbayes-metrics/</code>.
+ * <p>
+ * Only the last builds of each project are read, so that scraping stays
+ * cheap in instances with a long history. As the window slides, the values
+ * can go down as well as up: they are exported as gauges (means and counts
+ * over the window), not as counters or summaries, which Prometheus expects
+ * to only grow.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@Extension
+public class MrBayesMetricsAction implements RootAction {
+
+	/**
+	 * Number of builds read per project.
+	 */
+	public static final int BUILDS = Integer.getInteger(MrBayesMetricsAction.class.getName() + ".builds", 20);
+
+	/**
+	 * Version of the Prometheus text format.
+	 */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=UTF-8";
+
+	/**
+	 * Writes the metrics of the last builds of every project.
+	 */
+	public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		final Hudson hudson = Hudson.getInstance();
+		hudson.checkPermission(Hudson.READ);
+		final List<MrBayesTimingAction.Record> records = new ArrayList<MrBayesTimingAction.Record>();
+		for(AbstractProject<?, ?> project : hudson.getAllItems(AbstractProject.class)) {
+			int read = 0;
+			for(AbstractBuild<?, ?> build : project.getBuilds()) {
+				if(read++ >= BUILDS) {
+					break;
+				}
+				if(build.isBuilding()) {
+					continue;
+				}
+				final MrBayesTimingAction action = build.getAction(MrBayesTimingAction.class);
+				if(action != null) {
+					records.addAll(action.getRecords());
+				}
+			}
+		}
+		rsp.setContentType(CONTENT_TYPE);
+		final PrintWriter writer = rsp.getWriter();
+		write(records, writer);
+		writer.flush();
+	}
+
+	/**
+	 * Writes the metrics of the given records.
+	 *
+	 * @param records timings of analyses
+	 * @param writer where the metrics are written
+	 */
+	public static void write(Collection<MrBayesTimingAction.Record> records, PrintWriter writer) {
+		final Map<String, Aggregate> aggregates = new TreeMap<String, Aggregate>();
+		for(MrBayesTimingAction.Record record : records) {
+			final String labels = "installation=\"" + escape(record.getInstallation()) + "\",node=\"" +
+					escape(StringUtils.isEmpty(record.getNode()) ? "master" : record.getNode()) + "\"";
+			Aggregate aggregate = aggregates.get(labels);
+			if(aggregate == null) {
+				aggregate = new Aggregate();
+				aggregates.put(labels, aggregate);
+			}
+			aggregate.add(record);
+		}
+
+		final String window = " over the last " + BUILDS + " builds of each project";
+		writer.print("# HELP mrbayes_runs Analyses recorded" + window + ".\n");
+		writer.print("# TYPE mrbayes_runs gauge\n");
+		for(Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+			sample(writer, "mrbayes_runs", entry.getKey(), entry.getValue().runs);
+		}
+
+		writer.print("# HELP mrbayes_phase_mean_seconds Mean wall time of each phase of the analyses" + window + ".\n");
+		writer.print("# TYPE mrbayes_phase_mean_seconds gauge\n");
+		for(Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+			for(Map.Entry<String, long[]> phase : entry.getValue().phases.entrySet()) {
+				final String labels = entry.getKey() + ",phase=\"" + escape(phase.getKey()) + "\"";
+				sample(writer, "mrbayes_phase_mean_seconds", labels, phase.getValue()[0] / 1000.0d / phase.getValue()[1]);
+			}
+		}
+
+		writer.print("# HELP mrbayes_phases Phases of the analyses recorded" + window + ".\n");
+		writer.print("# TYPE mrbayes_phases gauge\n");
+		for(Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+			for(Map.Entry<String, long[]> phase : entry.getValue().phases.entrySet()) {
+				final String labels = entry.getKey() + ",phase=\"" + escape(phase.getKey()) + "\"";
+				sample(writer, "mrbayes_phases", labels, phase.getValue()[1]);
+			}
+		}
+
+		writer.print("# HELP mrbayes_cpu_mean_seconds Mean CPU time of MrBayes, where it could be measured" + window + ".\n");
+		writer.print("# TYPE mrbayes_cpu_mean_seconds gauge\n");
+		for(Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+			final Aggregate aggregate = entry.getValue();
+			if(aggregate.cpuCount > 0) {
+				sample(writer, "mrbayes_cpu_mean_seconds", entry.getKey(), aggregate.cpuTime / 1000.0d / aggregate.cpuCount);
+			}
+		}
+
+		writer.print("# HELP mrbayes_peak_rss_bytes Largest resident set size of MrBayes" + window + ".\n");
+		writer.print("# TYPE mrbayes_peak_rss_bytes gauge\n");
+		for(Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+			if(entry.getValue().peakRss >= 0) {
+				sample(writer, "mrbayes_peak_rss_bytes", entry.getKey(), entry.getValue().peakRss);
+			}
+		}
+
+		writer.print("# HELP mrbayes_generations_per_second Mean speed of MrBayes" + window + ".\n");
+		writer.print("# TYPE mrbayes_generations_per_second gauge\n");
+		for(Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+			final Aggregate aggregate = entry.getValue();
+			if(aggregate.speedCount > 0) {
+				sample(writer, "mrbayes_generations_per_second", entry.getKey(), aggregate.speed / aggregate.speedCount);
+			}
+		}
+	}
+
+	private static void sample(PrintWriter writer, String name, String labels, double value) {
+		writer.print(name + "{" + labels + "} " + String.format(Locale.ENGLISH, "%.6g", value) + "\n");
+	}
+
+	private static void sample(PrintWriter writer, String name, String labels, long value) {
+		writer.print(name + "{" + labels + "} " + value + "\n");
+	}
+
+	/**
+	 * Escapes a label value of the Prometheus text format.
+	 */
+	static String escape(String value) {
+		if(value == null) {
+			return "";
+		}
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getDisplayName()
+	 */
+	public String getDisplayName() {
+		return Messages.MrBayesMetricsAction_DisplayName();
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getIconFileName()
+	 */
+	public String getIconFileName() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getUrlName()
+	 */
+	public String getUrlName() {
+		return "mrbayes-metrics";
+	}
+
+	/**
+	 * Timings of the analyses run with the same installation in the same
+	 * node.
+	 */
+	private static class Aggregate {
+
+		private long runs = 0L;
+
+		/**
+		 * Total wall time, in milliseconds, and count, by phase.
+		 */
+		private final Map<String, long[]> phases = new TreeMap<String, long[]>();
+
+		private long cpuTime = 0L;
+
+		private long cpuCount = 0L;
+
+		private long peakRss = -1L;
+
+		private double speed = 0.0d;
+
+		private long speedCount = 0L;
+
+		void add(MrBayesTimingAction.Record record) {
+			runs++;
+			for(MrBayesTimingAction.Phase phase : record.getPhases()) {
+				long[] total = phases.get(phase.getName());
+				if(total == null) {
+					total = new long[2];
+					phases.put(phase.getName(), total);
+				}
+				total[0] += phase.getWallTime();
+				total[1]++;
+				if(phase.getCpuTime() >= 0) {
+					cpuTime += phase.getCpuTime();
+					cpuCount++;
+				}
+				peakRss = Math.max(peakRss, phase.getPeakRss());
+			}
+			if(record.getGenerationsPerSecond() >= 0) {
+				speed += record.getGenerationsPerSecond();
+				speedCount++;
+			}
+		}
+
+	}
+
+}
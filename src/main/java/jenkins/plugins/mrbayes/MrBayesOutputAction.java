@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.Action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Sizes of the MrBayes output files of a build, as written by MrBayes and 
+ * after {@link MrBayesOutputRecorder} reduced them.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@ExportedBean
+public class MrBayesOutputAction implements Action, Serializable {
+
+	private static final long serialVersionUID = 6716427381560941925L;
+
+	private final List<OutputReducer.Reduction> reductions;
+	
+	public MrBayesOutputAction(List<OutputReducer.Reduction> reductions) {
+		this.reductions = new ArrayList<OutputReducer.Reduction>(reductions);
+	}
+	
+	/**
+	 * @return the reduced files
+	 */
+	@Exported
+	public List<OutputReducer.Reduction> getReductions() {
+		return Collections.unmodifiableList(reductions);
+	}
+	
+	/**
+	 * @return the size of the files written by MrBayes, in bytes
+	 */
+	@Exported
+	public long getOriginalSize() {
+		long size = 0L;
+		for(OutputReducer.Reduction reduction : reductions) {
+			size += reduction.getOriginalSize();
+		}
+		return size;
+	}
+	
+	/**
+	 * @return the size of the reduced files, in bytes
+	 */
+	@Exported
+	public long getReducedSize() {
+		long size = 0L;
+		for(OutputReducer.Reduction reduction : reductions) {
+			size += reduction.getReducedSize();
+		}
+		return size;
+	}
+	
+	/**
+	 * @param bytes a size, in bytes
+	 * @return the size in megabytes, with one decimal
+	 */
+	public static String formatMegabytes(long bytes) {
+		return String.format(Locale.ENGLISH, "%.1f", bytes / (1024.0d * 1024.0d));
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getDisplayName()
+	 */
+	public String getDisplayName() {
+		return Messages.MrBayesOutputAction_DisplayName();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getIconFileName()
+	 */
+	public String getIconFileName() {
+		return null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getUrlName()
+	 */
+	public String getUrlName() {
+		return null;
+	}
+	
+}
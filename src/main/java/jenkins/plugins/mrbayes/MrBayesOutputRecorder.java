@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Project;
+import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Builder;
+import hudson.tasks.Recorder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Reduces the parameter (.p) and tree (.t) files written by MrBayes before 
+ * they are archived, with an {@link OutputReducer} run in the node where 
+ * they were written: drops the burn-in, thins the samples and compresses 
+ * the files with gzip. The reduced copies are written to 
+ * {@link OutputReducer#OUTPUT_DIRECTORY}, to be archived, and the files of 
+ * MrBayes are kept for the builds that resume the analysis. The sizes before 
+ * and after are kept in the build, in a {@link MrBayesOutputAction}.
+ * <p>
+ * Runs after {@link MrBayesTraceRecorder}, which reads the complete files, 
+ * and before the artifacts are archived.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class MrBayesOutputRecorder extends Recorder {
+
+	// higher than the artifact archiver, lower than the trace recorder
+	@Extension(ordinal = 10)
+	public static final MrBayesOutputRecorderDescriptor DESCRIPTOR = new MrBayesOutputRecorderDescriptor();
+	
+	/**
+	 * Pattern of the output files, or blank for the output files of the 
+	 * NEXUS files run by the MrBayes build steps of the project.
+	 */
+	private final String outputFiles;
+	
+	/**
+	 * Fraction of the samples of each file dropped as burn-in.
+	 */
+	private final String burninFraction;
+	
+	/**
+	 * Keep every k-th sample after the burn-in.
+	 */
+	private final String thinning;
+	
+	/**
+	 * Whether to compress the files with gzip.
+	 */
+	private final Boolean compress;
+	
+	@DataBoundConstructor
+	public MrBayesOutputRecorder(String outputFiles, String burninFraction, String thinning, Boolean compress) {
+		this.outputFiles = outputFiles;
+		this.burninFraction = burninFraction;
+		this.thinning = thinning;
+		this.compress = ((compress == null) ? Boolean.TRUE : compress);
+	}
+	
+	/**
+	 * @return the outputFiles
+	 */
+	public String getOutputFiles() {
+		return outputFiles;
+	}
+	
+	/**
+	 * @return the burninFraction
+	 */
+	public String getBurninFraction() {
+		return burninFraction;
+	}
+	
+	/**
+	 * @return the thinning
+	 */
+	public String getThinning() {
+		return thinning;
+	}
+	
+	/**
+	 * @return the compress
+	 */
+	public Boolean getCompress() {
+		return ((compress==null ? Boolean.TRUE : compress));
+	}
+	
+	/**
+	 * @return the burn-in fraction, or 0 if not set or not in [0, 1)
+	 */
+	double getBurninFractionValue() {
+		double value = 0.0d;
+		if(StringUtils.isNotBlank(this.burninFraction)) {
+			try {
+				value = Double.parseDouble(this.burninFraction.trim());
+			} catch (NumberFormatException nfe) {
+				value = 0.0d;
+			}
+		}
+		return (value >= 0.0d && value < 1.0d ? value : 0.0d);
+	}
+	
+	/**
+	 * @return the thinning, or 1 if not set or not positive
+	 */
+	int getThinningValue() {
+		int value = 1;
+		if(StringUtils.isNotBlank(this.thinning)) {
+			try {
+				value = Integer.parseInt(this.thinning.trim());
+			} catch (NumberFormatException nfe) {
+				value = 1;
+			}
+		}
+		return Math.max(1, value);
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.tasks.BuildStep#getRequiredMonitorService()
+	 */
+	public BuildStepMonitor getRequiredMonitorService() {
+		return BuildStepMonitor.NONE;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.tasks.BuildStepCompatibilityLayer#perform(hudson.model.AbstractBuild, hudson.Launcher, hudson.model.BuildListener)
+	 */
+	@Override
+	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) 
+	throws InterruptedException, IOException {
+		final String pattern = getOutputPattern(build.getProject());
+		listener.getLogger().println(Messages.MrBayesOutputRecorder_Reducing(pattern));
+		final List<OutputReducer.Reduction> reductions = build.getModuleRoot().act(
+				new OutputReducer(pattern, getBurninFractionValue(), getThinningValue(), this.getCompress()));
+		if(reductions.isEmpty()) {
+			listener.getLogger().println(Messages.MrBayesOutputRecorder_NoOutputFiles(pattern));
+			return Boolean.TRUE;
+		}
+		for(OutputReducer.Reduction reduction : reductions) {
+			listener.getLogger().println(Messages.MrBayesOutputRecorder_Reduced(reduction.getFile(), 
+					reduction.getKeptSamples(), reduction.getSamples(), 
+					MrBayesOutputAction.formatMegabytes(reduction.getOriginalSize()), 
+					MrBayesOutputAction.formatMegabytes(reduction.getReducedSize()), reduction.getReducedFile()));
+		}
+		final MrBayesOutputAction action = new MrBayesOutputAction(reductions);
+		listener.getLogger().println(Messages.MrBayesOutputRecorder_Total(
+				MrBayesOutputAction.formatMegabytes(action.getOriginalSize()), 
+				MrBayesOutputAction.formatMegabytes(action.getReducedSize())));
+		build.addAction(action);
+		return Boolean.TRUE;
+	}
+	
+	/**
+	 * @param project project of the build
+	 * @return the pattern of the output files, either the one configured or 
+	 * the parameter and tree files of the NEXUS files run by the MrBayes 
+	 * build steps
+	 */
+	String getOutputPattern(AbstractProject<?, ?> project) {
+		if(StringUtils.isNotBlank(this.outputFiles)) {
+			return this.outputFiles.trim();
+		}
+		final List<String> patterns = new ArrayList<String>();
+		if(project instanceof Project<?, ?>) {
+			for(Builder builder : ((Project<?, ?>)project).getBuilders()) {
+				if(builder instanceof MrBayesBuilder && ((MrBayesBuilder)builder).getInputFile() != null) {
+					patterns.add(getOutputPattern(((MrBayesBuilder)builder).getInputFile()));
+				}
+			}
+		}
+		return (patterns.isEmpty() ? "**/*" + TraceFile.EXTENSION + ",**/*" + TreeFile.EXTENSION : StringUtils.join(patterns, ","));
+	}
+	
+	/**
+	 * @param inputFile NEXUS file, or pattern of NEXUS files, of a MrBayes 
+	 * build step
+	 * @return the pattern of the parameter and tree files written for the 
+	 * NEXUS files, with one or more runs and tree parameters
+	 */
+	static String getOutputPattern(String inputFile) {
+		final List<String> patterns = new ArrayList<String>();
+		for(String input : inputFile.split(",")) {
+			if(StringUtils.isNotBlank(input)) {
+				patterns.add(input.trim() + "*" + TraceFile.EXTENSION);
+				patterns.add(input.trim() + "*" + TreeFile.EXTENSION);
+			}
+		}
+		return StringUtils.join(patterns, ",");
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.tasks.Publisher#getDescriptor()
+	 */
+	@Override
+	public MrBayesOutputRecorderDescriptor getDescriptor() {
+		return (MrBayesOutputRecorderDescriptor)super.getDescriptor();
+	}
+	
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.AbstractProject;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Publisher;
+import hudson.util.FormValidation;
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Descriptor of MrBayes output recorder.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ * @see {@link MrBayesOutputRecorder}
+ */
+public class MrBayesOutputRecorderDescriptor extends BuildStepDescriptor<Publisher> {
+
+	public MrBayesOutputRecorderDescriptor() {
+		super(MrBayesOutputRecorder.class);
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Descriptor#getDisplayName()
+	 */
+	@Override
+	public String getDisplayName() {
+		return Messages.MrBayesOutputRecorderDescriptor_DisplayName();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.tasks.BuildStepDescriptor#isApplicable(java.lang.Class)
+	 */
+	@Override
+	public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+		return Boolean.TRUE;
+	}
+	
+	public FormValidation doBurninFraction(@QueryParameter String value) {
+		FormValidation returnValue = FormValidation.ok();
+		if(StringUtils.isNotBlank(value)) {
+			try {
+				final double fraction = Double.parseDouble(value.trim());
+				if(fraction < 0.0d || fraction >= 1.0d) {
+					returnValue = FormValidation.error(Messages.MrBayesTraceRecorderDescriptor_BurninFraction());
+				}
+			} catch (NumberFormatException nfe) {
+				returnValue = FormValidation.error(Messages.MrBayesTraceRecorderDescriptor_BurninFraction());
+			}
+		}
+		return returnValue;
+	}
+	
+	public FormValidation doThinning(@QueryParameter String value) {
+		FormValidation returnValue = FormValidation.ok();
+		if(StringUtils.isNotBlank(value)) {
+			try {
+				if(Integer.parseInt(value.trim()) < 1) {
+					returnValue = FormValidation.error(Messages.MrBayesOutputRecorderDescriptor_Thinning());
+				}
+			} catch (NumberFormatException nfe) {
+				returnValue = FormValidation.error(Messages.MrBayesOutputRecorderDescriptor_Thinning());
+			}
+		}
+		return returnValue;
+	}
+	
+}
@@ -0,0 +1,458 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.Launcher.LocalLauncher;
+import hudson.Proc;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.remoting.Callable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+/**
+ * Runs MrBayes in the node where it is executed. The output of MrBayes is 
+ * filtered there, by its {@link OutputLevel} and, when a convergence 
+ * threshold is given, by a {@link ConvergenceMonitor}, so that only the 
+ * condensed output is sent to the build log in the master.
+ * <p>
+ * When detached, MrBayes is started as a {@link DetachedProcess} and its 
+ * output is read from the file where it is written. If the master restarts, 
+ * MrBayes keeps running, and the next build running the same NEXUS file in 
+ * the same directory reattaches to it instead of starting it again.
+ * <p>
+ * When a {@link StallWatchdog} is given, MrBayes is killed, after a snapshot 
+ * of its state is written, once it stops making progress or would miss its 
+ * deadline.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class MrBayesProcess implements Callable<MrBayesProcess.Result, IOException> {
+
+	private static final long serialVersionUID = -6186524207743916513L;
+
+	/**
+	 * Interval between checks for convergence and, for detached processes, 
+	 * for new output, in milliseconds.
+	 */
+	private static final long CONVERGENCE_POLL_INTERVAL = 1000L;
+	
+	private final List<String> cmds;
+	
+	private final Map<String, String> env;
+	
+	private final String pwd;
+	
+	private final TaskListener listener;
+	
+	private final OutputLevel outputLevel;
+	
+	private final double convergenceThreshold;
+	
+	private final int convergenceSamples;
+	
+	/**
+	 * Control directory of the detached process, or <code>null</code>.
+	 */
+	private final String controlDirectory;
+	
+	/**
+	 * Watchdog of the run, or <code>null</code>.
+	 */
+	private final StallWatchdog watchdog;
+	
+	/**
+	 * Whether a detached process was found running, and followed from its 
+	 * current output.
+	 */
+	private transient boolean reattached = false;
+	
+	/**
+	 * @param cmds command line
+	 * @param env environment variables
+	 * @param pwd directory where MrBayes runs
+	 * @param listener listener of the build, where the output is written
+	 * @param outputLevel how much of the output is written
+	 * @param convergenceThreshold maximum average standard deviation of 
+	 * split frequencies to stop MrBayes, or zero to run all the generations
+	 * @param convergenceSamples consecutive samples below the threshold
+	 * @param controlDirectory control directory, when MrBayes runs detached 
+	 * from the node agent, or <code>null</code>
+	 * @param watchdog kills MrBayes when it stalls, or <code>null</code>
+	 */
+	public MrBayesProcess(List<String> cmds, Map<String, String> env, String pwd, TaskListener listener, 
+			OutputLevel outputLevel, double convergenceThreshold, int convergenceSamples, String controlDirectory, 
+			StallWatchdog watchdog) {
+		this.cmds = new ArrayList<String>(cmds);
+		this.env = new HashMap<String, String>(env);
+		this.pwd = pwd;
+		this.listener = listener;
+		this.outputLevel = outputLevel;
+		this.convergenceThreshold = convergenceThreshold;
+		this.convergenceSamples = convergenceSamples;
+		this.controlDirectory = controlDirectory;
+		this.watchdog = (watchdog != null && watchdog.isEnabled() ? watchdog : null);
+	}
+	
+	/**
+	 * @return a callable that kills MrBayes, if it runs detached. Used when 
+	 * the build is aborted, as interrupting this callable only stops 
+	 * following the output of a detached process.
+	 */
+	public Callable<Void, IOException> killer() {
+		return new Kill(controlDirectory);
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.remoting.Callable#call()
+	 */
+	public Result call() throws IOException {
+		final CondensedOutputStream condensed = outputLevel.filter(listener.getLogger());
+		final ConvergenceMonitor monitor = (convergenceThreshold > 0 ? 
+				new ConvergenceMonitor(condensed, convergenceThreshold, convergenceSamples) : null);
+		final ProgressMonitor progress = new ProgressMonitor(monitor != null ? monitor : condensed);
+		// a detached process keeps its id, so that it is found after reattaching
+		final String runId = (controlDirectory != null ? 
+				Util.getDigestOf(new File(controlDirectory).getAbsolutePath()) : UUID.randomUUID().toString());
+		env.put(ProcessSampler.ENV_VAR, runId);
+		final ProcessSampler sampler = new ProcessSampler(runId);
+		sampler.start();
+		try {
+			final Result result = run(progress, monitor, sampler);
+			// the output of a reattached process is read all at once
+			final boolean timed = !reattached;
+			return new Result(result.getExitCode(), result.isConverged(), result.getConvergedAt(), 
+					timed ? progress.getStartupTime() : -1L, timed ? progress.getGenerationsPerSecond() : -1.0d, 
+					sampler.getCpuTime(), sampler.getPeakRss(), result.isStalled(), progress.getSwapAcceptance());
+		} catch (InterruptedException ie) {
+			throw (IOException)new IOException("MrBayes was interrupted").initCause(ie);
+		} finally {
+			sampler.stop();
+			progress.close();
+			if(monitor != null) {
+				monitor.close();
+			}
+			condensed.close();
+		}
+	}
+	
+	/**
+	 * Runs MrBayes, attached or detached, writing its output to the given 
+	 * stream.
+	 */
+	private Result run(ProgressMonitor out, ConvergenceMonitor monitor, ProcessSampler sampler) 
+	throws IOException, InterruptedException {
+		if(controlDirectory != null) {
+			return runDetached(out, monitor, sampler);
+		}
+		final Proc proc = new LocalLauncher(listener).launch().cmds(cmds).envs(env)
+				.stdout(out).pwd(new File(pwd)).start();
+		if(watchdog != null) {
+			watchdog.start(out, new File(pwd), System.currentTimeMillis());
+		}
+		try {
+			if(monitor == null && watchdog == null) {
+				return new Result(proc.join(), false, -1L);
+			}
+			while((monitor == null || !monitor.isConverged()) && proc.isAlive()) {
+				final String stalled = checkWatchdog(sampler);
+				if(stalled != null) {
+					proc.kill();
+					return stalled(proc.join());
+				}
+				Thread.sleep(CONVERGENCE_POLL_INTERVAL);
+			}
+			if(monitor == null || !monitor.isConverged() || !proc.isAlive()) {
+				return new Result(proc.join(), false, -1L);
+			}
+			proc.kill();
+			listener.getLogger().println(Messages.MrBayesBuilder_ConvergenceReached(
+					convergenceSamples, convergenceThreshold, monitor.getConvergedAt()));
+			return new Result(proc.join(), true, monitor.getConvergedAt());
+		} catch (InterruptedException ie) {
+			proc.kill();
+			throw ie;
+		}
+	}
+	
+	/**
+	 * Starts MrBayes detached, or reattaches to it, and copies its output 
+	 * until it finishes. Being interrupted does not kill it.
+	 */
+	private Result runDetached(ProgressMonitor out, ConvergenceMonitor monitor, ProcessSampler sampler) 
+	throws IOException, InterruptedException {
+		final DetachedProcess process = new DetachedProcess(new File(controlDirectory));
+		if(process.isStarted()) {
+			reattached = true;
+			listener.getLogger().println(Messages.MrBayesBuilder_ReattachingToMrBayes(controlDirectory));
+		} else {
+			process.start(listener, cmds, env, new File(pwd));
+			listener.getLogger().println(Messages.MrBayesBuilder_MrBayesDetached(controlDirectory));
+		}
+		
+		if(watchdog != null) {
+			// a reattached process is watched from now on
+			watchdog.start(out, new File(pwd), System.currentTimeMillis());
+		}
+		
+		long offset = 0L;
+		long killedAt = -1L;
+		boolean forced = false;
+		boolean stalled = false;
+		boolean alive = true;
+		while(true) {
+			final Integer exitCode = process.getExitCode();
+			offset = process.copyOutput(offset, out);
+			if(exitCode != null) {
+				process.delete();
+				if(stalled) {
+					return stalled(exitCode.intValue());
+				}
+				final boolean converged = (monitor != null && monitor.isConverged());
+				return new Result(exitCode.intValue(), converged, converged ? monitor.getConvergedAt() : -1L);
+			}
+			if(killedAt < 0L && monitor != null && monitor.isConverged()) {
+				process.terminate();
+				killedAt = System.currentTimeMillis();
+				listener.getLogger().println(Messages.MrBayesBuilder_ConvergenceReached(
+						convergenceSamples, convergenceThreshold, monitor.getConvergedAt()));
+			}
+			if(killedAt < 0L && checkWatchdog(sampler) != null) {
+				process.terminate();
+				killedAt = System.currentTimeMillis();
+				stalled = true;
+			}
+			if(killedAt >= 0L) {
+				final long waited = System.currentTimeMillis() - killedAt;
+				if(!forced && waited >= DetachedProcess.KILL_GRACE_PERIOD) {
+					process.forceKill();
+					forced = true;
+				} else if(forced && waited >= 2L * DetachedProcess.KILL_GRACE_PERIOD) {
+					// nothing more can be done from here
+					process.delete();
+					throw new IOException(Messages.MrBayesBuilder_MrBayesDidNotStop(
+							String.valueOf(waited / 1000L), controlDirectory));
+				}
+			}
+			if(!process.isAlive()) {
+				// the exit code is written right after the process ends
+				if(!alive) {
+					process.delete();
+					throw new IOException(Messages.MrBayesBuilder_MrBayesLost(controlDirectory));
+				}
+				alive = false;
+			}
+			Thread.sleep(CONVERGENCE_POLL_INTERVAL);
+		}
+	}
+	
+	/**
+	 * Asks the watchdog, if any, whether MrBayes must be killed, and if so 
+	 * writes the snapshot of its state to the build log.
+	 * 
+	 * @return why MrBayes must be killed, or <code>null</code>
+	 */
+	private String checkWatchdog(ProcessSampler sampler) {
+		if(watchdog == null) {
+			return null;
+		}
+		final String reason = watchdog.check(System.currentTimeMillis());
+		if(reason != null) {
+			watchdog.snapshot(reason, sampler, listener.getLogger());
+		}
+		return reason;
+	}
+	
+	/**
+	 * @return the result of a run killed by the watchdog, failed even if 
+	 * MrBayes exited with 0 when killed
+	 */
+	private static Result stalled(int exitCode) {
+		return new Result(exitCode != 0 ? exitCode : 1, false, -1L, -1L, -1.0d, -1L, -1L, true);
+	}
+	
+	/**
+	 * Kills a detached MrBayes process.
+	 */
+	private static final class Kill implements Callable<Void, IOException> {
+
+		private static final long serialVersionUID = 3411760254818349926L;
+		
+		private final String controlDirectory;
+		
+		public Kill(String controlDirectory) {
+			this.controlDirectory = controlDirectory;
+		}
+		
+		/* (non-Javadoc)
+		 * @see hudson.remoting.Callable#call()
+		 */
+		public Void call() throws IOException {
+			if(controlDirectory != null) {
+				final DetachedProcess process = new DetachedProcess(new File(controlDirectory));
+				try {
+					process.kill(DetachedProcess.KILL_GRACE_PERIOD);
+				} catch (InterruptedException ie) {
+					throw (IOException)new IOException("Interrupted while killing MrBayes").initCause(ie);
+				}
+				process.delete();
+			}
+			return null;
+		}
+		
+	}
+	
+	/**
+	 * Outcome of a MrBayes run.
+	 */
+	public static class Result implements Serializable {
+
+		private static final long serialVersionUID = -6372581104415372094L;
+
+		private final int exitCode;
+		
+		private final boolean converged;
+		
+		private final long convergedAt;
+		
+		private final long startupTime;
+		
+		private final double generationsPerSecond;
+		
+		private final long cpuTime;
+		
+		private final long peakRss;
+		
+		private final boolean stalled;
+		
+		private final SwapAcceptance swapAcceptance;
+		
+		public Result(int exitCode, boolean converged, long convergedAt) {
+			this(exitCode, converged, convergedAt, -1L, -1.0d, -1L, -1L);
+		}
+		
+		public Result(int exitCode, boolean converged, long convergedAt, long startupTime, 
+				double generationsPerSecond, long cpuTime, long peakRss) {
+			this(exitCode, converged, convergedAt, startupTime, generationsPerSecond, cpuTime, peakRss, false);
+		}
+		
+		public Result(int exitCode, boolean converged, long convergedAt, long startupTime, 
+				double generationsPerSecond, long cpuTime, long peakRss, boolean stalled) {
+			this(exitCode, converged, convergedAt, startupTime, generationsPerSecond, cpuTime, peakRss, stalled, null);
+		}
+		
+		public Result(int exitCode, boolean converged, long convergedAt, long startupTime, 
+				double generationsPerSecond, long cpuTime, long peakRss, boolean stalled, 
+				SwapAcceptance swapAcceptance) {
+			this.exitCode = exitCode;
+			this.converged = converged;
+			this.convergedAt = convergedAt;
+			this.startupTime = startupTime;
+			this.generationsPerSecond = generationsPerSecond;
+			this.cpuTime = cpuTime;
+			this.peakRss = peakRss;
+			this.stalled = stalled;
+			this.swapAcceptance = swapAcceptance;
+		}
+		
+		/**
+		 * @return the exit code of MrBayes
+		 */
+		public int getExitCode() {
+			return exitCode;
+		}
+		
+		/**
+		 * @return whether MrBayes was stopped because the analysis converged
+		 */
+		public boolean isConverged() {
+			return converged;
+		}
+		
+		/**
+		 * @return the last generation printed before the analysis converged, or -1
+		 */
+		public long getConvergedAt() {
+			return convergedAt;
+		}
+		
+		/**
+		 * @return time from the start of MrBayes to its first generation, in 
+		 * milliseconds, or -1 if not known
+		 */
+		public long getStartupTime() {
+			return startupTime;
+		}
+		
+		/**
+		 * @return generations per second, or -1 if not known
+		 */
+		public double getGenerationsPerSecond() {
+			return generationsPerSecond;
+		}
+		
+		/**
+		 * @return CPU time of the MrBayes processes, in milliseconds, or -1 
+		 * if not known
+		 */
+		public long getCpuTime() {
+			return cpuTime;
+		}
+		
+		/**
+		 * @return peak resident set size of the MrBayes processes, in bytes, 
+		 * or -1 if not known
+		 */
+		public long getPeakRss() {
+			return peakRss;
+		}
+		
+		/**
+		 * @return whether MrBayes was killed by the {@link StallWatchdog}
+		 */
+		public boolean isStalled() {
+			return stalled;
+		}
+		
+		/**
+		 * @return the rates of the chain swaps printed by MrBayes, or 
+		 * <code>null</code> if not known
+		 */
+		public SwapAcceptance getSwapAcceptance() {
+			return swapAcceptance;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,336 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.Project;
+import hudson.model.Queue;
+import hudson.model.TaskListener;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import hudson.node_monitors.SwapSpaceMonitor;
+import hudson.slaves.ComputerListener;
+import hudson.tasks.Builder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.jvnet.hudson.MemoryUsage;
+
+/**
+ * Places the builds of projects that run MrBayes in the nodes that can take 
+ * them:
+ * <ul>
+ * <li>away from the nodes that don't have the memory estimated in its last 
+ * build, as long as another online node that can take the build has it: 
+ * with executors, and with the label of the project, or not reserved for 
+ * tied jobs when the project has no label. The free memory of the nodes is 
+ * the one reported by the {@link SwapSpaceMonitor}; nodes without that data 
+ * are never blocked.</li>
+ * <li>in the queue, while the MrBayes builds running in a node would leave 
+ * it without the cores the build needs. The cores of a build come from the 
+ * installation mode of its MrBayes steps and from the runs and chains parsed 
+ * from its NEXUS files, as recorded in its last build by 
+ * {@link MrBayesMemoryAction}. A node running no MrBayes build always takes 
+ * one, and nodes whose cores are not known yet are never blocked. With 
+ * {@link #BLOCK_ON_MEMORY_IN_USE}, builds also wait while the memory 
+ * estimates of the running builds and of the build exceed the physical 
+ * memory of the node. As the estimates are ceilings, often several times 
+ * what MrBayes uses, this is off by default, so that builds that would fit 
+ * are not run one after the other.</li>
+ * </ul>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@Extension
+public class MrBayesQueueTaskDispatcher extends QueueTaskDispatcher {
+
+	/**
+	 * Whether builds wait while the memory estimates of the MrBayes builds 
+	 * running in a node exceed its physical memory.
+	 */
+	public static final boolean BLOCK_ON_MEMORY_IN_USE = Boolean.getBoolean(MrBayesQueueTaskDispatcher.class.getName() + ".blockOnMemoryInUse");
+	
+	/**
+	 * Cores of the nodes, by node name, read when they come online and by 
+	 * the builds that run in them.
+	 */
+	private static final Map<String, Integer> CORES = new ConcurrentHashMap<String, Integer>();
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.queue.QueueTaskDispatcher#canTake(hudson.model.Node, hudson.model.Queue.Task)
+	 */
+	@Override
+	public CauseOfBlockage canTake(Node node, Queue.Task task) {
+		if(!(task instanceof AbstractProject<?, ?>)) {
+			return null;
+		}
+		final AbstractProject<?, ?> project = (AbstractProject<?, ?>)task;
+		final CauseOfBlockage memory = checkMemory(node, project);
+		if(memory != null) {
+			return memory;
+		}
+		return checkLoad(node, project);
+	}
+	
+	/**
+	 * @return why the node can't take the project because of its free 
+	 * memory, or <code>null</code> if it can
+	 */
+	private CauseOfBlockage checkMemory(Node node, AbstractProject<?, ?> project) {
+		final long required = MrBayesMemoryAction.getRequiredMemory(project.getLastCompletedBuild());
+		if(required < 0) {
+			return null;
+		}
+		final long available = getAvailableMemory(node);
+		if(available < 0 || available >= required) {
+			return null;
+		}
+		// better a node short of memory than no node at all
+		for(Node other : getNodes()) {
+			if(other != node && canRun(other, project) && getAvailableMemory(other) >= required) {
+				return CauseOfBlockage.fromMessage(Messages._MrBayesQueueTaskDispatcher_NotEnoughMemory(
+						MemoryEstimate.toMegabytes(required), MemoryEstimate.toMegabytes(available)));
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return whether the node could run a build of the project, if it had 
+	 * the memory: it has executors and its label and mode let it take the 
+	 * project
+	 */
+	private static boolean canRun(Node node, AbstractProject<?, ?> project) {
+		return node.getNumExecutors() > 0 && node.canTake(project) == null;
+	}
+	
+	/**
+	 * @return why the node can't take the project while the MrBayes builds 
+	 * running in it use its cores, or its memory with 
+	 * {@link #BLOCK_ON_MEMORY_IN_USE}, or <code>null</code> if it can
+	 */
+	private CauseOfBlockage checkLoad(Node node, AbstractProject<?, ?> project) {
+		final List<MrBayesBuilder> builders = getBuilders(project);
+		final Computer computer = node.toComputer();
+		if(builders.isEmpty() || computer == null) {
+			return null;
+		}
+		final int cores = getCores(node);
+		boolean running = false;
+		int usedCores = 0;
+		long usedMemory = 0L;
+		for(Executor executor : computer.getExecutors()) {
+			final Queue.Executable executable = executor.getCurrentExecutable();
+			if(!(executable instanceof AbstractBuild<?, ?>)) {
+				continue;
+			}
+			final AbstractBuild<?, ?> build = (AbstractBuild<?, ?>)executable;
+			final List<MrBayesBuilder> buildBuilders = getBuilders(build.getProject());
+			if(buildBuilders.isEmpty()) {
+				continue;
+			}
+			running = true;
+			// a build records its analyses as it runs them
+			final AbstractBuild<?, ?> recorded = (build.getAction(MrBayesMemoryAction.class) != null ? 
+					build : build.getProject().getLastCompletedBuild());
+			if(cores > 0) {
+				usedCores += getRequiredCores(buildBuilders, recorded, cores);
+			}
+			usedMemory += Math.max(0L, MrBayesMemoryAction.getRequiredMemory(recorded));
+		}
+		if(!running) {
+			return null;
+		}
+		final AbstractBuild<?, ?> lastBuild = project.getLastCompletedBuild();
+		if(cores > 0) {
+			final int required = getRequiredCores(builders, lastBuild, cores);
+			if(usedCores + required > cores) {
+				return CauseOfBlockage.fromMessage(Messages._MrBayesQueueTaskDispatcher_NotEnoughCores(
+						required, Math.max(0, cores - usedCores), cores));
+			}
+		}
+		final long required = MrBayesMemoryAction.getRequiredMemory(lastBuild);
+		final long total = getTotalMemory(node);
+		if(isMemoryInUse(BLOCK_ON_MEMORY_IN_USE, usedMemory, required, total)) {
+			return CauseOfBlockage.fromMessage(Messages._MrBayesQueueTaskDispatcher_MemoryInUse(
+					MemoryEstimate.toMegabytes(required), MemoryEstimate.toMegabytes(usedMemory), 
+					MemoryEstimate.toMegabytes(total)));
+		}
+		return null;
+	}
+	
+	/**
+	 * @param block whether builds wait for the memory in use
+	 * @param used memory estimated for the MrBayes builds running in the 
+	 * node, in bytes
+	 * @param required memory estimated for the build, in bytes, or -1 if not 
+	 * known
+	 * @param total physical memory of the node, in bytes, or -1 if not known
+	 * @return whether the build waits until running builds finish
+	 */
+	static boolean isMemoryInUse(boolean block, long used, long required, long total) {
+		return block && required >= 0 && total >= 0 && used + required > total;
+	}
+	
+	/**
+	 * @param builders MrBayes steps of a project
+	 * @param build build where the analyses of the project were recorded, or 
+	 * <code>null</code>
+	 * @param cores cores of the node
+	 * @return the cores used by a build of the project: the most used by any 
+	 * of its steps, as they run one after the other
+	 */
+	static int getRequiredCores(List<MrBayesBuilder> builders, AbstractBuild<?, ?> build, int cores) {
+		List<MrBayesMemoryAction> analyses = null;
+		if(build != null) {
+			analyses = build.getActions(MrBayesMemoryAction.class);
+		}
+		if(analyses == null) {
+			analyses = Collections.emptyList();
+		}
+		int required = 0;
+		for(MrBayesBuilder builder : builders) {
+			required = Math.max(required, builder.getRequiredCores(cores, analyses));
+		}
+		return required;
+	}
+	
+	/**
+	 * @return the MrBayes steps of a project
+	 */
+	static List<MrBayesBuilder> getBuilders(AbstractProject<?, ?> project) {
+		final List<MrBayesBuilder> builders = new ArrayList<MrBayesBuilder>();
+		if(project instanceof Project<?, ?>) {
+			for(Builder builder : ((Project<?, ?>)project).getBuilders()) {
+				if(builder instanceof MrBayesBuilder) {
+					builders.add((MrBayesBuilder)builder);
+				}
+			}
+		}
+		return builders;
+	}
+	
+	/**
+	 * @return the master and the slaves
+	 */
+	private List<Node> getNodes() {
+		final Hudson hudson = Hudson.getInstance();
+		final List<Node> nodes = new ArrayList<Node>();
+		if(hudson != null) {
+			nodes.add(hudson);
+			nodes.addAll(hudson.getNodes());
+		}
+		return nodes;
+	}
+	
+	/**
+	 * Records the cores of a node.
+	 * 
+	 * @param node a node
+	 * @param cores its cores
+	 */
+	public static void setCores(Node node, int cores) {
+		CORES.put(node.getNodeName(), Integer.valueOf(cores));
+	}
+	
+	/**
+	 * @param node a node
+	 * @return the cores of the node, or -1 if not known yet
+	 */
+	static int getCores(Node node) {
+		if(node instanceof Hudson) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		final Integer cores = CORES.get(node.getNodeName());
+		return (cores != null ? cores.intValue() : -1);
+	}
+	
+	/**
+	 * @param node a node
+	 * @return the physical memory available in the node, in bytes, or -1 if 
+	 * the node is offline or its memory wasn't monitored yet
+	 */
+	static long getAvailableMemory(Node node) {
+		final MemoryUsage usage = getMemoryUsage(node);
+		return (usage != null ? usage.availablePhysicalMemory : -1L);
+	}
+	
+	/**
+	 * @param node a node
+	 * @return the physical memory of the node, in bytes, or -1 if the node 
+	 * is offline or its memory wasn't monitored yet
+	 */
+	static long getTotalMemory(Node node) {
+		final MemoryUsage usage = getMemoryUsage(node);
+		return (usage != null ? usage.totalPhysicalMemory : -1L);
+	}
+	
+	private static MemoryUsage getMemoryUsage(Node node) {
+		final Computer computer = node.toComputer();
+		if(computer == null || computer.isOffline()) {
+			return null;
+		}
+		final Map<String, Object> data = computer.getMonitorData();
+		final Object usage = (data != null ? data.get(SwapSpaceMonitor.class.getName()) : null);
+		if(usage instanceof MemoryUsage) {
+			return (MemoryUsage)usage;
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads the cores of the nodes as they come online, so that they are 
+	 * known before the first MrBayes build runs in them.
+	 */
+	@Extension
+	public static class NodeCoresListener extends ComputerListener {
+		
+		/* (non-Javadoc)
+		 * @see hudson.slaves.ComputerListener#onOnline(hudson.model.Computer, hudson.model.TaskListener)
+		 */
+		@Override
+		public void onOnline(Computer c, TaskListener listener) throws IOException, InterruptedException {
+			final Node node = c.getNode();
+			if(node != null && c.getChannel() != null) {
+				setCores(node, NodeResources.of(c.getChannel()).getCores());
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.Action;
+
+import java.io.Serializable;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Added to a build where MrBayes resumed from the checkpoint left by a 
+ * previous build. Shown in the build page.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@ExportedBean
+public class MrBayesResumeAction implements Action, Serializable {
+
+	private static final long serialVersionUID = 3126402227386006361L;
+
+	/**
+	 * NEXUS file resumed.
+	 */
+	private final String inputFile;
+	
+	/**
+	 * Generations kept from the previous build.
+	 */
+	private final long resumedGenerations;
+	
+	/**
+	 * Generations of the previous build run after the checkpoint, and so 
+	 * computed again.
+	 */
+	private final long recomputedGenerations;
+	
+	public MrBayesResumeAction(String inputFile, long resumedGenerations, long recomputedGenerations) {
+		this.inputFile = inputFile;
+		this.resumedGenerations = resumedGenerations;
+		this.recomputedGenerations = recomputedGenerations;
+	}
+	
+	/**
+	 * @return the inputFile
+	 */
+	@Exported
+	public String getInputFile() {
+		return inputFile;
+	}
+	
+	/**
+	 * @return the resumedGenerations
+	 */
+	@Exported
+	public long getResumedGenerations() {
+		return resumedGenerations;
+	}
+	
+	/**
+	 * @return the recomputedGenerations
+	 */
+	@Exported
+	public long getRecomputedGenerations() {
+		return recomputedGenerations;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getIconFileName()
+	 */
+	public String getIconFileName() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getDisplayName()
+	 */
+	public String getDisplayName() {
+		return Messages.MrBayesResumeAction_DisplayName();
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getUrlName()
+	 */
+	public String getUrlName() {
+		return null;
+	}
+	
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+
+import java.io.Serializable;
+import java.util.List;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Rates of the swaps between the heated chains of an analysis run by a
+ * build, and the temperature proposed for the next build, that moves the
+ * rates of the swaps between adjacent chains toward the range from
+ * {@link SwapAcceptance#MIN_RATE} to {@link SwapAcceptance#MAX_RATE}.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@ExportedBean
+public class MrBayesSwapAction implements Action, Serializable {
+
+	private static final long serialVersionUID = -4818096270371893425L;
+
+	/**
+	 * Number of previous builds searched for the temperature of an analysis.
+	 */
+	private static final int BUILDS = 10;
+
+	/**
+	 * NEXUS file analysed.
+	 */
+	private final String inputFile;
+
+	private final SwapAcceptance swapAcceptance;
+
+	/**
+	 * Temperature of the chains, or -1 if unknown.
+	 */
+	private final double temperature;
+
+	/**
+	 * Whether the temperature was set by the plug-in.
+	 */
+	private final boolean tuned;
+
+	/**
+	 * Temperature for the next build, or -1 if unknown.
+	 */
+	private final double nextTemperature;
+
+	/**
+	 * @param inputFile NEXUS file analysed
+	 * @param swapAcceptance rates read from the output of MrBayes
+	 * @param tunedTemperature temperature set by the plug-in, or -1 if
+	 * MrBayes ran with the temperature of the NEXUS file
+	 */
+	public MrBayesSwapAction(String inputFile, SwapAcceptance swapAcceptance, double tunedTemperature) {
+		this.inputFile = inputFile;
+		this.swapAcceptance = swapAcceptance;
+		this.tuned = tunedTemperature > 0.0d;
+		this.temperature = (swapAcceptance.getTemperature() > 0.0d ? swapAcceptance.getTemperature() : tunedTemperature);
+		final double proposed = SwapAcceptance.propose(temperature, swapAcceptance.getMeanAdjacentRate(),
+				SwapAcceptance.MIN_RATE, SwapAcceptance.MAX_RATE);
+		// keep a tuned temperature when the rates are not known
+		this.nextTemperature = (proposed > 0.0d ? proposed : tunedTemperature);
+	}
+
+	/**
+	 * @return the inputFile
+	 */
+	@Exported
+	public String getInputFile() {
+		return inputFile;
+	}
+
+	/**
+	 * @return the temperature of the chains, or -1 if unknown
+	 */
+	@Exported
+	public double getTemperature() {
+		return temperature;
+	}
+
+	/**
+	 * @return whether the temperature was set by the plug-in
+	 */
+	@Exported
+	public boolean isTuned() {
+		return tuned;
+	}
+
+	/**
+	 * @return the rates of the swaps between adjacent chains, averaged over
+	 * the runs
+	 */
+	@Exported
+	public double[] getAdjacentRates() {
+		return swapAcceptance.getAdjacentRates();
+	}
+
+	/**
+	 * @return the mean rate of the swaps between adjacent chains, or NaN if
+	 * not known
+	 */
+	@Exported
+	public double getMeanAdjacentRate() {
+		return swapAcceptance.getMeanAdjacentRate();
+	}
+
+	/**
+	 * @return the rates of the swaps of each run, <code>rates[i][j]</code>
+	 * being the rate between chains i + 1 and j + 1, for i &lt; j
+	 */
+	public List<double[][]> getRuns() {
+		return swapAcceptance.getRuns();
+	}
+
+	/**
+	 * @return the temperature for the next build, or -1 if unknown
+	 */
+	@Exported
+	public double getNextTemperature() {
+		return nextTemperature;
+	}
+
+	/**
+	 * @return the adjacent rates, formatted for the build log and page
+	 */
+	public String getAdjacentRatesText() {
+		final StringBuilder sb = new StringBuilder();
+		for(double rate : getAdjacentRates()) {
+			if(sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(String.format("%.2f", rate));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param build a build
+	 * @param inputFile NEXUS file analysed
+	 * @return the rates of the analysis in the last of the previous builds
+	 * that ran it, or <code>null</code> if none of the last builds did
+	 */
+	public static MrBayesSwapAction findPrevious(AbstractBuild<?, ?> build, String inputFile) {
+		AbstractBuild<?, ?> previous = build.getPreviousBuild();
+		for(int i = 0; previous != null && i < BUILDS; ++i) {
+			final List<MrBayesSwapAction> actions = previous.getActions(MrBayesSwapAction.class);
+			if(actions != null) {
+				for(MrBayesSwapAction action : actions) {
+					if(action.getInputFile().equals(inputFile)) {
+						return action;
+					}
+				}
+			}
+			previous = previous.getPreviousBuild();
+		}
+		return null;
+	}
+
+	/**
+	 * @param temperature a temperature
+	 * @return the temperature, as given to MrBayes
+	 */
+	public static String format(double temperature) {
+		return Double.toString(temperature);
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getDisplayName()
+	 */
+	public String getDisplayName() {
+		return Messages.MrBayesSwapAction_DisplayName();
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getIconFileName()
+	 */
+	public String getIconFileName() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getUrlName()
+	 */
+	public String getUrlName() {
+		return null;
+	}
+
+}
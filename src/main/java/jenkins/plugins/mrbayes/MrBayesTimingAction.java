@@ -0,0 +1,334 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.Action;
+import hudson.model.Api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Time spent by a build in each phase of its analyses, with the CPU time and
+ * peak memory of MrBayes and its speed in generations per second. Shown in
+ * the build page, exported in the remote API, under the URL of the action,
+ * and aggregated by {@link MrBayesMetricsAction}.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@ExportedBean
+public class MrBayesTimingAction implements Action, Serializable {
+
+	private static final long serialVersionUID = -5026409386172245514L;
+
+	/**
+	 * Checking the NEXUS file.
+	 */
+	public static final String VALIDATION = "validation";
+
+	/**
+	 * Looking up and restoring the result cache.
+	 */
+	public static final String CACHE = "cache";
+
+	/**
+	 * From the start of MrBayes to its first generation.
+	 */
+	public static final String STARTUP = "startup";
+
+	/**
+	 * Running MrBayes, including its start up.
+	 */
+	public static final String MCMC = "mcmc";
+
+	/**
+	 * Writing the summaries of a converged analysis and storing the results
+	 * in the cache.
+	 */
+	public static final String POSTPROCESSING = "postprocessing";
+
+	/**
+	 * Analyses of the build. Batch builds add to it in parallel.
+	 */
+	private final List<Record> records = new ArrayList<Record>();
+
+	/**
+	 * @return the records, one per analysis
+	 */
+	@Exported
+	public List<Record> getRecords() {
+		synchronized (records) {
+			return Collections.unmodifiableList(new ArrayList<Record>(records));
+		}
+	}
+
+	/**
+	 * @param record timing of an analysis
+	 */
+	public void add(Record record) {
+		synchronized (records) {
+			records.add(record);
+		}
+	}
+
+	/**
+	 * @return the remote API of this action, under its URL
+	 */
+	public Api getApi() {
+		return new Api(this);
+	}
+
+	/**
+	 * @param value a rate, or -1
+	 * @return the rate with four significant digits, or n/a
+	 */
+	public static String format(double value) {
+		if(value < 0) {
+			return "n/a";
+		}
+		return MrBayesTraceAction.format(value);
+	}
+
+	/**
+	 * @param millis a duration, in milliseconds, or -1
+	 * @return the duration in seconds, or n/a
+	 */
+	public static String formatSeconds(long millis) {
+		if(millis < 0) {
+			return "n/a";
+		}
+		return MrBayesTraceAction.format(millis / 1000.0d);
+	}
+
+	/**
+	 * @param bytes a size, in bytes, or -1
+	 * @return the size in megabytes, or n/a
+	 */
+	public static String formatMegabytes(long bytes) {
+		if(bytes < 0) {
+			return "n/a";
+		}
+		return Long.toString(MemoryEstimate.toMegabytes(bytes));
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getDisplayName()
+	 */
+	public String getDisplayName() {
+		return Messages.MrBayesTimingAction_DisplayName();
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getIconFileName()
+	 */
+	public String getIconFileName() {
+		return "clock.gif";
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getUrlName()
+	 */
+	public String getUrlName() {
+		return "mrbayesTiming";
+	}
+
+	/**
+	 * Timing of the analysis of a NEXUS file.
+	 */
+	@ExportedBean(defaultVisibility = 2)
+	public static class Record implements Serializable {
+
+		private static final long serialVersionUID = 3312796416125358590L;
+
+		private final String inputFile;
+
+		private final String installation;
+
+		private final String node;
+
+		private double generationsPerSecond = -1.0d;
+
+		private final List<Phase> phases = new ArrayList<Phase>();
+
+		/**
+		 * @param inputFile NEXUS file analysed
+		 * @param installation name of the MrBayes installation
+		 * @param node name of the node, empty for the master
+		 */
+		public Record(String inputFile, String installation, String node) {
+			this.inputFile = inputFile;
+			this.installation = installation;
+			this.node = node;
+		}
+
+		/**
+		 * @return the inputFile
+		 */
+		@Exported
+		public String getInputFile() {
+			return inputFile;
+		}
+
+		/**
+		 * @return the name of the MrBayes installation
+		 */
+		@Exported
+		public String getInstallation() {
+			return installation;
+		}
+
+		/**
+		 * @return the name of the node, empty for the master
+		 */
+		@Exported
+		public String getNode() {
+			return node;
+		}
+
+		/**
+		 * @return generations per second, or -1 if not known
+		 */
+		@Exported
+		public double getGenerationsPerSecond() {
+			return generationsPerSecond;
+		}
+
+		/**
+		 * @param generationsPerSecond generations per second, or -1
+		 */
+		public void setGenerationsPerSecond(double generationsPerSecond) {
+			this.generationsPerSecond = generationsPerSecond;
+		}
+
+		/**
+		 * @return the phases, in the order they ran
+		 */
+		@Exported
+		public synchronized List<Phase> getPhases() {
+			return Collections.unmodifiableList(new ArrayList<Phase>(phases));
+		}
+
+		/**
+		 * @param name name of the phase
+		 * @return the phase, or <code>null</code> if it didn't run
+		 */
+		public synchronized Phase getPhase(String name) {
+			for(Phase phase : phases) {
+				if(phase.getName().equals(name)) {
+					return phase;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @param phase a phase of the analysis
+		 */
+		public synchronized void add(Phase phase) {
+			phases.add(phase);
+		}
+
+	}
+
+	/**
+	 * Resources used by a phase of an analysis.
+	 */
+	@ExportedBean(defaultVisibility = 3)
+	public static class Phase implements Serializable {
+
+		private static final long serialVersionUID = -1587702296383563370L;
+
+		private final String name;
+
+		private final long wallTime;
+
+		private final long cpuTime;
+
+		private final long peakRss;
+
+		/**
+		 * @param name name of the phase
+		 * @param wallTime elapsed time, in milliseconds
+		 * @param cpuTime CPU time of MrBayes, in milliseconds, or -1
+		 * @param peakRss peak resident set size of MrBayes, in bytes, or -1
+		 */
+		public Phase(String name, long wallTime, long cpuTime, long peakRss) {
+			this.name = name;
+			this.wallTime = wallTime;
+			this.cpuTime = cpuTime;
+			this.peakRss = peakRss;
+		}
+
+		/**
+		 * @param name name of the phase
+		 * @param wallTime elapsed time, in milliseconds
+		 */
+		public Phase(String name, long wallTime) {
+			this(name, wallTime, -1L, -1L);
+		}
+
+		/**
+		 * @return the name
+		 */
+		@Exported
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the elapsed time, in milliseconds
+		 */
+		@Exported
+		public long getWallTime() {
+			return wallTime;
+		}
+
+		/**
+		 * @return the CPU time of MrBayes, in milliseconds, or -1 if not known
+		 */
+		@Exported
+		public long getCpuTime() {
+			return cpuTime;
+		}
+
+		/**
+		 * @return the peak resident set size of MrBayes, in bytes, or -1 if
+		 * not known
+		 */
+		@Exported
+		public long getPeakRss() {
+			return peakRss;
+		}
+
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.Action;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Summaries of the MrBayes traces of a build, shown in the build page and 
+ * exported in the remote API.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@ExportedBean
+public class MrBayesTraceAction implements Action, Serializable {
+
+	private static final long serialVersionUID = 7402512903622541167L;
+	
+	private final List<TraceSummary> summaries;
+	
+	private final List<ConsensusSummary> consensuses;
+	
+	public MrBayesTraceAction(List<TraceSummary> summaries) {
+		this(summaries, null);
+	}
+	
+	public MrBayesTraceAction(List<TraceSummary> summaries, List<ConsensusSummary> consensuses) {
+		this.summaries = summaries;
+		this.consensuses = consensuses;
+	}
+	
+	/**
+	 * @return the summaries, one per analysis
+	 */
+	@Exported
+	public List<TraceSummary> getSummaries() {
+		return Collections.unmodifiableList(summaries);
+	}
+	
+	/**
+	 * @return the consensus trees, one per analysis
+	 */
+	@Exported
+	public List<ConsensusSummary> getConsensuses() {
+		if(consensuses == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(consensuses);
+	}
+	
+	/**
+	 * @param value a statistic
+	 * @return the statistic with four significant digits, or n/a if NaN
+	 */
+	public static String format(double value) {
+		if(Double.isNaN(value) || Double.isInfinite(value)) {
+			return "n/a";
+		}
+		if(Math.abs(value) >= 10000.0d) {
+			return String.format("%.0f", value);
+		}
+		return String.format("%.4g", value);
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getDisplayName()
+	 */
+	public String getDisplayName() {
+		return Messages.MrBayesTraceAction_DisplayName();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getIconFileName()
+	 */
+	public String getIconFileName() {
+		return "graph.gif";
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getUrlName()
+	 */
+	public String getUrlName() {
+		return "mrbayesTrace";
+	}
+	
+}
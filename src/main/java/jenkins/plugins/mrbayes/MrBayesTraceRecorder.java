@@ -0,0 +1,292 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.BuildListener;
+import hudson.model.Project;
+import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Builder;
+import hudson.tasks.Recorder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Summarizes the parameter traces (.p files) written by MrBayes: mean, 
+ * effective sample size and potential scale reduction factor of each 
+ * parameter, after the burn-in. The traces are read in the node where they 
+ * were written, and only the summaries are kept in the build, in a 
+ * {@link MrBayesTraceAction}. The log likelihood and ASDSF traces are 
+ * also downsampled and kept, for the convergence plots of the build and the 
+ * trends of the project.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class MrBayesTraceRecorder extends Recorder {
+
+	// before the output recorder, which reduces the files read here
+	@Extension(ordinal = 20)
+	public static final MrBayesTraceRecorderDescriptor DESCRIPTOR = new MrBayesTraceRecorderDescriptor();
+	
+	/**
+	 * MrBayes default burn-in fraction (relburnin=yes burninfrac=0.25).
+	 */
+	public static final double DEFAULT_BURNIN_FRACTION = 0.25d;
+	
+	/**
+	 * Pattern of the trace files, or blank for the traces of the NEXUS files 
+	 * run by the MrBayes build steps of the project.
+	 */
+	private final String traceFiles;
+	
+	/**
+	 * Fraction of the samples of each run discarded as burn-in.
+	 */
+	private final String burninFraction;
+	
+	/**
+	 * Whether to summarize the tree files (.t) too, with a majority rule 
+	 * consensus and the split frequencies.
+	 */
+	private final Boolean consensus;
+	
+	/**
+	 * Whether to keep the downsampled traces of the build, for the 
+	 * convergence plots and trends.
+	 */
+	private final Boolean recordTrends;
+	
+	public MrBayesTraceRecorder(String traceFiles, String burninFraction) {
+		this(traceFiles, burninFraction, null);
+	}
+	
+	public MrBayesTraceRecorder(String traceFiles, String burninFraction, Boolean consensus) {
+		this(traceFiles, burninFraction, consensus, null);
+	}
+	
+	@DataBoundConstructor
+	public MrBayesTraceRecorder(String traceFiles, String burninFraction, Boolean consensus, Boolean recordTrends) {
+		this.traceFiles = traceFiles;
+		this.burninFraction = burninFraction;
+		this.consensus = ((consensus == null) ? Boolean.FALSE : consensus);
+		this.recordTrends = ((recordTrends == null) ? Boolean.TRUE : recordTrends);
+	}
+	
+	/**
+	 * @return the traceFiles
+	 */
+	public String getTraceFiles() {
+		return traceFiles;
+	}
+	
+	/**
+	 * @return the burninFraction
+	 */
+	public String getBurninFraction() {
+		return burninFraction;
+	}
+	
+	/**
+	 * @return the consensus
+	 */
+	public Boolean getConsensus() {
+		return ((consensus==null ? Boolean.FALSE : consensus));
+	}
+	
+	/**
+	 * @return the recordTrends
+	 */
+	public Boolean getRecordTrends() {
+		return ((recordTrends==null ? Boolean.TRUE : recordTrends));
+	}
+	
+	/**
+	 * @return the burn-in fraction, or the MrBayes default if not set or 
+	 * not in [0, 1)
+	 */
+	double getBurninFractionValue() {
+		double value = DEFAULT_BURNIN_FRACTION;
+		if(StringUtils.isNotBlank(this.burninFraction)) {
+			try {
+				value = Double.parseDouble(this.burninFraction.trim());
+			} catch (NumberFormatException nfe) {
+				value = DEFAULT_BURNIN_FRACTION;
+			}
+		}
+		return (value >= 0.0d && value < 1.0d ? value : DEFAULT_BURNIN_FRACTION);
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.tasks.BuildStep#getRequiredMonitorService()
+	 */
+	public BuildStepMonitor getRequiredMonitorService() {
+		return BuildStepMonitor.NONE;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.tasks.BuildStepCompatibilityLayer#perform(hudson.model.AbstractBuild, hudson.Launcher, hudson.model.BuildListener)
+	 */
+	@Override
+	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) 
+	throws InterruptedException, IOException {
+		final String pattern = getTracePattern(build.getProject(), TraceFile.EXTENSION);
+		listener.getLogger().println(Messages.MrBayesTraceRecorder_Summarizing(pattern));
+		final List<TraceSummary> summaries = build.getModuleRoot().act(new TraceSummarizer(pattern, getBurninFractionValue()));
+		if(summaries.isEmpty()) {
+			listener.getLogger().println(Messages.MrBayesTraceRecorder_NoTraceFiles(pattern));
+		}
+		for(TraceSummary summary : summaries) {
+			listener.getLogger().println(Messages.MrBayesTraceRecorder_Summary(summary.getAnalysis(), summary.getRuns(), 
+					summary.getSamples(), MrBayesTraceAction.format(summary.getMinEss()), MrBayesTraceAction.format(summary.getMaxPsrf())));
+		}
+		
+		final List<ConsensusSummary> consensuses = new ArrayList<ConsensusSummary>();
+		if(this.getConsensus()) {
+			final String treePattern = getTracePattern(build.getProject(), TreeFile.EXTENSION);
+			listener.getLogger().println(Messages.MrBayesTraceRecorder_SummarizingTrees(treePattern));
+			consensuses.addAll(build.getModuleRoot().act(new TreeSummarizer(treePattern, getBurninFractionValue())));
+			if(consensuses.isEmpty()) {
+				listener.getLogger().println(Messages.MrBayesTraceRecorder_NoTreeFiles(treePattern));
+			}
+			for(ConsensusSummary consensus : consensuses) {
+				listener.getLogger().println(Messages.MrBayesTraceRecorder_TreesParsed(consensus.getTrees(), 
+						consensus.getAnalysis(), consensus.getParseTime(), consensus.getTreesPerSecond()));
+				listener.getLogger().println(Messages.MrBayesTraceRecorder_Consensus(consensus.getAnalysis(), 
+						consensus.getAnalysis() + TreeSummarizer.CONSENSUS_EXTENSION, consensus.getAnalysis() + TreeSummarizer.TABLE_EXTENSION, 
+						MrBayesTraceAction.format(consensus.getAverageStdev())));
+			}
+		}
+		
+		if(!summaries.isEmpty() || !consensuses.isEmpty()) {
+			build.addAction(new MrBayesTraceAction(summaries, consensuses));
+		}
+		
+		if(this.getRecordTrends()) {
+			final List<TraceTrend> trends = build.getModuleRoot().act(new TrendCollector(pattern, TrendCollector.POINTS));
+			if(!trends.isEmpty()) {
+				setGenerationsPerSecond(trends, build.getAction(MrBayesTimingAction.class));
+				MrBayesTrendAction.save(build, trends);
+				build.addAction(new MrBayesTrendAction(trends));
+				listener.getLogger().println(Messages.MrBayesTraceRecorder_TrendsRecorded(trends.size(), TrendCollector.POINTS));
+			}
+		}
+		return Boolean.TRUE;
+	}
+	
+	/**
+	 * Sets the generations per second of each analysis, from the timing of 
+	 * the MrBayes build step that ran it.
+	 * 
+	 * @param trends trends of the analyses
+	 * @param timing timing of the build, or <code>null</code>
+	 */
+	static void setGenerationsPerSecond(List<TraceTrend> trends, MrBayesTimingAction timing) {
+		if(timing == null) {
+			return;
+		}
+		for(TraceTrend trend : trends) {
+			for(MrBayesTimingAction.Record record : timing.getRecords()) {
+				final String input = record.getInputFile().replace('\\', '/');
+				if(trend.getAnalysis().equals(input) || trend.getAnalysis().endsWith("/" + input)) {
+					trend.setGenerationsPerSecond(record.getGenerationsPerSecond());
+				}
+			}
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.tasks.BuildStepCompatibilityLayer#getProjectAction(hudson.model.AbstractProject)
+	 */
+	@Override
+	public Action getProjectAction(AbstractProject<?, ?> project) {
+		return (this.getRecordTrends() ? new MrBayesTrendProjectAction(project) : null);
+	}
+	
+	/**
+	 * @param project project of the build
+	 * @param extension extension of the files, {@link TraceFile#EXTENSION} 
+	 * or {@link TreeFile#EXTENSION}
+	 * @return the pattern of the trace or tree files, either the one 
+	 * configured, with the extension replaced, or the files of the NEXUS 
+	 * files run by the MrBayes build steps
+	 */
+	String getTracePattern(AbstractProject<?, ?> project, String extension) {
+		final List<String> patterns = new ArrayList<String>();
+		if(StringUtils.isNotBlank(this.traceFiles)) {
+			for(String pattern : this.traceFiles.split(",")) {
+				if(StringUtils.isNotBlank(pattern)) {
+					patterns.add(StringUtils.removeEnd(pattern.trim(), TraceFile.EXTENSION) + extension);
+				}
+			}
+			return StringUtils.join(patterns, ",");
+		}
+		if(project instanceof Project<?, ?>) {
+			for(Builder builder : ((Project<?, ?>)project).getBuilders()) {
+				if(builder instanceof MrBayesBuilder && ((MrBayesBuilder)builder).getInputFile() != null) {
+					patterns.add(getTracePattern(((MrBayesBuilder)builder).getInputFile(), extension));
+				}
+			}
+		}
+		return (patterns.isEmpty() ? "**/*" + extension : StringUtils.join(patterns, ","));
+	}
+	
+	/**
+	 * @param inputFile NEXUS file, or pattern of NEXUS files, of a MrBayes 
+	 * build step
+	 * @param extension extension of the files
+	 * @return the pattern of the files written for the NEXUS files, with a 
+	 * single run or several
+	 */
+	static String getTracePattern(String inputFile, String extension) {
+		final List<String> patterns = new ArrayList<String>();
+		for(String input : inputFile.split(",")) {
+			if(StringUtils.isNotBlank(input)) {
+				patterns.add(input.trim() + extension);
+				patterns.add(input.trim() + ".run*" + extension);
+			}
+		}
+		return StringUtils.join(patterns, ",");
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.tasks.Publisher#getDescriptor()
+	 */
+	@Override
+	public MrBayesTraceRecorderDescriptor getDescriptor() {
+		return (MrBayesTraceRecorderDescriptor)super.getDescriptor();
+	}
+	
+}
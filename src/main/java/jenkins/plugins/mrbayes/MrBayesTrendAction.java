@@ -0,0 +1,286 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Convergence of the MrBayes analyses of a build. The build keeps the final
+ * values of each analysis, for the trends of the project, and the
+ * downsampled traces are read from {@link #FILE_NAME}, in the build
+ * directory, only when they are plotted.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@ExportedBean
+public class MrBayesTrendAction implements Action, Serializable {
+
+	private static final long serialVersionUID = 3387402213560913446L;
+
+	private static final Logger LOGGER = Logger.getLogger(MrBayesTrendAction.class.getName());
+
+	/**
+	 * File of the traces, in the build directory.
+	 */
+	public static final String FILE_NAME = "mrbayes-trend.bin";
+
+	private final List<Analysis> analyses = new ArrayList<Analysis>();
+
+	private transient SoftReference<List<TraceTrend>> trends;
+
+	public MrBayesTrendAction(List<TraceTrend> trends) {
+		for(TraceTrend trend : trends) {
+			analyses.add(new Analysis(trend));
+		}
+		this.trends = new SoftReference<List<TraceTrend>>(trends);
+	}
+
+	/**
+	 * @return the final values of each analysis
+	 */
+	@Exported
+	public List<Analysis> getAnalyses() {
+		return Collections.unmodifiableList(analyses);
+	}
+
+	/**
+	 * @param name name of an analysis
+	 * @return the analysis, or <code>null</code> if not in the build
+	 */
+	public Analysis getAnalysis(String name) {
+		for(Analysis analysis : analyses) {
+			if(analysis.getName().equals(name)) {
+				return analysis;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the trends of a build to its directory.
+	 *
+	 * @param build the build
+	 * @param trends trends of the analyses of the build
+	 */
+	public static void save(AbstractBuild<?, ?> build, List<TraceTrend> trends) throws IOException {
+		TraceTrend.write(trends, new File(build.getRootDir(), FILE_NAME));
+	}
+
+	/**
+	 * @param build the build of the action
+	 * @return the trends of the build, read from its directory the first
+	 * time, or empty if they can't be read
+	 */
+	public synchronized List<TraceTrend> getTrends(AbstractBuild<?, ?> build) {
+		List<TraceTrend> loaded = (trends == null ? null : trends.get());
+		if(loaded == null) {
+			try {
+				loaded = TraceTrend.read(new File(build.getRootDir(), FILE_NAME));
+			} catch (IOException ioe) {
+				LOGGER.log(Level.WARNING, "Failed to read the MrBayes trends of " + build, ioe);
+				loaded = Collections.emptyList();
+			}
+			trends = new SoftReference<List<TraceTrend>>(loaded);
+		}
+		return loaded;
+	}
+
+	/**
+	 * Plots the log likelihood of each run of the analysis in the parameter
+	 * <code>analysis</code>.
+	 */
+	public void doLnlGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		final AbstractBuild<?, ?> build = req.findAncestorObject(AbstractBuild.class);
+		final TraceTrend trend = getTrend(build, req.getParameter("analysis"));
+		final XYSeriesCollection dataset = new XYSeriesCollection();
+		if(trend != null) {
+			for(TraceTrend.Series run : trend.getRuns()) {
+				dataset.addSeries(toXYSeries(run));
+			}
+		}
+		new TrendGraph(build.getTimestamp(), dataset, Messages.MrBayesTrendAction_Generation(),
+				Messages.MrBayesTrendAction_Lnl()).doPng(req, rsp);
+	}
+
+	/**
+	 * Plots the ASDSF of the analysis in the parameter <code>analysis</code>.
+	 */
+	public void doAsdsfGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		final AbstractBuild<?, ?> build = req.findAncestorObject(AbstractBuild.class);
+		final TraceTrend trend = getTrend(build, req.getParameter("analysis"));
+		final XYSeriesCollection dataset = new XYSeriesCollection();
+		if(trend != null && trend.getAsdsf() != null) {
+			dataset.addSeries(toXYSeries(trend.getAsdsf()));
+		}
+		new TrendGraph(build.getTimestamp(), dataset, Messages.MrBayesTrendAction_Generation(),
+				Messages.MrBayesTrendAction_Asdsf()).doPng(req, rsp);
+	}
+
+	private TraceTrend getTrend(AbstractBuild<?, ?> build, String analysis) {
+		for(TraceTrend trend : getTrends(build)) {
+			if(trend.getAnalysis().equals(analysis)) {
+				return trend;
+			}
+		}
+		return null;
+	}
+
+	private static XYSeries toXYSeries(TraceTrend.Series series) {
+		final XYSeries xy = new XYSeries(series.getName());
+		for(int i = 0; i < series.size(); ++i) {
+			xy.add(series.getGeneration(i), series.getValue(i));
+		}
+		return xy;
+	}
+
+	/**
+	 * @param value a final value
+	 * @return the value with four significant digits, or n/a if NaN
+	 */
+	public static String format(double value) {
+		return MrBayesTraceAction.format(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getDisplayName()
+	 */
+	public String getDisplayName() {
+		return Messages.MrBayesTrendAction_DisplayName();
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getIconFileName()
+	 */
+	public String getIconFileName() {
+		return "graph.gif";
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getUrlName()
+	 */
+	public String getUrlName() {
+		return "mrbayesConvergence";
+	}
+
+	/**
+	 * Final values of an analysis, plotted across the builds of the project.
+	 */
+	@ExportedBean(defaultVisibility = 2)
+	public static class Analysis implements Serializable {
+
+		private static final long serialVersionUID = -1538705215880642193L;
+
+		private final String name;
+
+		private final int runs;
+
+		private final boolean asdsf;
+
+		private final double finalAsdsf;
+
+		private final double finalLnl;
+
+		private final double generationsPerSecond;
+
+		public Analysis(TraceTrend trend) {
+			this.name = trend.getAnalysis();
+			this.runs = trend.getRuns().size();
+			this.asdsf = trend.getAsdsf() != null;
+			this.finalAsdsf = trend.getFinalAsdsf();
+			this.finalLnl = trend.getFinalLnl();
+			this.generationsPerSecond = (trend.getGenerationsPerSecond() < 0.0d ? Double.NaN : trend.getGenerationsPerSecond());
+		}
+
+		/**
+		 * @return the analysis, i.e. the NEXUS file run
+		 */
+		@Exported
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the number of runs
+		 */
+		@Exported
+		public int getRuns() {
+			return runs;
+		}
+
+		/**
+		 * @return whether the ASDSF was recorded
+		 */
+		public boolean isAsdsf() {
+			return asdsf;
+		}
+
+		/**
+		 * @return the last ASDSF, or NaN if not known
+		 */
+		@Exported
+		public double getFinalAsdsf() {
+			return finalAsdsf;
+		}
+
+		/**
+		 * @return the mean of the last log likelihood of the runs, or NaN if
+		 * not known
+		 */
+		@Exported
+		public double getFinalLnl() {
+			return finalLnl;
+		}
+
+		/**
+		 * @return the generations per second, or NaN if not known
+		 */
+		@Exported
+		public double getGenerationsPerSecond() {
+			return generationsPerSecond;
+		}
+
+	}
+
+}
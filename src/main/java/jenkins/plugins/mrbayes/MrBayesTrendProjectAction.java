@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Trends of the MrBayes analyses of a project, across its last builds: the
+ * final ASDSF, the final log likelihood and the generations per second of
+ * each analysis, from the {@link MrBayesTrendAction} of each build.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class MrBayesTrendProjectAction implements Action {
+
+	/**
+	 * Number of builds plotted.
+	 */
+	public static final int BUILDS = Integer.getInteger(MrBayesTrendProjectAction.class.getName() + ".builds", 50);
+
+	private final AbstractProject<?, ?> project;
+
+	public MrBayesTrendProjectAction(AbstractProject<?, ?> project) {
+		this.project = project;
+	}
+
+	/**
+	 * @return the project
+	 */
+	public AbstractProject<?, ?> getProject() {
+		return project;
+	}
+
+	/**
+	 * @return the trends of the last build that recorded them, or
+	 * <code>null</code> if none did
+	 */
+	public MrBayesTrendAction getLastAction() {
+		int read = 0;
+		for(AbstractBuild<?, ?> build : project.getBuilds()) {
+			if(read++ >= BUILDS) {
+				break;
+			}
+			final MrBayesTrendAction action = build.getAction(MrBayesTrendAction.class);
+			if(action != null) {
+				return action;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Plots the final ASDSF of each analysis.
+	 */
+	public void doAsdsfGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		plot(req, rsp, new Value() {
+			public double get(MrBayesTrendAction.Analysis analysis) {
+				return analysis.getFinalAsdsf();
+			}
+		}, Messages.MrBayesTrendProjectAction_FinalAsdsf());
+	}
+
+	/**
+	 * Plots the final log likelihood of each analysis.
+	 */
+	public void doLnlGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		plot(req, rsp, new Value() {
+			public double get(MrBayesTrendAction.Analysis analysis) {
+				return analysis.getFinalLnl();
+			}
+		}, Messages.MrBayesTrendProjectAction_FinalLnl());
+	}
+
+	/**
+	 * Plots the generations per second of each analysis.
+	 */
+	public void doSpeedGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		plot(req, rsp, new Value() {
+			public double get(MrBayesTrendAction.Analysis analysis) {
+				return analysis.getGenerationsPerSecond();
+			}
+		}, Messages.MrBayesTrendProjectAction_GenerationsPerSecond());
+	}
+
+	private void plot(StaplerRequest req, StaplerResponse rsp, Value value, String yLabel) throws IOException {
+		final Map<String, XYSeries> series = new TreeMap<String, XYSeries>();
+		Calendar timestamp = null;
+		int read = 0;
+		for(AbstractBuild<?, ?> build : project.getBuilds()) {
+			if(read++ >= BUILDS) {
+				break;
+			}
+			final MrBayesTrendAction action = build.getAction(MrBayesTrendAction.class);
+			if(build.isBuilding() || action == null) {
+				continue;
+			}
+			if(timestamp == null) {
+				timestamp = build.getTimestamp();
+			}
+			for(MrBayesTrendAction.Analysis analysis : action.getAnalyses()) {
+				final double y = value.get(analysis);
+				if(Double.isNaN(y) || Double.isInfinite(y)) {
+					continue;
+				}
+				XYSeries xy = series.get(analysis.getName());
+				if(xy == null) {
+					xy = new XYSeries(analysis.getName());
+					series.put(analysis.getName(), xy);
+				}
+				xy.add(build.getNumber(), y);
+			}
+		}
+		final XYSeriesCollection dataset = new XYSeriesCollection();
+		for(XYSeries xy : series.values()) {
+			dataset.addSeries(xy);
+		}
+		new TrendGraph(timestamp == null ? Calendar.getInstance() : timestamp, dataset,
+				Messages.MrBayesTrendProjectAction_Build(), yLabel).doPng(req, rsp);
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getDisplayName()
+	 */
+	public String getDisplayName() {
+		return Messages.MrBayesTrendProjectAction_DisplayName();
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getIconFileName()
+	 */
+	public String getIconFileName() {
+		return "graph.gif";
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.Action#getUrlName()
+	 */
+	public String getUrlName() {
+		return "mrbayesTrend";
+	}
+
+	/**
+	 * Value of an analysis plotted.
+	 */
+	private interface Value {
+
+		/**
+		 * @return the value, or NaN if not known
+		 */
+		double get(MrBayesTrendAction.Analysis analysis);
+
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.ParseException;
+
+/**
+ * Copies a NEXUS file, changing the commands of its mrbayes blocks. The file
+ * is read with the tokens of {@link NexusScanner}, so that commands within
+ * comments or quotes are not taken for commands, and everything that is not
+ * changed, comments and white space included, is copied as it is.
+ * <p>
+ * Subclasses tell what is added at the start of each mrbayes block and which
+ * commands, command names and option values are replaced.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public abstract class NexusRewriter {
+
+	/**
+	 * Copies a NEXUS file.
+	 *
+	 * @param reader original NEXUS file
+	 * @param writer copy
+	 * @throws IOException if the file can't be read or written, or is not a
+	 * valid NEXUS file
+	 */
+	public void rewrite(Reader reader, Writer writer) throws IOException {
+		final NexusScanner scanner = new NexusScanner(reader);
+		scanner.startCopying();
+		try {
+			boolean inMrBayesBlock = false;
+			String command;
+			while((command = scanner.nextToken()) != null) {
+				writer.write(scanner.takeLeadingText());
+				if(NexusScanner.isSemicolon(command) || NexusScanner.NEXUS_HEADER.equalsIgnoreCase(command)) {
+					// the header is not a command, it has no semicolon
+					writer.write(scanner.takeText());
+				} else if("begin".equalsIgnoreCase(command)) {
+					final String blockName = scanner.nextToken();
+					copyCommand(scanner, blockName, writer);
+					if(NexusScanner.MRBAYES_BLOCK.equalsIgnoreCase(blockName)) {
+						inMrBayesBlock = true;
+						writer.write(begin());
+					}
+				} else if(!inMrBayesBlock || "end".equalsIgnoreCase(command) || "endblock".equalsIgnoreCase(command)) {
+					inMrBayesBlock = false;
+					copyCommand(scanner, command, writer);
+				} else {
+					rewriteCommand(scanner, command, writer);
+				}
+			}
+			writer.write(scanner.takeText());
+		} catch (ParseException pe) {
+			throw new IOException(pe.getMessage());
+		}
+	}
+
+	/**
+	 * Copies the rest of a command, up to and including its semicolon.
+	 *
+	 * @param token last token read
+	 */
+	private void copyCommand(NexusScanner scanner, String token, Writer writer) throws IOException, ParseException {
+		String t = token;
+		while(t != null && !NexusScanner.isSemicolon(t)) {
+			t = scanner.nextToken();
+		}
+		writer.write(scanner.takeText());
+	}
+
+	/**
+	 * Writes a command of the mrbayes block, replacing it, its name or the
+	 * values of its options.
+	 */
+	private void rewriteCommand(NexusScanner scanner, String command, Writer writer) throws IOException, ParseException {
+		final String replacement = replace(command);
+		if(replacement != null) {
+			String t = command;
+			while(t != null && !NexusScanner.isSemicolon(t)) {
+				t = scanner.nextToken();
+				scanner.takeLeadingText();
+			}
+			scanner.takeText();
+			writer.write(replacement);
+			writer.write(t != null ? ";" : "");
+			return;
+		}
+		final String text = scanner.takeText();
+		final String name = rename(command);
+		writer.write(name != null ? name : text);
+
+		String option = null;
+		boolean expectingValue = false;
+		String t;
+		while((t = scanner.nextToken()) != null) {
+			writer.write(scanner.takeLeadingText());
+			final String token = scanner.takeText();
+			if(NexusScanner.isSemicolon(t)) {
+				writer.write(token);
+				return;
+			}
+			if(NexusScanner.isEquals(t)) {
+				expectingValue = (option != null);
+				writer.write(token);
+			} else if(expectingValue) {
+				final String value = option(command, option, t);
+				writer.write(value != null ? value : token);
+				option = null;
+				expectingValue = false;
+			} else {
+				option = t;
+				writer.write(token);
+			}
+		}
+	}
+
+	/**
+	 * @return the commands added after the begin command of a mrbayes block
+	 */
+	protected String begin() {
+		return "";
+	}
+
+	/**
+	 * @param command name of a command of the mrbayes block, as in the file
+	 * @return the command, without its semicolon, written instead of the
+	 * command and its options, or <code>null</code> to keep it
+	 */
+	protected String replace(String command) {
+		return null;
+	}
+
+	/**
+	 * @param command name of a command of the mrbayes block, as in the file
+	 * @return the name written instead, or <code>null</code> to keep it
+	 */
+	protected String rename(String command) {
+		return null;
+	}
+
+	/**
+	 * @param command name of a command of the mrbayes block, as in the file
+	 * @param option name of an option of the command
+	 * @param value value of the option, without quotes
+	 * @return the value written instead, quoted if needed, or
+	 * <code>null</code> to keep it
+	 */
+	protected String option(String command, String option, String value) {
+		return null;
+	}
+
+	/**
+	 * @return a value, quoted if it has spaces or quotes
+	 */
+	static String quote(String value) {
+		if(value.indexOf(' ') < 0 && value.indexOf('\'') < 0) {
+			return value;
+		}
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+}
@@ -0,0 +1,509 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+
+/**
+ * Streaming scanner for NEXUS files.
+ * <p>
+ * The file is read only once, in small chunks, and only the commands of the
+ * first mrbayes block, and the dimensions and format of the DATA, CHARACTERS
+ * and TAXA blocks, are tokenized. The rest of the file (matrices, TREES
+ * blocks, ...) is skipped character by character without being kept in
+ * memory, and tokens are truncated to {@link #MAX_TOKEN_LENGTH},
+ * so the memory used does not depend on the size of the file. Scanning stops
+ * as soon as the mrbayes block ends.
+ * <p>
+ * The tokens are also used by {@link NexusRewriter}, which has the scanner
+ * keep the text it reads, comments and quotes included, to copy it.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class NexusScanner {
+
+	public static final String NEXUS_HEADER = "#NEXUS";
+
+	public static final String MRBAYES_BLOCK = "mrbayes";
+
+	/**
+	 * Version of what the scanner finds. Increase it whenever the scanner or
+	 * {@link NexusSummary} change, so that {@link NexusValidationCache}
+	 * discards the summaries and parse errors cached by older code.
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * Tokens longer than this are truncated.
+	 */
+	public static final int MAX_TOKEN_LENGTH = 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int EOF = -1;
+
+	private static final int NONE = -2;
+
+	/*
+	 * Punctuation tokens. Compared by reference, so that a quoted ';' or '='
+	 * is not taken for punctuation.
+	 */
+	private static final String SEMICOLON = new String(";");
+
+	private static final String EQUALS = new String("=");
+
+	private final Reader reader;
+
+	private final char[] buffer = new char[BUFFER_SIZE];
+
+	private int position = 0;
+
+	private int limit = 0;
+
+	private int pushback = NONE;
+
+	/**
+	 * Number of characters consumed, used in error messages.
+	 */
+	private long offset = 0L;
+
+	private final StringBuilder token = new StringBuilder();
+
+	/**
+	 * Text read and not taken yet, when copying.
+	 */
+	private StringBuilder text;
+
+	/**
+	 * Where the last token starts in the text.
+	 */
+	private int tokenStart = 0;
+
+	/**
+	 * @param reader reader for the NEXUS file. Not closed by the scanner.
+	 */
+	public NexusScanner(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Scans the NEXUS file.
+	 *
+	 * @return what was found in the file
+	 * @throws IOException if the file cannot be read
+	 * @throws ParseException if the file is not a valid NEXUS file
+	 */
+	public NexusSummary scan() throws IOException, ParseException {
+		final NexusSummary summary = new NexusSummary();
+
+		final String header = nextToken();
+		if(header == null || !NEXUS_HEADER.equalsIgnoreCase(header)) {
+			throw new ParseException("File does not start with " + NEXUS_HEADER, 0);
+		}
+
+		String command;
+		while((command = nextToken()) != null) {
+			if(command == SEMICOLON) {
+				continue;
+			}
+			if("begin".equalsIgnoreCase(command)) {
+				final String blockName = nextToken();
+				if(blockName == null || blockName == SEMICOLON) {
+					throw error("Missing block name");
+				}
+				skipToEndOfCommand();
+				summary.addBlock();
+				if(MRBAYES_BLOCK.equalsIgnoreCase(blockName)) {
+					summary.setMrBayesBlock(true);
+					parseMrBayesBlock(summary);
+					return summary;
+				} else if(isDataBlock(blockName)) {
+					parseDataBlock(summary, blockName);
+				} else {
+					skipBlock(blockName);
+				}
+			} else {
+				skipToEndOfCommand();
+			}
+		}
+
+		return summary;
+	}
+
+	/**
+	 * Reads the commands of the mrbayes block, up to its end command.
+	 */
+	private void parseMrBayesBlock(NexusSummary summary) throws IOException, ParseException {
+		String command;
+		while((command = nextToken()) != null) {
+			if(command == SEMICOLON) {
+				continue;
+			}
+			if(isEndOfBlock(command)) {
+				skipToEndOfCommand();
+				return;
+			} else if("set".equalsIgnoreCase(command)
+					|| "mcmc".equalsIgnoreCase(command)
+					|| "mcmcp".equalsIgnoreCase(command)) {
+				parseOptions(summary, command.toLowerCase());
+			} else if("execute".equalsIgnoreCase(command)) {
+				parseExecute(summary);
+			} else {
+				skipToEndOfCommand();
+			}
+		}
+		throw error("Unexpected end of file inside block [" + MRBAYES_BLOCK + "]");
+	}
+
+	private boolean isDataBlock(String blockName) {
+		return "data".equalsIgnoreCase(blockName) 
+				|| "characters".equalsIgnoreCase(blockName) 
+				|| "taxa".equalsIgnoreCase(blockName);
+	}
+	
+	/**
+	 * Reads the dimensions and format commands of a block with data, up to 
+	 * its end command. The matrix is skipped without creating tokens.
+	 */
+	private void parseDataBlock(NexusSummary summary, String blockName) throws IOException, ParseException {
+		String command;
+		while((command = nextToken()) != null) {
+			if(command == SEMICOLON) {
+				continue;
+			}
+			if(isEndOfBlock(command)) {
+				skipToEndOfCommand();
+				return;
+			} else if("dimensions".equalsIgnoreCase(command) 
+					|| "format".equalsIgnoreCase(command)) {
+				parseOptions(summary, command.toLowerCase());
+			} else {
+				skipToEndOfCommand();
+			}
+		}
+		throw error("Unexpected end of file inside block [" + blockName + "]");
+	}
+	
+	/**
+	 * Reads the <code>option=value</code> pairs of a command. Spaces around 
+	 * the equals sign are allowed.
+	 */
+	private void parseOptions(NexusSummary summary, String command) throws IOException, ParseException {
+		String option = null;
+		boolean expectingValue = false;
+		String t;
+		while((t = nextToken()) != SEMICOLON) {
+			if(t == null) {
+				throw error("Unexpected end of file inside " + command + " command");
+			}
+			if(t == EQUALS) {
+				expectingValue = (option != null);
+			} else if(expectingValue) {
+				setOption(summary, command, option, t);
+				option = null;
+				expectingValue = false;
+			} else {
+				option = t;
+			}
+		}
+	}
+
+	private void setOption(NexusSummary summary, String command, String option, String value) {
+		if("dimensions".equals(command)) {
+			if("ntax".equalsIgnoreCase(option)) {
+				summary.setNtax(toInteger(value));
+			} else if("nchar".equalsIgnoreCase(option)) {
+				summary.setNchar(toInteger(value));
+			}
+		} else if("format".equals(command)) {
+			if("datatype".equalsIgnoreCase(option)) {
+				summary.setDatatype(value.toLowerCase());
+			}
+		} else if("seed".equalsIgnoreCase(option)) {
+			summary.setSeed(value);
+		} else if("swapseed".equalsIgnoreCase(option)) {
+			summary.setSwapseed(value);
+		} else if("set".equals(command)) {
+			final Boolean yes = Boolean.valueOf("yes".equalsIgnoreCase(value));
+			if("autoclose".equalsIgnoreCase(option)) {
+				summary.setAutoclose(yes);
+			} else if("nowarn".equalsIgnoreCase(option)) {
+				summary.setNowarn(yes);
+			}
+		} else {
+			if("nruns".equalsIgnoreCase(option)) {
+				summary.setNruns(toInteger(value));
+			} else if("nchains".equalsIgnoreCase(option)) {
+				summary.setNchains(toInteger(value));
+			} else if("temp".equalsIgnoreCase(option)) {
+				summary.setTemp(value);
+			}
+		}
+	}
+
+	/**
+	 * @return the value as an integer, or <code>null</code> if it is not a 
+	 * valid positive integer
+	 */
+	private Integer toInteger(String value) {
+		try {
+			final int i = Integer.parseInt(value);
+			return (i > 0 ? Integer.valueOf(i) : null);
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+	}
+
+	private void parseExecute(NexusSummary summary) throws IOException, ParseException {
+		String t = nextToken();
+		if(t == null) {
+			throw error("Unexpected end of file inside execute command");
+		}
+		if(t != SEMICOLON) {
+			summary.addExecute(t);
+			skipToEndOfCommand();
+		}
+	}
+
+	/**
+	 * Skips every command of a block, up to its end command. Only the first
+	 * token of each command is read.
+	 */
+	private void skipBlock(String blockName) throws IOException, ParseException {
+		String command;
+		while((command = nextToken()) != null) {
+			if(command == SEMICOLON) {
+				continue;
+			}
+			skipToEndOfCommand();
+			if(isEndOfBlock(command)) {
+				return;
+			}
+		}
+		throw error("Unexpected end of file inside block [" + blockName + "]");
+	}
+
+	private boolean isEndOfBlock(String command) {
+		return "end".equalsIgnoreCase(command) || "endblock".equalsIgnoreCase(command);
+	}
+
+	/**
+	 * Skips everything up to and including the next semicolon that is not
+	 * within a comment or quotes, without creating tokens.
+	 */
+	private void skipToEndOfCommand() throws IOException, ParseException {
+		boolean tokenStart = true;
+		int c;
+		while((c = read()) != EOF) {
+			if(c == ';') {
+				return;
+			} else if(c == '[') {
+				skipComment();
+				tokenStart = true;
+			} else if(tokenStart && (c == '\'' || c == '"')) {
+				readQuoted((char)c, false);
+			} else {
+				tokenStart = (c == '=' || Character.isWhitespace(c));
+			}
+		}
+	}
+
+	/**
+	 * Keeps the text read from now on, for {@link #takeLeadingText()} and
+	 * {@link #takeText()}.
+	 */
+	void startCopying() {
+		text = new StringBuilder();
+		tokenStart = 0;
+	}
+
+	/**
+	 * @return the white space and comments read before the last token, which
+	 * are not returned again by {@link #takeText()}
+	 */
+	String takeLeadingText() {
+		final String leading = text.substring(0, tokenStart);
+		text.delete(0, tokenStart);
+		tokenStart = 0;
+		return leading;
+	}
+
+	/**
+	 * @return the text read and not taken yet, as it is in the file
+	 */
+	String takeText() {
+		final String s = text.toString();
+		text.setLength(0);
+		tokenStart = 0;
+		return s;
+	}
+
+	/**
+	 * @return whether a token is a semicolon, and not a quoted one
+	 */
+	static boolean isSemicolon(String token) {
+		return token == SEMICOLON;
+	}
+
+	/**
+	 * @return whether a token is an equals sign, and not a quoted one
+	 */
+	static boolean isEquals(String token) {
+		return token == EQUALS;
+	}
+
+	/**
+	 * Returns the next token, skipping white space and comments. Semicolons
+	 * and equals signs are returned as tokens on their own.
+	 *
+	 * @return the next token, or <code>null</code> at the end of the file
+	 */
+	String nextToken() throws IOException, ParseException {
+		int c;
+		while(true) {
+			c = read();
+			if(c == EOF) {
+				if(text != null) {
+					tokenStart = text.length();
+				}
+				return null;
+			} else if(c == '[') {
+				skipComment();
+			} else if(!Character.isWhitespace(c) && c != '\uFEFF') {
+				break;
+			}
+		}
+		if(text != null) {
+			tokenStart = text.length() - 1;
+		}
+
+		if(c == ';') {
+			return SEMICOLON;
+		}
+		if(c == '=') {
+			return EQUALS;
+		}
+
+		token.setLength(0);
+		if(c == '\'' || c == '"') {
+			readQuoted((char)c, true);
+			return token.toString();
+		}
+
+		append(c);
+		while((c = read()) != EOF) {
+			if(Character.isWhitespace(c) || c == ';' || c == '=' || c == '[') {
+				unread(c);
+				break;
+			}
+			append(c);
+		}
+		return token.toString();
+	}
+
+	/**
+	 * Reads a quoted token. Two consecutive quotes stand for a single quote.
+	 */
+	private void readQuoted(char quote, boolean keep) throws IOException, ParseException {
+		int c;
+		while((c = read()) != EOF) {
+			if(c == quote) {
+				final int next = read();
+				if(next != quote) {
+					unread(next);
+					return;
+				}
+			}
+			if(keep) {
+				append(c);
+			}
+		}
+		throw error("Unterminated quoted token");
+	}
+
+	/**
+	 * Skips a comment. Nested comments are allowed.
+	 */
+	private void skipComment() throws IOException, ParseException {
+		int depth = 1;
+		int c;
+		while((c = read()) != EOF) {
+			if(c == '[') {
+				depth++;
+			} else if(c == ']' && --depth == 0) {
+				return;
+			}
+		}
+		throw error("Unterminated comment");
+	}
+
+	private void append(int c) {
+		if(token.length() < MAX_TOKEN_LENGTH) {
+			token.append((char)c);
+		}
+	}
+
+	/**
+	 * Makes {@link #read()} return a character again.
+	 */
+	private void unread(int c) {
+		pushback = c;
+		if(text != null && c != EOF) {
+			text.setLength(text.length() - 1);
+		}
+	}
+
+	private int read() throws IOException {
+		if(pushback != NONE) {
+			final int c = pushback;
+			pushback = NONE;
+			if(text != null && c != EOF) {
+				text.append((char)c);
+			}
+			return c;
+		}
+		if(position == limit) {
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if(limit <= 0) {
+				limit = 0;
+				return EOF;
+			}
+		}
+		offset++;
+		final char c = buffer[position++];
+		if(text != null) {
+			text.append(c);
+		}
+		return c;
+	}
+
+	private ParseException error(String message) {
+		return new ParseException(message + " (at character " + offset + ")", (int)Math.min(offset, Integer.MAX_VALUE));
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What {@link NexusScanner} found in a NEXUS file. Only the settings the
+ * plug-in needs are kept, so that this object stays small regardless of the
+ * size of the file.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class NexusSummary implements Serializable {
+
+	private static final long serialVersionUID = 4700832731568519364L;
+
+	/**
+	 * MrBayes default number of independent runs.
+	 */
+	public static final int DEFAULT_NRUNS = 2;
+
+	/**
+	 * MrBayes default number of chains per run.
+	 */
+	public static final int DEFAULT_NCHAINS = 4;
+
+	/**
+	 * Whether a mrbayes block was found.
+	 */
+	private boolean mrBayesBlock = false;
+
+	/**
+	 * Value of autoclose in the set command of the mrbayes block.
+	 */
+	private Boolean autoclose;
+
+	/**
+	 * Value of nowarn in the set command of the mrbayes block.
+	 */
+	private Boolean nowarn;
+
+	/**
+	 * File called with the execute command of the mrbayes block.
+	 */
+	private String execute;
+	
+	/**
+	 * Files called with the execute commands of the mrbayes block, in order. 
+	 * <code>null</code> in summaries cached before it was added.
+	 */
+	private List<String> executes;
+	
+	/**
+	 * Number of blocks read, up to the mrbayes block.
+	 */
+	private int blocks = 0;
+
+	/**
+	 * Number of runs, from the mcmc or mcmcp commands of the mrbayes block.
+	 */
+	private Integer nruns;
+
+	/**
+	 * Number of chains, from the mcmc or mcmcp commands of the mrbayes block.
+	 */
+	private Integer nchains;
+
+	/**
+	 * Number of taxa, from the dimensions command of the DATA, CHARACTERS or 
+	 * TAXA blocks.
+	 */
+	private Integer ntax;
+	
+	/**
+	 * Number of characters, from the dimensions command of the DATA or 
+	 * CHARACTERS blocks.
+	 */
+	private Integer nchar;
+	
+	/**
+	 * Data type, in lower case, from the format command of the DATA or 
+	 * CHARACTERS blocks.
+	 */
+	private String datatype;
+	
+	/**
+	 * Seed of the random number generator, from the set command (or mcmc, 
+	 * in older versions of MrBayes) of the mrbayes block.
+	 */
+	private String seed;
+	
+	/**
+	 * Seed of the chain swapping, from the same commands as the seed.
+	 */
+	private String swapseed;
+	
+	/**
+	 * Heating temperature of the chains, from the mcmc or mcmcp commands of 
+	 * the mrbayes block.
+	 */
+	private String temp;
+	
+	/**
+	 * @return whether the file contains a mrbayes block
+	 */
+	public boolean hasMrBayesBlock() {
+		return mrBayesBlock;
+	}
+
+	/**
+	 * @param mrBayesBlock whether the file contains a mrbayes block
+	 */
+	public void setMrBayesBlock(boolean mrBayesBlock) {
+		this.mrBayesBlock = mrBayesBlock;
+	}
+
+	/**
+	 * @return the autoclose
+	 */
+	public Boolean getAutoclose() {
+		return autoclose;
+	}
+
+	/**
+	 * @param autoclose the autoclose to set
+	 */
+	public void setAutoclose(Boolean autoclose) {
+		this.autoclose = autoclose;
+	}
+
+	/**
+	 * @return the nowarn
+	 */
+	public Boolean getNowarn() {
+		return nowarn;
+	}
+
+	/**
+	 * @param nowarn the nowarn to set
+	 */
+	public void setNowarn(Boolean nowarn) {
+		this.nowarn = nowarn;
+	}
+
+	/**
+	 * @return the execute
+	 */
+	public String getExecute() {
+		return execute;
+	}
+
+	/**
+	 * @param execute the execute to set
+	 */
+	public void setExecute(String execute) {
+		this.execute = execute;
+	}
+	
+	/**
+	 * @return the files called with the execute commands, in order
+	 */
+	public List<String> getExecutes() {
+		if(executes == null) {
+			return (execute == null ? Collections.<String>emptyList() : Collections.singletonList(execute));
+		}
+		return Collections.unmodifiableList(executes);
+	}
+	
+	/**
+	 * Adds a file called with an execute command. The first one is also 
+	 * returned by {@link #getExecute()}.
+	 * 
+	 * @param file the file called
+	 */
+	public void addExecute(String file) {
+		if(executes == null) {
+			executes = new ArrayList<String>();
+		}
+		executes.add(file);
+		if(execute == null) {
+			execute = file;
+		}
+	}
+	
+	/**
+	 * @return the number of blocks read, up to the mrbayes block
+	 */
+	public int getBlocks() {
+		return blocks;
+	}
+	
+	/**
+	 * Counts a block read.
+	 */
+	public void addBlock() {
+		blocks++;
+	}
+
+	/**
+	 * @return the nruns, or <code>null</code> if not set in the file
+	 */
+	public Integer getNruns() {
+		return nruns;
+	}
+
+	/**
+	 * @param nruns the nruns to set
+	 */
+	public void setNruns(Integer nruns) {
+		this.nruns = nruns;
+	}
+
+	/**
+	 * @return the nchains, or <code>null</code> if not set in the file
+	 */
+	public Integer getNchains() {
+		return nchains;
+	}
+
+	/**
+	 * @param nchains the nchains to set
+	 */
+	public void setNchains(Integer nchains) {
+		this.nchains = nchains;
+	}
+
+	/**
+	 * @return the ntax, or <code>null</code> if not found in the file
+	 */
+	public Integer getNtax() {
+		return ntax;
+	}
+	
+	/**
+	 * @param ntax the ntax to set
+	 */
+	public void setNtax(Integer ntax) {
+		this.ntax = ntax;
+	}
+	
+	/**
+	 * @return the nchar, or <code>null</code> if not found in the file
+	 */
+	public Integer getNchar() {
+		return nchar;
+	}
+	
+	/**
+	 * @param nchar the nchar to set
+	 */
+	public void setNchar(Integer nchar) {
+		this.nchar = nchar;
+	}
+	
+	/**
+	 * @return the datatype, or <code>null</code> if not found in the file
+	 */
+	public String getDatatype() {
+		return datatype;
+	}
+	
+	/**
+	 * @param datatype the datatype to set
+	 */
+	public void setDatatype(String datatype) {
+		this.datatype = datatype;
+	}
+	
+	/**
+	 * @return the seed, or <code>null</code> if not set in the file
+	 */
+	public String getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * @param seed the seed to set
+	 */
+	public void setSeed(String seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * @return the swapseed, or <code>null</code> if not set in the file
+	 */
+	public String getSwapseed() {
+		return swapseed;
+	}
+	
+	/**
+	 * @param swapseed the swapseed to set
+	 */
+	public void setSwapseed(String swapseed) {
+		this.swapseed = swapseed;
+	}
+	
+	/**
+	 * @return the temperature, or <code>null</code> if not set in the file
+	 */
+	public String getTemp() {
+		return temp;
+	}
+	
+	/**
+	 * @param temp the temperature to set
+	 */
+	public void setTemp(String temp) {
+		this.temp = temp;
+	}
+	
+	/**
+	 * @return number of chains of the analysis, over all runs, using MrBayes
+	 * defaults for the values not set in the file
+	 */
+	public int getTotalChains() {
+		final int runs = (nruns != null ? nruns.intValue() : DEFAULT_NRUNS);
+		final int chains = (nchains != null ? nchains.intValue() : DEFAULT_NCHAINS);
+		return runs * chains;
+	}
+
+}
@@ -0,0 +1,444 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath.FileCallable;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+/**
+ * Checks a NEXUS file in the node where it is, before MrBayes runs it: the
+ * file must have a mrbayes block with <code>autoclose=yes</code>. The files
+ * called with the execute commands of the mrbayes block, and the ones they
+ * call in turn, are scanned too, in parallel, as MrBayes would fail on a
+ * file it can't parse only after the build started it.
+ * <p>
+ * Nothing is written to the build log from the node; a small
+ * {@link Result} goes back to the master, which logs it.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class NexusValidation implements FileCallable<NexusValidation.Result> {
+
+	private static final long serialVersionUID = -2863601379915458317L;
+
+	/**
+	 * NEXUS file, relative to the directory of the callable.
+	 */
+	private final String input;
+
+	/**
+	 * Validation cache file of the node, or <code>null</code>.
+	 */
+	private final String validationCache;
+
+	public NexusValidation(String input, String validationCache) {
+		this.input = input;
+		this.validationCache = validationCache;
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+	 */
+	public Result invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+		final NexusValidationCache cache = (validationCache != null ? NexusValidationCache.get(new File(validationCache)) : null);
+		return validate(new File(f, input), f, cache);
+	}
+
+	/**
+	 * @param nexusFile NEXUS file
+	 * @param workingDirectory directory where MrBayes runs, to which the
+	 * files called with execute are relative
+	 * @param cache validation cache of the node, or <code>null</code>
+	 * @return what was found in the file and in the files it calls
+	 */
+	public static Result validate(File nexusFile, File workingDirectory, NexusValidationCache cache)
+	throws IOException, InterruptedException {
+		final long start = System.currentTimeMillis();
+		final FileCheck main = check(nexusFile, nexusFile.getPath(), cache);
+		final NexusSummary nexus = main.summary;
+
+		String error = main.getError();
+		if(error == null && !main.isFound()) {
+			error = Messages.MrBayesBuilder_ErrorReadingNexus(nexusFile, Messages.MrBayesBuilder_FileNotFound());
+		} else if(error == null && !nexus.hasMrBayesBlock()) {
+			error = Messages.MrBayesBuilder_MissingMrBayesBlock(nexusFile);
+		} else if(error == null && (nexus.getAutoclose() == null || nexus.getAutoclose() == Boolean.FALSE)) {
+			error = Messages.MrBayesBuilder_NotConfiguredToAutoclose();
+		}
+
+		List<FileCheck> included = Collections.emptyList();
+		if(error == null) {
+			included = checkIncluded(nexusFile, workingDirectory, nexus.getExecutes(), cache);
+			for(FileCheck check : included) {
+				if(check.getError() != null) {
+					error = check.getError();
+					break;
+				}
+			}
+		}
+		return new Result(main, (error == null ? nexus : null), included, error, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Checks the files called with execute, one level of calls at a time,
+	 * each level in parallel. A file is checked only once, so that files
+	 * calling each other don't loop.
+	 */
+	private static List<FileCheck> checkIncluded(File nexusFile, final File workingDirectory, List<String> executes,
+			final NexusValidationCache cache) throws IOException, InterruptedException {
+		final List<FileCheck> checks = new ArrayList<FileCheck>();
+		if(executes.isEmpty()) {
+			return checks;
+		}
+		final Set<String> seen = new HashSet<String>();
+		seen.add(nexusFile.getAbsolutePath());
+		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			List<String> level = executes;
+			while(!level.isEmpty()) {
+				final List<Future<FileCheck>> futures = new ArrayList<Future<FileCheck>>();
+				for(final String path : level) {
+					final File file = resolve(workingDirectory, path);
+					if(!seen.add(file.getAbsolutePath())) {
+						continue;
+					}
+					futures.add(executor.submit(new Callable<FileCheck>() {
+						public FileCheck call() {
+							return check(file, path, cache);
+						}
+					}));
+				}
+				final List<String> next = new ArrayList<String>();
+				for(Future<FileCheck> future : futures) {
+					final FileCheck check = get(future);
+					checks.add(check);
+					if(check.summary != null) {
+						next.addAll(check.summary.getExecutes());
+					}
+				}
+				level = next;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return checks;
+	}
+
+	/**
+	 * Hashes a NEXUS file together with every file it executes, directly or 
+	 * through other executed files, so that a change in any of them changes 
+	 * the hash. Files that don't exist are hashed by their path.
+	 *
+	 * @param nexusFile NEXUS file
+	 * @param workingDirectory directory where MrBayes runs, to which the
+	 * files called with execute are relative
+	 * @return SHA-1 of the files, in hexadecimal
+	 */
+	static String digest(File nexusFile, File workingDirectory) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		final Set<String> seen = new HashSet<String>();
+		final LinkedList<File> pending = new LinkedList<File>();
+		pending.add(nexusFile);
+		while(!pending.isEmpty()) {
+			final File file = pending.removeFirst();
+			if(!seen.add(file.getAbsolutePath())) {
+				continue;
+			}
+			if(!file.isFile()) {
+				sb.append(file.getPath()).append('\n');
+				continue;
+			}
+			sb.append(NexusValidationCache.digest(file)).append('\n');
+			final FileCheck check = check(file, file.getPath(), null);
+			if(check.summary != null) {
+				for(String path : check.summary.getExecutes()) {
+					pending.add(resolve(workingDirectory, path));
+				}
+			}
+		}
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			return Util.toHexString(md.digest(sb.toString().getBytes("UTF-8")));
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new IOException("SHA-1 not available: " + nsae.getMessage());
+		}
+	}
+
+	/**
+	 * @return the check of a file. {@link #check(File, String, NexusValidationCache)}
+	 * reports its own errors, so only unchecked exceptions are thrown again.
+	 */
+	private static FileCheck get(Future<FileCheck> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException ee) {
+			final Throwable cause = ee.getCause();
+			if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw (cause instanceof RuntimeException ? (RuntimeException)cause : new RuntimeException(cause));
+		}
+	}
+
+	/**
+	 * @return the file called with execute, as MrBayes finds it
+	 */
+	static File resolve(File workingDirectory, String path) {
+		final File file = new File(path.trim());
+		return (file.isAbsolute() ? file : new File(workingDirectory, path.trim()));
+	}
+
+	/**
+	 * Scans a NEXUS file, unless the cache already has the result for a file
+	 * with the same content. Parse errors are cached too.
+	 *
+	 * @param file NEXUS file
+	 * @param path name of the file in the messages
+	 * @param cache validation cache of the node, or <code>null</code>
+	 * @return the check of the file
+	 */
+	static FileCheck check(File file, String path, NexusValidationCache cache) {
+		final long start = System.currentTimeMillis();
+		final FileCheck check = new FileCheck(path);
+		try {
+			if(!file.isFile()) {
+				return check;
+			}
+			check.found = true;
+			check.size = file.length();
+			String hash = null;
+			if(cache != null) {
+				hash = cache.hash(file);
+				final NexusValidationCache.Entry entry = cache.get(hash);
+				if(entry != null) {
+					check.cached = true;
+					if(entry.getParseError() != null) {
+						check.error = Messages.MrBayesBuilder_ErrorParsingNexus(path, entry.getParseError());
+					} else {
+						check.setSummary(entry.getSummary());
+					}
+					return check;
+				}
+			}
+			final Reader reader = new InputStreamReader(new FileInputStream(file), MrBayesBuilder.NEXUS_CHARSET);
+			try {
+				check.setSummary(new NexusScanner(reader).scan());
+				if(cache != null) {
+					cache.put(hash, new NexusValidationCache.Entry(check.summary, null));
+				}
+			} catch (ParseException pe) {
+				if(cache != null) {
+					cache.put(hash, new NexusValidationCache.Entry(null, pe.getMessage()));
+				}
+				check.error = Messages.MrBayesBuilder_ErrorParsingNexus(path, pe.getMessage());
+			} finally {
+				reader.close();
+			}
+		} catch (IOException ioe) {
+			check.error = Messages.MrBayesBuilder_ErrorReadingNexus(path, ioe.getMessage());
+		} finally {
+			check.millis = System.currentTimeMillis() - start;
+		}
+		return check;
+	}
+
+	/**
+	 * What was found in a NEXUS file and in the files it calls.
+	 */
+	public static class Result implements Serializable {
+
+		private static final long serialVersionUID = 6193734205148235921L;
+
+		private final FileCheck nexus;
+
+		private final NexusSummary summary;
+
+		private final List<FileCheck> included;
+
+		private final String error;
+
+		private final long millis;
+
+		public Result(FileCheck nexus, NexusSummary summary, List<FileCheck> included, String error, long millis) {
+			this.nexus = nexus;
+			this.summary = summary;
+			this.included = new ArrayList<FileCheck>(included);
+			this.error = error;
+			this.millis = millis;
+		}
+
+		/**
+		 * @return the check of the NEXUS file
+		 */
+		public FileCheck getNexus() {
+			return nexus;
+		}
+
+		/**
+		 * @return the settings found in the NEXUS file, or <code>null</code>
+		 * if it is not valid
+		 */
+		public NexusSummary getSummary() {
+			return summary;
+		}
+
+		/**
+		 * @return the checks of the files called with execute, in the order
+		 * they were called
+		 */
+		public List<FileCheck> getIncluded() {
+			return Collections.unmodifiableList(included);
+		}
+
+		/**
+		 * @return why MrBayes must not run the file, or <code>null</code> if
+		 * it is valid
+		 */
+		public String getError() {
+			return error;
+		}
+
+		/**
+		 * @return the time taken to check all the files, in milliseconds
+		 */
+		public long getMillis() {
+			return millis;
+		}
+
+	}
+
+	/**
+	 * Check of a single file.
+	 */
+	public static class FileCheck implements Serializable {
+
+		private static final long serialVersionUID = -7411578316262961043L;
+
+		private final String path;
+
+		private boolean found = false;
+
+		private boolean cached = false;
+
+		private long size = 0L;
+
+		private int blocks = 0;
+
+		private String error;
+
+		private long millis = 0L;
+
+		/**
+		 * What was found in the file, used to follow its execute commands in
+		 * the node. Only the one of the NEXUS file goes back to the master,
+		 * in {@link Result#getSummary()}.
+		 */
+		private transient NexusSummary summary;
+
+		public FileCheck(String path) {
+			this.path = path;
+		}
+
+		private void setSummary(NexusSummary summary) {
+			this.summary = summary;
+			this.blocks = summary.getBlocks();
+		}
+
+		/**
+		 * @return the file, as named in the NEXUS file
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return whether the file exists
+		 */
+		public boolean isFound() {
+			return found;
+		}
+
+		/**
+		 * @return whether the result came from the validation cache
+		 */
+		public boolean isCached() {
+			return cached;
+		}
+
+		/**
+		 * @return the size of the file, in bytes
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return the number of blocks read, up to the mrbayes block
+		 */
+		public int getBlocks() {
+			return blocks;
+		}
+
+		/**
+		 * @return the error reading or parsing the file, or <code>null</code>
+		 */
+		public String getError() {
+			return error;
+		}
+
+		/**
+		 * @return the time taken to check the file, in milliseconds
+		 */
+		public long getMillis() {
+			return millis;
+		}
+
+	}
+
+}
@@ -0,0 +1,300 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.Util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of NEXUS validation results, kept in the node where the files are
+ * validated.
+ * <p>
+ * Results are stored by the SHA-1 of the file content, so that a file copied
+ * to another workspace, or checked out again, is not scanned twice. To avoid
+ * reading the file just to compute its hash, the hash is also remembered by
+ * path, size and modification time. Both maps are bounded, evicting the least
+ * recently used entries, and are saved to disk after each change, so that the
+ * cache survives restarts of the node. The file starts with the
+ * {@link NexusScanner#VERSION} that produced it, and is discarded when the
+ * scanner changed since.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class NexusValidationCache {
+
+	private static final Logger LOGGER = Logger.getLogger(NexusValidationCache.class.getName());
+
+	/**
+	 * Maximum number of results kept in each cache.
+	 */
+	public static final int MAX_ENTRIES = Integer.getInteger(NexusValidationCache.class.getName() + ".maxEntries", 1000);
+
+	/**
+	 * One cache per file, shared by the builds running in this JVM.
+	 */
+	private static final Map<String, NexusValidationCache> CACHES = new HashMap<String, NexusValidationCache>();
+
+	private final File cacheFile;
+
+	/**
+	 * Validation results by content hash.
+	 */
+	private LruMap<String, Entry> results;
+
+	/**
+	 * Content hash by path, size and modification time.
+	 */
+	private LruMap<String, String> hashes;
+
+	NexusValidationCache(File cacheFile) {
+		this.cacheFile = cacheFile;
+		load();
+	}
+
+	/**
+	 * @param cacheFile file where the cache is persisted
+	 * @return the cache stored in the given file
+	 */
+	public static NexusValidationCache get(File cacheFile) {
+		synchronized (CACHES) {
+			final String key = cacheFile.getAbsolutePath();
+			NexusValidationCache cache = CACHES.get(key);
+			if(cache == null) {
+				cache = new NexusValidationCache(cacheFile);
+				CACHES.put(key, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Returns the hash of the content of a NEXUS file. The file is read only
+	 * if its path, size or modification time changed since the last time its
+	 * hash was computed.
+	 *
+	 * @param nexusFile NEXUS file
+	 * @return SHA-1 of the file content, in hexadecimal
+	 * @throws IOException if the file cannot be read
+	 */
+	public String hash(File nexusFile) throws IOException {
+		final String stamp = nexusFile.getAbsolutePath() + '|' + nexusFile.length() + '|' + nexusFile.lastModified();
+		String hash;
+		synchronized (this) {
+			hash = hashes.get(stamp);
+		}
+		if(hash == null) {
+			hash = digest(nexusFile);
+			synchronized (this) {
+				hashes.put(stamp, hash);
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * @param hash content hash, as returned by {@link #hash(File)}
+	 * @return the cached result, or <code>null</code>
+	 */
+	public synchronized Entry get(String hash) {
+		return results.get(hash);
+	}
+
+	/**
+	 * Stores a result and saves the cache.
+	 *
+	 * @param hash content hash, as returned by {@link #hash(File)}
+	 * @param entry validation result
+	 */
+	public synchronized void put(String hash, Entry entry) {
+		results.put(hash, entry);
+		save();
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized void load() {
+		results = new LruMap<String, Entry>(MAX_ENTRIES);
+		hashes = new LruMap<String, String>(MAX_ENTRIES);
+		if(!cacheFile.isFile()) {
+			return;
+		}
+		ObjectInputStream ois = null;
+		try {
+			ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+			final Object version = ois.readObject();
+			if(!Integer.valueOf(NexusScanner.VERSION).equals(version)) {
+				LOGGER.info("Discarding NEXUS validation cache " + cacheFile + " written by another version of the scanner");
+				return;
+			}
+			results.putAll((Map<String, Entry>)ois.readObject());
+			hashes.putAll((Map<String, String>)ois.readObject());
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "Discarding NEXUS validation cache " + cacheFile, e);
+			results.clear();
+			hashes.clear();
+		} finally {
+			if(ois != null) {
+				try {
+					ois.close();
+				} catch (IOException ioe) {
+					LOGGER.log(Level.FINE, "Failed to close " + cacheFile, ioe);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the cache to a temporary file first, so that a node crashing
+	 * while saving doesn't leave a truncated cache behind.
+	 */
+	private synchronized void save() {
+		final File parent = cacheFile.getAbsoluteFile().getParentFile();
+		if(parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			LOGGER.warning("Failed to create directory " + parent);
+			return;
+		}
+		final File tmp = new File(cacheFile.getPath() + ".tmp");
+		ObjectOutputStream oos = null;
+		try {
+			oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			oos.writeObject(Integer.valueOf(NexusScanner.VERSION));
+			oos.writeObject(new LinkedHashMap<String, Entry>(results));
+			oos.writeObject(new LinkedHashMap<String, String>(hashes));
+			oos.close();
+			oos = null;
+			if(!tmp.renameTo(cacheFile)) {
+				cacheFile.delete();
+				if(!tmp.renameTo(cacheFile)) {
+					LOGGER.warning("Failed to save NEXUS validation cache " + cacheFile);
+				}
+			}
+		} catch (IOException ioe) {
+			LOGGER.log(Level.WARNING, "Failed to save NEXUS validation cache " + cacheFile, ioe);
+		} finally {
+			if(oos != null) {
+				try {
+					oos.close();
+				} catch (IOException ioe) {
+					LOGGER.log(Level.FINE, "Failed to close " + tmp, ioe);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return SHA-1 of the content of a file, in hexadecimal
+	 */
+	static String digest(File file) throws IOException {
+		final MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new IOException("SHA-1 not available: " + nsae.getMessage());
+		}
+		final InputStream is = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[64 * 1024];
+			int read;
+			while((read = is.read(buffer)) != -1) {
+				md.update(buffer, 0, read);
+			}
+		} finally {
+			is.close();
+		}
+		return Util.toHexString(md.digest());
+	}
+
+	/**
+	 * Result of scanning a NEXUS file: either what was found in the file, or
+	 * the reason why it could not be parsed.
+	 */
+	public static class Entry implements Serializable {
+
+		private static final long serialVersionUID = 4165313287207733407L;
+
+		private final NexusSummary summary;
+
+		private final String parseError;
+
+		public Entry(NexusSummary summary, String parseError) {
+			this.summary = summary;
+			this.parseError = parseError;
+		}
+
+		/**
+		 * @return the summary, or <code>null</code> if the file could not be
+		 * parsed
+		 */
+		public NexusSummary getSummary() {
+			return summary;
+		}
+
+		/**
+		 * @return the parse error, or <code>null</code>
+		 */
+		public String getParseError() {
+			return parseError;
+		}
+
+	}
+
+	/**
+	 * Map that evicts its least recently accessed entries.
+	 */
+	private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxEntries;
+
+		public LruMap(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > maxEntries;
+		}
+
+	}
+
+}
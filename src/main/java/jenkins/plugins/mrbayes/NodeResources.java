@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resources of the node where a build runs. Retrieved by running 
+ * {@link Probe} in the node.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class NodeResources implements Serializable {
+
+	private static final long serialVersionUID = -3629152417851224402L;
+
+	/**
+	 * Number of processors available to the JVM of the node.
+	 */
+	private final int cores;
+	
+	/**
+	 * Physical memory available for new processes, in bytes, or -1 if 
+	 * unknown.
+	 */
+	private final long availableMemory;
+	
+	public NodeResources(int cores) {
+		this(cores, -1L);
+	}
+	
+	public NodeResources(int cores, long availableMemory) {
+		this.cores = cores;
+		this.availableMemory = availableMemory;
+	}
+	
+	/**
+	 * @return the cores
+	 */
+	public int getCores() {
+		return cores;
+	}
+	
+	/**
+	 * @return the available memory in bytes, or -1 if unknown
+	 */
+	public long getAvailableMemory() {
+		return availableMemory;
+	}
+	
+	/**
+	 * Retrieves the resources of the node behind a channel.
+	 * 
+	 * @param channel channel of the node
+	 * @return the resources of the node
+	 */
+	public static NodeResources of(VirtualChannel channel) throws IOException, InterruptedException {
+		return channel.call(new Probe());
+	}
+	
+	/**
+	 * Reads the resources of the node where it is executed.
+	 */
+	public static class Probe implements Callable<NodeResources, IOException> {
+
+		private static final long serialVersionUID = 8713628446470851045L;
+		
+		private static final String MEMINFO = "/proc/meminfo";
+		
+		private static final Pattern MEMINFO_LINE = Pattern.compile("^(MemAvailable|MemFree):\\s+(\\d+)\\s+kB\\s*$");
+
+		/* (non-Javadoc)
+		 * @see hudson.remoting.Callable#call()
+		 */
+		public NodeResources call() throws IOException {
+			return new NodeResources(Runtime.getRuntime().availableProcessors(), readAvailableMemory(new File(MEMINFO)));
+		}
+		
+		/**
+		 * Reads MemAvailable from /proc/meminfo, or MemFree in older Linux 
+		 * kernels.
+		 * 
+		 * @return the available memory in bytes, or -1 if unknown
+		 */
+		static long readAvailableMemory(File meminfo) throws IOException {
+			if(!meminfo.isFile()) {
+				return -1L;
+			}
+			long free = -1L;
+			final BufferedReader reader = new BufferedReader(new FileReader(meminfo));
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					final Matcher m = MEMINFO_LINE.matcher(line);
+					if(m.matches()) {
+						final long bytes = Long.parseLong(m.group(2)) * 1024L;
+						if("MemAvailable".equals(m.group(1))) {
+							return bytes;
+						}
+						free = bytes;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			return free;
+		}
+		
+	}
+	
+}
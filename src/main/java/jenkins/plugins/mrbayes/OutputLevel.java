@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.OutputStream;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+/**
+ * How much of the MrBayes progress output goes to the build log. The output 
+ * is filtered in the node running MrBayes, before it is sent to the master.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public enum OutputLevel {
+
+	/**
+	 * Every line.
+	 */
+	FULL,
+	/**
+	 * One progress line every {@link #CONDENSED_INTERVAL} milliseconds, plus 
+	 * the last one before each diagnostic or message.
+	 */
+	CONDENSED,
+	/**
+	 * Only the last progress line, when MrBayes finishes.
+	 */
+	QUIET;
+	
+	/**
+	 * Interval between progress lines in condensed output, in milliseconds.
+	 */
+	public static final long CONDENSED_INTERVAL = Long.getLong(OutputLevel.class.getName() + ".condensedInterval", 60000L);
+	
+	/**
+	 * @return the name shown in the job configuration
+	 */
+	public String getDisplayName() {
+		switch(this) {
+		case FULL:
+			return Messages.OutputLevel_Full();
+		case QUIET:
+			return Messages.OutputLevel_Quiet();
+		default:
+			return Messages.OutputLevel_Condensed();
+		}
+	}
+	
+	/**
+	 * @param out stream where the filtered output is written to
+	 * @return a stream filtering the output of MrBayes for this level. 
+	 * Closing it does not close out.
+	 */
+	public CondensedOutputStream filter(OutputStream out) {
+		switch(this) {
+		case FULL:
+			return new CondensedOutputStream(out, 0L, false);
+		case QUIET:
+			return new CondensedOutputStream(out, Long.MAX_VALUE, false);
+		default:
+			return new CondensedOutputStream(out, CONDENSED_INTERVAL, true);
+		}
+	}
+	
+	/**
+	 * @param name name of a level
+	 * @return the level, or {@link #CONDENSED} if the name is blank or unknown
+	 */
+	public static OutputLevel fromString(String name) {
+		if(name != null) {
+			for(OutputLevel level : values()) {
+				if(level.name().equalsIgnoreCase(name.trim())) {
+					return level;
+				}
+			}
+		}
+		return CONDENSED;
+	}
+	
+}
@@ -0,0 +1,344 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath.FileCallable;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Reduces the parameter (.p) and tree (.t) files written by MrBayes in the
+ * node where they were written, before they are archived: the samples of the
+ * burn-in are dropped, only every k-th sample after it is kept, and the file
+ * is compressed with gzip. Comments, headers and the translate block are
+ * kept, so the reduced files are still read by MrBayes and other tools.
+ * <p>
+ * The reduced copies are written to {@link #OUTPUT_DIRECTORY}, with the
+ * same paths, and the files of MrBayes are left untouched, as a later build
+ * may resume the analysis from them with <code>mcmcp append=yes</code>.
+ * <p>
+ * Files are streamed, one line at a time, so their size does not matter.
+ * They are reduced concurrently, one per processor of the node.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class OutputReducer implements FileCallable<List<OutputReducer.Reduction>> {
+
+	private static final long serialVersionUID = -7398110624390962513L;
+
+	/**
+	 * Extension of the compressed files.
+	 */
+	public static final String GZIP_EXTENSION = ".gz";
+
+	/**
+	 * Directory of the reduced files, relative to the module root. Emptied
+	 * before the files of each build are reduced.
+	 */
+	public static final String OUTPUT_DIRECTORY = "mrbayes-reduced";
+
+	/**
+	 * Ant pattern of the reduced files, excluded from the patterns of the
+	 * files of MrBayes.
+	 */
+	public static final String OUTPUT_EXCLUDES = OUTPUT_DIRECTORY + "/**";
+
+	/**
+	 * Files are read and written as bytes, in any encoding.
+	 */
+	private static final String CHARSET = "ISO-8859-1";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String pattern;
+
+	private final double burninFraction;
+
+	private final int thinning;
+
+	private final boolean compress;
+
+	/**
+	 * @param pattern Ant pattern, or comma separated patterns, of the files
+	 * @param burninFraction fraction of the samples of each file dropped as
+	 * burn-in
+	 * @param thinning keep every k-th sample after the burn-in
+	 * @param compress whether to compress the files with gzip
+	 */
+	public OutputReducer(String pattern, double burninFraction, int thinning, boolean compress) {
+		this.pattern = pattern;
+		this.burninFraction = burninFraction;
+		this.thinning = Math.max(1, thinning);
+		this.compress = compress;
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+	 */
+	public List<Reduction> invoke(final File f, VirtualChannel channel) throws IOException, InterruptedException {
+		Util.deleteRecursive(new File(f, OUTPUT_DIRECTORY));
+		final String[] files = Util.createFileSet(f, pattern, OUTPUT_EXCLUDES).getDirectoryScanner().getIncludedFiles();
+		Arrays.sort(files);
+		final List<Reduction> reductions = new ArrayList<Reduction>();
+		if(files.length == 0) {
+			return reductions;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(files.length, Runtime.getRuntime().availableProcessors()));
+		try {
+			final List<Future<Reduction>> futures = new ArrayList<Future<Reduction>>();
+			for(String file : files) {
+				final String path = file.replace(File.separatorChar, '/');
+				futures.add(executor.submit(new Callable<Reduction>() {
+					public Reduction call() throws IOException {
+						return reduce(f, path);
+					}
+				}));
+			}
+			for(Future<Reduction> future : futures) {
+				try {
+					reductions.add(future.get());
+				} catch (ExecutionException ee) {
+					if(ee.getCause() instanceof IOException) {
+						throw (IOException)ee.getCause();
+					}
+					throw new IOException(ee.getMessage());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return reductions;
+	}
+
+	/**
+	 * Reduces a file into {@link #OUTPUT_DIRECTORY}, leaving the file as it
+	 * is.
+	 *
+	 * @param baseDir directory the path is relative to
+	 * @param path the file
+	 * @return the sizes of the file before and after
+	 */
+	Reduction reduce(File baseDir, String path) throws IOException {
+		final File file = new File(baseDir, path);
+		final boolean trees = path.endsWith(TreeFile.EXTENSION);
+		final int samples = countSamples(file, trees);
+		final int burnin = (int)(samples * burninFraction);
+		final String reducedPath = OUTPUT_DIRECTORY + "/" + (compress ? path + GZIP_EXTENSION : path);
+		final File target = new File(baseDir, reducedPath);
+		final File parent = target.getParentFile();
+		if(!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Failed to create " + parent);
+		}
+		final File reduced = new File(baseDir, reducedPath + ".tmp");
+		int kept = 0;
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET), BUFFER_SIZE);
+		try {
+			OutputStream out = new FileOutputStream(reduced);
+			if(compress) {
+				out = new GZIPOutputStream(out, BUFFER_SIZE);
+			}
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(out, CHARSET), BUFFER_SIZE);
+			try {
+				kept = reduce(reader, writer, trees, burnin);
+			} finally {
+				writer.close();
+			}
+		} finally {
+			reader.close();
+		}
+		final long originalSize = file.length();
+		final long reducedSize = reduced.length();
+		if(target.exists() && !target.delete()) {
+			throw new IOException("Failed to delete " + target);
+		}
+		if(!reduced.renameTo(target)) {
+			throw new IOException("Failed to rename " + reduced + " to " + target);
+		}
+		return new Reduction(path, reducedPath, originalSize, reducedSize, samples, kept);
+	}
+
+	/**
+	 * Copies the lines of a file, but only the samples after the burn-in,
+	 * every k-th.
+	 *
+	 * @param trees whether the file is a tree file, or else a parameter file
+	 * @param burnin number of samples dropped
+	 * @return the number of samples kept
+	 */
+	int reduce(BufferedReader reader, Writer writer, boolean trees, int burnin) throws IOException {
+		int sample = 0;
+		int kept = 0;
+		String line;
+		while((line = reader.readLine()) != null) {
+			if(isSample(line, trees)) {
+				final int index = sample++;
+				if(index < burnin || (index - burnin) % thinning != 0) {
+					continue;
+				}
+				kept++;
+			}
+			writer.write(line);
+			writer.write('\n');
+		}
+		return kept;
+	}
+
+	/**
+	 * @return the number of samples of a file
+	 */
+	static int countSamples(File file, boolean trees) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET), BUFFER_SIZE);
+		try {
+			int samples = 0;
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(isSample(line, trees)) {
+					++samples;
+				}
+			}
+			return samples;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @param line a line of a parameter or tree file
+	 * @param trees whether the file is a tree file
+	 * @return whether the line is a sample: a tree, or a row of a parameter
+	 * file, that starts with the generation
+	 */
+	static boolean isSample(String line, boolean trees) {
+		final String trimmed = line.trim();
+		if(trees) {
+			return TreeFile.isTree(trimmed);
+		}
+		return trimmed.length() > 0 && Character.isDigit(trimmed.charAt(0));
+	}
+
+	/**
+	 * Sizes of an output file before and after it was reduced.
+	 */
+	@ExportedBean(defaultVisibility = 2)
+	public static class Reduction implements Serializable {
+
+		private static final long serialVersionUID = 1864522290934571532L;
+
+		private final String file;
+
+		private final String reducedFile;
+
+		private final long originalSize;
+
+		private final long reducedSize;
+
+		private final int samples;
+
+		private final int keptSamples;
+
+		public Reduction(String file, String reducedFile, long originalSize, long reducedSize, int samples, int keptSamples) {
+			this.file = file;
+			this.reducedFile = reducedFile;
+			this.originalSize = originalSize;
+			this.reducedSize = reducedSize;
+			this.samples = samples;
+			this.keptSamples = keptSamples;
+		}
+
+		/**
+		 * @return the file, relative to the workspace
+		 */
+		@Exported
+		public String getFile() {
+			return file;
+		}
+
+		/**
+		 * @return the reduced file, relative to the workspace
+		 */
+		@Exported
+		public String getReducedFile() {
+			return reducedFile;
+		}
+
+		/**
+		 * @return the size of the file written by MrBayes, in bytes
+		 */
+		@Exported
+		public long getOriginalSize() {
+			return originalSize;
+		}
+
+		/**
+		 * @return the size of the reduced file, in bytes
+		 */
+		@Exported
+		public long getReducedSize() {
+			return reducedSize;
+		}
+
+		/**
+		 * @return the number of samples written by MrBayes
+		 */
+		@Exported
+		public int getSamples() {
+			return samples;
+		}
+
+		/**
+		 * @return the number of samples kept
+		 */
+		@Exported
+		public int getKeptSamples() {
+			return keptSamples;
+		}
+
+	}
+
+}
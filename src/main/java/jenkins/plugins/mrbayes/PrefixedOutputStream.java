@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Prefixes every line written to an output stream. Each line is written to 
+ * the underlying stream at once, holding its lock, so that lines of streams 
+ * sharing the same output (e.g. MrBayes runs in batch mode writing to the 
+ * build log) are not mixed up.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class PrefixedOutputStream extends LineTransformationOutputStream {
+
+	private final OutputStream out;
+	
+	private final byte[] prefix;
+	
+	/**
+	 * @param out underlying output stream
+	 * @param prefix prefix added to each line
+	 */
+	public PrefixedOutputStream(OutputStream out, String prefix) {
+		this.out = out;
+		this.prefix = prefix.getBytes();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#eol(byte[], int)
+	 */
+	@Override
+	protected void eol(byte[] b, int len) throws IOException {
+		synchronized (out) {
+			out.write(prefix);
+			out.write(b, 0, len);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		super.close();
+		out.flush();
+	}
+	
+}
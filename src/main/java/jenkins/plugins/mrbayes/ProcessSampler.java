@@ -0,0 +1,350 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.Util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Samples the CPU time and the memory of the processes of a MrBayes run, in 
+ * Linux nodes. The processes are recognized by an environment variable set 
+ * when MrBayes is launched, and inherited by mpirun and the processes it 
+ * starts, so that MPI runs are measured as a whole. The peak resident set 
+ * size is the largest sum of the resident set sizes of the processes seen 
+ * in a sample; the CPU time is the last one read from each process, and so 
+ * may miss up to one sampling interval.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class ProcessSampler implements Runnable {
+
+	private static final Logger LOGGER = Logger.getLogger(ProcessSampler.class.getName());
+	
+	/**
+	 * Environment variable identifying the processes of a run.
+	 */
+	public static final String ENV_VAR = "MRBAYES_JENKINS_RUN";
+	
+	/**
+	 * Interval between samples, in milliseconds.
+	 */
+	public static final long INTERVAL = Long.getLong(ProcessSampler.class.getName() + ".interval", 1000L).longValue();
+	
+	/**
+	 * Clock ticks per second of the times in /proc/[pid]/stat, USER_HZ, 
+	 * which is 100 in all Linux architectures Jenkins runs on.
+	 */
+	private static final long TICKS_PER_SECOND = 100L;
+	
+	private final File proc;
+	
+	private final byte[] marker;
+	
+	/**
+	 * Processes already checked, by pid and start time, and whether they 
+	 * belong to the run.
+	 */
+	private final Map<String, Boolean> checked = new HashMap<String, Boolean>();
+	
+	/**
+	 * Last CPU time, in ticks, of the processes of the run.
+	 */
+	private final Map<String, Long> cpuTicks = new HashMap<String, Long>();
+	
+	private long peakRss = -1L;
+	
+	private volatile boolean stopped = false;
+	
+	/**
+	 * @param id value of {@link #ENV_VAR} in the processes of the run
+	 */
+	public ProcessSampler(String id) {
+		this(new File("/proc"), id);
+	}
+	
+	ProcessSampler(File proc, String id) {
+		this.proc = proc;
+		try {
+			this.marker = (ENV_VAR + "=" + id).getBytes("US-ASCII");
+		} catch (IOException ioe) {
+			throw new IllegalStateException(ioe);
+		}
+	}
+	
+	/**
+	 * @return whether processes can be sampled in this node
+	 */
+	public boolean isSupported() {
+		return new File(proc, "self/stat").isFile();
+	}
+	
+	/**
+	 * Starts sampling in a daemon thread, until {@link #stop()}.
+	 */
+	public void start() {
+		if(!isSupported()) {
+			return;
+		}
+		final Thread thread = new Thread(this, "MrBayes process sampler");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Stops sampling. The values read so far are kept.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while(!stopped) {
+			sample();
+			try {
+				Thread.sleep(INTERVAL);
+			} catch (InterruptedException ie) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the CPU time and memory of the processes of the run.
+	 */
+	synchronized void sample() {
+		final String[] pids = proc.list();
+		if(pids == null) {
+			return;
+		}
+		long rss = 0L;
+		boolean found = false;
+		final Set<String> alive = new HashSet<String>();
+		for(String pid : pids) {
+			if(pid.length() == 0 || !Character.isDigit(pid.charAt(0))) {
+				continue;
+			}
+			try {
+				final String[] stat = readStat(pid);
+				if(stat == null) {
+					continue;
+				}
+				// start time tells a process from a later one with the same pid
+				final String key = pid + ":" + stat[19];
+				alive.add(key);
+				Boolean member = checked.get(key);
+				if(member == null) {
+					member = Boolean.valueOf(hasMarker(pid));
+					checked.put(key, member);
+				}
+				if(!member.booleanValue()) {
+					continue;
+				}
+				found = true;
+				cpuTicks.put(key, Long.valueOf(Long.parseLong(stat[11]) + Long.parseLong(stat[12])));
+				rss += readRss(pid);
+			} catch (IOException ioe) {
+				// the process ended while being read
+				LOGGER.log(Level.FINEST, "Failed to read process " + pid, ioe);
+			} catch (NumberFormatException nfe) {
+				LOGGER.log(Level.FINEST, "Failed to read process " + pid, nfe);
+			}
+		}
+		checked.keySet().retainAll(alive);
+		if(found) {
+			peakRss = Math.max(peakRss, rss);
+		}
+	}
+	
+	/**
+	 * @return the CPU time of the processes of the run, in milliseconds, or 
+	 * -1 if none was seen
+	 */
+	public synchronized long getCpuTime() {
+		if(cpuTicks.isEmpty()) {
+			return -1L;
+		}
+		long ticks = 0L;
+		for(Long t : cpuTicks.values()) {
+			ticks += t.longValue();
+		}
+		return ticks * 1000L / TICKS_PER_SECOND;
+	}
+	
+	/**
+	 * @return the peak resident set size of the processes of the run, in 
+	 * bytes, or -1 if none was seen
+	 */
+	public synchronized long getPeakRss() {
+		return peakRss;
+	}
+	
+	/**
+	 * Describes the processes of the run as they are now, one line per 
+	 * process: pid, command, state, CPU time, resident set size and the 
+	 * kernel function it waits in, e.g. to tell a process blocked in I/O 
+	 * (state D) from one waiting for its MPI peers.
+	 * 
+	 * @return the description of each process, empty if none is running
+	 */
+	public synchronized List<String> describe() {
+		final List<String> processes = new ArrayList<String>();
+		for(Map.Entry<String, Boolean> process : checked.entrySet()) {
+			if(!process.getValue().booleanValue()) {
+				continue;
+			}
+			final String pid = process.getKey().substring(0, process.getKey().indexOf(':'));
+			try {
+				final String line = readFirstLine(new File(proc, pid + "/stat"));
+				final String[] stat = readStat(pid);
+				if(line == null || stat == null) {
+					continue;
+				}
+				final String command = line.substring(line.indexOf('(') + 1, line.lastIndexOf(')'));
+				final long cpu = (Long.parseLong(stat[11]) + Long.parseLong(stat[12])) * 1000L / TICKS_PER_SECOND;
+				final File wchan = new File(proc, pid + "/wchan");
+				processes.add("pid " + pid + " (" + command + ") state " + stat[0] + ", cpu " + (cpu / 1000L) + " s, rss " + 
+						MemoryEstimate.toMegabytes(readRss(pid)) + " MB, wchan " + 
+						(wchan.isFile() ? Util.fixNull(readFirstLine(wchan)) : "?"));
+			} catch (IOException ioe) {
+				// the process ended while being read
+				LOGGER.log(Level.FINEST, "Failed to read process " + pid, ioe);
+			} catch (NumberFormatException nfe) {
+				LOGGER.log(Level.FINEST, "Failed to read process " + pid, nfe);
+			}
+		}
+		Collections.sort(processes);
+		return processes;
+	}
+	
+	/**
+	 * @return the fields of /proc/[pid]/stat after the command name, so that 
+	 * field 3 (state) is at index 0, or <code>null</code> if not readable
+	 */
+	private String[] readStat(String pid) throws IOException {
+		final String stat = readFirstLine(new File(proc, pid + "/stat"));
+		if(stat == null) {
+			return null;
+		}
+		// the command name may contain spaces and parentheses
+		final int end = stat.lastIndexOf(')');
+		if(end < 0) {
+			return null;
+		}
+		final String[] fields = stat.substring(end + 1).trim().split("\\s+");
+		return (fields.length > 19 ? fields : null);
+	}
+	
+	private boolean hasMarker(String pid) {
+		final byte[] environ;
+		try {
+			environ = readBytes(new File(proc, pid + "/environ"));
+		} catch (IOException ioe) {
+			// processes of other users
+			return false;
+		}
+		int start = 0;
+		for(int i = 0; i <= environ.length; ++i) {
+			if(i == environ.length || environ[i] == 0) {
+				if(i - start == marker.length && regionMatches(environ, start)) {
+					return true;
+				}
+				start = i + 1;
+			}
+		}
+		return false;
+	}
+	
+	private boolean regionMatches(byte[] environ, int start) {
+		for(int i = 0; i < marker.length; ++i) {
+			if(environ[start + i] != marker[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return VmRSS of /proc/[pid]/status, in bytes
+	 */
+	private long readRss(String pid) throws IOException {
+		final BufferedReader reader = new BufferedReader(new FileReader(new File(proc, pid + "/status")));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.startsWith("VmRSS:")) {
+					final String[] fields = line.substring(6).trim().split("\\s+");
+					return Long.parseLong(fields[0]) * 1024L;
+				}
+			}
+			return 0L;
+		} finally {
+			reader.close();
+		}
+	}
+	
+	private static String readFirstLine(File file) throws IOException {
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			return reader.readLine();
+		} finally {
+			reader.close();
+		}
+	}
+	
+	private static byte[] readBytes(File file) throws IOException {
+		final InputStream is = new FileInputStream(file);
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[4096];
+			int read;
+			while((read = is.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+	
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Times the progress of MrBayes from its output: how long it takes to print 
+ * the first generation, i.e. to read the data and set up the chains, and how 
+ * many generations per second it runs after that. The last lines are kept, 
+ * for the diagnostics of a {@link StallWatchdog}, and the chain swap tables 
+ * are read into a {@link SwapAcceptance}. The output is passed through 
+ * unchanged.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class ProgressMonitor extends LineTransformationOutputStream {
+
+	/**
+	 * Progress lines, e.g. <code>   1000 -- (-5986.3) (-5992.1) ...</code>
+	 */
+	private static final Pattern GENERATION = Pattern.compile("^\\s*(\\d+)\\s+--\\s");
+	
+	/**
+	 * Printed before the first generation, e.g. 
+	 * <code>Chain results (1000000 generations requested):</code>
+	 */
+	private static final Pattern REQUESTED = Pattern.compile("\\((\\d+) generations requested\\)");
+	
+	/**
+	 * Number of lines kept.
+	 */
+	private static final int TAIL = 10;
+	
+	private final OutputStream out;
+	
+	private final long start;
+	
+	private long firstGeneration = -1L;
+	
+	private long firstTime = -1L;
+	
+	private long lastGeneration = -1L;
+	
+	private long lastTime = -1L;
+	
+	private long requestedGenerations = -1L;
+	
+	private final LinkedList<String> tail = new LinkedList<String>();
+	
+	private final SwapAcceptance swapAcceptance = new SwapAcceptance();
+	
+	/**
+	 * @param out stream where the output is passed to
+	 */
+	public ProgressMonitor(OutputStream out) {
+		this(out, System.currentTimeMillis());
+	}
+	
+	/**
+	 * @param out stream where the output is passed to
+	 * @param start time MrBayes was started, in milliseconds
+	 */
+	public ProgressMonitor(OutputStream out, long start) {
+		this.out = out;
+		this.start = start;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#eol(byte[], int)
+	 */
+	@Override
+	protected void eol(byte[] b, int len) throws IOException {
+		out.write(b, 0, len);
+		parse(new String(b, 0, len, "US-ASCII"), System.currentTimeMillis());
+	}
+	
+	synchronized void parse(String line, long time) {
+		tail.add(line.trim());
+		if(tail.size() > TAIL) {
+			tail.removeFirst();
+		}
+		swapAcceptance.parse(line);
+		final Matcher requested = REQUESTED.matcher(line);
+		if(requested.find()) {
+			try {
+				requestedGenerations = Long.parseLong(requested.group(1));
+			} catch (NumberFormatException nfe) {
+				// too many generations to be real
+			}
+		}
+		final Matcher m = GENERATION.matcher(line);
+		if(m.find()) {
+			try {
+				final long generation = Long.parseLong(m.group(1));
+				if(firstTime < 0L) {
+					firstGeneration = generation;
+					firstTime = time;
+				}
+				lastGeneration = generation;
+				lastTime = time;
+			} catch (NumberFormatException nfe) {
+				// not a progress line
+			}
+		}
+	}
+	
+	/**
+	 * @return time from the start of MrBayes to its first generation, in 
+	 * milliseconds, or -1 if no generation was printed
+	 */
+	public synchronized long getStartupTime() {
+		return (firstTime < 0L ? -1L : firstTime - start);
+	}
+	
+	/**
+	 * @return generations per second between the first and the last 
+	 * generations printed, or -1 if not known
+	 */
+	public synchronized double getGenerationsPerSecond() {
+		if(lastTime <= firstTime || lastGeneration <= firstGeneration) {
+			return -1.0d;
+		}
+		return (lastGeneration - firstGeneration) * 1000.0d / (lastTime - firstTime);
+	}
+	
+	/**
+	 * @return the last generation printed, or -1 if none was printed
+	 */
+	public synchronized long getLastGeneration() {
+		return lastGeneration;
+	}
+	
+	/**
+	 * @return when the last generation was printed, in milliseconds, or -1 
+	 * if none was printed
+	 */
+	public synchronized long getLastTime() {
+		return lastTime;
+	}
+	
+	/**
+	 * @return time between the first and the last generations printed, in 
+	 * milliseconds, over which the generations per second are measured
+	 */
+	public synchronized long getMeasuredTime() {
+		return (firstTime < 0L ? 0L : lastTime - firstTime);
+	}
+	
+	/**
+	 * @return the number of generations requested, or -1 if not printed yet
+	 */
+	public synchronized long getRequestedGenerations() {
+		return requestedGenerations;
+	}
+	
+	/**
+	 * @return the last lines of the output, oldest first
+	 */
+	public synchronized List<String> getTail() {
+		return new ArrayList<String>(tail);
+	}
+	
+	/**
+	 * @return the rates of the chain swaps printed so far
+	 */
+	public SwapAcceptance getSwapAcceptance() {
+		return swapAcceptance;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.console.LineTransformationOutputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		super.close();
+		out.flush();
+	}
+	
+}
@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Builds the <code>set</code> command that the wrapper command file runs
+ * before the user's NEXUS file, so that MrBayes uses BEAGLE, SSE and threads
+ * as the node running it allows. Settings in the user's file come after it,
+ * and win.
+ * <p>
+ * Only MrBayes 3.2 and later know these settings, older versions get none.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class ResourceSettings {
+
+	/**
+	 * An override, e.g. <code>beagleprecision=single</code>.
+	 */
+	private static final Pattern OVERRIDE = Pattern.compile("[A-Za-z]+=[^\\s;]+");
+
+	/**
+	 * First version of MrBayes with the BEAGLE settings.
+	 */
+	private static final String MIN_VERSION = "3.2";
+
+	private ResourceSettings() {
+	}
+
+	/**
+	 * @param capabilities what MrBayes supports in the node
+	 * @param cores cores left to the MrBayes process, the cores of the node
+	 * divided by the analyses or runs running at the same time
+	 * @param processes MPI processes, or 0 when not run with MPI
+	 * @param overrides settings given in the job, e.g.
+	 * <code>usebeagle=no</code>, replacing the ones chosen here
+	 * @return the settings, without <code>set</code>, or <code>null</code> if
+	 * there is none
+	 */
+	public static String getSettings(InstallationCapabilities capabilities, int cores, int processes, String overrides) {
+		final Map<String, String> settings = new LinkedHashMap<String, String>();
+		if(capabilities != null && capabilities.isAvailable() && capabilities.isBeagle() &&
+				InstallationCapabilities.compareVersions(capabilities.getVersion(), MIN_VERSION) >= 0) {
+			settings.put("usebeagle", "yes");
+			settings.put("beagledevice", "cpu");
+			settings.put("beagleprecision", "double");
+			settings.put("beaglesse", (capabilities.isSse() || capabilities.isAvx()) ? "yes" : "no");
+			// cores left to each process, after MPI took its share
+			final int coresPerProcess = cores / Math.max(1, processes);
+			settings.put("beaglethreads", coresPerProcess > 1 ? "yes" : "no");
+		}
+		for(String override : parseOverrides(overrides)) {
+			final int eq = override.indexOf('=');
+			final String key = override.substring(0, eq).toLowerCase(Locale.ENGLISH);
+			settings.remove(key);
+			settings.put(key, override.substring(eq + 1));
+		}
+		if("no".equalsIgnoreCase(settings.get("usebeagle"))) {
+			// the other BEAGLE settings are ignored, unless given in the job
+			final List<String> overridden = new ArrayList<String>();
+			for(String override : parseOverrides(overrides)) {
+				overridden.add(override.substring(0, override.indexOf('=')).toLowerCase(Locale.ENGLISH));
+			}
+			settings.keySet().retainAll(overridden);
+		}
+		if(settings.isEmpty()) {
+			return null;
+		}
+		final List<String> pairs = new ArrayList<String>();
+		for(Map.Entry<String, String> setting : settings.entrySet()) {
+			pairs.add(setting.getKey() + "=" + setting.getValue());
+		}
+		return StringUtils.join(pairs, " ");
+	}
+
+	/**
+	 * @param settings settings returned by
+	 * {@link #getSettings(InstallationCapabilities, int, int, String)}, or
+	 * <code>null</code>
+	 * @param cores cores left to the MrBayes process
+	 * @param processes MPI processes, or 0 when not run with MPI
+	 * @return the cores the MrBayes process keeps busy: all of them when
+	 * BEAGLE runs threads, or else one per MPI process
+	 */
+	public static int getThreads(String settings, int cores, int processes) {
+		final int single = Math.max(1, processes);
+		if(settings == null) {
+			return single;
+		}
+		final Map<String, String> parsed = new LinkedHashMap<String, String>();
+		for(String setting : settings.trim().split("\\s+")) {
+			final int eq = setting.indexOf('=');
+			if(eq > 0) {
+				parsed.put(setting.substring(0, eq).toLowerCase(Locale.ENGLISH), setting.substring(eq + 1));
+			}
+		}
+		if("yes".equalsIgnoreCase(parsed.get("usebeagle")) && "yes".equalsIgnoreCase(parsed.get("beaglethreads"))) {
+			return Math.max(single, cores);
+		}
+		return single;
+	}
+
+	/**
+	 * @param overrides settings given in the job, separated by spaces
+	 * @return the settings
+	 * @throws IllegalArgumentException if a setting is not in the form
+	 * <code>name=value</code>
+	 */
+	public static List<String> parseOverrides(String overrides) {
+		final List<String> parsed = new ArrayList<String>();
+		if(StringUtils.isBlank(overrides)) {
+			return parsed;
+		}
+		for(String override : overrides.trim().split("\\s+")) {
+			if(!OVERRIDE.matcher(override).matches()) {
+				throw new IllegalArgumentException(override);
+			}
+			parsed.add(override);
+		}
+		return parsed;
+	}
+
+}
@@ -0,0 +1,472 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath.FileCallable;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.logging.Logger;
+
+/**
+ * Cache of MrBayes results, kept in the node where MrBayes runs.
+ * <p>
+ * A result is stored by a hash of the NEXUS file, of the files it executes, 
+ * if any, of the MrBayes executable (found in the PATH when not given with a 
+ * directory) and of the command line. As MrBayes only gives the same results 
+ * for the same input when the seeds are fixed, only analyses that set a seed, 
+ * and a swapseed when they have more than one chain, in their mrbayes block 
+ * are cached. The output files MrBayes writes for the NEXUS file during the 
+ * run (see {@link #isOutputFile(String, String)}) are copied to a directory 
+ * per result; checkpoints, diagnostics and the files left by earlier runs 
+ * are not. When the cache grows over {@link #MAX_SIZE}, the least recently 
+ * used results are deleted.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class ResultCache {
+
+	private static final Logger LOGGER = Logger.getLogger(ResultCache.class.getName());
+	
+	/**
+	 * Maximum size of the cache, in bytes.
+	 */
+	public static final long MAX_SIZE = Long.getLong(ResultCache.class.getName() + ".maxSize", 2L * 1024L * 1024L * 1024L);
+	
+	/**
+	 * Written once all the files of a result are stored. Its modification 
+	 * time tells when the result was last used.
+	 */
+	private static final String COMPLETE = ".complete";
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Files written by the runs, after the name of the NEXUS file: the trace 
+	 * files, per run when there are several.
+	 */
+	private static final Pattern RUN_OUTPUT = Pattern.compile("(\\.run\\d+)?\\.[pt]");
+	
+	/**
+	 * Files written by mcmc, sump and sumt, after the name of the NEXUS file.
+	 */
+	private static final Pattern SUMMARY_OUTPUT = Pattern.compile("\\.(con\\.tre|parts|tstat|vstat|trprobs|pstat|lstat|mstat|ss)");
+	
+	/**
+	 * Precision of the modification times of some file systems.
+	 */
+	private static final long MTIME_RESOLUTION = 2000L;
+	
+	/**
+	 * Results are added and evicted by one build at a time in each node.
+	 */
+	private static final Object LOCK = new Object();
+	
+	private final File directory;
+	
+	private final long maxSize;
+	
+	/**
+	 * @param directory directory of the cache
+	 */
+	public ResultCache(File directory) {
+		this(directory, MAX_SIZE);
+	}
+	
+	ResultCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * @param executable name of an executable without a directory, e.g. 
+	 * <code>mb</code> or <code>mpirun</code>
+	 * @return the file run for the executable, looked for in the PATH, or 
+	 * <code>null</code> if not found or if the name has a directory
+	 */
+	static File which(String executable) {
+		if(executable.length() == 0 || executable.indexOf('/') >= 0 || executable.indexOf(File.separatorChar) >= 0) {
+			return null;
+		}
+		final String path = System.getenv("PATH");
+		if(path == null) {
+			return null;
+		}
+		for(String dir : path.split(File.pathSeparator)) {
+			if(dir.length() == 0) {
+				continue;
+			}
+			final File candidate = new File(dir, executable);
+			if(candidate.isFile()) {
+				return candidate.getAbsoluteFile();
+			}
+			final File exe = new File(dir, executable + ".exe");
+			if(exe.isFile()) {
+				return exe.getAbsoluteFile();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @param nexusFile NEXUS file
+	 * @param workingDirectory directory where MrBayes runs
+	 * @param command MrBayes command line
+	 * @return the key of the results of running MrBayes with a NEXUS file, 
+	 * or <code>null</code> if the results can't be cached as no seed is set, 
+	 * or no swapseed with more than one chain
+	 */
+	public static String key(File nexusFile, File workingDirectory, List<String> command) 
+	throws IOException, ParseException {
+		final NexusSummary nexus;
+		final Reader reader = new InputStreamReader(new FileInputStream(nexusFile), "UTF-8");
+		try {
+			nexus = new NexusScanner(reader).scan();
+		} finally {
+			reader.close();
+		}
+		if(nexus.getSeed() == null) {
+			return null;
+		}
+		final int nchains = (nexus.getNchains() != null ? nexus.getNchains().intValue() : NexusSummary.DEFAULT_NCHAINS);
+		if(nchains > 1 && nexus.getSwapseed() == null) {
+			// the chains swapped would differ from one run to the next
+			return null;
+		}
+		
+		final StringBuilder sb = new StringBuilder();
+		// the files executed by the executed files too
+		sb.append(NexusValidation.digest(nexusFile, workingDirectory)).append('\n');
+		for(String arg : command) {
+			sb.append(arg).append('\n');
+			// mb or mpirun, found in the PATH of the node
+			final File file = (new File(arg).isAbsolute() ? new File(arg) : which(arg));
+			if(file != null && file.isFile()) {
+				// executables: a new build of MrBayes may give other results
+				sb.append(file.length()).append('|').append(file.lastModified()).append('\n');
+			}
+		}
+		sb.append(nexus.getSeed()).append('|').append(nexus.getSwapseed());
+		
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			return Util.toHexString(md.digest(sb.toString().getBytes("UTF-8")));
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new IOException("SHA-1 not available: " + nsae.getMessage());
+		}
+	}
+	
+	/**
+	 * Copies the output files of a result to the directory of the NEXUS file.
+	 * 
+	 * @return the number of files restored, or zero if the result is not in 
+	 * the cache
+	 */
+	public int restore(String key, File nexusFile) throws IOException {
+		final File entry = new File(directory, key);
+		final File complete = new File(entry, COMPLETE);
+		synchronized (LOCK) {
+			if(!complete.isFile()) {
+				return 0;
+			}
+			complete.setLastModified(System.currentTimeMillis());
+			int restored = 0;
+			for(File f : entry.listFiles()) {
+				// results stored by older versions may have other files
+				if(isOutputFile(nexusFile.getName(), f.getName())) {
+					copy(f, new File(nexusFile.getAbsoluteFile().getParentFile(), f.getName()));
+					restored++;
+				}
+			}
+			return restored;
+		}
+	}
+	
+	/**
+	 * Stores the output files of MrBayes for a NEXUS file, and evicts the 
+	 * least recently used results if the cache grows too big.
+	 * 
+	 * @param since time when MrBayes started, in the clock of the node. Older 
+	 * files were left by earlier runs.
+	 * @return the number of files stored
+	 */
+	public int store(String key, File nexusFile, long since) throws IOException {
+		final File[] outputs = getOutputFiles(nexusFile, since);
+		if(outputs.length == 0) {
+			return 0;
+		}
+		synchronized (LOCK) {
+			final File entry = new File(directory, key);
+			delete(entry);
+			if(!entry.mkdirs()) {
+				throw new IOException("Failed to create " + entry);
+			}
+			for(File f : outputs) {
+				copy(f, new File(entry, f.getName()));
+			}
+			if(!new File(entry, COMPLETE).createNewFile()) {
+				throw new IOException("Failed to store MrBayes results in " + entry);
+			}
+			evict();
+			return outputs.length;
+		}
+	}
+	
+	/**
+	 * @param since time when MrBayes started
+	 * @return the output files written by MrBayes for a NEXUS file since it 
+	 * started
+	 */
+	static File[] getOutputFiles(File nexusFile, long since) {
+		final File[] files = nexusFile.getAbsoluteFile().getParentFile().listFiles();
+		final List<File> outputs = new ArrayList<File>();
+		if(files != null) {
+			for(File f : files) {
+				if(f.isFile() && isOutputFile(nexusFile.getName(), f.getName()) 
+						&& f.lastModified() >= since - MTIME_RESOLUTION) {
+					outputs.add(f);
+				}
+			}
+		}
+		return outputs.toArray(new File[outputs.size()]);
+	}
+	
+	/**
+	 * @param input name of the NEXUS file
+	 * @param name name of a file
+	 * @return whether MrBayes writes the file with the results of the NEXUS 
+	 * file: its trace files (<code>input.nex.p</code>, 
+	 * <code>input.nex.run1.t</code>, ...) and the files of mcmc, sump and sumt 
+	 * (<code>.con.tre</code>, <code>.parts</code>, <code>.tstat</code>, 
+	 * <code>.vstat</code>, <code>.trprobs</code>, <code>.pstat</code>, 
+	 * <code>.lstat</code>, <code>.mstat</code>, <code>.ss</code>). 
+	 * Checkpoints, <code>.mcmc</code> diagnostics and the files of the 
+	 * plug-in are not results.
+	 */
+	static boolean isOutputFile(String input, String name) {
+		if(!name.startsWith(input)) {
+			return false;
+		}
+		final String extension = name.substring(input.length());
+		return RUN_OUTPUT.matcher(extension).matches() || SUMMARY_OUTPUT.matcher(extension).matches();
+	}
+	
+	/**
+	 * Deletes the least recently used results until the cache fits in its 
+	 * maximum size. Incomplete results are deleted too.
+	 */
+	void evict() {
+		final File[] entries = directory.listFiles();
+		if(entries == null) {
+			return;
+		}
+		long size = 0L;
+		final List<File> complete = new ArrayList<File>();
+		for(File entry : entries) {
+			if(!new File(entry, COMPLETE).isFile()) {
+				delete(entry);
+				continue;
+			}
+			complete.add(entry);
+			size += sizeOf(entry);
+		}
+		final File[] sorted = complete.toArray(new File[complete.size()]);
+		Arrays.sort(sorted, new Comparator<File>() {
+			public int compare(File o1, File o2) {
+				final long l1 = new File(o1, COMPLETE).lastModified();
+				final long l2 = new File(o2, COMPLETE).lastModified();
+				return (l1 < l2 ? -1 : (l1 == l2 ? 0 : 1));
+			}
+		});
+		for(int i = 0; i < sorted.length && size > maxSize; i++) {
+			LOGGER.fine("Evicting MrBayes results " + sorted[i]);
+			size -= sizeOf(sorted[i]);
+			delete(sorted[i]);
+		}
+	}
+	
+	private static long sizeOf(File entry) {
+		long size = 0L;
+		final File[] files = entry.listFiles();
+		if(files != null) {
+			for(File f : files) {
+				size += f.length();
+			}
+		}
+		return size;
+	}
+	
+	private static void delete(File entry) {
+		final File[] files = entry.listFiles();
+		if(files != null) {
+			for(File f : files) {
+				f.delete();
+			}
+		}
+		entry.delete();
+	}
+	
+	private static void copy(File from, File to) throws IOException {
+		final InputStream is = new FileInputStream(from);
+		try {
+			final OutputStream os = new FileOutputStream(to);
+			try {
+				final byte[] buffer = new byte[BUFFER_SIZE];
+				int read;
+				while((read = is.read(buffer)) != -1) {
+					os.write(buffer, 0, read);
+				}
+			} finally {
+				os.close();
+			}
+		} finally {
+			is.close();
+		}
+		to.setLastModified(from.lastModified());
+	}
+	
+	/**
+	 * Computes the key of a NEXUS file in the node, or <code>null</code> if 
+	 * it can't be cached.
+	 */
+	public static final class Key implements FileCallable<String> {
+
+		private static final long serialVersionUID = -1862040917251932687L;
+
+		private final String input;
+		
+		private final List<String> command;
+		
+		public Key(String input, List<String> command) {
+			this.input = input;
+			this.command = new ArrayList<String>(command);
+		}
+		
+		/* (non-Javadoc)
+		 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+		 */
+		public String invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+			try {
+				return key(new File(f, input), f, command);
+			} catch (ParseException pe) {
+				return null;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Returns the time in the node, which tells the files written by a run 
+	 * from the ones left by earlier runs.
+	 */
+	public static final class Clock implements FileCallable<Long> {
+
+		private static final long serialVersionUID = 2946016452188376185L;
+
+		/* (non-Javadoc)
+		 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+		 */
+		public Long invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+			return Long.valueOf(System.currentTimeMillis());
+		}
+		
+	}
+	
+	/**
+	 * Restores a result in the node, returning the number of files restored.
+	 */
+	public static final class Restore implements FileCallable<Integer> {
+
+		private static final long serialVersionUID = 6317252094387616230L;
+
+		private final String cache;
+		
+		private final String key;
+		
+		private final String input;
+		
+		public Restore(String cache, String key, String input) {
+			this.cache = cache;
+			this.key = key;
+			this.input = input;
+		}
+		
+		/* (non-Javadoc)
+		 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+		 */
+		public Integer invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+			return new ResultCache(new File(cache)).restore(key, new File(f, input));
+		}
+		
+	}
+	
+	/**
+	 * Stores a result in the node, returning the number of files stored.
+	 */
+	public static final class Store implements FileCallable<Integer> {
+
+		private static final long serialVersionUID = -3585193606417120146L;
+
+		private final String cache;
+		
+		private final String key;
+		
+		private final String input;
+		
+		private final long since;
+		
+		public Store(String cache, String key, String input, long since) {
+			this.cache = cache;
+			this.key = key;
+			this.input = input;
+			this.since = since;
+		}
+		
+		/* (non-Javadoc)
+		 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+		 */
+		public Integer invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+			return new ResultCache(new File(cache)).store(key, new File(f, input), since);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Bipartition of the taxa of a tree, induced by one of its branches, stored 
+ * as the bitset of the taxa on one side. Splits are normalized to the side 
+ * without the first taxon, as MrBayes does, so that both sides of a branch 
+ * give the same split. Instances must not be changed once used as keys.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public final class Split implements Serializable, Comparable<Split> {
+
+	private static final long serialVersionUID = -7640716658373898437L;
+
+	private final long[] bits;
+	
+	private Split(long[] bits) {
+		this.bits = bits;
+	}
+	
+	/**
+	 * @param ntax number of taxa
+	 * @return an empty split
+	 */
+	public static Split empty(int ntax) {
+		return new Split(new long[(ntax + 63) >>> 6]);
+	}
+	
+	/**
+	 * @param ntax number of taxa
+	 * @param taxon index of a taxon, from 0
+	 * @return the split with the single taxon
+	 */
+	public static Split of(int ntax, int taxon) {
+		final Split split = empty(ntax);
+		split.bits[taxon >>> 6] |= 1L << (taxon & 63);
+		return split;
+	}
+	
+	/**
+	 * Adds the taxa of another split to this one, while the tree is parsed.
+	 */
+	void add(Split other) {
+		for(int i = 0; i < bits.length; ++i) {
+			bits[i] |= other.bits[i];
+		}
+	}
+	
+	/**
+	 * @param ntax number of taxa
+	 * @return the normalized split, this one or its complement, or 
+	 * <code>null</code> if the split has all the taxa or none
+	 */
+	public Split normalize(int ntax) {
+		if(!contains(0)) {
+			return (isEmpty() ? null : this);
+		}
+		final long[] complement = new long[bits.length];
+		for(int i = 0; i < bits.length; ++i) {
+			complement[i] = ~bits[i];
+		}
+		if((ntax & 63) != 0) {
+			complement[complement.length - 1] &= (1L << (ntax & 63)) - 1L;
+		}
+		final Split split = new Split(complement);
+		return (split.isEmpty() ? null : split);
+	}
+	
+	/**
+	 * @param taxon index of a taxon, from 0
+	 * @return whether the taxon is in the split
+	 */
+	public boolean contains(int taxon) {
+		return (bits[taxon >>> 6] & (1L << (taxon & 63))) != 0L;
+	}
+	
+	/**
+	 * @param other another split
+	 * @return whether all the taxa of the other split are in this one
+	 */
+	public boolean containsAll(Split other) {
+		for(int i = 0; i < bits.length; ++i) {
+			if((other.bits[i] & ~bits[i]) != 0L) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return index of the first taxon of the split, or -1 if empty
+	 */
+	public int first() {
+		for(int i = 0; i < bits.length; ++i) {
+			if(bits[i] != 0L) {
+				return (i << 6) + Long.numberOfTrailingZeros(bits[i]);
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param from index of a taxon, from 0
+	 * @return index of the first taxon of the split from the given one, or 
+	 * -1 if there is none
+	 */
+	public int next(int from) {
+		int i = from >>> 6;
+		if(i >= bits.length) {
+			return -1;
+		}
+		long word = bits[i] & (-1L << (from & 63));
+		while(word == 0L) {
+			if(++i == bits.length) {
+				return -1;
+			}
+			word = bits[i];
+		}
+		return (i << 6) + Long.numberOfTrailingZeros(word);
+	}
+	
+	/**
+	 * @return whether the split has no taxa
+	 */
+	public boolean isEmpty() {
+		for(long word : bits) {
+			if(word != 0L) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the number of taxa in the split
+	 */
+	public int size() {
+		int size = 0;
+		for(long word : bits) {
+			size += Long.bitCount(word);
+		}
+		return size;
+	}
+	
+	/**
+	 * @param ntax number of taxa
+	 * @return whether the split separates a single taxon, i.e. is a 
+	 * terminal branch
+	 */
+	public boolean isTrivial(int ntax) {
+		final int size = size();
+		return size <= 1 || size >= ntax - 1;
+	}
+	
+	/**
+	 * @param ntax number of taxa
+	 * @return the split as MrBayes prints it, with <code>*</code> for the 
+	 * taxa in the split and <code>.</code> for the others
+	 */
+	public String toPartition(int ntax) {
+		final StringBuilder sb = new StringBuilder(ntax);
+		for(int i = 0; i < ntax; ++i) {
+			sb.append(contains(i) ? '*' : '.');
+		}
+		return sb.toString();
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bits);
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Split && Arrays.equals(bits, ((Split)obj).bits);
+	}
+	
+	/**
+	 * Orders splits by their taxa, first taxon first, for stable output.
+	 */
+	public int compareTo(Split other) {
+		for(int i = 0; i < bits.length; ++i) {
+			if(bits[i] != other.bits[i]) {
+				final long diff = bits[i] ^ other.bits[i];
+				final long lowest = diff & -diff;
+				return ((bits[i] & lowest) != 0L ? -1 : 1);
+			}
+		}
+		return 0;
+	}
+	
+}
@@ -0,0 +1,282 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Copy of a NEXUS file that runs only one of the independent runs of its
+ * analysis, with its own seeds. In the mrbayes block, nruns is set to 1, the
+ * seeds to the ones of the run, the output files are named as MrBayes names
+ * the files of that run in a multi-run analysis, e.g.
+ * <code>primates.nex.run2.p</code>, and sump and sumt are replaced by mcmcp,
+ * as the summaries are written once all the runs finish.
+ * <p>
+ * Returns the name of the output files given in the mrbayes block, or the
+ * name of the NEXUS file, for {@link Merge}.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class SplitRunFile implements FileCallable<String> {
+
+	private static final long serialVersionUID = -3305785126617461350L;
+
+	private final String input;
+
+	private final String charset;
+
+	private final int run;
+
+	private final int seed;
+
+	private final int swapseed;
+
+	private final List<String> commands;
+
+	/**
+	 * @param input NEXUS file, relative to the directory where MrBayes runs
+	 * @param charset encoding of the NEXUS file
+	 * @param run the run, from 1 to nruns
+	 * @param seed seed of the analysis, or <code>null</code> for a random one
+	 * @param swapseed swap seed of the analysis, or <code>null</code> for a
+	 * random one
+	 * @param commands commands of the wrapper command file, run before the
+	 * ones of the mrbayes block
+	 */
+	public SplitRunFile(String input, String charset, int run, String seed, String swapseed, List<String> commands) {
+		this.input = input;
+		this.charset = charset;
+		this.run = run;
+		final Random random = new Random();
+		this.seed = getSeed(seed, run, random);
+		this.swapseed = getSeed(swapseed, run, random);
+		this.commands = new ArrayList<String>(commands);
+	}
+
+	/**
+	 * @return the seed of the run
+	 */
+	public int getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the swap seed of the run
+	 */
+	public int getSwapseed() {
+		return swapseed;
+	}
+
+	/**
+	 * @param input NEXUS file
+	 * @param run the run, from 1 to nruns
+	 * @return the name of the copy of the NEXUS file for the run
+	 */
+	public static String getName(String input, int run) {
+		return input + ".run" + run + WrapperCommandFile.EXTENSION;
+	}
+
+	/**
+	 * Derives the seed of a run from the seed of the analysis, so that a
+	 * split analysis with a fixed seed gives the same results every time.
+	 *
+	 * @param seed seed of the analysis, or <code>null</code>
+	 * @param run the run, from 1 to nruns
+	 * @param random used when the analysis has no seed
+	 * @return a positive seed, different for each run
+	 */
+	static int getSeed(String seed, int run, Random random) {
+		if(seed != null) {
+			try {
+				final long derived = (Long.parseLong(seed.trim()) + 1000003L * (run - 1)) % Integer.MAX_VALUE;
+				return (int) Math.max(1L, Math.abs(derived));
+			} catch (NumberFormatException nfe) {
+				// use a random seed
+			}
+		}
+		return 1 + random.nextInt(Integer.MAX_VALUE - 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+	 */
+	public String invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+		final Reader reader = new InputStreamReader(new FileInputStream(new File(f, input)), charset);
+		try {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(f, getName(input, run))), charset));
+			try {
+				return rewrite(reader, writer);
+			} finally {
+				writer.close();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Copies the NEXUS file, changing its mrbayes block for the run.
+	 *
+	 * @return the name of the output files of the analysis, without the run
+	 */
+	String rewrite(Reader reader, Writer writer) throws IOException {
+		final Rewriter rewriter = new Rewriter();
+		rewriter.rewrite(reader, writer);
+		return rewriter.fileName;
+	}
+
+	/**
+	 * Sets the seeds, the run and its output files, and replaces sump and
+	 * sumt by mcmcp.
+	 */
+	private final class Rewriter extends NexusRewriter {
+
+		private String fileName = input;
+
+		/* (non-Javadoc)
+		 * @see jenkins.plugins.mrbayes.NexusRewriter#begin()
+		 */
+		@Override
+		protected String begin() {
+			final StringBuilder sb = new StringBuilder();
+			sb.append(" set autoclose=yes nowarn=yes seed=").append(seed).append(" swapseed=").append(swapseed)
+					.append("; mcmcp nruns=1 filename=").append(quote(input + ".run" + run)).append(";");
+			for(String command : commands) {
+				sb.append(" ").append(command).append(";");
+			}
+			return sb.toString();
+		}
+
+		/* (non-Javadoc)
+		 * @see jenkins.plugins.mrbayes.NexusRewriter#replace(java.lang.String)
+		 */
+		@Override
+		protected String replace(String command) {
+			return ("sump".equalsIgnoreCase(command) || "sumt".equalsIgnoreCase(command) ? "mcmcp" : null);
+		}
+
+		/* (non-Javadoc)
+		 * @see jenkins.plugins.mrbayes.NexusRewriter#option(java.lang.String, java.lang.String, java.lang.String)
+		 */
+		@Override
+		protected String option(String command, String option, String value) {
+			if("nruns".equalsIgnoreCase(option)) {
+				return "1";
+			} else if("seed".equalsIgnoreCase(option)) {
+				return Integer.toString(seed);
+			} else if("swapseed".equalsIgnoreCase(option)) {
+				return Integer.toString(swapseed);
+			} else if("filename".equalsIgnoreCase(option) 
+					&& ("mcmc".equalsIgnoreCase(command) || "mcmcp".equalsIgnoreCase(command))) {
+				// the output files, not e.g. the one of the log command
+				fileName = value;
+				return quote(value + ".run" + run);
+			}
+			return null;
+		}
+
+	}
+
+	/**
+	 * Renames the tree files of the runs of an analysis with more than one
+	 * tree parameter, from the names of a single-run analysis, e.g.
+	 * <code>primates.nex.run2.tree1.t</code>, to the ones of a multi-run
+	 * analysis, e.g. <code>primates.nex.tree1.run2.t</code>. The parameter
+	 * files and the files of a single tree parameter already have the names
+	 * of a multi-run analysis.
+	 */
+	public static final class Merge implements FileCallable<Integer> {
+
+		private static final long serialVersionUID = 4403364624806012377L;
+
+		private static final Pattern TREE = Pattern.compile("\\.tree(\\d+)\\.t");
+
+		private final String fileName;
+
+		private final int nruns;
+
+		/**
+		 * @param fileName name of the output files, relative to the directory
+		 * where MrBayes runs
+		 * @param nruns number of runs
+		 */
+		public Merge(String fileName, int nruns) {
+			this.fileName = fileName;
+			this.nruns = nruns;
+		}
+
+		/* (non-Javadoc)
+		 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+		 */
+		public Integer invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+			final File base = new File(f, fileName);
+			final File directory = base.getAbsoluteFile().getParentFile();
+			final String[] names = directory.list();
+			int renamed = 0;
+			if(names == null) {
+				return renamed;
+			}
+			for(int run = 1; run <= nruns; ++run) {
+				final String prefix = base.getName() + ".run" + run;
+				for(String name : names) {
+					if(!name.startsWith(prefix)) {
+						continue;
+					}
+					final Matcher m = TREE.matcher(name.substring(prefix.length()));
+					if(!m.matches()) {
+						continue;
+					}
+					final File target = new File(directory, base.getName() + ".tree" + m.group(1) + ".run" + run + ".t");
+					if(target.exists() && !target.delete()) {
+						throw new IOException("Failed to delete " + target);
+					}
+					if(!new File(directory, name).renameTo(target)) {
+						throw new IOException("Failed to rename " + name + " to " + target);
+					}
+					renamed++;
+				}
+			}
+			return renamed;
+		}
+
+	}
+
+}
@@ -0,0 +1,434 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Frequencies of the splits of the trees sampled by the runs of an analysis, 
+ * counted concurrently. Each thread counts a batch of trees in a map of its 
+ * own, and merges it into the shared table once per batch, so that threads 
+ * seldom wait for each other.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class SplitTable {
+
+	/**
+	 * Splits less frequent than this are not used for the average standard 
+	 * deviation of split frequencies, nor listed, as in MrBayes 
+	 * (minpartfreq).
+	 */
+	public static final double MIN_PARTITION_FREQUENCY = 0.10d;
+	
+	private final String[] taxa;
+	
+	private final int runs;
+	
+	private final ConcurrentHashMap<Split, Entry> entries = new ConcurrentHashMap<Split, Entry>();
+	
+	/**
+	 * Trees counted, by run.
+	 */
+	private final long[] trees;
+	
+	public SplitTable(String[] taxa, int runs) {
+		this.taxa = taxa;
+		this.runs = runs;
+		this.trees = new long[runs];
+	}
+	
+	/**
+	 * @return a batch where a thread counts the splits of some trees of a run
+	 */
+	public Batch newBatch(int run) {
+		return new Batch(run);
+	}
+	
+	/**
+	 * @return the taxon names
+	 */
+	public String[] getTaxa() {
+		return taxa;
+	}
+	
+	/**
+	 * @return the number of trees counted in a run
+	 */
+	public synchronized long getTrees(int run) {
+		return trees[run];
+	}
+	
+	/**
+	 * @return the number of trees counted in all runs
+	 */
+	public synchronized long getTrees() {
+		long total = 0L;
+		for(long t : trees) {
+			total += t;
+		}
+		return total;
+	}
+	
+	/**
+	 * @return the number of distinct splits
+	 */
+	public int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * @return frequency of a split over all runs
+	 */
+	public double getFrequency(Split split) {
+		final Entry entry = entries.get(split);
+		final long total = getTrees();
+		return (entry == null || total == 0L ? 0.0d : (double)entry.getCount() / total);
+	}
+	
+	/**
+	 * Standard deviation among runs of the frequency of a split.
+	 */
+	double getStdev(Entry entry) {
+		if(runs < 2) {
+			return Double.NaN;
+		}
+		final double[] frequencies = new double[runs];
+		for(int r = 0; r < runs; ++r) {
+			final long t = getTrees(r);
+			frequencies[r] = (t == 0L ? 0.0d : (double)entry.getCount(r) / t);
+		}
+		return Math.sqrt(TraceStatistics.variance(frequencies, 0, runs));
+	}
+	
+	/**
+	 * @return the average standard deviation of split frequencies among runs, 
+	 * for the non-terminal splits with a frequency of at least 
+	 * {@link #MIN_PARTITION_FREQUENCY} in some run, or NaN with a single run
+	 */
+	public double getAverageStdev() {
+		if(runs < 2) {
+			return Double.NaN;
+		}
+		double sum = 0.0d;
+		int count = 0;
+		for(Map.Entry<Split, Entry> entry : entries.entrySet()) {
+			if(entry.getKey().isTrivial(taxa.length)) {
+				continue;
+			}
+			boolean frequent = false;
+			for(int r = 0; r < runs && !frequent; ++r) {
+				final long t = getTrees(r);
+				frequent = t > 0L && (double)entry.getValue().getCount(r) / t >= MIN_PARTITION_FREQUENCY;
+			}
+			if(frequent) {
+				sum += getStdev(entry.getValue());
+				++count;
+			}
+		}
+		return (count == 0 ? 0.0d : sum / count);
+	}
+	
+	/**
+	 * @return the splits at least as frequent as the given frequency, the 
+	 * most frequent first
+	 */
+	List<Split> getSplits(final double minFrequency, boolean trivial) {
+		final long total = getTrees();
+		final List<Split> splits = new ArrayList<Split>();
+		for(Map.Entry<Split, Entry> entry : entries.entrySet()) {
+			if((trivial || !entry.getKey().isTrivial(taxa.length)) && total > 0L 
+					&& (double)entry.getValue().getCount() / total >= minFrequency) {
+				splits.add(entry.getKey());
+			}
+		}
+		Collections.sort(splits, new Comparator<Split>() {
+			public int compare(Split s1, Split s2) {
+				final long c1 = entries.get(s1).getCount();
+				final long c2 = entries.get(s2).getCount();
+				return (c1 != c2 ? (c1 > c2 ? -1 : 1) : s1.compareTo(s2));
+			}
+		});
+		return splits;
+	}
+	
+	/**
+	 * Builds the majority rule consensus tree: the splits present in more 
+	 * than half of the trees, which are always compatible, labelled with 
+	 * their frequency and their mean branch length. The tree is rooted at 
+	 * the first taxon, as MrBayes prints it.
+	 * 
+	 * @return the consensus tree, in newick, with the taxon names
+	 */
+	public String getMajorityRuleConsensus() {
+		final int ntax = taxa.length;
+		final List<Split> splits = new ArrayList<Split>();
+		final long total = getTrees();
+		for(Map.Entry<Split, Entry> entry : entries.entrySet()) {
+			// the split of all taxa but the first is the branch of the first
+			if(total > 0L && entry.getValue().getCount() * 2L > total && entry.getKey().size() < ntax - 1) {
+				splits.add(entry.getKey());
+			}
+		}
+		// larger clades first, so that each clade is added under its parent
+		Collections.sort(splits, new Comparator<Split>() {
+			public int compare(Split s1, Split s2) {
+				final int size1 = s1.size();
+				final int size2 = s2.size();
+				return (size1 != size2 ? size2 - size1 : s1.compareTo(s2));
+			}
+		});
+		final Set<Split> majority = new HashSet<Split>(splits);
+		for(int t = 1; t < ntax; ++t) {
+			final Split leaf = Split.of(ntax, t);
+			if(!majority.contains(leaf)) {
+				splits.add(leaf);
+			}
+		}
+		// the smallest clade added so far with each taxon: as the splits are 
+		// compatible and come largest first, it is the parent of the next 
+		// split with that taxon
+		final Node root = new Node(null);
+		final Node[] smallest = new Node[ntax];
+		Arrays.fill(smallest, root);
+		for(Split split : splits) {
+			final Node node = new Node(split);
+			final int first = split.first();
+			smallest[first].children.add(node);
+			for(int t = first; t >= 0; t = split.next(t + 1)) {
+				smallest[t] = node;
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		sb.append('(').append(quote(taxa[0]));
+		final Entry first = entries.get(Split.of(ntax, 0).normalize(ntax));
+		if(first != null) {
+			sb.append(':').append(format("%.6f", first.getMeanLength()));
+		}
+		for(Node child : root.getChildren()) {
+			sb.append(',');
+			write(sb, child);
+		}
+		sb.append(");");
+		return sb.toString();
+	}
+	
+	private void write(StringBuilder sb, Node node) {
+		final Entry entry = entries.get(node.split);
+		if(node.children.isEmpty()) {
+			sb.append(quote(taxa[node.split.first()]));
+		} else {
+			sb.append('(');
+			final List<Node> children = node.getChildren();
+			for(int i = 0; i < children.size(); ++i) {
+				if(i > 0) {
+					sb.append(',');
+				}
+				write(sb, children.get(i));
+			}
+			sb.append(')');
+			if(entry != null) {
+				sb.append(format("%.2f", (double)entry.getCount() / getTrees()));
+			}
+		}
+		if(entry != null) {
+			sb.append(':').append(format("%.6f", entry.getMeanLength()));
+		}
+	}
+	
+	/**
+	 * Formats numbers for files, with a dot as decimal separator whatever 
+	 * the locale of the node.
+	 */
+	private static String format(String format, double value) {
+		return String.format(Locale.ENGLISH, format, value);
+	}
+	
+	private static String quote(String name) {
+		for(int i = 0; i < name.length(); ++i) {
+			if("()[]{}/\\,;:=*'\"`+-<> \t".indexOf(name.charAt(i)) >= 0) {
+				return "'" + name.replace("'", "''") + "'";
+			}
+		}
+		return name;
+	}
+	
+	/**
+	 * Writes the split frequencies, like the .tstat file of MrBayes: the 
+	 * non-terminal splits with a frequency of at least 
+	 * {@link #MIN_PARTITION_FREQUENCY}, the most frequent first.
+	 */
+	public void writeTable(PrintWriter writer) {
+		final int ntax = taxa.length;
+		final long total = getTrees();
+		writer.println("ID\tPartition\t#obs\tProbab.\tStddev(s)\tMean(v)");
+		int id = 0;
+		for(Split split : getSplits(MIN_PARTITION_FREQUENCY, false)) {
+			final Entry entry = entries.get(split);
+			writer.print(++id);
+			writer.print('\t');
+			writer.print(split.toPartition(ntax));
+			writer.print('\t');
+			writer.print(entry.getCount());
+			writer.print('\t');
+			writer.print(format("%.6f", (double)entry.getCount() / total));
+			writer.print('\t');
+			writer.print(runs < 2 ? "NA" : format("%.6f", getStdev(entry)));
+			writer.print('\t');
+			writer.println(format("%.6f", entry.getMeanLength()));
+		}
+	}
+	
+	/**
+	 * Counts and lengths of a split.
+	 */
+	static class Entry {
+		
+		private final long[] counts;
+		
+		private double lengthSum = 0.0d;
+		
+		Entry(int runs) {
+			counts = new long[runs];
+		}
+		
+		synchronized void add(int run, long count, double length) {
+			counts[run] += count;
+			lengthSum += length;
+		}
+		
+		synchronized long getCount(int run) {
+			return counts[run];
+		}
+		
+		synchronized long getCount() {
+			long total = 0L;
+			for(long count : counts) {
+				total += count;
+			}
+			return total;
+		}
+		
+		synchronized double getMeanLength() {
+			final long count = getCount();
+			return (count == 0L ? 0.0d : lengthSum / count);
+		}
+		
+	}
+	
+	/**
+	 * Splits of some trees of a run, counted by a single thread.
+	 */
+	public class Batch {
+		
+		private final int run;
+		
+		private final Map<Split, double[]> counts = new HashMap<Split, double[]>();
+		
+		private long batchTrees = 0L;
+		
+		Batch(int run) {
+			this.run = run;
+		}
+		
+		/**
+		 * @param splits splits of a tree, with their lengths
+		 */
+		public void add(Map<Split, Double> splits) {
+			for(Map.Entry<Split, Double> split : splits.entrySet()) {
+				double[] count = counts.get(split.getKey());
+				if(count == null) {
+					count = new double[2];
+					counts.put(split.getKey(), count);
+				}
+				count[0] += 1.0d;
+				count[1] += split.getValue().doubleValue();
+			}
+			++batchTrees;
+		}
+		
+		/**
+		 * Adds the counts of the batch to the table.
+		 */
+		public void merge() {
+			for(Map.Entry<Split, double[]> count : counts.entrySet()) {
+				Entry entry = entries.get(count.getKey());
+				if(entry == null) {
+					final Entry created = new Entry(runs);
+					entry = entries.putIfAbsent(count.getKey(), created);
+					if(entry == null) {
+						entry = created;
+					}
+				}
+				entry.add(run, (long)count.getValue()[0], count.getValue()[1]);
+			}
+			synchronized (SplitTable.this) {
+				trees[run] += batchTrees;
+			}
+			counts.clear();
+			batchTrees = 0L;
+		}
+		
+	}
+	
+	/**
+	 * Node of the consensus tree.
+	 */
+	private static class Node {
+		
+		private final Split split;
+		
+		private final List<Node> children = new ArrayList<Node>();
+		
+		Node(Split split) {
+			this.split = split;
+		}
+		
+		/**
+		 * @return the children, in the order of their first taxon
+		 */
+		List<Node> getChildren() {
+			Collections.sort(children, new Comparator<Node>() {
+				public int compare(Node n1, Node n2) {
+					return n1.split.first() - n2.split.first();
+				}
+			});
+			return children;
+		}
+		
+	}
+	
+}
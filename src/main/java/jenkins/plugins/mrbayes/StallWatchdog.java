@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+/**
+ * Watches the progress of a MrBayes run in the node where it runs, and tells
+ * when it should be killed: when neither a new generation was printed nor an
+ * output file grew for longer than the stall timeout, e.g. MrBayes blocked
+ * in a stalled NFS mount or an MPI deadlock, or when the run passed its
+ * deadline or, at the speed measured so far, would finish after it.
+ * <p>
+ * Before the run is killed, {@link #snapshot(String, ProcessSampler, PrintStream)}
+ * writes what is known of it to the build log.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class StallWatchdog implements Serializable {
+
+	private static final long serialVersionUID = -1926417703251838815L;
+
+	/**
+	 * Time the speed must be measured for, in milliseconds, before the
+	 * finish time is projected with it, so that the start of the run does
+	 * not count.
+	 */
+	public static final long MIN_PROJECTION_TIME = Long.getLong(StallWatchdog.class.getName() + ".minProjectionTime",
+			10L * 60L * 1000L).longValue();
+
+	private static final long MINUTE = 60L * 1000L;
+
+	/**
+	 * Time without progress to kill the run, in milliseconds, or 0.
+	 */
+	private final long stallTimeout;
+
+	/**
+	 * Time from the start of the run to kill it, in milliseconds, or 0.
+	 */
+	private final long deadline;
+
+	/**
+	 * Name of the output files of the run, relative to the directory where
+	 * MrBayes runs, e.g. <code>primates.nex</code>.
+	 */
+	private final String outputFiles;
+
+	private transient ProgressMonitor progress;
+
+	private transient File directory;
+
+	private transient long start;
+
+	private transient long lastSize;
+
+	private transient long lastGrowth;
+
+	/**
+	 * @param stallTimeout time without progress to kill the run, in
+	 * milliseconds, or 0 to never kill it for that
+	 * @param deadline time from the start of the run to kill it, in
+	 * milliseconds, or 0 for no deadline
+	 * @param outputFiles name of the output files of the run, relative to the
+	 * directory where MrBayes runs
+	 */
+	public StallWatchdog(long stallTimeout, long deadline, String outputFiles) {
+		this.stallTimeout = stallTimeout;
+		this.deadline = deadline;
+		this.outputFiles = outputFiles;
+	}
+
+	/**
+	 * @return whether the watchdog would ever kill a run
+	 */
+	public boolean isEnabled() {
+		return stallTimeout > 0L || deadline > 0L;
+	}
+
+	/**
+	 * Starts watching a run.
+	 *
+	 * @param progress progress of the run, from its output
+	 * @param pwd directory where MrBayes runs
+	 * @param start when the run started, or was reattached to, in
+	 * milliseconds
+	 */
+	public synchronized void start(ProgressMonitor progress, File pwd, long start) {
+		this.progress = progress;
+		this.directory = new File(pwd, outputFiles).getAbsoluteFile().getParentFile();
+		this.start = start;
+		this.lastSize = getOutputSize();
+		this.lastGrowth = start;
+	}
+
+	/**
+	 * Checks the progress of the run.
+	 *
+	 * @param now the current time, in milliseconds
+	 * @return why the run must be killed, or <code>null</code> if it must not
+	 */
+	public synchronized String check(long now) {
+		final long size = getOutputSize();
+		if(size != lastSize) {
+			lastSize = size;
+			lastGrowth = now;
+		}
+		final long lastProgress = Math.max(lastGrowth, Math.max(start, progress.getLastTime()));
+		if(stallTimeout > 0L && now - lastProgress > stallTimeout) {
+			return Messages.StallWatchdog_Stalled(minutes(now - lastProgress));
+		}
+		if(deadline > 0L) {
+			if(now - start > deadline) {
+				return Messages.StallWatchdog_DeadlinePassed(minutes(deadline));
+			}
+			final long finish = getProjectedFinish();
+			if(finish > start + deadline) {
+				return Messages.StallWatchdog_DeadlineProjected(minutes(finish - start), minutes(deadline));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return when the run would finish at the speed measured so far, in
+	 * milliseconds, or -1 if it was not measured long enough
+	 */
+	synchronized long getProjectedFinish() {
+		final double rate = progress.getGenerationsPerSecond();
+		final long requested = progress.getRequestedGenerations();
+		if(rate <= 0.0d || requested <= 0L || progress.getMeasuredTime() < MIN_PROJECTION_TIME) {
+			return -1L;
+		}
+		final long remaining = Math.max(0L, requested - progress.getLastGeneration());
+		return progress.getLastTime() + (long)(remaining * 1000.0d / rate);
+	}
+
+	/**
+	 * Writes what is known of the run: its progress, its output files, its
+	 * processes and the last lines of its output.
+	 *
+	 * @param reason why the run is killed
+	 * @param sampler sampler of the processes of the run
+	 * @param out where the snapshot is written
+	 */
+	public synchronized void snapshot(String reason, ProcessSampler sampler, PrintStream out) {
+		final long now = System.currentTimeMillis();
+		out.println(Messages.StallWatchdog_Killing(reason));
+		final long lastTime = progress.getLastTime();
+		out.println(Messages.StallWatchdog_Progress(progress.getLastGeneration(),
+				MrBayesTimingAction.formatSeconds(lastTime < 0L ? -1L : now - lastTime),
+				MrBayesTimingAction.format(progress.getGenerationsPerSecond()), progress.getRequestedGenerations()));
+		for(File f : getOutputFiles()) {
+			out.println(Messages.StallWatchdog_OutputFile(f.getName(), f.length(), (now - f.lastModified()) / 1000L));
+		}
+		for(String process : sampler.describe()) {
+			out.println(Messages.StallWatchdog_Process(process));
+		}
+		for(String line : progress.getTail()) {
+			out.println(Messages.StallWatchdog_Output(line));
+		}
+	}
+
+	/**
+	 * @return the output files of the run, sorted by name
+	 */
+	File[] getOutputFiles() {
+		final String prefix = new File(outputFiles).getName() + ".";
+		final File[] files = directory.listFiles();
+		if(files == null) {
+			return new File[0];
+		}
+		int count = 0;
+		for(File f : files) {
+			if(f.isFile() && f.getName().startsWith(prefix)) {
+				files[count++] = f;
+			}
+		}
+		final File[] outputs = new File[count];
+		System.arraycopy(files, 0, outputs, 0, count);
+		Arrays.sort(outputs);
+		return outputs;
+	}
+
+	private long getOutputSize() {
+		long size = 0L;
+		for(File f : getOutputFiles()) {
+			size += f.length();
+		}
+		return size;
+	}
+
+	private static String minutes(long millis) {
+		return MrBayesTraceAction.format(millis / (double) MINUTE);
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.regex.Pattern;
+
+/**
+ * Copy of a NEXUS file that only writes the summaries of an analysis that 
+ * was stopped. The mcmc commands of the mrbayes block are replaced by mcmcp, 
+ * so that the data and the settings of the user are read again, but no 
+ * generation is run, and the sump and sumt commands of the user read the 
+ * files left by the stopped analysis. As MrBayes may have been stopped while 
+ * writing a sample, those files are first cut back to their last complete 
+ * line.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class SummaryCommandFile implements FileCallable<String> {
+
+	private static final long serialVersionUID = 5263012785164904281L;
+
+	public static final String EXTENSION = ".summary" + WrapperCommandFile.EXTENSION;
+	
+	/**
+	 * Trace files of an analysis, after the name of its output files, e.g. 
+	 * <code>.run1.p</code> or <code>.tree2.run1.t</code>.
+	 */
+	private static final Pattern TRACE = Pattern.compile("(\\.(run|tree)\\d+)*\\.[pt]");
+	
+	private static final int BUFFER_SIZE = 8 * 1024;
+	
+	private final String input;
+	
+	private final String charset;
+	
+	/**
+	 * @param input NEXUS file, relative to the directory where MrBayes runs
+	 * @param charset encoding of the NEXUS file
+	 */
+	public SummaryCommandFile(String input, String charset) {
+		this.input = input;
+		this.charset = charset;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+	 */
+	public String invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+		final String name = input + EXTENSION;
+		final String fileName;
+		final Reader reader = new InputStreamReader(new FileInputStream(new File(f, input)), charset);
+		try {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(f, name)), charset));
+			try {
+				fileName = rewrite(reader, writer, input);
+			} finally {
+				writer.close();
+			}
+		} finally {
+			reader.close();
+		}
+		trimTraceFiles(f, fileName);
+		return name;
+	}
+	
+	/**
+	 * Copies a NEXUS file, replacing the mcmc commands of its mrbayes block. 
+	 * The output files keep the name of the original file, unless the 
+	 * mrbayes block says otherwise.
+	 * 
+	 * @param reader original NEXUS file
+	 * @param writer copy
+	 * @param fileName the original NEXUS file, as passed to MrBayes
+	 * @return the name of the output files of the analysis
+	 */
+	static String rewrite(Reader reader, Writer writer, String fileName) throws IOException {
+		final Rewriter rewriter = new Rewriter(fileName);
+		rewriter.rewrite(reader, writer);
+		return rewriter.outputName;
+	}
+	
+	/**
+	 * Cuts the trace files of an analysis back to their last complete line.
+	 * 
+	 * @param directory directory where MrBayes runs
+	 * @param fileName name of the output files of the analysis, relative to 
+	 * the directory
+	 * @return the number of files cut
+	 */
+	static int trimTraceFiles(File directory, String fileName) throws IOException {
+		final File base = new File(directory, fileName);
+		final File[] files = base.getAbsoluteFile().getParentFile().listFiles();
+		int trimmed = 0;
+		if(files == null) {
+			return trimmed;
+		}
+		final String prefix = base.getName();
+		for(File file : files) {
+			if(file.isFile() && file.getName().startsWith(prefix) 
+					&& TRACE.matcher(file.getName().substring(prefix.length())).matches() && trim(file)) {
+				trimmed++;
+			}
+		}
+		return trimmed;
+	}
+	
+	/**
+	 * Cuts what follows the last line break of a file.
+	 * 
+	 * @return whether the file was cut
+	 */
+	static boolean trim(File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			final long length = raf.length();
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			long position = length;
+			while(position > 0L) {
+				final int size = (int)Math.min(buffer.length, position);
+				position -= size;
+				raf.seek(position);
+				raf.readFully(buffer, 0, size);
+				for(int i = size - 1; i >= 0; i--) {
+					if(buffer[i] == '\n') {
+						if(position + i + 1 == length) {
+							return false;
+						}
+						raf.setLength(position + i + 1);
+						return true;
+					}
+				}
+			}
+			// not even the header is complete
+			return false;
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Replaces mcmc by mcmcp, and remembers the name of the output files.
+	 */
+	private static final class Rewriter extends NexusRewriter {
+		
+		private final String fileName;
+		
+		private String outputName;
+		
+		public Rewriter(String fileName) {
+			this.fileName = fileName;
+			this.outputName = fileName;
+		}
+		
+		/* (non-Javadoc)
+		 * @see jenkins.plugins.mrbayes.NexusRewriter#begin()
+		 */
+		@Override
+		protected String begin() {
+			return " set autoclose=yes nowarn=yes; mcmcp filename=" + quote(fileName) + ";";
+		}
+		
+		/* (non-Javadoc)
+		 * @see jenkins.plugins.mrbayes.NexusRewriter#rename(java.lang.String)
+		 */
+		@Override
+		protected String rename(String command) {
+			return ("mcmc".equalsIgnoreCase(command) ? "mcmcp" : null);
+		}
+		
+		/* (non-Javadoc)
+		 * @see jenkins.plugins.mrbayes.NexusRewriter#option(java.lang.String, java.lang.String, java.lang.String)
+		 */
+		@Override
+		protected String option(String command, String option, String value) {
+			if("filename".equalsIgnoreCase(option) 
+					&& ("mcmc".equalsIgnoreCase(command) || "mcmcp".equalsIgnoreCase(command))) {
+				outputName = value;
+			}
+			return null;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,265 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Acceptance rates of the state swaps between the heated chains of a
+ * MrBayes analysis, read from the table MrBayes prints at the end of each
+ * run:
+ * <pre>
+ *       Chain swap information for run 1:
+ *
+ *                    1       2       3       4
+ *            --------------------------------
+ *          1 |          0.72    0.48    0.28
+ *          2 |  166665          0.74    0.50
+ *          3 |  166837  166503          0.74
+ *          4 |  166546  166593  166856
+ * </pre>
+ * along with the temperature, from <code>(where T = 0.10 is the
+ * temperature ...)</code>. The upper diagonal holds the rates; the lower one,
+ * the swaps attempted, is not kept.
+ * <p>
+ * MrBayes heats chain i with 1 / (1 + T (i - 1)), so the rate of the swaps
+ * between adjacent chains falls as the temperature rises.
+ * {@link #propose(double, double, double, double)} uses this to move the
+ * rates of the next builds toward a target range.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class SwapAcceptance implements Serializable {
+
+	private static final long serialVersionUID = 5406517284563093871L;
+
+	/**
+	 * Lowest acceptable mean rate of the swaps between adjacent chains.
+	 */
+	public static final double MIN_RATE = Double.parseDouble(
+			System.getProperty(SwapAcceptance.class.getName() + ".minRate", "0.2"));
+
+	/**
+	 * Highest acceptable mean rate of the swaps between adjacent chains.
+	 */
+	public static final double MAX_RATE = Double.parseDouble(
+			System.getProperty(SwapAcceptance.class.getName() + ".maxRate", "0.6"));
+
+	/**
+	 * Largest factor the temperature is changed by from one build to the
+	 * next, as the rates of a short run are noisy.
+	 */
+	private static final double MAX_STEP = 4.0d;
+
+	private static final Pattern TABLE = Pattern.compile("Chain swap information( for run (\\d+))?:");
+
+	private static final Pattern HEADER = Pattern.compile("^\\s*(\\d+\\s+)*\\d+\\s*$");
+
+	private static final Pattern ROW = Pattern.compile("^\\s*(\\d+)\\s*\\|(.*)$");
+
+	private static final Pattern TEMPERATURE = Pattern.compile("where T = ([0-9.eE+-]+) is the temperature");
+
+	/**
+	 * Rates of each run, <code>rates[i][j]</code> being the rate between
+	 * chains i + 1 and j + 1, for i &lt; j.
+	 */
+	private final List<double[][]> runs = new ArrayList<double[][]>();
+
+	private double temperature = -1.0d;
+
+	/**
+	 * Table being read, or <code>null</code>.
+	 */
+	private transient double[][] table;
+
+	private transient int rows;
+
+	/**
+	 * Reads a line of the output of MrBayes.
+	 *
+	 * @param line a line, without the line terminator
+	 */
+	public synchronized void parse(String line) {
+		final Matcher temperatureMatcher = TEMPERATURE.matcher(line);
+		if(temperatureMatcher.find()) {
+			try {
+				temperature = Double.parseDouble(temperatureMatcher.group(1));
+			} catch (NumberFormatException nfe) {
+				// not a temperature
+			}
+			return;
+		}
+		if(TABLE.matcher(line).find()) {
+			table = new double[0][];
+			rows = 0;
+			return;
+		}
+		if(table == null) {
+			return;
+		}
+		if(table.length == 0) {
+			if(HEADER.matcher(line).matches()) {
+				final int chains = line.trim().split("\\s+").length;
+				table = new double[chains][chains];
+			}
+			return;
+		}
+		final Matcher row = ROW.matcher(line);
+		if(!row.matches()) {
+			return;
+		}
+		try {
+			final int i = Integer.parseInt(row.group(1)) - 1;
+			final String[] values = row.group(2).trim().split("\\s+");
+			// i attempt counts, then the rates of the chains after i
+			final int chains = table.length;
+			if(i < 0 || i >= chains || values.length != chains - 1) {
+				table = null;
+				return;
+			}
+			for(int j = i + 1; j < chains; ++j) {
+				table[i][j] = Double.parseDouble(values[j - 1]);
+			}
+		} catch (NumberFormatException nfe) {
+			table = null;
+			return;
+		}
+		if(++rows == table.length) {
+			runs.add(table);
+			table = null;
+		}
+	}
+
+	/**
+	 * @return the rates of each run, <code>rates[i][j]</code> being the rate
+	 * between chains i + 1 and j + 1, for i &lt; j
+	 */
+	public synchronized List<double[][]> getRuns() {
+		return Collections.unmodifiableList(new ArrayList<double[][]>(runs));
+	}
+
+	/**
+	 * @return the temperature printed by MrBayes, or -1 if not printed
+	 */
+	public synchronized double getTemperature() {
+		return temperature;
+	}
+
+	/**
+	 * Adds the rates of the runs of another process of the same analysis,
+	 * e.g. of a split run.
+	 *
+	 * @param other the rates of the other process, or <code>null</code>
+	 */
+	public synchronized void add(SwapAcceptance other) {
+		if(other == null) {
+			return;
+		}
+		runs.addAll(other.getRuns());
+		if(temperature < 0.0d) {
+			temperature = other.getTemperature();
+		}
+	}
+
+	/**
+	 * @return the mean rate of the swaps between adjacent chains, over all
+	 * the runs, or NaN if no table was read
+	 */
+	public synchronized double getMeanAdjacentRate() {
+		double sum = 0.0d;
+		int count = 0;
+		for(double[][] rates : runs) {
+			for(int i = 0; i + 1 < rates.length; ++i) {
+				sum += rates[i][i + 1];
+				count++;
+			}
+		}
+		return (count > 0 ? sum / count : Double.NaN);
+	}
+
+	/**
+	 * @return the rates of the swaps between adjacent chains, averaged over
+	 * the runs, one per pair of chains
+	 */
+	public synchronized double[] getAdjacentRates() {
+		int chains = Integer.MAX_VALUE;
+		for(double[][] rates : runs) {
+			chains = Math.min(chains, rates.length);
+		}
+		if(runs.isEmpty() || chains < 2) {
+			return new double[0];
+		}
+		final double[] adjacent = new double[chains - 1];
+		for(double[][] rates : runs) {
+			for(int i = 0; i < adjacent.length; ++i) {
+				adjacent[i] += rates[i][i + 1] / runs.size();
+			}
+		}
+		return adjacent;
+	}
+
+	/**
+	 * Proposes the temperature of the next run of an analysis. The log of
+	 * the rate of the swaps between adjacent chains falls about linearly
+	 * with the temperature, so the temperature is scaled by
+	 * <code>log(target) / log(rate)</code>, the target being the middle of
+	 * the range, by at most a factor of 4.
+	 *
+	 * @param temperature temperature of the last run
+	 * @param rate mean rate of the swaps between adjacent chains in the last
+	 * run
+	 * @param minRate lowest acceptable rate
+	 * @param maxRate highest acceptable rate
+	 * @return the temperature of the next run, the same if the rate is in
+	 * the range, or -1 if the temperature or the rate are not known
+	 */
+	public static double propose(double temperature, double rate, double minRate, double maxRate) {
+		if(temperature <= 0.0d || Double.isNaN(rate)) {
+			return -1.0d;
+		}
+		if(rate >= minRate && rate <= maxRate) {
+			return temperature;
+		}
+		final double target = (minRate + maxRate) / 2.0d;
+		final double observed = Math.min(0.999d, Math.max(0.001d, rate));
+		double factor = Math.log(target) / Math.log(observed);
+		factor = Math.min(MAX_STEP, Math.max(1.0d / MAX_STEP, factor));
+		return round(temperature * factor);
+	}
+
+	/**
+	 * @return the value with three significant digits
+	 */
+	private static double round(double value) {
+		final double scale = Math.pow(10.0d, 2 - (int) Math.floor(Math.log10(value)));
+		return Math.round(value * scale) / scale;
+	}
+
+}
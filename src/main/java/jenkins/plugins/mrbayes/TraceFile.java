@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parameter trace written by MrBayes for one run (<code>input.nex.p</code>, 
+ * or <code>input.nex.run1.p</code>, <code>input.nex.run2.p</code>, ... for 
+ * several runs). The file is streamed line by line into one array of 
+ * doubles per parameter, so that large traces are never held as text.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TraceFile {
+
+	/**
+	 * Extension of the trace files.
+	 */
+	public static final String EXTENSION = ".p";
+	
+	private static final String GENERATION_COLUMN = "Gen";
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	/**
+	 * Parameter names, without the generation column.
+	 */
+	private final String[] parameters;
+	
+	/**
+	 * Values by parameter, then by sample. Only the first 
+	 * <code>samples</code> values of each array are used.
+	 */
+	private final double[][] columns;
+	
+	private final int samples;
+	
+	TraceFile(String[] parameters, double[][] columns, int samples) {
+		this.parameters = parameters;
+		this.columns = columns;
+		this.samples = samples;
+	}
+	
+	/**
+	 * @return the parameter names, in the order of the file
+	 */
+	public String[] getParameters() {
+		return parameters;
+	}
+	
+	/**
+	 * @return number of samples in the trace
+	 */
+	public int getSamples() {
+		return samples;
+	}
+	
+	/**
+	 * @param parameter index of the parameter, in {@link #getParameters()}
+	 * @return the values of the parameter. The array may be longer than the 
+	 * number of samples.
+	 */
+	public double[] getColumn(int parameter) {
+		return columns[parameter];
+	}
+	
+	/**
+	 * @param parameter name of a parameter
+	 * @return index of the parameter, or -1 if not in the trace
+	 */
+	public int indexOf(String parameter) {
+		for(int i = 0; i < parameters.length; ++i) {
+			if(parameters[i].equals(parameter)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param file trace file
+	 * @return the trace
+	 * @throws ParseException if the file is not a MrBayes trace
+	 */
+	public static TraceFile read(File file) throws IOException, ParseException {
+		final Reader reader = new FileReader(file);
+		try {
+			return read(reader);
+		} finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Reads a trace. Lines within brackets (the ID line) and blank lines are 
+	 * skipped, the first other line is the header. A last line cut short by 
+	 * a run still writing the file is ignored.
+	 * 
+	 * @param in trace content
+	 * @return the trace
+	 * @throws ParseException if the content is not a MrBayes trace
+	 */
+	public static TraceFile read(Reader in) throws IOException, ParseException {
+		final BufferedReader reader = new BufferedReader(in, 64 * 1024);
+		String[] header = null;
+		int lineNumber = 0;
+		String line;
+		while(header == null && (line = reader.readLine()) != null) {
+			++lineNumber;
+			if(line.trim().length() > 0 && !line.startsWith("[")) {
+				header = split(line);
+			}
+		}
+		if(header == null || header.length < 2 || !GENERATION_COLUMN.equals(header[0])) {
+			throw new ParseException("Missing trace header, expected a first column " + GENERATION_COLUMN, lineNumber);
+		}
+		final String[] parameters = new String[header.length - 1];
+		System.arraycopy(header, 1, parameters, 0, parameters.length);
+		double[][] columns = new double[parameters.length][INITIAL_CAPACITY];
+		final double[] row = new double[parameters.length];
+		int samples = 0;
+		// an invalid line is only an error if it is not the last one
+		String invalid = null;
+		int invalidLineNumber = 0;
+		while((line = reader.readLine()) != null) {
+			++lineNumber;
+			if(line.length() == 0) {
+				continue;
+			}
+			if(invalid != null) {
+				throw new ParseException("Invalid trace line " + invalidLineNumber + ": " + invalid, invalidLineNumber);
+			}
+			if(!parseRow(line, row)) {
+				invalid = line;
+				invalidLineNumber = lineNumber;
+				continue;
+			}
+			if(samples == columns[0].length) {
+				columns = grow(columns);
+			}
+			for(int i = 0; i < row.length; ++i) {
+				columns[i][samples] = row[i];
+			}
+			++samples;
+		}
+		return new TraceFile(parameters, columns, samples);
+	}
+	
+	/**
+	 * Parses the values of a line, skipping the generation.
+	 * 
+	 * @return whether the line had a valid value for each parameter
+	 */
+	private static boolean parseRow(String line, double[] row) {
+		int start = line.indexOf('\t');
+		for(int i = 0; i < row.length; ++i) {
+			if(start < 0) {
+				return false;
+			}
+			int end = line.indexOf('\t', start + 1);
+			final String value = (end < 0 ? line.substring(start + 1) : line.substring(start + 1, end)).trim();
+			try {
+				row[i] = Double.parseDouble(value);
+			} catch (NumberFormatException nfe) {
+				return false;
+			}
+			start = end;
+		}
+		return true;
+	}
+	
+	private static double[][] grow(double[][] columns) {
+		final double[][] grown = new double[columns.length][];
+		for(int i = 0; i < columns.length; ++i) {
+			grown[i] = new double[columns[i].length * 2];
+			System.arraycopy(columns[i], 0, grown[i], 0, columns[i].length);
+		}
+		return grown;
+	}
+	
+	private static String[] split(String line) {
+		final List<String> fields = new ArrayList<String>();
+		for(String field : line.split("\t")) {
+			if(field.trim().length() > 0) {
+				fields.add(field.trim());
+			}
+		}
+		return fields.toArray(new String[fields.size()]);
+	}
+	
+	/**
+	 * @param fileName name of a trace file
+	 * @return the name of the analysis the trace belongs to, i.e. the file 
+	 * name without <code>.runN.p</code> or <code>.p</code>, or 
+	 * <code>null</code> if it is not the name of a trace file
+	 */
+	public static String getAnalysis(String fileName) {
+		return getAnalysis(fileName, EXTENSION);
+	}
+	
+	/**
+	 * @param fileName name of a file written by MrBayes for a run
+	 * @param extension extension of the file, e.g. <code>.p</code> or 
+	 * <code>.t</code>
+	 * @return the name of the analysis the file belongs to, i.e. the file 
+	 * name without <code>.runN</code> and the extension, or <code>null</code> 
+	 * if the file doesn't have the extension
+	 */
+	public static String getAnalysis(String fileName, String extension) {
+		if(!fileName.endsWith(extension)) {
+			return null;
+		}
+		final String name = fileName.substring(0, fileName.length() - extension.length());
+		final int run = name.lastIndexOf(".run");
+		if(run > 0 && run + 4 < name.length()) {
+			for(int i = run + 4; i < name.length(); ++i) {
+				if(!Character.isDigit(name.charAt(i))) {
+					return name;
+				}
+			}
+			return name.substring(0, run);
+		}
+		return name;
+	}
+	
+}
@@ -0,0 +1,312 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+/**
+ * Convergence diagnostics of MCMC traces: the effective sample size of a 
+ * run and the potential scale reduction factor of several runs, and the 
+ * downsampling of traces for plots.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TraceStatistics {
+
+	private TraceStatistics() {
+	}
+	
+	/**
+	 * @return the mean of <code>values[from..to)</code>
+	 */
+	public static double mean(double[] values, int from, int to) {
+		double sum = 0.0d;
+		for(int i = from; i < to; ++i) {
+			sum += values[i];
+		}
+		return sum / (to - from);
+	}
+	
+	/**
+	 * @return the sample variance of <code>values[from..to)</code>
+	 */
+	public static double variance(double[] values, int from, int to) {
+		final int n = to - from;
+		if(n < 2) {
+			return 0.0d;
+		}
+		final double mean = mean(values, from, to);
+		double sum = 0.0d;
+		for(int i = from; i < to; ++i) {
+			final double d = values[i] - mean;
+			sum += d * d;
+		}
+		return sum / (n - 1);
+	}
+	
+	/**
+	 * Longest series whose autocovariances are computed, so that the 
+	 * transform of a parameter takes a few megabytes at most.
+	 */
+	static final int MAX_SERIES = 1 << 16;
+	
+	/**
+	 * Effective sample size of <code>values[from..to)</code>, the number of 
+	 * samples divided by the autocorrelation time. The autocorrelation time 
+	 * is summed with Geyer's initial positive sequence: autocorrelations are 
+	 * added in pairs of consecutive lags until a pair is no longer positive. 
+	 * All the lags are available, as the autocovariances are computed at 
+	 * once with a fast Fourier transform, in O(n log n).
+	 * <p>
+	 * Longer series are cut in batches of consecutive samples, so that there 
+	 * are no more than {@link #MAX_SERIES} of them, and the ESS is that of 
+	 * the series of the batch means, scaled by the ratio of the variance of 
+	 * the samples to the variance of the batch means. The batches still span 
+	 * the whole run, so slow mixing is not hidden by a cap on the lags.
+	 * 
+	 * @return the ESS, or NaN if the values are constant
+	 */
+	public static double ess(double[] values, int from, int to) {
+		final int n = to - from;
+		if(n <= MAX_SERIES) {
+			return geyer(values, from, to);
+		}
+		final double variance = variance(values, from, to);
+		if(variance <= 0.0d) {
+			return Double.NaN;
+		}
+		final int batch = (n + MAX_SERIES - 1) / MAX_SERIES;
+		final double[] means = new double[n / batch];
+		for(int b = 0; b < means.length; ++b) {
+			means[b] = mean(values, from + b * batch, from + (b + 1) * batch);
+		}
+		final double batchVariance = variance(means, 0, means.length);
+		if(batchVariance <= 0.0d) {
+			return n;
+		}
+		return Math.min(n, geyer(means, 0, means.length) * variance / batchVariance);
+	}
+	
+	/**
+	 * @return the ESS of <code>values[from..to)</code> with the 
+	 * autocovariances of all the lags, or NaN if the values are constant
+	 */
+	private static double geyer(double[] values, int from, int to) {
+		final int n = to - from;
+		if(n < 2) {
+			return n;
+		}
+		final double[] gamma = autocovariance(values, from, to);
+		final double gamma0 = gamma[0];
+		if(gamma0 <= 0.0d) {
+			return Double.NaN;
+		}
+		double tau = -1.0d;
+		for(int lag = 0; lag < n; lag += 2) {
+			final double pair = gamma[lag] + (lag + 1 < n ? gamma[lag + 1] : 0.0d);
+			if(pair <= 0.0d) {
+				break;
+			}
+			tau += 2.0d * pair / gamma0;
+		}
+		return (tau > 0.0d ? n / tau : n);
+	}
+	
+	/**
+	 * @return the autocovariances of <code>values[from..to)</code> at lags 
+	 * <code>0..to-from)</code>, computed as the inverse transform of the 
+	 * power spectrum of the centred values, padded with zeros so that the 
+	 * transform is not circular
+	 */
+	static double[] autocovariance(double[] values, int from, int to) {
+		final int n = to - from;
+		final double mean = mean(values, from, to);
+		int size = 1;
+		while(size < 2 * n) {
+			size <<= 1;
+		}
+		final double[] re = new double[size];
+		final double[] im = new double[size];
+		for(int i = 0; i < n; ++i) {
+			re[i] = values[from + i] - mean;
+		}
+		fft(re, im, false);
+		for(int i = 0; i < size; ++i) {
+			re[i] = re[i] * re[i] + im[i] * im[i];
+			im[i] = 0.0d;
+		}
+		fft(re, im, true);
+		final double[] gamma = new double[n];
+		for(int lag = 0; lag < n; ++lag) {
+			// the inverse transform is not scaled by 1/size
+			gamma[lag] = re[lag] / size / n;
+		}
+		return gamma;
+	}
+	
+	/**
+	 * In-place iterative radix-2 fast Fourier transform, not scaled.
+	 * 
+	 * @param re real parts, of a length that is a power of two
+	 * @param im imaginary parts
+	 * @param inverse whether to compute the inverse transform
+	 */
+	private static void fft(double[] re, double[] im, boolean inverse) {
+		final int size = re.length;
+		// bit reversal permutation
+		for(int i = 1, j = 0; i < size; ++i) {
+			int bit = size >> 1;
+			for(; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if(i < j) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+		for(int length = 2; length <= size; length <<= 1) {
+			final double angle = 2.0d * Math.PI / length * (inverse ? 1.0d : -1.0d);
+			final double stepRe = Math.cos(angle);
+			final double stepIm = Math.sin(angle);
+			for(int start = 0; start < size; start += length) {
+				double wRe = 1.0d;
+				double wIm = 0.0d;
+				for(int k = 0; k < length / 2; ++k) {
+					final int a = start + k;
+					final int b = a + length / 2;
+					final double tRe = re[b] * wRe - im[b] * wIm;
+					final double tIm = re[b] * wIm + im[b] * wRe;
+					re[b] = re[a] - tRe;
+					im[b] = im[a] - tIm;
+					re[a] += tRe;
+					im[a] += tIm;
+					final double nextRe = wRe * stepRe - wIm * stepIm;
+					wIm = wRe * stepIm + wIm * stepRe;
+					wRe = nextRe;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Potential scale reduction factor (Gelman and Rubin) of several runs of 
+	 * the same parameter. Runs are truncated to the shortest one. Values 
+	 * close to 1 mean the runs sample the same distribution.
+	 * 
+	 * @param runs values of each run
+	 * @param from first sample of each run after the burn-in
+	 * @param to end of each run
+	 * @return the PSRF, or NaN with less than two runs or constant values
+	 */
+	public static double psrf(double[][] runs, int[] from, int[] to) {
+		final int m = runs.length;
+		if(m < 2) {
+			return Double.NaN;
+		}
+		int n = Integer.MAX_VALUE;
+		for(int r = 0; r < m; ++r) {
+			n = Math.min(n, to[r] - from[r]);
+		}
+		if(n < 2) {
+			return Double.NaN;
+		}
+		final double[] means = new double[m];
+		double within = 0.0d;
+		for(int r = 0; r < m; ++r) {
+			means[r] = mean(runs[r], from[r], from[r] + n);
+			within += variance(runs[r], from[r], from[r] + n);
+		}
+		within /= m;
+		if(within <= 0.0d) {
+			return Double.NaN;
+		}
+		// between-run variance divided by n
+		final double between = variance(means, 0, m);
+		final double pooled = (n - 1.0d) / n * within + (1.0d + 1.0d / m) * between;
+		return Math.sqrt(pooled / within);
+	}
+	
+	/**
+	 * Picks the points of a trace that keep its shape in a plot, with the 
+	 * largest triangle three buckets algorithm (Steinarsson): the first and 
+	 * last points are kept, the others are split in buckets of the same 
+	 * size, and from each bucket the point that forms the largest triangle 
+	 * with the point kept from the previous bucket and the mean of the next 
+	 * bucket is kept. Unlike taking every k-th sample, peaks and drops of 
+	 * the trace are not lost.
+	 * 
+	 * @param x x of the points, increasing
+	 * @param y y of the points
+	 * @param count number of points
+	 * @param threshold number of points to keep
+	 * @return the indices of the points kept, increasing, or of all the 
+	 * points if there are no more than the threshold or it is less than 3
+	 */
+	public static int[] lttb(double[] x, double[] y, int count, int threshold) {
+		if(threshold >= count || threshold < 3) {
+			final int[] all = new int[count];
+			for(int i = 0; i < count; ++i) {
+				all[i] = i;
+			}
+			return all;
+		}
+		final int[] kept = new int[threshold];
+		final double bucket = (count - 2.0d) / (threshold - 2);
+		int a = 0;
+		kept[0] = 0;
+		for(int b = 0; b < threshold - 2; ++b) {
+			// mean of the next bucket, or the last point
+			final int nextFrom = (int)((b + 1) * bucket) + 1;
+			final int nextTo = Math.min((int)((b + 2) * bucket) + 1, count);
+			double meanX = 0.0d;
+			double meanY = 0.0d;
+			for(int i = nextFrom; i < nextTo; ++i) {
+				meanX += x[i];
+				meanY += y[i];
+			}
+			meanX /= (nextTo - nextFrom);
+			meanY /= (nextTo - nextFrom);
+			final int from = (int)(b * bucket) + 1;
+			final int to = (int)((b + 1) * bucket) + 1;
+			double largest = -1.0d;
+			int next = from;
+			for(int i = from; i < to; ++i) {
+				final double area = Math.abs((x[a] - meanX) * (y[i] - y[a]) - (x[a] - x[i]) * (meanY - y[a]));
+				if(area > largest) {
+					largest = area;
+					next = i;
+				}
+			}
+			kept[b + 1] = next;
+			a = next;
+		}
+		kept[threshold - 1] = count - 1;
+		return kept;
+	}
+	
+}
@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath.FileCallable;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Summarizes the MrBayes traces matching a pattern, in the node where they 
+ * are. Trace files are grouped by analysis and the analyses are summarized 
+ * one at a time, so that only the traces of one of them are in memory. The 
+ * runs of an analysis are read in parallel, and the statistics of a few 
+ * parameters at a time are computed in parallel too. Only the summaries go 
+ * back to the master.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TraceSummarizer implements FileCallable<List<TraceSummary>> {
+
+	private static final long serialVersionUID = 5023372829426359466L;
+
+	/**
+	 * Parameters of an analysis summarized at the same time.
+	 */
+	static final int PARALLEL_PARAMETERS = Math.max(1, Integer.getInteger(TraceSummarizer.class.getName() + ".parallelParameters", 
+			Math.min(4, Runtime.getRuntime().availableProcessors())).intValue());
+	
+	/**
+	 * Ant pattern, or comma separated patterns, of the trace files.
+	 */
+	private final String pattern;
+	
+	/**
+	 * Fraction of the samples of each run discarded as burn-in.
+	 */
+	private final double burninFraction;
+	
+	public TraceSummarizer(String pattern, double burninFraction) {
+		this.pattern = pattern;
+		this.burninFraction = burninFraction;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+	 */
+	public List<TraceSummary> invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+		final Map<String, List<String>> analyses = findFiles(f, pattern, TraceFile.EXTENSION);
+		final List<TraceSummary> summaries = new ArrayList<TraceSummary>();
+		if(analyses.isEmpty()) {
+			return summaries;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			// one analysis at a time, so that only its traces are in memory
+			for(Map.Entry<String, List<String>> analysis : analyses.entrySet()) {
+				final List<Future<TraceFile>> reads = new ArrayList<Future<TraceFile>>();
+				for(String trace : analysis.getValue()) {
+					final File file = new File(f, trace);
+					reads.add(executor.submit(new Callable<TraceFile>() {
+						public TraceFile call() throws IOException, ParseException {
+							return TraceFile.read(file);
+						}
+					}));
+				}
+				final List<TraceFile> runs = new ArrayList<TraceFile>();
+				for(Future<TraceFile> read : reads) {
+					runs.add(get(read));
+				}
+				summaries.add(summarize(analysis.getKey(), runs, executor));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return summaries;
+	}
+	
+	/**
+	 * @param baseDir directory the pattern is relative to
+	 * @param pattern Ant pattern, or comma separated patterns
+	 * @param extension extension of the files written for each run
+	 * @return the files matching the pattern, by analysis, sorted by run, 
+	 * without the copies reduced by {@link OutputReducer}
+	 */
+	static Map<String, List<String>> findFiles(File baseDir, String pattern, String extension) {
+		final Map<String, List<String>> analyses = new TreeMap<String, List<String>>();
+		final String[] files = Util.createFileSet(baseDir, pattern, OutputReducer.OUTPUT_EXCLUDES).getDirectoryScanner().getIncludedFiles();
+		Arrays.sort(files);
+		for(String file : files) {
+			final String path = file.replace(File.separatorChar, '/');
+			final String analysis = TraceFile.getAnalysis(path, extension);
+			if(analysis == null) {
+				continue;
+			}
+			List<String> runs = analyses.get(analysis);
+			if(runs == null) {
+				runs = new ArrayList<String>();
+				analyses.put(analysis, runs);
+			}
+			runs.add(path);
+		}
+		return analyses;
+	}
+	
+	/**
+	 * Computes the statistics of the parameters of an analysis, one task per 
+	 * parameter. Parameters missing in some run are summarized over the runs 
+	 * that have them.
+	 */
+	TraceSummary summarize(String analysis, final List<TraceFile> runs, ExecutorService executor) 
+	throws IOException, InterruptedException {
+		final int[] from = new int[runs.size()];
+		final int[] to = new int[runs.size()];
+		int samples = Integer.MAX_VALUE;
+		int burnin = Integer.MAX_VALUE;
+		for(int r = 0; r < runs.size(); ++r) {
+			to[r] = runs.get(r).getSamples();
+			from[r] = (int)(to[r] * burninFraction);
+			samples = Math.min(samples, to[r] - from[r]);
+			burnin = Math.min(burnin, from[r]);
+		}
+		final TraceSummary summary = new TraceSummary(analysis, runs.size(), samples, burnin);
+		// no more than PARALLEL_PARAMETERS tasks at once, each one holding 
+		// the transforms of its parameter
+		final List<Future<TraceSummary.Parameter>> parameters = new ArrayList<Future<TraceSummary.Parameter>>();
+		int done = 0;
+		for(final String parameter : runs.get(0).getParameters()) {
+			if(parameters.size() - done >= PARALLEL_PARAMETERS) {
+				summary.addParameter(get(parameters.get(done++)));
+			}
+			parameters.add(executor.submit(new Callable<TraceSummary.Parameter>() {
+				public TraceSummary.Parameter call() {
+					return summarize(parameter, runs, from, to);
+				}
+			}));
+		}
+		while(done < parameters.size()) {
+			summary.addParameter(get(parameters.get(done++)));
+		}
+		return summary;
+	}
+	
+	static TraceSummary.Parameter summarize(String parameter, List<TraceFile> runs, int[] from, int[] to) {
+		final List<double[]> columns = new ArrayList<double[]>();
+		final List<Integer> starts = new ArrayList<Integer>();
+		final List<Integer> ends = new ArrayList<Integer>();
+		double sum = 0.0d;
+		long count = 0L;
+		double ess = 0.0d;
+		int essRuns = 0;
+		for(int r = 0; r < runs.size(); ++r) {
+			final int index = runs.get(r).indexOf(parameter);
+			if(index < 0 || to[r] <= from[r]) {
+				continue;
+			}
+			final double[] column = runs.get(r).getColumn(index);
+			sum += TraceStatistics.mean(column, from[r], to[r]) * (to[r] - from[r]);
+			count += to[r] - from[r];
+			// a run where the parameter is constant has no ESS of its own
+			final double runEss = TraceStatistics.ess(column, from[r], to[r]);
+			if(!Double.isNaN(runEss)) {
+				ess += runEss;
+				++essRuns;
+			}
+			columns.add(column);
+			starts.add(from[r]);
+			ends.add(to[r]);
+		}
+		final int[] runFrom = new int[starts.size()];
+		final int[] runTo = new int[ends.size()];
+		for(int r = 0; r < runFrom.length; ++r) {
+			runFrom[r] = starts.get(r);
+			runTo[r] = ends.get(r);
+		}
+		final double psrf = TraceStatistics.psrf(columns.toArray(new double[columns.size()][]), runFrom, runTo);
+		return new TraceSummary.Parameter(parameter, (count > 0 ? sum / count : Double.NaN), 
+				(essRuns > 0 ? ess : Double.NaN), psrf);
+	}
+	
+	static <T> T get(Future<T> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException ee) {
+			final Throwable cause = ee.getCause();
+			if(cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			final IOException ioe = new IOException(String.valueOf(cause != null ? cause.getMessage() : ee.getMessage()));
+			ioe.initCause(cause);
+			throw ioe;
+		}
+	}
+	
+}
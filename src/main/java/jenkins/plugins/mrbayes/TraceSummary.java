@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Summary of the parameter traces of one analysis, over all its runs, 
+ * without the burn-in. Small enough to be kept in the build.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+@ExportedBean
+public class TraceSummary implements Serializable {
+
+	private static final long serialVersionUID = -6157180587911622826L;
+
+	/**
+	 * Analysis, i.e. the NEXUS file run, relative to the module root.
+	 */
+	private final String analysis;
+	
+	private final int runs;
+	
+	/**
+	 * Samples per run, after the burn-in, of the shortest run.
+	 */
+	private final int samples;
+	
+	/**
+	 * Samples discarded as burn-in from each run, in the shortest run.
+	 */
+	private final int burnin;
+	
+	private final List<Parameter> parameters = new ArrayList<Parameter>();
+	
+	public TraceSummary(String analysis, int runs, int samples, int burnin) {
+		this.analysis = analysis;
+		this.runs = runs;
+		this.samples = samples;
+		this.burnin = burnin;
+	}
+	
+	/**
+	 * @return the analysis
+	 */
+	@Exported
+	public String getAnalysis() {
+		return analysis;
+	}
+	
+	/**
+	 * @return the number of runs
+	 */
+	@Exported
+	public int getRuns() {
+		return runs;
+	}
+	
+	/**
+	 * @return the samples per run after the burn-in
+	 */
+	@Exported
+	public int getSamples() {
+		return samples;
+	}
+	
+	/**
+	 * @return the samples per run discarded as burn-in
+	 */
+	@Exported
+	public int getBurnin() {
+		return burnin;
+	}
+	
+	/**
+	 * @return the parameters, in the order of the trace files
+	 */
+	@Exported
+	public List<Parameter> getParameters() {
+		return Collections.unmodifiableList(parameters);
+	}
+	
+	public void addParameter(Parameter parameter) {
+		parameters.add(parameter);
+	}
+	
+	/**
+	 * @return the smallest ESS of the parameters, or NaN if none is known
+	 */
+	public double getMinEss() {
+		double min = Double.NaN;
+		for(Parameter parameter : parameters) {
+			if(!Double.isNaN(parameter.getEss()) && (Double.isNaN(min) || parameter.getEss() < min)) {
+				min = parameter.getEss();
+			}
+		}
+		return min;
+	}
+	
+	/**
+	 * @return the largest PSRF of the parameters, or NaN if none is known
+	 */
+	public double getMaxPsrf() {
+		double max = Double.NaN;
+		for(Parameter parameter : parameters) {
+			if(!Double.isNaN(parameter.getPsrf()) && (Double.isNaN(max) || parameter.getPsrf() > max)) {
+				max = parameter.getPsrf();
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * Statistics of one parameter.
+	 */
+	@ExportedBean
+	public static class Parameter implements Serializable {
+
+		private static final long serialVersionUID = 2884013496411585129L;
+
+		private final String name;
+		
+		private final double mean;
+		
+		/**
+		 * Sum of the ESS of the runs.
+		 */
+		private final double ess;
+		
+		private final double psrf;
+		
+		public Parameter(String name, double mean, double ess, double psrf) {
+			this.name = name;
+			this.mean = mean;
+			this.ess = ess;
+			this.psrf = psrf;
+		}
+		
+		/**
+		 * @return the name
+		 */
+		@Exported
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * @return the mean over all runs
+		 */
+		@Exported
+		public double getMean() {
+			return mean;
+		}
+		
+		/**
+		 * @return the effective sample size over all runs, or NaN for 
+		 * constant parameters
+		 */
+		@Exported
+		public double getEss() {
+			return ess;
+		}
+		
+		/**
+		 * @return the potential scale reduction factor, or NaN with a single 
+		 * run
+		 */
+		@Exported
+		public double getPsrf() {
+			return psrf;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,308 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Downsampled traces of one analysis, kept to plot how it converged: the
+ * log likelihood of each run and the average standard deviation of split
+ * frequencies (ASDSF), along with the generations per second of the run.
+ * The trends of a build are written to a small binary file in the build
+ * directory, see {@link #write(List, OutputStream)}, instead of the build
+ * XML.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TraceTrend implements Serializable {
+
+	private static final long serialVersionUID = -3412836217745066284L;
+
+	/**
+	 * First bytes of a trend file, <code>MBTR</code>.
+	 */
+	private static final int MAGIC = 0x4D425452;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Analysis, i.e. the NEXUS file run, relative to the module root.
+	 */
+	private final String analysis;
+
+	/**
+	 * Log likelihood of each run.
+	 */
+	private final List<Series> runs;
+
+	/**
+	 * ASDSF, or <code>null</code> if MrBayes didn't write it.
+	 */
+	private final Series asdsf;
+
+	private double generationsPerSecond = -1.0d;
+
+	public TraceTrend(String analysis, List<Series> runs, Series asdsf) {
+		this.analysis = analysis;
+		this.runs = new ArrayList<Series>(runs);
+		this.asdsf = asdsf;
+	}
+
+	/**
+	 * @return the analysis
+	 */
+	public String getAnalysis() {
+		return analysis;
+	}
+
+	/**
+	 * @return the log likelihood of each run
+	 */
+	public List<Series> getRuns() {
+		return Collections.unmodifiableList(runs);
+	}
+
+	/**
+	 * @return the ASDSF, or <code>null</code> if not known
+	 */
+	public Series getAsdsf() {
+		return asdsf;
+	}
+
+	/**
+	 * @return the generations per second, or -1 if not known
+	 */
+	public double getGenerationsPerSecond() {
+		return generationsPerSecond;
+	}
+
+	/**
+	 * @param generationsPerSecond the generations per second
+	 */
+	public void setGenerationsPerSecond(double generationsPerSecond) {
+		this.generationsPerSecond = generationsPerSecond;
+	}
+
+	/**
+	 * @return the last ASDSF, or NaN if not known
+	 */
+	public double getFinalAsdsf() {
+		return (asdsf == null ? Double.NaN : asdsf.getLast());
+	}
+
+	/**
+	 * @return the mean of the last log likelihood of each run, or NaN if not
+	 * known
+	 */
+	public double getFinalLnl() {
+		double sum = 0.0d;
+		int count = 0;
+		for(Series run : runs) {
+			if(run.size() > 0) {
+				sum += run.getLast();
+				count++;
+			}
+		}
+		return (count > 0 ? sum / count : Double.NaN);
+	}
+
+	/**
+	 * @param file trend file
+	 * @return the trends in the file
+	 * @throws IOException if the file can't be read or is not a trend file
+	 */
+	public static List<TraceTrend> read(File file) throws IOException {
+		final InputStream is = new FileInputStream(file);
+		try {
+			return read(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * @param in content of a trend file
+	 * @return the trends
+	 * @throws IOException if the content is not a trend file
+	 */
+	public static List<TraceTrend> read(InputStream in) throws IOException {
+		final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if(data.readInt() != MAGIC) {
+			throw new IOException("Not a MrBayes trend file");
+		}
+		final int version = data.readInt();
+		if(version != VERSION) {
+			throw new IOException("Unsupported MrBayes trend file version " + version);
+		}
+		final int count = data.readInt();
+		final List<TraceTrend> trends = new ArrayList<TraceTrend>(count);
+		for(int i = 0; i < count; ++i) {
+			final String analysis = data.readUTF();
+			final double generationsPerSecond = data.readDouble();
+			final int runCount = data.readInt();
+			final List<Series> runs = new ArrayList<Series>(runCount);
+			for(int r = 0; r < runCount; ++r) {
+				runs.add(readSeries(data));
+			}
+			final Series asdsf = (data.readBoolean() ? readSeries(data) : null);
+			final TraceTrend trend = new TraceTrend(analysis, runs, asdsf);
+			trend.setGenerationsPerSecond(generationsPerSecond);
+			trends.add(trend);
+		}
+		return trends;
+	}
+
+	/**
+	 * @param trends trends of a build
+	 * @param file trend file, replaced if it exists
+	 */
+	public static void write(List<TraceTrend> trends, File file) throws IOException {
+		final OutputStream os = new FileOutputStream(file);
+		try {
+			write(trends, os);
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Writes trends: a header, then for each analysis its name, generations
+	 * per second and series, each point being a generation (long) and a
+	 * value (float).
+	 *
+	 * @param trends trends of a build
+	 * @param out where the trends are written, flushed but not closed
+	 */
+	public static void write(List<TraceTrend> trends, OutputStream out) throws IOException {
+		final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(trends.size());
+		for(TraceTrend trend : trends) {
+			data.writeUTF(trend.getAnalysis());
+			data.writeDouble(trend.getGenerationsPerSecond());
+			data.writeInt(trend.getRuns().size());
+			for(Series run : trend.getRuns()) {
+				writeSeries(run, data);
+			}
+			data.writeBoolean(trend.getAsdsf() != null);
+			if(trend.getAsdsf() != null) {
+				writeSeries(trend.getAsdsf(), data);
+			}
+		}
+		data.flush();
+	}
+
+	private static Series readSeries(DataInputStream data) throws IOException {
+		final String name = data.readUTF();
+		final int size = data.readInt();
+		final long[] generations = new long[size];
+		final float[] values = new float[size];
+		for(int i = 0; i < size; ++i) {
+			generations[i] = data.readLong();
+			values[i] = data.readFloat();
+		}
+		return new Series(name, generations, values);
+	}
+
+	private static void writeSeries(Series series, DataOutputStream data) throws IOException {
+		data.writeUTF(series.getName());
+		data.writeInt(series.size());
+		for(int i = 0; i < series.size(); ++i) {
+			data.writeLong(series.getGeneration(i));
+			data.writeFloat(series.getValue(i));
+		}
+	}
+
+	/**
+	 * Values of a trace at some of its generations.
+	 */
+	public static class Series implements Serializable {
+
+		private static final long serialVersionUID = 2945167043816587235L;
+
+		private final String name;
+
+		private final long[] generations;
+
+		private final float[] values;
+
+		public Series(String name, long[] generations, float[] values) {
+			this.name = name;
+			this.generations = generations;
+			this.values = values;
+		}
+
+		/**
+		 * @return the name, e.g. <code>run1</code>
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the number of points
+		 */
+		public int size() {
+			return generations.length;
+		}
+
+		/**
+		 * @return the generation of a point
+		 */
+		public long getGeneration(int i) {
+			return generations[i];
+		}
+
+		/**
+		 * @return the value of a point
+		 */
+		public float getValue(int i) {
+			return values[i];
+		}
+
+		/**
+		 * @return the value of the last point, or NaN if there is none
+		 */
+		public double getLast() {
+			return (values.length > 0 ? values[values.length - 1] : Double.NaN);
+		}
+
+	}
+
+}
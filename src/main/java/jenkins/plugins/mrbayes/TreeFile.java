@@ -0,0 +1,393 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tree sample written by MrBayes for one run (<code>input.nex.t</code>, or 
+ * <code>input.nex.run1.t</code>, ...): a NEXUS trees block with a translate 
+ * command and one tree per line. Trees are read one at a time with 
+ * {@link #nextTree()}, and parsed into their splits with 
+ * {@link #parse(String)}, which may be called from several threads.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TreeFile {
+
+	/**
+	 * Extension of the tree files.
+	 */
+	public static final String EXTENSION = ".t";
+	
+	private final BufferedReader reader;
+	
+	/**
+	 * Taxon names, by index.
+	 */
+	private final String[] taxa;
+	
+	/**
+	 * Index of the taxa, by the token used in the trees (the translate key, 
+	 * or the name).
+	 */
+	private final Map<String, Integer> tokens;
+	
+	/**
+	 * Tree read while looking for the taxa, returned first by 
+	 * {@link #nextTree()}.
+	 */
+	private String pending;
+	
+	private int lineNumber = 0;
+	
+	/**
+	 * Reads the header of a tree file, up to the first tree.
+	 * 
+	 * @param in content of the file
+	 * @throws ParseException if the content is not a NEXUS trees block
+	 */
+	public TreeFile(Reader in) throws IOException, ParseException {
+		this.reader = new BufferedReader(in, 64 * 1024);
+		final Map<String, String> translate = new LinkedHashMap<String, String>();
+		String line;
+		while((line = readLine()) != null) {
+			final String trimmed = line.trim();
+			if(trimmed.equalsIgnoreCase("translate")) {
+				readTranslate(translate);
+			} else if(isTree(trimmed)) {
+				pending = getNewick(trimmed);
+				break;
+			}
+		}
+		if(pending == null) {
+			throw new ParseException("No trees found", lineNumber);
+		}
+		tokens = new HashMap<String, Integer>();
+		final List<String> names = new ArrayList<String>();
+		if(translate.isEmpty()) {
+			// taxa named in the trees, in the order of the first tree
+			for(String label : getLabels(pending)) {
+				tokens.put(label, Integer.valueOf(names.size()));
+				names.add(label);
+			}
+		} else {
+			for(Map.Entry<String, String> entry : translate.entrySet()) {
+				tokens.put(entry.getKey(), Integer.valueOf(names.size()));
+				tokens.put(entry.getValue(), Integer.valueOf(names.size()));
+				names.add(entry.getValue());
+			}
+		}
+		taxa = names.toArray(new String[names.size()]);
+	}
+	
+	/**
+	 * @param file tree file
+	 * @return the tree file, open. Must be closed.
+	 */
+	public static TreeFile open(File file) throws IOException, ParseException {
+		final Reader in = new FileReader(file);
+		try {
+			return new TreeFile(in);
+		} catch (IOException ioe) {
+			in.close();
+			throw ioe;
+		} catch (ParseException pe) {
+			in.close();
+			throw pe;
+		}
+	}
+	
+	/**
+	 * Counts the trees of a file, without parsing them.
+	 * 
+	 * @param file tree file
+	 * @return the number of trees
+	 */
+	public static int countTrees(File file) throws IOException {
+		final BufferedReader reader = new BufferedReader(new FileReader(file), 64 * 1024);
+		try {
+			int trees = 0;
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(isTree(line.trim())) {
+					++trees;
+				}
+			}
+			return trees;
+		} finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * @return the taxon names, by index
+	 */
+	public String[] getTaxa() {
+		return taxa;
+	}
+	
+	/**
+	 * @return the newick string of the next tree, or <code>null</code> at 
+	 * the end of the file
+	 */
+	public String nextTree() throws IOException {
+		if(pending != null) {
+			final String tree = pending;
+			pending = null;
+			return tree;
+		}
+		String line;
+		while((line = readLine()) != null) {
+			final String trimmed = line.trim();
+			if(isTree(trimmed)) {
+				return getNewick(trimmed);
+			}
+		}
+		return null;
+	}
+	
+	public void close() throws IOException {
+		reader.close();
+	}
+	
+	/**
+	 * Parses a tree into its splits. Comments are skipped, support values 
+	 * of internal nodes are ignored. When the root has two children, both 
+	 * give the same split, whose length is the sum of both branches.
+	 * 
+	 * @param newick a tree of this file
+	 * @return the normalized splits of the tree, with their branch lengths 
+	 * (0 if the tree has none)
+	 * @throws ParseException if the tree is invalid or has an unknown taxon
+	 */
+	public Map<Split, Double> parse(String newick) throws ParseException {
+		final int ntax = taxa.length;
+		final Map<Split, Double> splits = new HashMap<Split, Double>(ntax * 3);
+		final List<Split> stack = new ArrayList<Split>();
+		Split current = null;
+		int i = 0;
+		final int length = newick.length();
+		while(i < length) {
+			final char c = newick.charAt(i);
+			if(c == '(') {
+				stack.add(Split.empty(ntax));
+				++i;
+			} else if(c == ',' || Character.isWhitespace(c)) {
+				++i;
+			} else if(c == '[') {
+				i = skipComment(newick, i);
+			} else if(c == ')') {
+				if(stack.isEmpty()) {
+					throw new ParseException("Unbalanced parentheses in tree: " + newick, i);
+				}
+				current = stack.remove(stack.size() - 1);
+				++i;
+				// support value, or node name
+				while(i < length && isLabelChar(newick.charAt(i))) {
+					++i;
+				}
+				i = readLength(newick, i, current, splits, stack, ntax);
+			} else if(c == ';') {
+				break;
+			} else {
+				final int start = i;
+				if(c == '\'') {
+					i = newick.indexOf('\'', i + 1) + 1;
+					if(i == 0) {
+						throw new ParseException("Unterminated quote in tree: " + newick, start);
+					}
+				} else {
+					while(i < length && isLabelChar(newick.charAt(i))) {
+						++i;
+					}
+				}
+				final String label = unquote(newick.substring(start, i));
+				final Integer taxon = tokens.get(label);
+				if(taxon == null) {
+					throw new ParseException("Unknown taxon " + label + " in tree", start);
+				}
+				current = Split.of(ntax, taxon.intValue());
+				i = readLength(newick, i, current, splits, stack, ntax);
+			}
+		}
+		if(!stack.isEmpty()) {
+			throw new ParseException("Unbalanced parentheses in tree: " + newick, length);
+		}
+		return splits;
+	}
+	
+	/**
+	 * Reads the optional branch length of a node, records its split and adds 
+	 * its taxa to the parent node.
+	 * 
+	 * @return the position after the branch length
+	 */
+	private static int readLength(String newick, int i, Split node, Map<Split, Double> splits, List<Split> stack, int ntax) {
+		double length = 0.0d;
+		final int n = newick.length();
+		while(i < n && newick.charAt(i) == '[') {
+			i = skipComment(newick, i);
+		}
+		if(i < n && newick.charAt(i) == ':') {
+			int start = ++i;
+			while(i < n && "0123456789.eE+-".indexOf(newick.charAt(i)) >= 0) {
+				++i;
+			}
+			try {
+				length = Double.parseDouble(newick.substring(start, i));
+			} catch (NumberFormatException nfe) {
+				length = 0.0d;
+			}
+		}
+		if(!stack.isEmpty()) {
+			stack.get(stack.size() - 1).add(node);
+			final Split split = node.normalize(ntax);
+			if(split != null) {
+				final Double previous = splits.get(split);
+				splits.put(split, Double.valueOf(previous != null ? previous.doubleValue() + length : length));
+			}
+		}
+		return i;
+	}
+	
+	private static int skipComment(String newick, int i) {
+		final int end = newick.indexOf(']', i);
+		return (end < 0 ? newick.length() : end + 1);
+	}
+	
+	private static boolean isLabelChar(char c) {
+		return "(),:;[".indexOf(c) < 0 && !Character.isWhitespace(c);
+	}
+	
+	private static String unquote(String label) {
+		if(label.length() >= 2 && label.charAt(0) == '\'' && label.charAt(label.length() - 1) == '\'') {
+			return label.substring(1, label.length() - 1);
+		}
+		return label;
+	}
+	
+	/**
+	 * @return the taxon labels of a tree, in order
+	 */
+	private static List<String> getLabels(String newick) {
+		final List<String> labels = new ArrayList<String>();
+		// labels after a closing parenthesis name internal nodes
+		boolean internal = false;
+		int i = 0;
+		final int length = newick.length();
+		while(i < length) {
+			final char c = newick.charAt(i);
+			if(c == '[') {
+				i = skipComment(newick, i);
+			} else if(c == ':') {
+				++i;
+				while(i < length && isLabelChar(newick.charAt(i))) {
+					++i;
+				}
+			} else if(c == '(' || c == ',') {
+				internal = false;
+				++i;
+			} else if(c == ')') {
+				internal = true;
+				++i;
+			} else if(c == ';' || Character.isWhitespace(c)) {
+				++i;
+			} else {
+				final int start = i;
+				if(c == '\'') {
+					i = newick.indexOf('\'', i + 1) + 1;
+					if(i == 0) {
+						i = length;
+					}
+				} else {
+					while(i < length && isLabelChar(newick.charAt(i))) {
+						++i;
+					}
+				}
+				if(!internal) {
+					labels.add(unquote(newick.substring(start, i)));
+				}
+			}
+		}
+		return labels;
+	}
+	
+	/**
+	 * Reads the translate command, up to the semicolon.
+	 */
+	private void readTranslate(Map<String, String> translate) throws IOException, ParseException {
+		String line;
+		while((line = readLine()) != null) {
+			String entry = line.trim();
+			final boolean last = entry.endsWith(";");
+			if(entry.endsWith(",") || last) {
+				entry = entry.substring(0, entry.length() - 1).trim();
+			}
+			if(entry.length() > 0) {
+				final String[] parts = entry.split("\\s+", 2);
+				if(parts.length != 2) {
+					throw new ParseException("Invalid translate entry: " + entry, lineNumber);
+				}
+				translate.put(parts[0], unquote(parts[1].trim()));
+			}
+			if(last) {
+				return;
+			}
+		}
+		throw new ParseException("Unterminated translate command", lineNumber);
+	}
+	
+	private String readLine() throws IOException {
+		final String line = reader.readLine();
+		if(line != null) {
+			++lineNumber;
+		}
+		return line;
+	}
+	
+	/**
+	 * @param line a line of a tree file, trimmed
+	 * @return whether the line is a tree
+	 */
+	static boolean isTree(String line) {
+		return line.regionMatches(true, 0, "tree ", 0, 5) && line.indexOf('=') > 0;
+	}
+	
+	private static String getNewick(String line) {
+		return line.substring(line.indexOf('=') + 1).trim();
+	}
+	
+}
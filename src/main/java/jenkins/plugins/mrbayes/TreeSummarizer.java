@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Summarizes the tree files (.t) of the analyses matching a pattern, in the 
+ * node where they are, replacing the sumt command of MrBayes. The trees of 
+ * each run are read sequentially and parsed in batches by a pool of threads, 
+ * which count the splits in a shared {@link SplitTable}. For each analysis, 
+ * the majority rule consensus is written to <code>input.nex.jenkins.con.tre</code> 
+ * and the split frequencies to <code>input.nex.jenkins.tstat</code>.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TreeSummarizer implements FileCallable<List<ConsensusSummary>> {
+
+	private static final long serialVersionUID = -4862202470813466305L;
+
+	public static final String CONSENSUS_EXTENSION = ".jenkins.con.tre";
+	
+	public static final String TABLE_EXTENSION = ".jenkins.tstat";
+	
+	/**
+	 * Trees parsed by a thread at a time.
+	 */
+	private static final int BATCH_SIZE = 256;
+	
+	/**
+	 * Ant pattern, or comma separated patterns, of the tree files.
+	 */
+	private final String pattern;
+	
+	/**
+	 * Fraction of the trees of each run discarded as burn-in.
+	 */
+	private final double burninFraction;
+	
+	public TreeSummarizer(String pattern, double burninFraction) {
+		this.pattern = pattern;
+		this.burninFraction = burninFraction;
+	}
+	
+	/* (non-Javadoc)
+	 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+	 */
+	public List<ConsensusSummary> invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+		final Map<String, List<String>> analyses = TraceSummarizer.findFiles(f, pattern, TreeFile.EXTENSION);
+		final List<ConsensusSummary> summaries = new ArrayList<ConsensusSummary>();
+		if(analyses.isEmpty()) {
+			return summaries;
+		}
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for(Map.Entry<String, List<String>> analysis : analyses.entrySet()) {
+				final List<File> runs = new ArrayList<File>();
+				for(String run : analysis.getValue()) {
+					runs.add(new File(f, run));
+				}
+				summaries.add(summarize(new File(f, analysis.getKey()), analysis.getKey(), runs, executor, threads));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return summaries;
+	}
+	
+	/**
+	 * Counts the splits of the trees of the runs of an analysis, and writes 
+	 * the consensus tree and the split frequencies.
+	 * 
+	 * @param output the NEXUS file of the analysis, the output files are 
+	 * named after it
+	 */
+	ConsensusSummary summarize(File output, String analysis, List<File> runs, ExecutorService executor, int threads) 
+	throws IOException, InterruptedException {
+		final long start = System.currentTimeMillis();
+		final SplitTable table = count(runs, executor, threads);
+		final long parseTime = System.currentTimeMillis() - start;
+		final String consensus = table.getMajorityRuleConsensus();
+		writeConsensus(new File(output.getPath() + CONSENSUS_EXTENSION), table, consensus);
+		final PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(output.getPath() + TABLE_EXTENSION), MrBayesBuilder.NEXUS_CHARSET));
+		try {
+			table.writeTable(writer);
+		} finally {
+			writer.close();
+		}
+		return new ConsensusSummary(analysis, runs.size(), table.getTrees(), table.size(), 
+				table.getAverageStdev(), consensus, parseTime);
+	}
+	
+	/**
+	 * @return the splits of the trees of the runs, after the burn-in
+	 */
+	SplitTable count(List<File> runs, ExecutorService executor, int threads) throws IOException, InterruptedException {
+		SplitTable table = null;
+		String[] taxa = null;
+		// bounds the trees read but not parsed yet
+		final Semaphore pending = new Semaphore(threads * 4);
+		final List<Future<Object>> batches = new ArrayList<Future<Object>>();
+		for(int r = 0; r < runs.size(); ++r) {
+			final File file = runs.get(r);
+			final int burnin = (int)(TreeFile.countTrees(file) * burninFraction);
+			final TreeFile trees = open(file);
+			try {
+				if(table == null) {
+					taxa = trees.getTaxa();
+					table = new SplitTable(taxa, runs.size());
+				} else if(!Arrays.equals(taxa, trees.getTaxa())) {
+					throw new IOException("Taxa of " + file + " differ from the taxa of " + runs.get(0));
+				}
+				for(int i = 0; i < burnin && trees.nextTree() != null; ++i) {
+					// burn-in
+				}
+				List<String> batch = new ArrayList<String>(BATCH_SIZE);
+				String tree;
+				while((tree = trees.nextTree()) != null) {
+					batch.add(tree);
+					if(batch.size() == BATCH_SIZE) {
+						batches.add(submit(executor, pending, table.newBatch(r), trees, batch));
+						batch = new ArrayList<String>(BATCH_SIZE);
+					}
+				}
+				if(!batch.isEmpty()) {
+					batches.add(submit(executor, pending, table.newBatch(r), trees, batch));
+				}
+			} finally {
+				trees.close();
+			}
+		}
+		for(Future<Object> batch : batches) {
+			TraceSummarizer.get(batch);
+		}
+		return table;
+	}
+	
+	private Future<Object> submit(ExecutorService executor, final Semaphore pending, final SplitTable.Batch batch, 
+			final TreeFile trees, final List<String> newicks) throws InterruptedException {
+		pending.acquire();
+		return executor.submit(new Callable<Object>() {
+			public Object call() throws ParseException {
+				try {
+					for(String newick : newicks) {
+						batch.add(trees.parse(newick));
+					}
+					batch.merge();
+					return null;
+				} finally {
+					pending.release();
+				}
+			}
+		});
+	}
+	
+	private static TreeFile open(File file) throws IOException {
+		try {
+			return TreeFile.open(file);
+		} catch (ParseException pe) {
+			throw new IOException("Invalid tree file " + file + ": " + pe.getMessage());
+		}
+	}
+	
+	/**
+	 * Writes the consensus tree as a NEXUS trees block.
+	 */
+	private static void writeConsensus(File file, SplitTable table, String consensus) throws IOException {
+		final PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), MrBayesBuilder.NEXUS_CHARSET));
+		try {
+			writer.println("#NEXUS");
+			writer.println();
+			writer.println("begin trees;");
+			writer.println("   tree con_50_majrule = [&U] " + consensus);
+			writer.println("end;");
+		} finally {
+			writer.close();
+		}
+	}
+	
+}
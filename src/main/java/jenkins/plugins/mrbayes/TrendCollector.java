@@ -0,0 +1,252 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Collects the {@link TraceTrend} of each analysis matching a pattern, in the
+ * node where its files are: the log likelihood of each run, from the trace
+ * files (.p), and the ASDSF, from the <code>.mcmc</code> file MrBayes writes
+ * for the analysis. Only the generation and the value are read from each
+ * line, the files are read in parallel, and each series is downsampled with
+ * {@link TraceStatistics#lttb(double[], double[], int, int)} before it goes
+ * back to the master.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TrendCollector implements FileCallable<List<TraceTrend>> {
+
+	private static final long serialVersionUID = -6064193358519236112L;
+
+	/**
+	 * Points kept of each series.
+	 */
+	public static final int POINTS = Integer.getInteger(TrendCollector.class.getName() + ".points", 500);
+
+	/**
+	 * Extension of the file with the diagnostics of the chains.
+	 */
+	public static final String MCMC_EXTENSION = ".mcmc";
+
+	static final String LNL_COLUMN = "LnL";
+
+	static final String ASDSF_COLUMN = "AvgStdDev(s)";
+
+	private static final String GENERATION_COLUMN = "Gen";
+
+	/**
+	 * Ant pattern, or comma separated patterns, of the trace files.
+	 */
+	private final String pattern;
+
+	/**
+	 * Points kept of each series.
+	 */
+	private final int points;
+
+	public TrendCollector(String pattern, int points) {
+		this.pattern = pattern;
+		this.points = points;
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.FilePath.FileCallable#invoke(java.io.File, hudson.remoting.VirtualChannel)
+	 */
+	public List<TraceTrend> invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+		final Map<String, List<String>> analyses = TraceSummarizer.findFiles(f, pattern, TraceFile.EXTENSION);
+		final List<TraceTrend> trends = new ArrayList<TraceTrend>();
+		if(analyses.isEmpty()) {
+			return trends;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			final Map<String, List<Future<TraceTrend.Series>>> runs = new TreeMap<String, List<Future<TraceTrend.Series>>>();
+			final Map<String, Future<TraceTrend.Series>> asdsfs = new TreeMap<String, Future<TraceTrend.Series>>();
+			for(Map.Entry<String, List<String>> analysis : analyses.entrySet()) {
+				final List<Future<TraceTrend.Series>> series = new ArrayList<Future<TraceTrend.Series>>();
+				for(String trace : analysis.getValue()) {
+					series.add(submit(executor, new File(f, trace), LNL_COLUMN, getRunName(analysis.getKey(), trace)));
+				}
+				runs.put(analysis.getKey(), series);
+				final File mcmc = new File(f, analysis.getKey() + MCMC_EXTENSION);
+				if(mcmc.isFile()) {
+					asdsfs.put(analysis.getKey(), submit(executor, mcmc, ASDSF_COLUMN, "ASDSF"));
+				}
+			}
+			for(Map.Entry<String, List<Future<TraceTrend.Series>>> analysis : runs.entrySet()) {
+				final List<TraceTrend.Series> series = new ArrayList<TraceTrend.Series>();
+				for(Future<TraceTrend.Series> run : analysis.getValue()) {
+					final TraceTrend.Series lnl = TraceSummarizer.get(run);
+					if(lnl != null) {
+						series.add(lnl);
+					}
+				}
+				final Future<TraceTrend.Series> asdsf = asdsfs.get(analysis.getKey());
+				trends.add(new TraceTrend(analysis.getKey(), series, (asdsf == null ? null : TraceSummarizer.get(asdsf))));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return trends;
+	}
+
+	private Future<TraceTrend.Series> submit(ExecutorService executor, final File file, final String column, final String name) {
+		return executor.submit(new Callable<TraceTrend.Series>() {
+			public TraceTrend.Series call() throws IOException {
+				final Reader reader = new FileReader(file);
+				try {
+					return read(reader, column, name, points);
+				} finally {
+					reader.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @param analysis name of the analysis
+	 * @param trace trace file of one of its runs
+	 * @return the name of the run, e.g. <code>run2</code> for
+	 * <code>input.nex.run2.p</code>, or <code>run1</code> for the trace of
+	 * an analysis with a single run
+	 */
+	static String getRunName(String analysis, String trace) {
+		final String name = trace.substring(analysis.length(), trace.length() - TraceFile.EXTENSION.length());
+		return (name.startsWith(".") ? name.substring(1) : "run1");
+	}
+
+	/**
+	 * Reads a column of a file written by MrBayes, tab separated, with a
+	 * header after the lines within brackets, and the generation in the
+	 * first column. Lines whose value is not a number, e.g. the
+	 * <code>NA</code> of the first samples of the .mcmc file or a line cut
+	 * short by a run still writing the file, are skipped.
+	 *
+	 * @param in content of the file
+	 * @param column name of the column
+	 * @param name name of the series
+	 * @param points points kept
+	 * @return the column, downsampled, or <code>null</code> if the file has
+	 * no such column
+	 */
+	static TraceTrend.Series read(Reader in, String column, String name, int points) throws IOException {
+		final BufferedReader reader = new BufferedReader(in, 64 * 1024);
+		int index = -1;
+		String line;
+		while(index < 0 && (line = reader.readLine()) != null) {
+			if(line.trim().length() == 0 || line.startsWith("[")) {
+				continue;
+			}
+			final String[] header = line.split("\t");
+			if(header.length == 0 || !GENERATION_COLUMN.equals(header[0].trim())) {
+				return null;
+			}
+			for(int i = 1; i < header.length; ++i) {
+				if(column.equals(header[i].trim())) {
+					index = i;
+				}
+			}
+			if(index < 0) {
+				return null;
+			}
+		}
+		if(index < 0) {
+			return null;
+		}
+		double[] x = new double[1024];
+		double[] y = new double[1024];
+		int count = 0;
+		while((line = reader.readLine()) != null) {
+			final int tab = line.indexOf('\t');
+			final String value = getField(line, index);
+			if(tab < 0 || value == null) {
+				continue;
+			}
+			try {
+				final double generation = Long.parseLong(line.substring(0, tab).trim());
+				final double v = Double.parseDouble(value);
+				if(Double.isNaN(v) || Double.isInfinite(v)) {
+					continue;
+				}
+				if(count == x.length) {
+					x = grow(x);
+					y = grow(y);
+				}
+				x[count] = generation;
+				y[count] = v;
+				count++;
+			} catch (NumberFormatException nfe) {
+				// not a sample
+			}
+		}
+		final int[] kept = TraceStatistics.lttb(x, y, count, points);
+		final long[] generations = new long[kept.length];
+		final float[] values = new float[kept.length];
+		for(int i = 0; i < kept.length; ++i) {
+			generations[i] = (long) x[kept[i]];
+			values[i] = (float) y[kept[i]];
+		}
+		return new TraceTrend.Series(name, generations, values);
+	}
+
+	/**
+	 * @return the field of a tab separated line, trimmed, or
+	 * <code>null</code> if the line is shorter
+	 */
+	private static String getField(String line, int index) {
+		int start = 0;
+		for(int i = 0; i < index; ++i) {
+			start = line.indexOf('\t', start) + 1;
+			if(start == 0) {
+				return null;
+			}
+		}
+		final int end = line.indexOf('\t', start);
+		return (end < 0 ? line.substring(start) : line.substring(start, end)).trim();
+	}
+
+	private static double[] grow(double[] values) {
+		final double[] grown = new double[values.length * 2];
+		System.arraycopy(values, 0, grown, 0, values.length);
+		return grown;
+	}
+
+}
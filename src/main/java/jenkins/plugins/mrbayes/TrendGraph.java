@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.util.Graph;
+
+import java.awt.Color;
+import java.util.Calendar;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.xy.XYSeriesCollection;
+
+/**
+ * Line chart of MrBayes trends, either of a build, by generation, or of a
+ * project, by build number.
+ *
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TrendGraph extends Graph {
+
+	private static final int WIDTH = 500;
+
+	private static final int HEIGHT = 200;
+
+	private final XYSeriesCollection dataset;
+
+	private final String xLabel;
+
+	private final String yLabel;
+
+	/**
+	 * @param timestamp when the data last changed, for the browser cache
+	 * @param dataset a series per line
+	 * @param xLabel label of the x axis
+	 * @param yLabel label of the y axis
+	 */
+	public TrendGraph(Calendar timestamp, XYSeriesCollection dataset, String xLabel, String yLabel) {
+		super(timestamp, WIDTH, HEIGHT);
+		this.dataset = dataset;
+		this.xLabel = xLabel;
+		this.yLabel = yLabel;
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.util.Graph#createGraph()
+	 */
+	@Override
+	protected JFreeChart createGraph() {
+		final JFreeChart chart = ChartFactory.createXYLineChart(null, xLabel, yLabel, dataset,
+				PlotOrientation.VERTICAL, dataset.getSeriesCount() > 1, true, false);
+		chart.setBackgroundPaint(Color.white);
+		final XYPlot plot = chart.getXYPlot();
+		plot.setBackgroundPaint(Color.white);
+		plot.setDomainGridlinePaint(Color.lightGray);
+		plot.setRangeGridlinePaint(Color.lightGray);
+		final NumberAxis domain = (NumberAxis) plot.getDomainAxis();
+		domain.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
+		final NumberAxis range = (NumberAxis) plot.getRangeAxis();
+		range.setAutoRangeIncludesZero(false);
+		return chart;
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A small NEXUS file generated by the plug-in, that sets MrBayes options and 
+ * then executes the user's NEXUS file, unchanged. MrBayes is run with the 
+ * wrapper instead of the user's file.
+ * <p>
+ * Options are given with commands such as <code>mcmcp</code>, which change 
+ * the defaults used by the mcmc command of the user's file.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class WrapperCommandFile {
+
+	/**
+	 * Appended to the name of the user's NEXUS file to name the wrapper. Not 
+	 * ending in .nex, so that patterns for the input files do not match it.
+	 */
+	public static final String EXTENSION = ".jenkins";
+	
+	private final List<String> commands = new ArrayList<String>();
+	
+	/**
+	 * @param command a MrBayes command, without the trailing semicolon
+	 * @return this
+	 */
+	public WrapperCommandFile add(String command) {
+		commands.add(command);
+		return this;
+	}
+	
+	/**
+	 * @return the commands, without the trailing semicolons
+	 */
+	public List<String> getCommands() {
+		return Collections.unmodifiableList(commands);
+	}
+	
+	/**
+	 * @return whether there is any command to run before the user's file
+	 */
+	public boolean isEmpty() {
+		return commands.isEmpty();
+	}
+	
+	/**
+	 * @param input the user's NEXUS file, relative to the directory where 
+	 * MrBayes runs
+	 * @return the content of the wrapper
+	 */
+	public String getContent(String input) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("#NEXUS\n");
+		sb.append("[Generated by the Jenkins MrBayes plug-in]\n\n");
+		sb.append("begin mrbayes;\n");
+		for(String command : commands) {
+			sb.append("    ").append(command).append(";\n");
+		}
+		sb.append("    execute ").append(quote(input)).append(";\n");
+		sb.append("end;\n");
+		return sb.toString();
+	}
+	
+	private String quote(String input) {
+		if(input.indexOf(' ') < 0 && input.indexOf('\'') < 0) {
+			return input;
+		}
+		return "'" + input.replace("'", "''") + "'";
+	}
+	
+}
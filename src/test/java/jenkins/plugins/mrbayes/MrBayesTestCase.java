@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.Util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Base of the tests that work with files. Each test gets an empty temporary 
+ * directory, deleted with everything in it after the test.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public abstract class MrBayesTestCase extends TestCase {
+
+	/**
+	 * Temporary directory of the test.
+	 */
+	protected File dir;
+	
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("mrbayes", getClass().getSimpleName());
+		dir.delete();
+		dir.mkdirs();
+	}
+	
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		Util.deleteRecursive(dir);
+		super.tearDown();
+	}
+	
+	/**
+	 * Writes a file in the temporary directory, creating the directories it 
+	 * is in.
+	 * 
+	 * @param name path of the file, relative to the temporary directory
+	 * @return the file
+	 */
+	protected File write(String name, String content) throws IOException {
+		return write(new File(dir, name), content);
+	}
+	
+	/**
+	 * Appends to a file in the temporary directory.
+	 * 
+	 * @param name path of the file, relative to the temporary directory
+	 * @return the file
+	 */
+	protected File append(String name, String content) throws IOException {
+		return write(new File(dir, name), content, true);
+	}
+	
+	/**
+	 * Writes a file, creating the directories it is in.
+	 * 
+	 * @return the file
+	 */
+	protected static File write(File file, String content) throws IOException {
+		return write(file, content, false);
+	}
+	
+	private static File write(File file, String content, boolean append) throws IOException {
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		final FileWriter writer = new FileWriter(file, append);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+	
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests CondensedOutputStream.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestCondensedOutputStream extends TestCase {
+
+	private static final String OUTPUT = 
+		"   Chain results (10000 generations requested):\n" + 
+		"\n" + 
+		"      0 -- [-5986.3] (-5992.1) -- 0:00:00\n" + 
+		"   1000 -- [-5726.3] (-5722.1) -- 0:01:10\n" + 
+		"   2000 -- (-5725.3) [-5723.1] -- 0:01:00\n" + 
+		"   WARNING: Could not find a proposal\n" + 
+		"   3000 -- (-5725.9) [-5723.4] -- 0:00:50\n" + 
+		"   4000 -- (-5724.9) [-5723.0] -- 0:00:40\n" + 
+		"   5000 -- [-5723.9] (-5723.2) -- 0:00:30\n" + 
+		"   Analysis completed in 2 mins 10 seconds\n";
+	
+	public void testFull() throws Exception {
+		assertEquals(OUTPUT, filter(OutputLevel.FULL, OUTPUT));
+	}
+	
+	public void testCondensed() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(new CondensedOutputStream(out, Long.MAX_VALUE, true));
+		ps.print(OUTPUT);
+		ps.close();
+		
+		assertEquals(
+			"   Chain results (10000 generations requested):\n" + 
+			"\n" + 
+			"[... 2 progress lines omitted ...]\n" + 
+			"   2000 -- (-5725.3) [-5723.1] -- 0:01:00\n" + 
+			"   WARNING: Could not find a proposal\n" + 
+			"[... 2 progress lines omitted ...]\n" + 
+			"   5000 -- [-5723.9] (-5723.2) -- 0:00:30\n" + 
+			"   Analysis completed in 2 mins 10 seconds\n", out.toString());
+	}
+	
+	public void testDiagnostics() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(new CondensedOutputStream(out, Long.MAX_VALUE, true));
+		ps.print("   1000 -- [-5726.3] (-5722.1) -- 0:01:10\n" + 
+				"\n" + 
+				"   Average standard deviation of split frequencies: 0.052131\n" + 
+				"\n" + 
+				"   2000 -- (-5725.3) [-5723.1] -- 0:01:00\n" + 
+				"\n" + 
+				"   Average standard deviation of split frequencies: 0.031520\n" + 
+				"\n" + 
+				"   3000 -- (-5725.9) [-5723.4] -- 0:00:50\n" + 
+				"   Analysis completed in 2 mins 10 seconds\n");
+		ps.close();
+		
+		assertEquals(
+			"[... 3 progress lines omitted ...]\n" + 
+			"   Average standard deviation of split frequencies: 0.031520\n" + 
+			"   3000 -- (-5725.9) [-5723.4] -- 0:00:50\n" + 
+			"   Analysis completed in 2 mins 10 seconds\n", out.toString());
+	}
+	
+	public void testQuiet() throws Exception {
+		assertEquals(
+			"   Chain results (10000 generations requested):\n" + 
+			"\n" + 
+			"   WARNING: Could not find a proposal\n" + 
+			"   Analysis completed in 2 mins 10 seconds\n" + 
+			"[... 5 progress lines omitted ...]\n" + 
+			"   5000 -- [-5723.9] (-5723.2) -- 0:00:30\n", filter(OutputLevel.QUIET, OUTPUT));
+	}
+	
+	public void testFromString() {
+		assertEquals(OutputLevel.QUIET, OutputLevel.fromString("quiet"));
+		assertEquals(OutputLevel.CONDENSED, OutputLevel.fromString(null));
+		assertEquals(OutputLevel.CONDENSED, OutputLevel.fromString("unknown"));
+	}
+	
+	private String filter(OutputLevel level, String output) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(level.filter(out));
+		ps.print(output);
+		ps.close();
+		return out.toString();
+	}
+	
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ConvergenceMonitor.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestConvergenceMonitor extends TestCase {
+
+	public void testConvergence() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ConvergenceMonitor monitor = new ConvergenceMonitor(out, 0.01d, 2);
+		PrintStream ps = new PrintStream(monitor);
+		
+		ps.print("      1000 -- (-5986.3) (-5992.1) * (-5990.4) (-5987.7) -- 0:01:20\n");
+		ps.print("      Average standard deviation of split frequencies: 0.043112\n");
+		assertFalse(monitor.isConverged());
+		ps.print("      2000 -- (-5726.3) (-5722.1) * (-5730.4) (-5727.7) -- 0:01:10\n");
+		ps.print("      Average standard deviation of split frequencies: 0.009420\n");
+		ps.print("      3000 -- (-5725.3) (-5723.1) * (-5724.4) (-5726.7) -- 0:01:00\n");
+		ps.print("      Average standard deviation of split frequencies: 0.012001\n");
+		assertFalse(monitor.isConverged());
+		ps.print("      4000 -- (-5725.9) (-5723.4) * (-5724.1) (-5726.2) -- 0:00:50\n");
+		ps.print("      Average standard deviation of split frequencies: 0.008877\n");
+		assertFalse(monitor.isConverged());
+		ps.print("      5000 -- (-5724.9) (-5723.0) * (-5725.1) (-5726.0) -- 0:00:40\n");
+		ps.print("      Average standard deviation of split frequencies: 0.006541\n");
+		ps.flush();
+		assertTrue(monitor.isConverged());
+		assertEquals(5000L, monitor.getConvergedAt());
+		ps.close();
+		
+		assertTrue(out.toString().endsWith("Average standard deviation of split frequencies: 0.006541\n"));
+	}
+	
+	public void testNotAvailable() throws Exception {
+		ConvergenceMonitor monitor = new ConvergenceMonitor(new ByteArrayOutputStream(), 0.01d, 1);
+		monitor.parse("      Average standard deviation of split frequencies: NA (no splits above min. frequency)");
+		assertFalse(monitor.isConverged());
+		monitor.parse("      Average standard deviation of split frequencies: 0.000000");
+		assertTrue(monitor.isConverged());
+	}
+	
+}
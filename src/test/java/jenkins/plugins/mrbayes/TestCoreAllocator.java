@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests CoreAllocator.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestCoreAllocator extends MrBayesTestCase {
+
+	public void testCpuList() {
+		assertEquals(Arrays.asList(0, 1, 2, 3, 8, 10, 11), CoreAllocator.parseCpuList("0-3,8,10-11\n"));
+		assertTrue(CoreAllocator.parseCpuList("").isEmpty());
+		assertEquals("0-3,8,10-11", CoreAllocator.formatCpuList(Arrays.asList(0, 1, 2, 3, 8, 10, 11)));
+		assertEquals("5", CoreAllocator.formatCpuList(Arrays.asList(5)));
+	}
+	
+	public void testReadNumaNodes() throws Exception {
+		final File numa = new File(dir, "numa");
+		// no NUMA information, all cores in one node
+		Map<Integer, List<Integer>> numaNodes = CoreAllocator.readNumaNodes(numa, 4);
+		assertEquals(1, numaNodes.size());
+		assertEquals(Arrays.asList(0, 1, 2, 3), numaNodes.get(0));
+		
+		write("numa/node0/cpulist", "0-3\n");
+		write("numa/node1/cpulist", "4-7\n");
+		write("numa/possible", "");
+		numaNodes = CoreAllocator.readNumaNodes(numa, 8);
+		assertEquals(2, numaNodes.size());
+		assertEquals(Arrays.asList(4, 5, 6, 7), numaNodes.get(1));
+	}
+	
+	public void testAllocate() {
+		final Map<Integer, List<Integer>> numaNodes = new TreeMap<Integer, List<Integer>>();
+		numaNodes.put(0, Arrays.asList(0, 1, 2, 3));
+		numaNodes.put(1, Arrays.asList(4, 5, 6, 7));
+		final CoreAllocator allocator = new CoreAllocator(numaNodes);
+		
+		final CoreAllocator.Placement a = allocator.allocate("a", 3, "/usr/bin/numactl");
+		assertEquals(Arrays.asList(0, 1, 2), a.getCores());
+		assertEquals(0, a.getNumaNode());
+		assertEquals(Arrays.asList("/usr/bin/numactl", "--physcpubind=0-2", "--membind=0"), a.getPrefix());
+		
+		// the fullest NUMA node that fits
+		final CoreAllocator.Placement b = allocator.allocate("b", 1, "/usr/bin/numactl");
+		assertEquals(Arrays.asList(3), b.getCores());
+		
+		final CoreAllocator.Placement c = allocator.allocate("c", 4, "/usr/bin/taskset");
+		assertEquals(1, c.getNumaNode());
+		assertEquals(Arrays.asList("/usr/bin/taskset", "-c", "4-7"), c.getPrefix());
+		
+		assertNull(allocator.allocate("d", 1, "/usr/bin/numactl"));
+		
+		// no NUMA node has 5 free cores, but both together do
+		allocator.release("a");
+		allocator.release("c");
+		final CoreAllocator.Placement e = allocator.allocate("e", 5, "/usr/bin/numactl");
+		assertEquals(-1, e.getNumaNode());
+		// the freest NUMA node first
+		assertEquals(Arrays.asList(0, 4, 5, 6, 7), e.getCores());
+		assertEquals(Arrays.asList("/usr/bin/numactl", "--physcpubind=0,4-7"), e.getPrefix());
+	}
+	
+	public void testDetachedPlacement() throws Exception {
+		final Map<Integer, List<Integer>> numaNodes = new TreeMap<Integer, List<Integer>>();
+		numaNodes.put(0, Arrays.asList(0, 1, 2, 3));
+		final String control = new File(dir, ".mrbayes/5f2c").getPath();
+		final File file = CoreAllocator.getPlacementFile(control);
+		file.getParentFile().mkdirs();
+		CoreAllocator allocator = new CoreAllocator(numaNodes);
+		allocator.allocate(control, 2, "/usr/bin/numactl").write(file);
+		
+		// the agent restarts while the detached process runs
+		allocator = new CoreAllocator(numaNodes);
+		final CoreAllocator.Placement placement = CoreAllocator.Placement.read(control, file);
+		assertEquals(Arrays.asList(0, 1), placement.getCores());
+		assertEquals(Arrays.asList("/usr/bin/numactl", "--physcpubind=0-1", "--membind=0"), placement.getPrefix());
+		allocator.register(placement);
+		assertEquals(Arrays.asList(2, 3), allocator.allocate("b", 2, "/usr/bin/numactl").getCores());
+		assertNull(allocator.allocate("c", 1, "/usr/bin/numactl"));
+		
+		allocator.release(control);
+		assertEquals(Arrays.asList(0), allocator.allocate("c", 1, "/usr/bin/numactl").getCores());
+		
+		assertNull(CoreAllocator.Placement.read(control, new File(dir, "missing.cores")));
+		write("broken.cores", "0-1\n");
+		assertNull(CoreAllocator.Placement.read(control, new File(dir, "broken.cores")));
+	}
+	
+	public void testReattachAndRelease() throws Exception {
+		final String control = new File(dir, ".mrbayes/9a41").getPath();
+		final File file = CoreAllocator.getPlacementFile(control);
+		assertNull(new CoreAllocator.Reattach(control).call());
+		
+		write(".mrbayes/9a41.cores", "0\n-1\n/usr/bin/taskset\n");
+		final CoreAllocator.Placement placement = new CoreAllocator.Reattach(control).call();
+		assertEquals(control, placement.getOwner());
+		assertEquals(Arrays.asList("/usr/bin/taskset", "-c", "0"), placement.getPrefix());
+		
+		new CoreAllocator.Release(control, control).call();
+		assertFalse(file.exists());
+	}
+	
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests DetachedProcess.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestDetachedProcess extends MrBayesTestCase {
+
+	public void testOutput() throws Exception {
+		final DetachedProcess process = new DetachedProcess(dir);
+		assertFalse(process.isStarted());
+		
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(0L, process.copyOutput(0L, out));
+		
+		write("log", "   1000 -- (-5986.3)\n");
+		long offset = process.copyOutput(0L, out);
+		assertEquals(21L, offset);
+		
+		append("log", "   2000 -- (-5726.3)\n");
+		offset = process.copyOutput(offset, out);
+		assertEquals(42L, offset);
+		assertEquals("   1000 -- (-5986.3)\n   2000 -- (-5726.3)\n", out.toString());
+	}
+	
+	public void testExitCode() throws Exception {
+		final DetachedProcess process = new DetachedProcess(dir);
+		write("pid", "2147483646\n");
+		assertTrue(process.isStarted());
+		assertNull(process.getExitCode());
+		
+		write("exit", "143\n");
+		assertEquals(Integer.valueOf(143), process.getExitCode());
+		
+		process.delete();
+		assertFalse(dir.exists());
+	}
+	
+	public void testEnvironmentWithoutKillCookie() {
+		final Map<String, String> env = new HashMap<String, String>();
+		env.put("JOB_NAME", "mrbayes");
+		env.put("BUILD_ID", "2011-03-01_10-00-00");
+		env.put("JENKINS_NODE_COOKIE", "8e9c2d");
+		final Map<String, String> detached = DetachedProcess.getEnvironment(env);
+		assertEquals("mrbayes", detached.get("JOB_NAME"));
+		assertEquals("dontKillMe", detached.get("BUILD_ID"));
+		assertEquals("dontKillMe", detached.get("JENKINS_NODE_COOKIE"));
+		assertFalse(detached.containsKey("HUDSON_COOKIE"));
+		assertEquals("2011-03-01_10-00-00", env.get("BUILD_ID"));
+	}
+	
+	public void testSurvivesBuildProcessKiller() throws Exception {
+		if(!new File("/proc/self").exists()) {
+			return;
+		}
+		final Map<String, String> env = new HashMap<String, String>();
+		env.put("JOB_NAME", dir.getName());
+		env.put("BUILD_ID", "1");
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final TaskListener listener = new StreamTaskListener(out);
+		final DetachedProcess process = new DetachedProcess(new File(dir, "control"));
+		process.start(listener, Arrays.asList("sleep", "60"), env, dir);
+		final File pid = new File(dir, "control/pid");
+		for(int i = 0; i < 100 && pid.length() == 0L; ++i) {
+			Thread.sleep(50L);
+		}
+		assertTrue(process.isAlive());
+		
+		// what the process tree killer does when the build ends: kill every 
+		// process with the variables of the build
+		final File[] procs = new File("/proc").listFiles();
+		for(File proc : procs) {
+			final String environ = readEnviron(new File(proc, "environ"));
+			if(environ.contains("\0JOB_NAME=" + dir.getName() + "\0") && environ.contains("\0BUILD_ID=1\0")) {
+				new ProcessBuilder("kill", "-KILL", proc.getName()).start().waitFor();
+			}
+		}
+		Thread.sleep(100L);
+		
+		// a later build reattaches to it
+		final DetachedProcess reattached = new DetachedProcess(new File(dir, "control"));
+		assertTrue(reattached.isStarted());
+		assertTrue(reattached.isAlive());
+		assertNull(reattached.getExitCode());
+		assertTrue(readEnviron(new File("/proc/" + read(pid).trim() + "/environ"))
+				.contains("\0BUILD_ID=dontKillMe\0"));
+		
+		reattached.kill(5000L);
+		assertFalse(reattached.isAlive());
+	}
+	
+	private static String readEnviron(File environ) {
+		try {
+			return "\0" + read(environ);
+		} catch (IOException e) {
+			// gone, or owned by someone else
+			return "";
+		}
+	}
+	
+	private static String read(File file) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[4096];
+			int read;
+			while((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toString();
+	}
+	
+	public void testKillEscalates() throws Exception {
+		if(!new File("/proc/self").exists() || new ProcessBuilder("sh", "-c", "command -v setsid").start().waitFor() != 0) {
+			return;
+		}
+		// a process group whose leader ignores SIGTERM, with a child
+		final Process shell = new ProcessBuilder("sh", "-c", 
+				"setsid sh -c 'trap \"\" TERM; sleep 60 & wait' & echo $! > \"$0/pid\"; wait", 
+				dir.getAbsolutePath()).start();
+		final DetachedProcess process = new DetachedProcess(dir);
+		final File pid = new File(dir, "pid");
+		for(int i = 0; i < 100 && pid.length() == 0L; ++i) {
+			Thread.sleep(50L);
+		}
+		assertTrue(process.isAlive());
+		
+		final long start = System.currentTimeMillis();
+		process.kill(500L);
+		shell.waitFor();
+		assertTrue(System.currentTimeMillis() - start >= 500L);
+		assertFalse(process.isAlive());
+	}
+	
+}
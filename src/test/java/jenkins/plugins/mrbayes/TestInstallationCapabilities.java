@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests InstallationCapabilities.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestInstallationCapabilities extends MrBayesTestCase {
+
+	private static final String VERSION_327 = 
+		"\n   MrBayes, Bayesian Analysis of Phylogeny\n\n" + 
+		"   Version:   3.2.7\n" + 
+		"   Features:  SSE AVX FMA Beagle MPI\n" + 
+		"   Host type: x86_64 (64-bit)\n" + 
+		"   Compiler:  gnu 7.5.0\n";
+	
+	private static final String BANNER_312 = 
+		"\n                            MrBayes v3.1.2\n\n" + 
+		"                      (Bayesian Analysis of Phylogeny)\n\n" + 
+		"                   by\n\n" + 
+		"   Type \"help\" or \"help <command>\" for information\n" + 
+		"   on the commands that are available.\n\n" + 
+		"   MrBayes > quit\n";
+	
+	private static final Set<String> SSE_ONLY = new HashSet<String>(Arrays.asList("fpu", "sse", "sse2"));
+	
+	public void testParse() {
+		InstallationCapabilities c = InstallationCapabilities.parse("mb", "/usr/bin/mb", VERSION_327, null);
+		assertTrue(c.isAvailable());
+		assertEquals("3.2.7", c.getVersion());
+		assertTrue(c.isBeagle());
+		assertTrue(c.isMpi());
+		assertTrue(c.isSse());
+		assertTrue(c.isAvx());
+		assertEquals("BEAGLE AVX SSE MPI", c.getFeatures());
+		
+		// AVX built in, but not supported by the processors
+		c = InstallationCapabilities.parse("mb", "/usr/bin/mb", VERSION_327, SSE_ONLY);
+		assertTrue(c.isSse());
+		assertFalse(c.isAvx());
+		
+		c = InstallationCapabilities.parse("mb", "/opt/mb-3.1.2/mb", BANNER_312, null);
+		assertTrue(c.isAvailable());
+		assertEquals("3.1.2", c.getVersion());
+		assertFalse(c.isBeagle());
+		assertFalse(c.isMpi());
+		assertEquals("none", c.getFeatures());
+		
+		c = InstallationCapabilities.parse("mb", "/bin/true", "", null);
+		assertFalse(c.isAvailable());
+		assertNotNull(c.getProblem());
+	}
+	
+	public void testCompareVersions() {
+		assertTrue(InstallationCapabilities.compareVersions("3.2.10", "3.2.7") > 0);
+		assertTrue(InstallationCapabilities.compareVersions("3.2.7a", "3.2.7") > 0);
+		assertTrue(InstallationCapabilities.compareVersions("3.1.2", "3.2") < 0);
+		assertEquals(0, InstallationCapabilities.compareVersions("3.2", "3.2.0"));
+		assertTrue(InstallationCapabilities.compareVersions(null, "3.1.2") < 0);
+	}
+	
+	public void testFastest() {
+		final InstallationCapabilities plain = new InstallationCapabilities("plain", "mb", "3.2.7", false, false, true, false, null);
+		final InstallationCapabilities old = new InstallationCapabilities("old", "mb", "3.2.6", false, false, true, false, null);
+		final InstallationCapabilities avx = new InstallationCapabilities("avx", "mb", "3.2.6", false, false, true, true, null);
+		final InstallationCapabilities beagle = new InstallationCapabilities("beagle", "mb", "3.2.2", true, false, false, false, null);
+		final InstallationCapabilities missing = InstallationCapabilities.unavailable("missing", "executable not found: mb");
+		
+		assertEquals("plain", InstallationCapabilities.fastest(Arrays.asList(old, plain, missing)).getName());
+		assertEquals("avx", InstallationCapabilities.fastest(Arrays.asList(old, plain, avx)).getName());
+		assertEquals("beagle", InstallationCapabilities.fastest(Arrays.asList(avx, missing, beagle)).getName());
+		assertNull(InstallationCapabilities.fastest(Arrays.asList(missing)));
+	}
+	
+	public void testResolve() throws Exception {
+		final File mb = script("mb", VERSION_327);
+		assertEquals(mb, InstallationCapabilities.Probe.resolve("mb", "/nonexistent" + File.pathSeparator + dir.getPath()));
+		assertEquals(mb, InstallationCapabilities.Probe.resolve(mb.getPath(), null));
+		assertNull(InstallationCapabilities.Probe.resolve("mb", "/nonexistent"));
+		assertNull(InstallationCapabilities.Probe.resolve(new File(dir, "mb-mpi").getPath(), null));
+	}
+	
+	public void testProbeIsCachedUntilExecutableChanges() throws Exception {
+		if(File.separatorChar != '/') {
+			return;
+		}
+		final File mb = script("mb", VERSION_327);
+		final long modified = mb.lastModified();
+		InstallationCapabilities c = InstallationCapabilities.Probe.probe("mb", mb, null);
+		assertEquals("3.2.7", c.getVersion());
+		
+		// same size and modification time, not run again
+		script("mb", VERSION_327.replace("3.2.7", "3.2.8"));
+		mb.setLastModified(modified);
+		assertEquals("3.2.7", InstallationCapabilities.Probe.probe("another name", mb, null).getVersion());
+		assertEquals("another name", InstallationCapabilities.Probe.probe("another name", mb, null).getName());
+		
+		mb.setLastModified(modified + 2000L);
+		assertEquals("3.2.8", InstallationCapabilities.Probe.probe("mb", mb, null).getVersion());
+	}
+	
+	private File script(String name, String output) throws IOException {
+		final File f = write(name, "#!/bin/sh\ncat <<'EOF'\n" + output + "EOF\n");
+		f.setExecutable(true);
+		return f;
+	}
+	
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests MemoryEstimate.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestMemoryEstimate extends TestCase {
+
+	public void testEstimate() {
+		NexusSummary nexus = new NexusSummary();
+		assertEquals(-1L, MemoryEstimate.estimate(nexus));
+		assertEquals(-1L, MemoryEstimate.estimate(null));
+		
+		nexus.setNtax(Integer.valueOf(12));
+		assertEquals(-1L, MemoryEstimate.estimate(nexus));
+		
+		// 8 chains * 2 copies * 23 nodes * 898 characters * 4 states * 4 categories * 4 bytes
+		nexus.setNchar(Integer.valueOf(898));
+		nexus.setDatatype("dna");
+		assertEquals(MemoryEstimate.BASE_MEMORY + 8L * 2 * 23 * 898 * 4 * 4 * 4, MemoryEstimate.estimate(nexus));
+		
+		nexus.setDatatype("protein");
+		assertEquals(MemoryEstimate.BASE_MEMORY + 8L * 2 * 23 * 898 * 20 * 4 * 4, MemoryEstimate.estimate(nexus));
+		
+		nexus.setNruns(Integer.valueOf(1));
+		nexus.setNchains(Integer.valueOf(1));
+		assertEquals(MemoryEstimate.BASE_MEMORY + 2L * 23 * 898 * 20 * 4 * 4, MemoryEstimate.estimate(nexus));
+	}
+	
+	public void testMemoryInUseIsOptIn() {
+		final long gb = 1024L * 1024L * 1024L;
+		// estimates of 6 GB running and 4 GB queued in a node of 8 GB
+		assertFalse(MrBayesQueueTaskDispatcher.isMemoryInUse(false, 6L * gb, 4L * gb, 8L * gb));
+		assertTrue(MrBayesQueueTaskDispatcher.isMemoryInUse(true, 6L * gb, 4L * gb, 8L * gb));
+		assertFalse(MrBayesQueueTaskDispatcher.isMemoryInUse(true, 2L * gb, 4L * gb, 8L * gb));
+		assertFalse(MrBayesQueueTaskDispatcher.isMemoryInUse(true, 6L * gb, -1L, 8L * gb));
+		assertFalse(MrBayesQueueTaskDispatcher.isMemoryInUse(true, 6L * gb, 4L * gb, -1L));
+	}
+	
+	public void testLargeAnalysis() {
+		NexusSummary nexus = new NexusSummary();
+		nexus.setNtax(Integer.valueOf(1000));
+		nexus.setNchar(Integer.valueOf(100000));
+		nexus.setDatatype("protein");
+		// must not overflow
+		assertTrue(MemoryEstimate.estimate(nexus) > Integer.MAX_VALUE);
+	}
+	
+	public void testStates() {
+		assertEquals(4, MemoryEstimate.getStates(null));
+		assertEquals(4, MemoryEstimate.getStates("rna"));
+		assertEquals(2, MemoryEstimate.getStates("restriction"));
+		assertEquals(10, MemoryEstimate.getStates("standard"));
+		assertEquals(20, MemoryEstimate.getStates("mixed"));
+	}
+	
+	public void testToMegabytes() {
+		assertEquals(0L, MemoryEstimate.toMegabytes(0L));
+		assertEquals(1L, MemoryEstimate.toMegabytes(1L));
+		assertEquals(64L, MemoryEstimate.toMegabytes(MemoryEstimate.BASE_MEMORY));
+	}
+	
+}
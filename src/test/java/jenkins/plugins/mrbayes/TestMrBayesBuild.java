@@ -0,0 +1,395 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jenkins.plugins.mrbayes.util.Messages;
+
+import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.TestBuilder;
+
+/**
+ * Runs builds of MrBayesBuilder against a shell script standing in for 
+ * MrBayes, which writes stub .p, .t and .ckp files named after the file it 
+ * is given.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestMrBayesBuild extends HudsonTestCase {
+
+	/**
+	 * Stand-in for MrBayes. Appends the file it runs to mb.calls, writes the 
+	 * output files of the runs and a checkpoint at generation 500, or the 
+	 * consensus tree for a summary file. Files named after the analysis 
+	 * change what it does: .exit holds its exit code, .sleep the seconds it 
+	 * waits before exiting, and .converge makes it print converged 
+	 * diagnostics and wait to be stopped.
+	 */
+	private static final String MB = 
+		"#!/bin/sh\n" + 
+		"for arg in \"$@\"; do file=\"$arg\"; done\n" + 
+		"echo \"$file\" >> mb.calls\n" + 
+		"base=`sed -n 's/.*filename *= *\\([^ ;]*\\).*/\\1/p' \"$file\" | tail -1`\n" + 
+		"[ -z \"$base\" ] && base=`sed -n 's/^ *execute *\\([^ ;]*\\) *;.*/\\1/p' \"$file\" | tail -1`\n" + 
+		"[ -z \"$base\" ] && base=\"${file%.summary.jenkins}\"\n" + 
+		"echo \"stub: running $file as $base\"\n" + 
+		"grep 'append=yes' \"$file\" > /dev/null && echo \"stub: appending\"\n" + 
+		"case \"$file\" in\n" + 
+		"*.summary.jenkins)\n" + 
+		"  echo \"tree con_50_majrule = (1,2,(3,4));\" > \"$base.con.tre\"\n" + 
+		"  exit 0;;\n" + 
+		"esac\n" + 
+		"if [ -f \"$base.converge\" ]; then\n" + 
+		"  for gen in 100 200 300; do\n" + 
+		"    echo \"   $gen -- (-10.0) (-11.0)\"\n" + 
+		"    echo \"      Average standard deviation of split frequencies: 0.001\"\n" + 
+		"  done\n" + 
+		"  exec sleep 300\n" + 
+		"fi\n" + 
+		"case \"$base\" in\n" + 
+		"*.run[0-9]*) runs=\"$base\";;\n" + 
+		"*) runs=\"$base.run1 $base.run2\";;\n" + 
+		"esac\n" + 
+		"for run in $runs; do\n" + 
+		"  printf '[ID: 1]\\nGen\\tLnL\\n100\\t-10.0\\n700\\t-9.0\\n' > \"$run.p\"\n" + 
+		"  printf '#NEXUS\\nbegin trees;\\n   tree gen.100 = (1,2,(3,4));\\nend;\\n' > \"$run.t\"\n" + 
+		"done\n" + 
+		"echo \"[generation: 500]\" > \"$base.ckp\"\n" + 
+		"[ -f \"$base.sleep\" ] && sleep `cat \"$base.sleep\"`\n" + 
+		"[ -f \"$base.exit\" ] && exit `cat \"$base.exit\"`\n" + 
+		"exit 0\n";
+	
+	/**
+	 * Stand-in for mpirun, prints its arguments and runs the program without 
+	 * its options.
+	 */
+	private static final String MPIRUN = 
+		"#!/bin/sh\n" + 
+		"echo \"mpirun $*\"\n" + 
+		"while [ $# -gt 0 ]; do\n" + 
+		"  case \"$1\" in\n" + 
+		"  -np) shift 2;;\n" + 
+		"  -*) shift;;\n" + 
+		"  *) break;;\n" + 
+		"  esac\n" + 
+		"done\n" + 
+		"exec \"$@\"\n";
+	
+	private static final String NEXUS = 
+		"#NEXUS\n" + 
+		"begin data;\n" + 
+		"   dimensions ntax=4 nchar=8;\n" + 
+		"   format datatype=dna missing=? gap=-;\n" + 
+		"   matrix\n" + 
+		"   A ACGTACGT\n" + 
+		"   B ACGTACGA\n" + 
+		"   C ACGAACGA\n" + 
+		"   D ACGAACTA\n" + 
+		"   ;\n" + 
+		"end;\n" + 
+		"begin mrbayes;\n" + 
+		"   set autoclose=yes nowarn=yes;\n" + 
+		"   mcmcp ngen=1000 samplefreq=100 printfreq=100 nruns=2 nchains=2 seed=7 swapseed=11;\n" + 
+		"   mcmc;\n" + 
+		"   sump;\n" + 
+		"   sumt;\n" + 
+		"end;\n";
+	
+	private MrBayesInstallation mb = null;
+	private MrBayesInstallation mpi = null;
+	
+	private WorkspaceFiles files = null;
+	
+	/* (non-Javadoc)
+	 * @see org.jvnet.hudson.test.HudsonTestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		final File bin = createTmpDir();
+		final File mbScript = script(bin, "mb", MB);
+		final File mpirunScript = script(bin, "mpirun", MPIRUN);
+		mb = new MrBayesInstallation("stub", mbScript.getAbsolutePath());
+		mpi = new MrBayesInstallation("stub-mpi", mbScript.getAbsolutePath(), mpirunScript.getAbsolutePath(), null);
+		MrBayesBuilder.DESCRIPTOR.setInstallations(mb, mpi);
+		
+		files = new WorkspaceFiles();
+		files.put("input.nex", NEXUS);
+	}
+	
+	public void testMpiLaunch() throws Exception {
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mpi.getName(), "input.nex", Boolean.TRUE, 
+				"4", null, null, null, null, null, null, Boolean.FALSE, null, null, null, null, null, null, null, null, null));
+		
+		final FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		assertLogContains("mpirun -np 4 " + mpi.getPathToExecutable() + " input.nex", build);
+		assertLogContains("stub: running input.nex as input.nex", build);
+		assertEquals(Arrays.asList("input.nex"), getCalls(build));
+		assertTrue(build.getWorkspace().child("input.nex.run1.p").exists());
+		assertTrue(build.getWorkspace().child("input.nex.run2.t").exists());
+	}
+	
+	public void testBatchFailFast() throws Exception {
+		files.put("a.nex", NEXUS);
+		files.put("b.nex", NEXUS);
+		files.put("b.nex.exit", "3");
+		files.put("c.nex", NEXUS);
+		files.put("c.nex.sleep", "60");
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "a.nex,b.nex,c.nex", Boolean.TRUE, 
+				null, Boolean.TRUE, null, null, null, null, null, Boolean.FALSE, null, null, null, null, null, null, null, null, null));
+		
+		final FreeStyleBuild build = assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+		assertLogContains(Messages.MrBayesBuilder_BatchFailingFast("b.nex"), build);
+		assertLogContains(Messages.MrBayesBuilder_BatchResult("b.nex", Messages.MrBayesBuilder_BatchExitCode(3)), build);
+		// c.nex was stopped, or never started when the node has few cores
+		assertLogContains(Messages.MrBayesBuilder_BatchResult("c.nex", Messages.MrBayesBuilder_BatchNotRun()), build);
+		assertTrue(build.getDuration() < 60000L);
+	}
+	
+	public void testBatchCollectsResults() throws Exception {
+		files.put("a.nex", NEXUS);
+		files.put("b.nex", NEXUS);
+		files.put("b.nex.exit", "3");
+		files.put("c.nex", NEXUS);
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "a.nex,b.nex,c.nex", Boolean.TRUE, 
+				null, Boolean.FALSE, null, null, null, null, null, Boolean.FALSE, null, null, null, null, null, null, null, null, null));
+		
+		final FreeStyleBuild build = assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+		assertLogContains(Messages.MrBayesBuilder_BatchResult("a.nex", Messages.MrBayesBuilder_BatchExitCode(0)), build);
+		assertLogContains(Messages.MrBayesBuilder_BatchResult("b.nex", Messages.MrBayesBuilder_BatchExitCode(3)), build);
+		assertLogContains(Messages.MrBayesBuilder_BatchResult("c.nex", Messages.MrBayesBuilder_BatchExitCode(0)), build);
+		assertLogContains(Messages.MrBayesBuilder_BatchFailed(), build);
+		assertEquals(3, getCalls(build).size());
+		assertTrue(build.getWorkspace().child("c.nex.run2.p").exists());
+	}
+	
+	public void testResumeFromCheckpoint() throws Exception {
+		files.put("input.nex.exit", "1");
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "input.nex", Boolean.TRUE));
+		final FreeStyleBuild failed = assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+		assertNull(failed.getAction(MrBayesResumeAction.class));
+		
+		files.put("input.nex.exit", null);
+		final FreeStyleBuild resumed = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		// the stand-in checkpoints at generation 500 and samples up to 700
+		assertLogContains(Messages.MrBayesBuilder_ResumingFromCheckpoint("input.nex.ckp", 500L, 200L), resumed);
+		assertLogContains("stub: running input.nex" + WrapperCommandFile.EXTENSION + " as input.nex", resumed);
+		assertLogContains("stub: appending", resumed);
+		final MrBayesResumeAction action = resumed.getAction(MrBayesResumeAction.class);
+		assertNotNull(action);
+		assertEquals(500L, action.getResumedGenerations());
+		assertEquals(200L, action.getRecomputedGenerations());
+	}
+	
+	public void testNotResumingChangedAnalysis() throws Exception {
+		files.put("input.nex.exit", "1");
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "input.nex", Boolean.TRUE));
+		assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+		
+		files.put("input.nex.exit", null);
+		files.put("input.nex", NEXUS.replace("ngen=1000", "ngen=2000"));
+		final FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		assertLogContains(Messages.MrBayesBuilder_CheckpointMismatch("input.nex.ckp", "input.nex"), build);
+		assertLogNotContains("stub: appending", build);
+		assertNull(build.getAction(MrBayesResumeAction.class));
+	}
+	
+	public void testStopOnConvergence() throws Exception {
+		files.put("input.nex.converge", "");
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "input.nex", Boolean.TRUE, 
+				null, null, null, "0.01", "2", null, null, Boolean.FALSE, null, null, null, null, null, null, null, null, null));
+		
+		final FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		assertLogContains(Messages.MrBayesBuilder_ConvergenceReached(2, 0.01d, 200L), build);
+		// stopped long before the stand-in stops waiting, then summarized
+		assertTrue(build.getDuration() < 300000L);
+		assertEquals(Arrays.asList("input.nex", "input.nex" + SummaryCommandFile.EXTENSION), getCalls(build));
+		assertTrue(build.getWorkspace().child("input.nex.con.tre").exists());
+	}
+	
+	public void testDetached() throws Exception {
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "input.nex", Boolean.TRUE, 
+				null, null, null, null, null, null, Boolean.TRUE, null, null, null, null, null, null, null, null, null, null));
+		
+		final FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		final FilePath control = build.getWorkspace().child(DetachedProcess.getControlDirectory("input.nex"));
+		assertLogContains(Messages.MrBayesBuilder_MrBayesDetached(control.getRemote()), build);
+		// the output is copied from the log of the detached process
+		assertLogContains("stub: running input.nex as input.nex", build);
+		assertEquals(Arrays.asList("input.nex"), getCalls(build));
+		assertTrue(build.getWorkspace().child("input.nex.run1.p").exists());
+		assertFalse(control.exists());
+	}
+	
+	public void testReattach() throws Exception {
+		// left by a build that stopped while MrBayes was running
+		final String control = DetachedProcess.getControlDirectory("input.nex");
+		files.put(control + "/log", "stub: finished after the build stopped\n");
+		files.put(control + "/exit", "0");
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "input.nex", Boolean.TRUE, 
+				null, null, null, null, null, null, Boolean.TRUE, null, null, null, null, null, null, null, null, null, null));
+		
+		final FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		assertLogContains(Messages.MrBayesBuilder_ReattachingToMrBayes(build.getWorkspace().child(control).getRemote()), build);
+		assertLogContains("stub: finished after the build stopped", build);
+		assertTrue(getCalls(build).isEmpty());
+		assertFalse(build.getWorkspace().child(control).exists());
+	}
+	
+	public void testResultCache() throws Exception {
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "input.nex", Boolean.TRUE));
+		
+		// the .p and .t files of both runs, not the checkpoint
+		final FreeStyleBuild miss = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		assertLogContains(Messages.MrBayesBuilder_ResultCacheStored(4, "input.nex"), miss);
+		assertEquals(Arrays.asList("input.nex"), getCalls(miss));
+		
+		miss.getWorkspace().child("input.nex.run1.p").delete();
+		final FreeStyleBuild hit = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		assertLogContains(Messages.MrBayesBuilder_ResultCacheHit(4, "input.nex"), hit);
+		assertEquals(Arrays.asList("input.nex"), getCalls(hit));
+		assertTrue(hit.getWorkspace().child("input.nex.run1.p").exists());
+		
+		// another analysis, with other results
+		files.put("input.nex", NEXUS.replace("seed=7", "seed=8"));
+		final FreeStyleBuild changed = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		assertLogNotContains(Messages.MrBayesBuilder_ResultCacheHit(4, "input.nex"), changed);
+		assertEquals(Arrays.asList("input.nex", "input.nex"), getCalls(changed));
+	}
+	
+	public void testSplitRuns() throws Exception {
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "input.nex", Boolean.TRUE, 
+				null, null, null, null, null, null, null, Boolean.FALSE, null, null, null, null, Boolean.TRUE, null, null, null, null));
+		
+		final FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+		assertLogContains("stub: running " + SplitRunFile.getName("input.nex", 1) + " as input.nex.run1", build);
+		assertLogContains("stub: running " + SplitRunFile.getName("input.nex", 2) + " as input.nex.run2", build);
+		assertLogContains(Messages.MrBayesBuilder_SplitRunsMerged(2, "input.nex", 0), build);
+		// each run once, in any order, then the summaries of both
+		final List<String> calls = getCalls(build);
+		assertEquals(3, calls.size());
+		assertTrue(calls.contains(SplitRunFile.getName("input.nex", 1)));
+		assertTrue(calls.contains(SplitRunFile.getName("input.nex", 2)));
+		assertEquals("input.nex" + SummaryCommandFile.EXTENSION, calls.get(2));
+		
+		final FilePath workspace = build.getWorkspace();
+		for(String output : new String[] {"input.nex.run1.p", "input.nex.run1.t", "input.nex.run2.p", "input.nex.run2.t", 
+				"input.nex.con.tre"}) {
+			assertTrue(output, workspace.child(output).exists());
+		}
+		assertFalse(workspace.child(SplitRunFile.getName("input.nex", 1)).exists());
+	}
+	
+	public void testSplitRunFailing() throws Exception {
+		files.put("input.nex.run2.exit", "2");
+		final FreeStyleProject project = createProject(new MrBayesBuilder(mb.getName(), "input.nex", Boolean.TRUE, 
+				null, null, null, null, null, null, null, Boolean.FALSE, null, null, null, null, Boolean.TRUE, null, null, null, null));
+		
+		final FreeStyleBuild build = assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+		assertLogContains(Messages.MrBayesBuilder_SplitRunFailed(2, 2, 2), build);
+		assertLogNotContains(Messages.MrBayesBuilder_SplitRunsMerged(2, "input.nex", 0), build);
+		assertFalse(getCalls(build).contains("input.nex" + SummaryCommandFile.EXTENSION));
+		assertFalse(build.getWorkspace().child("input.nex.con.tre").exists());
+	}
+	
+	/**
+	 * @return a project writing the files of the workspace and running the 
+	 * builder
+	 */
+	private FreeStyleProject createProject(MrBayesBuilder builder) throws IOException {
+		final FreeStyleProject project = createFreeStyleProject();
+		project.getBuildersList().add(files);
+		project.getBuildersList().add(builder);
+		return project;
+	}
+	
+	/**
+	 * @return the files run by the stand-in for MrBayes in a build
+	 */
+	private static List<String> getCalls(AbstractBuild<?, ?> build) throws IOException, InterruptedException {
+		final FilePath calls = build.getWorkspace().child("mb.calls");
+		if(!calls.exists()) {
+			return Collections.emptyList();
+		}
+		return Arrays.asList(calls.readToString().trim().split("\n"));
+	}
+	
+	private static File script(File dir, String name, String content) throws IOException, InterruptedException {
+		final File file = new File(dir, name);
+		final FilePath path = new FilePath(file);
+		path.write(content, "UTF-8");
+		path.chmod(0755);
+		return file;
+	}
+	
+	/**
+	 * Writes files to the workspace before the MrBayes step, or deletes them 
+	 * when their content is <code>null</code>.
+	 */
+	private static class WorkspaceFiles extends TestBuilder {
+		
+		private final Map<String, String> files = new HashMap<String, String>();
+		
+		public void put(String name, String content) {
+			files.put(name, content);
+		}
+		
+		/* (non-Javadoc)
+		 * @see org.jvnet.hudson.test.TestBuilder#perform(hudson.model.AbstractBuild, hudson.Launcher, hudson.model.BuildListener)
+		 */
+		@Override
+		public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) 
+		throws InterruptedException, IOException {
+			for(Map.Entry<String, String> file : files.entrySet()) {
+				final FilePath path = build.getWorkspace().child(file.getKey());
+				if(file.getValue() == null) {
+					path.delete();
+				} else {
+					path.getParent().mkdirs();
+					path.write(file.getValue(), "UTF-8");
+				}
+			}
+			return true;
+		}
+		
+	}
+	
+}
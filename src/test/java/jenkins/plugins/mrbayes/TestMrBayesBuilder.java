@@ -28,6 +28,9 @@ import hudson.AbortException;
 import java.io.File;
 import java.io.PrintStream;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.jvnet.hudson.test.HudsonTestCase;
 
@@ -63,6 +66,95 @@ public class TestMrBayesBuilder extends HudsonTestCase {
 		assertEquals(builder.getName(), name);
 		assertEquals(builder.getInputFile(), inputFile);
 		assertEquals(builder.getEnableMrBayesBlockCheck(), enableMrBayesBlockCheck);
+		assertEquals(builder.getResumeFromCheckpoint(), Boolean.TRUE);
+		assertEquals(builder.getCheckMemory(), Boolean.FALSE);
+		assertEquals(builder.getResourceSettings(), Boolean.FALSE);
+	}
+	
+	public void testBatch() {
+		assertFalse(builder.isBatch());
+		assertEquals(Boolean.FALSE, builder.getFailFast());
+		
+		MrBayesBuilder batch = new MrBayesBuilder(name, "genes/**/*.nex", enableMrBayesBlockCheck, null, Boolean.TRUE, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+		assertTrue(batch.isBatch());
+		assertEquals(Boolean.TRUE, batch.getFailFast());
+		
+		batch = new MrBayesBuilder(name, "gene1.nex,gene2.nex", enableMrBayesBlockCheck, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+		assertTrue(batch.isBatch());
+	}
+	
+	public void testConvergenceSettings() throws Exception {
+		MrBayesBuilder converging = new MrBayesBuilder(name, inputFile, enableMrBayesBlockCheck, null, null, null, " 0.01 ", null, null, null, null, null, null, null, null, null, null, null, null, null);
+		assertEquals(0.01d, converging.parseConvergenceThreshold(), 0.0d);
+		assertEquals(3, converging.parseConvergenceSamples());
+		
+		converging = new MrBayesBuilder(name, inputFile, enableMrBayesBlockCheck, null, null, null, "0,01", "-5", null, null, null, null, null, null, null, null, null, null, null, null);
+		try {
+			converging.parseConvergenceThreshold();
+			fail("Supposed to throw AbortException before getting here");
+		} catch (AbortException ae) {
+			// OK
+		}
+		try {
+			converging.parseConvergenceSamples();
+			fail("Supposed to throw AbortException before getting here");
+		} catch (AbortException ae) {
+			// OK
+		}
+	}
+	
+	public void testMpiProcesses() {
+		NexusSummary nexus = new NexusSummary();
+		// nruns=2 nchains=4 by default
+		assertEquals(8, builder.getMpiProcesses(16, nexus));
+		assertEquals(8, builder.getMpiProcesses(8, nexus));
+		assertEquals(4, builder.getMpiProcesses(6, nexus));
+		assertEquals(1, builder.getMpiProcesses(1, nexus));
+		assertEquals(6, builder.getMpiProcesses(6, null));
+		
+		nexus.setNruns(Integer.valueOf(4));
+		nexus.setNchains(Integer.valueOf(3));
+		assertEquals(12, builder.getMpiProcesses(64, nexus));
+		
+		MrBayesBuilder configured = new MrBayesBuilder(name, inputFile, enableMrBayesBlockCheck, "3", null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+		assertEquals(3, configured.getMpiProcesses(64, nexus));
+	}
+	
+	public void testSplitProcesses() {
+		// 8 processes for nruns=2 nchains=4
+		assertEquals(4, MrBayesBuilder.getSplitProcesses(8, 2, 4));
+		assertEquals(2, MrBayesBuilder.getSplitProcesses(6, 2, 4));
+		assertEquals(1, MrBayesBuilder.getSplitProcesses(1, 2, 4));
+		assertEquals(3, MrBayesBuilder.getSplitProcesses(64, 4, 3));
+	}
+	
+	public void testRequiredCores() {
+		final List<MrBayesMemoryAction> none = Collections.emptyList();
+		final List<MrBayesMemoryAction> analyses = Arrays.asList(
+				new MrBayesMemoryAction("gene1.nex", -1L, 4, 16), new MrBayesMemoryAction("gene2.nex", -1L, 2, 8));
+		// one MrBayes process per analysis
+		assertEquals(1, builder.getRequiredCores(8, none));
+		assertEquals(1, builder.getRequiredCores(8, analyses));
+		
+		MrBayesBuilder split = new MrBayesBuilder(name, inputFile, enableMrBayesBlockCheck, null, null, null, null, null, null, null, null, null, null, null, null, Boolean.TRUE, null, null, null, null);
+		assertEquals(2, split.getRequiredCores(8, none));
+		assertEquals(4, split.getRequiredCores(8, analyses));
+		assertEquals(3, split.getRequiredCores(3, analyses));
+		
+		MrBayesBuilder batch = new MrBayesBuilder(name, "gene1.nex,gene2.nex", enableMrBayesBlockCheck, null, null, null, null, null, null, null, null, null, null, null, null, Boolean.TRUE, null, null, null, null);
+		assertEquals(6, batch.getRequiredCores(8, analyses));
+		assertEquals(4, batch.getRequiredCores(4, analyses));
+	}
+	
+	public void testCommand() {
+		MrBayesInstallation installation = new MrBayesInstallation("mb", "/usr/bin/mb");
+		assertEquals(Arrays.asList("/usr/bin/mb", "input.nex"), 
+				builder.getCommand(installation, "input.nex", 8).toList());
+		
+		// any launcher accepting -np can stand in for mpirun
+		installation = new MrBayesInstallation("mb-mpi", "/usr/bin/mb-mpi", "/bin/echo", "--oversubscribe");
+		assertEquals(Arrays.asList("/bin/echo", "-np", "8", "--oversubscribe", "/usr/bin/mb-mpi", "input.nex"), 
+				builder.getCommand(installation, "input.nex", 8).toList());
 	}
 	
 	public void testMrBayesBlockCheck() {
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests MrBayesCheckpoint and WrapperCommandFile.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestMrBayesCheckpoint extends MrBayesTestCase {
+
+	public void testCheckpoint() throws Exception {
+		final File ckp = write("primates.nex.ckp", "#NEXUS\n[ID: 1234567890]\n[generation: 20000]\n\nbegin trees;\nend;\n");
+		final File trace = write("primates.nex.run1.p", "[ID: 1234567890]\nGen\tLnL\tTL\n" + 
+				"0\t-5986.3\t1.2\n10000\t-5730.1\t2.1\n20000\t-5725.4\t2.0\n25000\t-5723.9\t2.2\n");
+		
+		assertEquals(20000L, MrBayesCheckpoint.readGeneration(ckp));
+		assertEquals(25000L, MrBayesCheckpoint.readLastSampledGeneration(trace));
+		
+		final MrBayesCheckpoint checkpoint = new MrBayesCheckpoint(20000L, 25000L);
+		assertEquals(5000L, checkpoint.getLostGenerations());
+	}
+	
+	public void testCheckpointWithoutGeneration() throws Exception {
+		final File ckp = write("primates.nex.ckp", "#NEXUS\n[ID: 1234567890]\n");
+		assertEquals(-1L, MrBayesCheckpoint.readGeneration(ckp));
+	}
+	
+	public void testStamp() throws Exception {
+		final File nexus = write("primates.nex", "#NEXUS\nbegin mrbayes;\n    set autoclose=yes;\nend;\n");
+		final File ckp = write("primates.nex.ckp", "#NEXUS\n[ID: 1234567890]\n[generation: 20000]\n");
+		final List<String> commands = Arrays.asList("mcmcp temp=0.1");
+		write("primates.nex.ckp.input", MrBayesCheckpoint.stamp(nexus, dir, commands) + "\n");
+		assertTrue(MrBayesCheckpoint.isCurrent(ckp, nexus, dir, commands));
+		
+		// other settings
+		assertFalse(MrBayesCheckpoint.isCurrent(ckp, nexus, dir, Arrays.asList("mcmcp temp=0.2")));
+		
+		// other version of the NEXUS file, even if older than the checkpoint
+		write("primates.nex", "#NEXUS\nbegin mrbayes;\n    set autoclose=yes;\n    mcmcp ngen=1000;\nend;\n");
+		nexus.setLastModified(ckp.lastModified() - 60000L);
+		assertFalse(MrBayesCheckpoint.isCurrent(ckp, nexus, dir, commands));
+	}
+	
+	public void testStampOfExecutedFiles() throws Exception {
+		final File nexus = write("primates.nex", "#NEXUS\nbegin mrbayes;\n    set autoclose=yes;\n    execute model.nex;\nend;\n");
+		write("model.nex", "#NEXUS\nbegin mrbayes;\n    execute data.nex;\nend;\n");
+		write("data.nex", "#NEXUS\nbegin data;\n    dimensions ntax=4;\nend;\n");
+		final File ckp = write("primates.nex.ckp", "#NEXUS\n[generation: 20000]\n");
+		final List<String> commands = Collections.emptyList();
+		write("primates.nex.ckp.input", MrBayesCheckpoint.stamp(nexus, dir, commands) + "\n");
+		assertTrue(MrBayesCheckpoint.isCurrent(ckp, nexus, dir, commands));
+		
+		// data changed in a file executed by an executed file
+		write("data.nex", "#NEXUS\nbegin data;\n    dimensions ntax=5;\nend;\n");
+		assertFalse(MrBayesCheckpoint.isCurrent(ckp, nexus, dir, commands));
+	}
+	
+	public void testCheckpointWithoutStamp() throws Exception {
+		final File nexus = write("primates.nex", "#NEXUS\n");
+		final File ckp = write("primates.nex.ckp", "#NEXUS\n[generation: 20000]\n");
+		final List<String> commands = Collections.emptyList();
+		
+		nexus.setLastModified(ckp.lastModified() - 60000L);
+		assertTrue(MrBayesCheckpoint.isCurrent(ckp, nexus, dir, commands));
+		
+		nexus.setLastModified(ckp.lastModified() + 60000L);
+		assertFalse(MrBayesCheckpoint.isCurrent(ckp, nexus, dir, commands));
+	}
+	
+	public void testWrapperCommandFile() throws Exception {
+		final WrapperCommandFile wrapper = new WrapperCommandFile();
+		assertTrue(wrapper.isEmpty());
+		wrapper.add("mcmcp append=yes");
+		assertFalse(wrapper.isEmpty());
+		assertEquals("#NEXUS\n" + 
+				"[Generated by the Jenkins MrBayes plug-in]\n\n" + 
+				"begin mrbayes;\n" + 
+				"    mcmcp append=yes;\n" + 
+				"    execute 'my primates.nex';\n" + 
+				"end;\n", wrapper.getContent("my primates.nex"));
+	}
+	
+}
@@ -50,4 +50,15 @@ public class TestMrBayesInstallation extends TestCase {
 		assertEquals(installation.getPathToExecutable(), pathToExecutable);
 	}
 	
+	@Test
+	public void testMpiInstallation() {
+		MrBayesInstallation installation = new MrBayesInstallation("mb", "/usr/bin/mb");
+		assertFalse(installation.isMpi());
+		
+		installation = new MrBayesInstallation("mb-mpi", "/usr/bin/mb-mpi", "/usr/bin/mpirun", "--bind-to core");
+		assertTrue(installation.isMpi());
+		assertEquals(installation.getMpiLauncher(), "/usr/bin/mpirun");
+		assertEquals(installation.getMpiArguments(), "--bind-to core");
+	}
+	
 }
@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests MrBayesMetricsAction.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestMrBayesMetricsAction extends TestCase {
+
+	public void testWrite() throws Exception {
+		final MrBayesTimingAction.Record first = new MrBayesTimingAction.Record("primates.nex", "mb-3.2", "");
+		first.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.VALIDATION, 500L));
+		first.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.MCMC, 60000L, 230000L, 400L * 1024L * 1024L));
+		first.setGenerationsPerSecond(1000.0d);
+		final MrBayesTimingAction.Record second = new MrBayesTimingAction.Record("cats.nex", "mb-3.2", "");
+		second.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.VALIDATION, 1500L));
+		second.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.MCMC, 30000L, 110000L, 100L * 1024L * 1024L));
+		second.setGenerationsPerSecond(3000.0d);
+		final MrBayesTimingAction.Record third = new MrBayesTimingAction.Record("cats.nex", "mb \"mpi\"", "linux-1");
+		third.add(new MrBayesTimingAction.Phase(MrBayesTimingAction.CACHE, 250L));
+		
+		final StringWriter out = new StringWriter();
+		final PrintWriter writer = new PrintWriter(out);
+		MrBayesMetricsAction.write(Arrays.asList(first, second, third), writer);
+		writer.flush();
+		final String metrics = out.toString();
+		
+		assertTrue(metrics, metrics.contains("# TYPE mrbayes_phase_mean_seconds gauge\n"));
+		assertFalse(metrics, metrics.contains(" summary\n"));
+		assertTrue(metrics, metrics.contains("mrbayes_runs{installation=\"mb-3.2\",node=\"master\"} 2\n"));
+		assertTrue(metrics, metrics.contains("mrbayes_runs{installation=\"mb \\\"mpi\\\"\",node=\"linux-1\"} 1\n"));
+		assertTrue(metrics, metrics.contains("mrbayes_phase_mean_seconds{installation=\"mb-3.2\",node=\"master\",phase=\"validation\"} 1.00000\n"));
+		assertTrue(metrics, metrics.contains("mrbayes_phases{installation=\"mb-3.2\",node=\"master\",phase=\"mcmc\"} 2\n"));
+		assertTrue(metrics, metrics.contains("mrbayes_cpu_mean_seconds{installation=\"mb-3.2\",node=\"master\"} 170.000\n"));
+		assertTrue(metrics, metrics.contains("mrbayes_peak_rss_bytes{installation=\"mb-3.2\",node=\"master\"} 419430400\n"));
+		assertTrue(metrics, metrics.contains("mrbayes_generations_per_second{installation=\"mb-3.2\",node=\"master\"} 2000.00\n"));
+		// nothing measured for the speed of a cached analysis
+		assertFalse(metrics, metrics.contains("mrbayes_generations_per_second{installation=\"mb \\\"mpi\\\"\""));
+	}
+	
+}
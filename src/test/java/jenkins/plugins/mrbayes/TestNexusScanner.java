@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.ParseException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests NexusScanner.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestNexusScanner extends TestCase {
+
+	private NexusSummary scan(String resource) throws Exception {
+		final ClassLoader cl = TestNexusScanner.class.getClassLoader();
+		Reader reader = new InputStreamReader(cl.getResourceAsStream("jenkins/plugins/mrbayes/" + resource), "UTF-8");
+		try {
+			return new NexusScanner(reader).scan();
+		} finally {
+			reader.close();
+		}
+	}
+	
+	public void testMrBayesBlock() throws Exception {
+		NexusSummary nexus = scan("mrbayesblock1.nex");
+		assertTrue(nexus.hasMrBayesBlock());
+		assertEquals(Boolean.TRUE, nexus.getAutoclose());
+		assertEquals(Boolean.FALSE, nexus.getNowarn());
+		assertEquals("none.nex", nexus.getExecute());
+		
+		nexus = scan("mrbayesblock2.nex");
+		assertTrue(nexus.hasMrBayesBlock());
+		assertEquals(Boolean.FALSE, nexus.getAutoclose());
+		assertEquals(Boolean.TRUE, nexus.getNowarn());
+		assertNull(nexus.getExecute());
+		
+		nexus = scan("mrbayesblock3.nex");
+		assertTrue(nexus.hasMrBayesBlock());
+		assertNull(nexus.getAutoclose());
+	}
+	
+	public void testMissingMrBayesBlock() throws Exception {
+		NexusSummary nexus = scan("primates.nex");
+		assertTrue(nexus.hasMrBayesBlock());
+		assertEquals(Boolean.TRUE, nexus.getAutoclose());
+		
+		assertEquals(Integer.valueOf(1), nexus.getNruns());
+		assertEquals(Integer.valueOf(3), nexus.getNchains());
+		assertEquals(3, nexus.getTotalChains());
+		
+		nexus = new NexusScanner(new StringReader("#NEXUS\nbegin trees;\n tree t1 = (1,2);\nend;\n")).scan();
+		assertFalse(nexus.hasMrBayesBlock());
+	}
+	
+	public void testCommentsAndQuotes() throws Exception {
+		NexusSummary nexus = scan("mrbayesblock4.nex");
+		assertTrue(nexus.hasMrBayesBlock());
+		assertEquals(Boolean.TRUE, nexus.getAutoclose());
+		assertEquals(Boolean.TRUE, nexus.getNowarn());
+		assertEquals("my data.nex", nexus.getExecute());
+	}
+	
+	public void testSeeds() throws Exception {
+		NexusSummary nexus = new NexusScanner(new StringReader(
+				"#NEXUS\nbegin mrbayes;\n set autoclose=yes seed=1234 swapseed = 5678;\n mcmc ngen=1000;\nend;\n")).scan();
+		assertEquals("1234", nexus.getSeed());
+		assertEquals("5678", nexus.getSwapseed());
+		
+		nexus = scan("primates.nex");
+		assertNull(nexus.getSeed());
+	}
+	
+	public void testTemperature() throws Exception {
+		NexusSummary nexus = new NexusScanner(new StringReader(
+				"#NEXUS\nbegin mrbayes;\n mcmc ngen=1000 Temp=0.05;\nend;\n")).scan();
+		assertEquals("0.05", nexus.getTemp());
+		
+		nexus = scan("primates.nex");
+		assertNull(nexus.getTemp());
+	}
+	
+	public void testDimensions() throws Exception {
+		NexusSummary nexus = scan("primates.nex");
+		assertEquals(Integer.valueOf(12), nexus.getNtax());
+		assertEquals(Integer.valueOf(898), nexus.getNchar());
+		assertEquals("dna", nexus.getDatatype());
+		
+		nexus = scan("mrbayesblock4.nex");
+		assertEquals(Integer.valueOf(3), nexus.getNtax());
+		assertEquals(Integer.valueOf(12), nexus.getNchar());
+		assertEquals("dna", nexus.getDatatype());
+		
+		nexus = new NexusScanner(new StringReader(
+				"#NEXUS\nbegin taxa;\n dimensions ntax=5;\nend;\nbegin characters;\n dimensions nchar=40;\n format datatype=Protein;\nend;\n")).scan();
+		assertEquals(Integer.valueOf(5), nexus.getNtax());
+		assertEquals(Integer.valueOf(40), nexus.getNchar());
+		assertEquals("protein", nexus.getDatatype());
+	}
+	
+	public void testInvalidFiles() throws Exception {
+		try {
+			new NexusScanner(new StringReader("begin mrbayes; end;")).scan();
+			fail("Supposed to throw ParseException before getting here");
+		} catch (ParseException pe) {
+			// OK
+		}
+		
+		try {
+			new NexusScanner(new StringReader("#NEXUS\nbegin trees; [ end; ")).scan();
+			fail("Supposed to throw ParseException before getting here");
+		} catch (ParseException pe) {
+			// OK
+		}
+		
+		try {
+			new NexusScanner(new StringReader("#NEXUS\nbegin mrbayes; set autoclose=yes;")).scan();
+			fail("Supposed to throw ParseException before getting here");
+		} catch (ParseException pe) {
+			// OK
+		}
+	}
+	
+}
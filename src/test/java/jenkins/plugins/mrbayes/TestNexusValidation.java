@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Tests NexusValidation.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestNexusValidation extends MrBayesTestCase {
+
+	public void testExecutedFiles() throws Exception {
+		File input = write("run.nex", "#NEXUS\nbegin mrbayes;\n set autoclose=yes;\n execute data.nex;\n execute missing.nex;\n mcmc;\nend;\n");
+		write("data.nex", "#NEXUS\nbegin taxa;\n dimensions ntax=4;\nend;\nbegin mrbayes;\n execute 'more data.nex';\n execute run.nex;\nend;\n");
+		write("more data.nex", "#NEXUS\nbegin characters;\n dimensions nchar=10;\nend;\n");
+		
+		NexusValidation.Result result = NexusValidation.validate(input, dir, null);
+		assertNull(result.getError());
+		assertNotNull(result.getSummary());
+		assertEquals(2, result.getSummary().getExecutes().size());
+		assertEquals(1, result.getNexus().getBlocks());
+		// run.nex is not checked again
+		assertEquals(3, result.getIncluded().size());
+		assertEquals("data.nex", result.getIncluded().get(0).getPath());
+		assertEquals(2, result.getIncluded().get(0).getBlocks());
+		assertEquals("missing.nex", result.getIncluded().get(1).getPath());
+		assertFalse(result.getIncluded().get(1).isFound());
+		assertNull(result.getIncluded().get(1).getError());
+		assertEquals("more data.nex", result.getIncluded().get(2).getPath());
+		assertTrue(result.getIncluded().get(2).isFound());
+		assertEquals(1, result.getIncluded().get(2).getBlocks());
+	}
+	
+	public void testErrors() throws Exception {
+		File input = write("run.nex", "#NEXUS\nbegin mrbayes;\n set autoclose=yes;\n execute broken.nex;\nend;\n");
+		write("broken.nex", "not a nexus file\n");
+		NexusValidation.Result result = NexusValidation.validate(input, dir, null);
+		assertNotNull(result.getError());
+		assertTrue(result.getError().indexOf("broken.nex") >= 0);
+		assertNull(result.getSummary());
+		
+		input = write("noclose.nex", "#NEXUS\nbegin mrbayes;\n mcmc;\nend;\n");
+		result = NexusValidation.validate(input, dir, null);
+		assertNotNull(result.getError());
+		assertTrue(result.getIncluded().isEmpty());
+		
+		result = NexusValidation.validate(new File(dir, "none.nex"), dir, null);
+		assertNotNull(result.getError());
+		assertFalse(result.getNexus().isFound());
+	}
+	
+	public void testCachedAndSerializable() throws Exception {
+		File input = write("run.nex", "#NEXUS\nbegin mrbayes;\n set autoclose=yes;\n execute data.nex;\nend;\n");
+		write("data.nex", "#NEXUS\nbegin taxa;\n dimensions ntax=4;\nend;\n");
+		NexusValidationCache cache = new NexusValidationCache(new File(dir, "validation.cache"));
+		
+		NexusValidation.Result result = NexusValidation.validate(input, dir, cache);
+		assertFalse(result.getNexus().isCached());
+		result = NexusValidation.validate(input, dir, cache);
+		assertTrue(result.getNexus().isCached());
+		assertTrue(result.getIncluded().get(0).isCached());
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(result);
+		out.close();
+		NexusValidation.Result copy = (NexusValidation.Result) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(Boolean.TRUE, copy.getSummary().getAutoclose());
+		assertEquals("data.nex", copy.getSummary().getExecute());
+		assertEquals(1, copy.getIncluded().size());
+		assertEquals(1, copy.getIncluded().get(0).getBlocks());
+	}
+	
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests NexusValidationCache.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestNexusValidationCache extends MrBayesTestCase {
+
+	public void testCachePersistedByContentHash() throws Exception {
+		File cacheFile = new File(dir, "validation.cache");
+		File nexus1 = write("input1.nex", "#NEXUS\nbegin mrbayes; set autoclose=yes; end;\n");
+		File nexus2 = write("input2.nex", "#NEXUS\nbegin mrbayes; set autoclose=yes; end;\n");
+		File nexus3 = write("input3.nex", "#NEXUS\nbegin mrbayes; set autoclose=no; end;\n");
+		
+		NexusValidationCache cache = new NexusValidationCache(cacheFile);
+		String hash = cache.hash(nexus1);
+		assertNull(cache.get(hash));
+		
+		NexusSummary summary = new NexusSummary();
+		summary.setMrBayesBlock(true);
+		summary.setAutoclose(Boolean.TRUE);
+		cache.put(hash, new NexusValidationCache.Entry(summary, null));
+		assertTrue(cacheFile.isFile());
+		
+		// same content, other file
+		assertEquals(hash, cache.hash(nexus2));
+		assertFalse(hash.equals(cache.hash(nexus3)));
+		
+		// reloaded from disk
+		cache = new NexusValidationCache(cacheFile);
+		NexusValidationCache.Entry entry = cache.get(cache.hash(nexus2));
+		assertNotNull(entry);
+		assertNull(entry.getParseError());
+		assertTrue(entry.getSummary().hasMrBayesBlock());
+		assertEquals(Boolean.TRUE, entry.getSummary().getAutoclose());
+		assertNull(cache.get(cache.hash(nexus3)));
+	}
+	
+	public void testCorruptedCacheIsDiscarded() throws Exception {
+		File cacheFile = write("validation.cache", "not a cache");
+		NexusValidationCache cache = new NexusValidationCache(cacheFile);
+		File nexus = write("input.nex", "#NEXUS\n");
+		assertNull(cache.get(cache.hash(nexus)));
+	}
+	
+	public void testCacheOfOtherScannerIsDiscarded() throws Exception {
+		File cacheFile = new File(dir, "validation.cache");
+		File nexus = write("input.nex", "#NEXUS\nbegin mrbayes; set autoclose=yes; end;\n");
+		// written before the cache had a version
+		Map<String, NexusValidationCache.Entry> results = new HashMap<String, NexusValidationCache.Entry>();
+		results.put(NexusValidationCache.digest(nexus), new NexusValidationCache.Entry(null, "unexpected token"));
+		ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(cacheFile));
+		try {
+			oos.writeObject(results);
+			oos.writeObject(new HashMap<String, String>());
+		} finally {
+			oos.close();
+		}
+		NexusValidationCache cache = new NexusValidationCache(cacheFile);
+		assertNull(cache.get(cache.hash(nexus)));
+	}
+	
+}
@@ -0,0 +1,52 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.File;
+
+/**
+ * Tests NodeResources.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestNodeResources extends MrBayesTestCase {
+
+	public void testAvailableMemory() throws Exception {
+		final File meminfo = new File(dir, "meminfo");
+		write(meminfo, "MemTotal:       16318412 kB\nMemFree:         1048576 kB\nMemAvailable:    8388608 kB\nBuffers:          512000 kB\n");
+		assertEquals(8388608L * 1024L, NodeResources.Probe.readAvailableMemory(meminfo));
+		
+		// kernels older than 3.14
+		write(meminfo, "MemTotal:       16318412 kB\nMemFree:         1048576 kB\nBuffers:          512000 kB\n");
+		assertEquals(1048576L * 1024L, NodeResources.Probe.readAvailableMemory(meminfo));
+		
+		write(meminfo, "");
+		assertEquals(-1L, NodeResources.Probe.readAvailableMemory(meminfo));
+		
+		meminfo.delete();
+		assertEquals(-1L, NodeResources.Probe.readAvailableMemory(meminfo));
+	}
+	
+}
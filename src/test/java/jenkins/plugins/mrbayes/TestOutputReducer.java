@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests OutputReducer.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestOutputReducer extends MrBayesTestCase {
+
+	private static final String TRACE = 
+		"[ID: 9409050143]\n" + 
+		"Gen\tLnL\tTL\n" + 
+		"0\t-9000.0\t1.5\n" + 
+		"100\t-8000.0\t1.5\n" + 
+		"200\t-7000.0\t1.4\n" + 
+		"300\t-6500.0\t1.6\n" + 
+		"400\t-6400.0\t1.5\n" + 
+		"500\t-6410.0\t1.5\n" + 
+		"600\t-6390.0\t1.5\n" + 
+		"700\t-6405.0\t1.5\n";
+	
+	private static final String TREES = 
+		"#NEXUS\n[ID: 9409050143]\n[Param: tree]\nbegin trees;\n" + 
+		"   translate\n      1 a,\n      2 b,\n      3 c,\n      4 d;\n" + 
+		"   tree gen.0 = [&U] ((1,2),3,4);\n" + 
+		"   tree gen.100 = [&U] ((1,3),2,4);\n" + 
+		"   tree gen.200 = [&U] ((1,2),3,4);\n" + 
+		"   tree gen.300 = [&U] ((1,4),2,3);\n" + 
+		"end;\n";
+	
+	public void testThinTrace() throws Exception {
+		final StringWriter writer = new StringWriter();
+		final OutputReducer reducer = new OutputReducer("**/*.p", 0.25d, 3, false);
+		assertEquals(2, reducer.reduce(new BufferedReader(new StringReader(TRACE)), writer, false, 2));
+		assertEquals("[ID: 9409050143]\n" + 
+				"Gen\tLnL\tTL\n" + 
+				"200\t-7000.0\t1.4\n" + 
+				"500\t-6410.0\t1.5\n", writer.toString());
+	}
+	
+	public void testThinTrees() throws Exception {
+		final StringWriter writer = new StringWriter();
+		final OutputReducer reducer = new OutputReducer("**/*.t", 0.0d, 2, false);
+		assertEquals(2, reducer.reduce(new BufferedReader(new StringReader(TREES)), writer, true, 0));
+		assertEquals("#NEXUS\n[ID: 9409050143]\n[Param: tree]\nbegin trees;\n" + 
+				"   translate\n      1 a,\n      2 b,\n      3 c,\n      4 d;\n" + 
+				"   tree gen.0 = [&U] ((1,2),3,4);\n" + 
+				"   tree gen.200 = [&U] ((1,2),3,4);\n" + 
+				"end;\n", writer.toString());
+	}
+	
+	public void testReduceAndCompress() throws Exception {
+		write("primates.nex.run1.p", TRACE);
+		write("primates.nex.run1.t", TREES);
+		write("primates.nex", "#NEXUS\n");
+		
+		final OutputReducer reducer = new OutputReducer("primates.nex*.p,primates.nex*.t", 0.25d, 1, true);
+		final OutputReducer.Reduction trace = reducer.reduce(dir, "primates.nex.run1.p");
+		assertEquals("primates.nex.run1.p", trace.getFile());
+		assertEquals("mrbayes-reduced/primates.nex.run1.p.gz", trace.getReducedFile());
+		assertEquals(TRACE.length(), trace.getOriginalSize());
+		assertEquals(8, trace.getSamples());
+		assertEquals(6, trace.getKeptSamples());
+		assertEquals(new File(dir, "mrbayes-reduced/primates.nex.run1.p.gz").length(), trace.getReducedSize());
+		// left for a build resuming the analysis
+		assertEquals(TRACE, readPlain("primates.nex.run1.p"));
+		assertTrue(read("mrbayes-reduced/primates.nex.run1.p.gz").startsWith("[ID: 9409050143]\nGen\tLnL\tTL\n200\t"));
+		
+		final OutputReducer.Reduction trees = reducer.reduce(dir, "primates.nex.run1.t");
+		assertEquals(4, trees.getSamples());
+		assertEquals(3, trees.getKeptSamples());
+		assertTrue(read("mrbayes-reduced/primates.nex.run1.t.gz").contains("tree gen.100 ="));
+		assertFalse(read("mrbayes-reduced/primates.nex.run1.t.gz").contains("tree gen.0 ="));
+		assertTrue(new File(dir, "primates.nex.run1.t").exists());
+		assertTrue(new File(dir, "primates.nex").exists());
+		
+		final MrBayesOutputAction action = new MrBayesOutputAction(Arrays.asList(trace, trees));
+		assertEquals(TRACE.length() + TREES.length(), action.getOriginalSize());
+		assertEquals(trace.getReducedSize() + trees.getReducedSize(), action.getReducedSize());
+	}
+	
+	public void testOutputPattern() {
+		assertEquals("data/primates.nex*.p,data/primates.nex*.t,genes/*.nex*.p,genes/*.nex*.t", 
+				MrBayesOutputRecorder.getOutputPattern("data/primates.nex, genes/*.nex"));
+	}
+	
+	private String read(String name) throws Exception {
+		return read(new GZIPInputStream(new FileInputStream(new File(dir, name))));
+	}
+	
+	private String readPlain(String name) throws Exception {
+		return read(new FileInputStream(new File(dir, name)));
+	}
+	
+	private String read(InputStream in) throws Exception {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "ISO-8859-1"));
+		try {
+			final StringBuilder sb = new StringBuilder();
+			String line;
+			while((line = reader.readLine()) != null) {
+				sb.append(line).append('\n');
+			}
+			return sb.toString();
+		} finally {
+			reader.close();
+		}
+	}
+	
+}
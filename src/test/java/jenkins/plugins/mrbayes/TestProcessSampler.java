@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import hudson.Util;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests ProcessSampler, against a fake /proc.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestProcessSampler extends MrBayesTestCase {
+
+	public void testSample() throws Exception {
+		final ProcessSampler sampler = new ProcessSampler(dir, "run-1");
+		assertEquals(-1L, sampler.getCpuTime());
+		assertEquals(-1L, sampler.getPeakRss());
+		
+		// mpirun and one MrBayes process of the run, and an unrelated process
+		process("100", "mpirun", 50, 10, 1000, 2048, "PATH=/usr/bin\0MRBAYES_JENKINS_RUN=run-1\0");
+		process("101", "mb (copy)", 300, 20, 1001, 10240, "MRBAYES_JENKINS_RUN=run-1\0HOME=/root\0");
+		process("200", "mb", 900, 90, 500, 99999, "MRBAYES_JENKINS_RUN=run-10\0");
+		sampler.sample();
+		assertEquals((50 + 10 + 300 + 20) * 10L, sampler.getCpuTime());
+		assertEquals((2048L + 10240L) * 1024L, sampler.getPeakRss());
+		
+		// the child ends, the CPU time it used is kept
+		process("100", "mpirun", 60, 10, 1000, 1024, "MRBAYES_JENKINS_RUN=run-1\0");
+		Util.deleteRecursive(new File(dir, "101"));
+		sampler.sample();
+		assertEquals((60 + 10 + 300 + 20) * 10L, sampler.getCpuTime());
+		assertEquals((2048L + 10240L) * 1024L, sampler.getPeakRss());
+		
+		// a new process with the same pid is not taken for the old one
+		process("101", "sh", 5, 0, 2000, 512, "HOME=/root\0");
+		sampler.sample();
+		assertEquals((60 + 10 + 300 + 20) * 10L, sampler.getCpuTime());
+	}
+	
+	public void testNotSupported() throws Exception {
+		final ProcessSampler sampler = new ProcessSampler(new File(dir, "missing"), "run-1");
+		assertFalse(sampler.isSupported());
+		sampler.start();
+		sampler.sample();
+		assertEquals(-1L, sampler.getCpuTime());
+	}
+	
+	private void process(String pid, String name, long utime, long stime, long starttime, long rss, String environ) 
+	throws IOException {
+		final StringBuilder stat = new StringBuilder(pid + " (" + name + ") S");
+		for(int i = 1; i < 22; ++i) {
+			stat.append(' ');
+			stat.append(i == 11 ? utime : i == 12 ? stime : i == 19 ? starttime : 0);
+		}
+		write(pid + "/stat", stat.toString() + "\n");
+		write(pid + "/status", "Name:\t" + name + "\nVmPeak:\t  99999 kB\nVmRSS:\t" + rss + " kB\n");
+		write(pid + "/environ", environ);
+	}
+	
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ProgressMonitor.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestProgressMonitor extends TestCase {
+
+	public void testGenerationsPerSecond() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ProgressMonitor monitor = new ProgressMonitor(out, 1000L);
+		assertEquals(-1L, monitor.getStartupTime());
+		assertEquals(-1.0d, monitor.getGenerationsPerSecond());
+		
+		monitor.parse("   Chain results (1000 generations requested):", 1500L);
+		monitor.parse("      0 -- [-5986.357] (-5992.109) (-5990.465) (-5988.001) * [-5989.330] (-5987.116) -- 0:00:00", 3000L);
+		assertEquals(2000L, monitor.getStartupTime());
+		assertEquals(-1.0d, monitor.getGenerationsPerSecond());
+		
+		monitor.parse("   1000 -- (-5986.357) [-5992.109] (-5990.465) (-5988.001) * [-5989.330] (-5987.116) -- 0:00:05", 4000L);
+		monitor.parse("   Average standard deviation of split frequencies: 0.012345", 4100L);
+		monitor.parse("   2000 -- (-5986.357) [-5992.109] (-5990.465) (-5988.001) * [-5989.330] (-5987.116) -- 0:00:04", 5000L);
+		assertEquals(2000L, monitor.getStartupTime());
+		assertEquals(1000.0d, monitor.getGenerationsPerSecond(), 1e-9);
+	}
+	
+	public void testRequestedGenerationsAndTail() throws Exception {
+		final ProgressMonitor monitor = new ProgressMonitor(new ByteArrayOutputStream(), 0L);
+		assertEquals(-1L, monitor.getRequestedGenerations());
+		assertEquals(-1L, monitor.getLastGeneration());
+		monitor.parse("   Chain results (1000000 generations requested):", 100L);
+		monitor.parse("      0 -- [-5986.357] (-5992.109) -- 0:00:00", 1000L);
+		for(int i = 1; i <= 12; i++) {
+			monitor.parse("   " + (i * 1000) + " -- [-5986.357] (-5992.109) -- 0:10:00", 1000L + i * 1000L);
+		}
+		assertEquals(1000000L, monitor.getRequestedGenerations());
+		assertEquals(12000L, monitor.getLastGeneration());
+		assertEquals(13000L, monitor.getLastTime());
+		assertEquals(12000L, monitor.getMeasuredTime());
+		assertEquals(10, monitor.getTail().size());
+		assertEquals("3000 -- [-5986.357] (-5992.109) -- 0:10:00", monitor.getTail().get(0));
+		assertEquals("12000 -- [-5986.357] (-5992.109) -- 0:10:00", monitor.getTail().get(9));
+	}
+	
+	public void testPassesOutput() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ProgressMonitor monitor = new ProgressMonitor(out);
+		monitor.write("      1 -- (-5986.357)\n   Analysis completed".getBytes("US-ASCII"));
+		monitor.close();
+		assertEquals("      1 -- (-5986.357)\n   Analysis completed", out.toString("US-ASCII"));
+		assertTrue(monitor.getStartupTime() >= 0L);
+	}
+	
+}
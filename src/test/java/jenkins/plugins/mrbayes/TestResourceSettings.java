@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ResourceSettings.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestResourceSettings extends TestCase {
+
+	private static final InstallationCapabilities BEAGLE = 
+		new InstallationCapabilities("beagle", "/opt/mb", "3.2.7", true, false, true, false, null);
+	
+	private static final InstallationCapabilities PLAIN = 
+		new InstallationCapabilities("plain", "/usr/bin/mb", "3.2.7", false, false, true, false, null);
+	
+	private static final InstallationCapabilities OLD = 
+		new InstallationCapabilities("old", "/usr/bin/mb", "3.1.2", true, false, true, false, null);
+	
+	public void testBeagle() {
+		assertEquals("usebeagle=yes beagledevice=cpu beagleprecision=double beaglesse=yes beaglethreads=yes", 
+				ResourceSettings.getSettings(BEAGLE, 8, 0, null));
+	}
+	
+	public void testThreadsAfterMpi() {
+		assertEquals("usebeagle=yes beagledevice=cpu beagleprecision=double beaglesse=yes beaglethreads=no", 
+				ResourceSettings.getSettings(BEAGLE, 8, 8, null));
+		assertEquals("usebeagle=yes beagledevice=cpu beagleprecision=double beaglesse=yes beaglethreads=yes", 
+				ResourceSettings.getSettings(BEAGLE, 8, 4, null));
+	}
+	
+	public void testNoBeagle() {
+		assertNull(ResourceSettings.getSettings(PLAIN, 8, 0, null));
+		assertNull(ResourceSettings.getSettings(OLD, 8, 0, ""));
+		assertNull(ResourceSettings.getSettings(InstallationCapabilities.unavailable("gone", "missing"), 8, 0, null));
+		assertNull(ResourceSettings.getSettings(null, 8, 0, null));
+	}
+	
+	public void testOverrides() {
+		assertEquals("usebeagle=yes beagledevice=cpu beaglesse=yes beaglethreads=yes beagleprecision=single beagleresource=1", 
+				ResourceSettings.getSettings(BEAGLE, 8, 0, " beagleprecision=single  beagleresource=1 "));
+		assertEquals("beagleprecision=single", 
+				ResourceSettings.getSettings(PLAIN, 8, 0, "beagleprecision=single"));
+	}
+	
+	public void testDisableBeagle() {
+		assertEquals("usebeagle=no", ResourceSettings.getSettings(BEAGLE, 8, 0, "usebeagle=no"));
+		assertEquals("usebeagle=no beaglethreads=no", 
+				ResourceSettings.getSettings(BEAGLE, 8, 0, "usebeagle=no beaglethreads=no"));
+	}
+	
+	public void testThreads() {
+		// BEAGLE threads keep all the cores busy
+		assertEquals(8, ResourceSettings.getThreads(ResourceSettings.getSettings(BEAGLE, 8, 0, null), 8, 0));
+		assertEquals(8, ResourceSettings.getThreads(ResourceSettings.getSettings(BEAGLE, 8, 4, null), 8, 4));
+		// one core per process otherwise
+		assertEquals(8, ResourceSettings.getThreads(ResourceSettings.getSettings(BEAGLE, 8, 8, null), 8, 8));
+		assertEquals(1, ResourceSettings.getThreads(ResourceSettings.getSettings(BEAGLE, 1, 0, null), 1, 0));
+		assertEquals(1, ResourceSettings.getThreads(ResourceSettings.getSettings(BEAGLE, 8, 0, "usebeagle=no"), 8, 0));
+		assertEquals(1, ResourceSettings.getThreads(null, 8, 0));
+		assertEquals(4, ResourceSettings.getThreads(null, 8, 4));
+	}
+	
+	public void testInvalidOverride() {
+		try {
+			ResourceSettings.getSettings(BEAGLE, 8, 0, "usebeagle=yes beagleprecision");
+			fail("Not supposed to get here");
+		} catch(IllegalArgumentException iae) {
+			assertEquals("beagleprecision", iae.getMessage());
+		}
+		try {
+			ResourceSettings.parseOverrides("seed=1;mcmc");
+			fail("Not supposed to get here");
+		} catch(IllegalArgumentException iae) {
+			assertEquals("seed=1;mcmc", iae.getMessage());
+		}
+	}
+	
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests ResultCache.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestResultCache extends MrBayesTestCase {
+
+	private static final String NEXUS = "#NEXUS\nbegin mrbayes;\n set autoclose=yes seed=1234 swapseed=5678;\n mcmc ngen=1000;\nend;\n";
+	
+	private static final List<String> COMMAND = Arrays.asList("mb", "primates.nex");
+	
+	private File workspace;
+	
+	private File cacheDirectory;
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		workspace = new File(dir, "workspace");
+		workspace.mkdirs();
+		cacheDirectory = new File(dir, "results");
+	}
+	
+	public void testKey() throws Exception {
+		final File nexus = write("workspace/primates.nex", NEXUS);
+		final String key = ResultCache.key(nexus, workspace, COMMAND);
+		assertNotNull(key);
+		assertEquals(key, ResultCache.key(nexus, workspace, COMMAND));
+		assertFalse(key.equals(ResultCache.key(nexus, workspace, Arrays.asList("mpirun", "-np", "4", "mb", "primates.nex"))));
+		
+		write("workspace/primates.nex", NEXUS.replace("seed=1234", "seed=4321"));
+		assertFalse(key.equals(ResultCache.key(nexus, workspace, COMMAND)));
+		
+		write("workspace/primates.nex", "#NEXUS\nbegin mrbayes;\n mcmc ngen=1000;\nend;\n");
+		assertNull(ResultCache.key(nexus, workspace, COMMAND));
+		
+		// the swaps between chains are random without a swapseed
+		write("workspace/primates.nex", NEXUS.replace(" swapseed=5678", ""));
+		assertNull(ResultCache.key(nexus, workspace, COMMAND));
+		write("workspace/primates.nex", NEXUS.replace(" swapseed=5678", "").replace("mcmc ngen=1000", "mcmc ngen=1000 nchains=1"));
+		assertNotNull(ResultCache.key(nexus, workspace, COMMAND));
+	}
+	
+	public void testExecutableInPath() throws Exception {
+		assertNull(ResultCache.which("no-such-executable-" + System.nanoTime()));
+		assertNull(ResultCache.which("bin/mb"));
+		if(new File("/bin/sh").isFile() && System.getenv("PATH") != null && System.getenv("PATH").indexOf("/bin") >= 0) {
+			final File sh = ResultCache.which("sh");
+			assertNotNull(sh);
+			assertTrue(sh.isAbsolute());
+			assertTrue(sh.isFile());
+		}
+	}
+	
+	public void testExecutedFile() throws Exception {
+		final File nexus = write("workspace/run.nex", NEXUS.replace("mcmc", "execute data.nex; mcmc"));
+		write("workspace/data.nex", "#NEXUS\nbegin data;\nend;\n");
+		final String key = ResultCache.key(nexus, workspace, COMMAND);
+		write("workspace/data.nex", "#NEXUS\nbegin data;\n dimensions ntax=2;\nend;\n");
+		assertFalse(key.equals(ResultCache.key(nexus, workspace, COMMAND)));
+	}
+	
+	public void testNestedExecutedFile() throws Exception {
+		final File nexus = write("workspace/run.nex", NEXUS.replace("mcmc", "execute data.nex; mcmc"));
+		write("workspace/data.nex", "#NEXUS\nbegin mrbayes;\n execute matrix.nex;\nend;\n");
+		write("workspace/matrix.nex", "#NEXUS\nbegin data;\nend;\n");
+		final String key = ResultCache.key(nexus, workspace, COMMAND);
+		write("workspace/matrix.nex", "#NEXUS\nbegin data;\n dimensions ntax=2;\nend;\n");
+		assertFalse(key.equals(ResultCache.key(nexus, workspace, COMMAND)));
+	}
+	
+	public void testStoreAndRestore() throws Exception {
+		final File nexus = write("workspace/primates.nex", NEXUS);
+		write("workspace/primates.nex.p", "Gen\tLnL\n1000\t-5723.9\n");
+		write("workspace/primates.nex.t", "#NEXUS\nbegin trees;\nend;\n");
+		write("workspace/primates.nex.con.tre", "#NEXUS\nbegin trees;\nend;\n");
+		write("workspace/primates.nex.jenkins", "#NEXUS\n");
+		write("workspace/primates.nex.jenkins.tstat", "ID\tASDSF\n");
+		write("workspace/primates.nex.ckp", "[generation: 1000]\n");
+		write("workspace/primates.nex.ckp.input", "abc\n");
+		write("workspace/primates.nex.mcmc", "Gen\n");
+		// left by an earlier run with more runs
+		write("workspace/primates.nex.run3.p", "Gen\tLnL\n").setLastModified(System.currentTimeMillis() - 60000L);
+		
+		final ResultCache cache = new ResultCache(cacheDirectory);
+		assertEquals(0, cache.restore("abc", nexus));
+		assertEquals(3, cache.store("abc", nexus, System.currentTimeMillis() - 1000L));
+		assertEquals(3, new File(cacheDirectory, "abc").list().length - 1);
+		
+		new File(workspace, "primates.nex.p").delete();
+		new File(workspace, "primates.nex.t").delete();
+		new File(workspace, "primates.nex.con.tre").delete();
+		assertEquals(3, cache.restore("abc", nexus));
+		assertTrue(new File(workspace, "primates.nex.p").isFile());
+		assertTrue(new File(workspace, "primates.nex.con.tre").isFile());
+	}
+	
+	public void testOutputFiles() {
+		assertTrue(ResultCache.isOutputFile("primates.nex", "primates.nex.p"));
+		assertTrue(ResultCache.isOutputFile("primates.nex", "primates.nex.run12.t"));
+		assertTrue(ResultCache.isOutputFile("primates.nex", "primates.nex.con.tre"));
+		assertTrue(ResultCache.isOutputFile("primates.nex", "primates.nex.mstat"));
+		assertFalse(ResultCache.isOutputFile("primates.nex", "primates.nex"));
+		assertFalse(ResultCache.isOutputFile("primates.nex", "primates.nex.ckp"));
+		assertFalse(ResultCache.isOutputFile("primates.nex", "primates.nex.ckp~"));
+		assertFalse(ResultCache.isOutputFile("primates.nex", "primates.nex.mcmc"));
+		assertFalse(ResultCache.isOutputFile("primates.nex", "primates.nex.jenkins.tstat"));
+		assertFalse(ResultCache.isOutputFile("primates.nex", "other.nex.p"));
+	}
+	
+	public void testEviction() throws Exception {
+		final File nexus = write("workspace/primates.nex", NEXUS);
+		write("workspace/primates.nex.p", "0123456789");
+		
+		final ResultCache cache = new ResultCache(cacheDirectory, 25L);
+		cache.store("first", nexus, 0L);
+		new File(new File(cacheDirectory, "first"), ".complete").setLastModified(System.currentTimeMillis() - 60000L);
+		cache.store("second", nexus, 0L);
+		assertEquals(1, cache.restore("first", nexus));
+		new File(new File(cacheDirectory, "second"), ".complete").setLastModified(System.currentTimeMillis() - 60000L);
+		cache.store("third", nexus, 0L);
+		
+		assertEquals(1, cache.restore("first", nexus));
+		assertEquals(0, cache.restore("second", nexus));
+		assertEquals(1, cache.restore("third", nexus));
+	}
+	
+}
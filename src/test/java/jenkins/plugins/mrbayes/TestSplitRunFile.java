@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Tests SplitRunFile.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestSplitRunFile extends MrBayesTestCase {
+
+	public void testRewrite() throws Exception {
+		final String nexus = "#NEXUS\n" + 
+				"begin data;\n" + 
+				"  dimensions ntax=2 nchar=3;\n" + 
+				"  matrix\n  a ACG\n  b ACT\n  ;\n" + 
+				"end;\n" + 
+				"begin mrbayes;\n" + 
+				"  set autoclose=yes seed=10 swapseed=20;\n" + 
+				"  mcmc ngen=1000000 nruns=4 Filename=out;\n" + 
+				"  sump burnin=100; SUMT;\n" + 
+				"end;\n";
+		final SplitRunFile file = new SplitRunFile("primates.nex", "UTF-8", 2, "10", "20", 
+				Arrays.asList("set usebeagle=yes"));
+		final StringWriter writer = new StringWriter();
+		assertEquals("out", file.rewrite(new BufferedReader(new StringReader(nexus)), writer));
+		
+		assertEquals(1000013, file.getSeed());
+		assertEquals(1000023, file.getSwapseed());
+		assertEquals("#NEXUS\n" + 
+				"begin data;\n" + 
+				"  dimensions ntax=2 nchar=3;\n" + 
+				"  matrix\n  a ACG\n  b ACT\n  ;\n" + 
+				"end;\n" + 
+				"begin mrbayes; set autoclose=yes nowarn=yes seed=1000013 swapseed=1000023; " + 
+				"mcmcp nruns=1 filename=primates.nex.run2; set usebeagle=yes;\n" + 
+				"  set autoclose=yes seed=1000013 swapseed=1000023;\n" + 
+				"  mcmc ngen=1000000 nruns=1 Filename=out.run2;\n" + 
+				"  mcmcp; mcmcp;\n" + 
+				"end;\n", writer.toString());
+	}
+	
+	public void testCommentsAndQuotes() throws Exception {
+		final String nexus = "#NEXUS\n" + 
+				"begin mrbayes; [sump; nruns=4]\n" + 
+				"  log start filename='sumt; seed=1.log';\n" + 
+				"  mcmc nruns = 4 [seed=5] filename='my out'; sumt [burnin=10] burnin=100;\n" + 
+				"end;\n";
+		final SplitRunFile file = new SplitRunFile("primates.nex", "UTF-8", 1, "10", "20", 
+				Collections.<String>emptyList());
+		final StringWriter writer = new StringWriter();
+		assertEquals("my out", file.rewrite(new StringReader(nexus), writer));
+		assertEquals("#NEXUS\n" + 
+				"begin mrbayes; set autoclose=yes nowarn=yes seed=10 swapseed=20; " + 
+				"mcmcp nruns=1 filename=primates.nex.run1; [sump; nruns=4]\n" + 
+				"  log start filename='sumt; seed=1.log';\n" + 
+				"  mcmc nruns = 1 [seed=5] filename='my out.run1'; mcmcp;\n" + 
+				"end;\n", writer.toString());
+	}
+	
+	public void testDefaultFileName() throws Exception {
+		final String nexus = "#NEXUS\nbegin mrbayes;\n  mcmc;\nend;\n";
+		final SplitRunFile file = new SplitRunFile("my data.nex", "UTF-8", 1, null, null, 
+				Collections.<String>emptyList());
+		final StringWriter writer = new StringWriter();
+		assertEquals("my data.nex", file.rewrite(new BufferedReader(new StringReader(nexus)), writer));
+		assertTrue(writer.toString().contains("mcmcp nruns=1 filename='my data.nex.run1';"));
+		assertTrue(file.getSeed() > 0);
+		assertTrue(file.getSwapseed() > 0);
+	}
+	
+	public void testSeeds() {
+		final Random random = new Random(1L);
+		assertEquals(5, SplitRunFile.getSeed("5", 1, random));
+		assertEquals(1000008, SplitRunFile.getSeed(" 5 ", 2, random));
+		assertTrue(SplitRunFile.getSeed("-5", 1, random) > 0);
+		assertTrue(SplitRunFile.getSeed("2147483646", 3, random) > 0);
+		assertTrue(SplitRunFile.getSeed("abc", 1, random) > 0);
+		assertTrue(SplitRunFile.getSeed(null, 1, random) > 0);
+	}
+	
+	public void testMerge() throws Exception {
+		final String[] names = {"out.run1.p", "out.run1.tree1.t", "out.run1.tree2.t", "out.run2.p", 
+				"out.run2.tree1.t", "out.run2.tree2.t", "other.run1.tree1.t"};
+		for(String name : names) {
+			assertTrue(new File(dir, name).createNewFile());
+		}
+		assertEquals(Integer.valueOf(4), new SplitRunFile.Merge("out", 2).invoke(dir, null));
+		for(String name : new String[] {"out.run1.p", "out.run2.p", "out.tree1.run1.t", "out.tree2.run1.t", 
+				"out.tree1.run2.t", "out.tree2.run2.t", "other.run1.tree1.t"}) {
+			assertTrue(name, new File(dir, name).isFile());
+		}
+		assertFalse(new File(dir, "out.run1.tree1.t").exists());
+	}
+	
+}
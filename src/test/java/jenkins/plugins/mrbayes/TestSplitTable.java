@@ -0,0 +1,244 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests TreeFile, Split and SplitTable.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestSplitTable extends MrBayesTestCase {
+
+	private static final String HEADER = 
+		"#NEXUS\n" + 
+		"[ID: 9409050143]\n" + 
+		"[Param: tree]\n" + 
+		"begin trees;\n" + 
+		"   translate\n" + 
+		"       1 Tarsius_syrichta,\n" + 
+		"       2 Lemur_catta,\n" + 
+		"       3 Homo_sapiens,\n" + 
+		"       4 Pan,\n" + 
+		"       5 'Gorilla gorilla';\n";
+	
+	private TreeFile trees(String... newicks) throws Exception {
+		StringBuilder content = new StringBuilder(HEADER);
+		for(int i = 0; i < newicks.length; ++i) {
+			content.append("   tree gen.").append(i * 100).append(" = [&U] ").append(newicks[i]).append('\n');
+		}
+		content.append("end;\n");
+		return new TreeFile(new StringReader(content.toString()));
+	}
+	
+	public void testParse() throws Exception {
+		TreeFile file = trees("(1:0.1,2:0.2,((3:0.01,4:0.02):0.03,5:0.04):0.05);");
+		assertEquals(5, file.getTaxa().length);
+		assertEquals("Gorilla gorilla", file.getTaxa()[4]);
+		
+		Map<Split, Double> splits = file.parse(file.nextTree());
+		// 5 terminal branches and 2 internal ones
+		assertEquals(7, splits.size());
+		Split hominids = Split.of(5, 2);
+		hominids.add(Split.of(5, 3));
+		hominids.add(Split.of(5, 4));
+		assertEquals(0.05d, splits.get(hominids).doubleValue(), 1e-12);
+		assertEquals("..***", hominids.toPartition(5));
+		// the branch of the first taxon is the split of all the others
+		Split others = Split.of(5, 0).normalize(5);
+		assertEquals(".****", others.toPartition(5));
+		assertEquals(0.1d, splits.get(others).doubleValue(), 1e-12);
+		assertNull(file.nextTree());
+	}
+	
+	public void testRootedTree() throws Exception {
+		TreeFile file = trees("((1:0.1,2:0.2):0.3,((3,4),5):0.4);");
+		Map<Split, Double> splits = file.parse(file.nextTree());
+		// both branches of the root are the same split
+		Split split = Split.of(5, 2);
+		split.add(Split.of(5, 3));
+		split.add(Split.of(5, 4));
+		assertEquals(0.7d, splits.get(split).doubleValue(), 1e-12);
+		assertEquals(7, splits.size());
+	}
+	
+	public void testInvalidTrees() throws Exception {
+		TreeFile file = trees("(1,2,(3,6));");
+		try {
+			file.parse(file.nextTree());
+			fail("Supposed to throw ParseException before getting here");
+		} catch (ParseException pe) {
+			// OK
+		}
+		
+		try {
+			new TreeFile(new StringReader("#NEXUS\nbegin trees;\nend;\n"));
+			fail("Supposed to throw ParseException before getting here");
+		} catch (ParseException pe) {
+			// OK
+		}
+	}
+	
+	public void testTaxaWithoutTranslate() throws Exception {
+		TreeFile file = new TreeFile(new StringReader("#NEXUS\nbegin trees;\n tree t1 = ((A:1,B:1)0.9:1,C:1,'D d':1);\nend;\n"));
+		assertEquals(4, file.getTaxa().length);
+		assertEquals("D d", file.getTaxa()[3]);
+		assertEquals(5, file.parse(file.nextTree()).size());
+	}
+	
+	public void testMajorityRuleConsensus() throws Exception {
+		TreeFile file = trees(
+				"(1:0.1,2:0.1,((3:0.1,4:0.1):0.2,5:0.1):0.1);", 
+				"(1:0.1,2:0.1,((3:0.1,4:0.1):0.4,5:0.1):0.1);", 
+				"(1:0.1,2:0.1,((3:0.1,5:0.1):0.1,4:0.1):0.1);", 
+				"(1:0.1,2:0.1,((3:0.1,4:0.1):0.3,5:0.1):0.1);");
+		SplitTable table = new SplitTable(file.getTaxa(), 2);
+		SplitTable.Batch run1 = table.newBatch(0);
+		run1.add(file.parse(file.nextTree()));
+		run1.add(file.parse(file.nextTree()));
+		run1.merge();
+		SplitTable.Batch run2 = table.newBatch(1);
+		run2.add(file.parse(file.nextTree()));
+		run2.add(file.parse(file.nextTree()));
+		run2.merge();
+		
+		assertEquals(4L, table.getTrees());
+		Split homoPan = Split.of(5, 2);
+		homoPan.add(Split.of(5, 3));
+		assertEquals(0.75d, table.getFrequency(homoPan), 1e-12);
+		
+		assertEquals("(Tarsius_syrichta:0.100000,Lemur_catta:0.100000,((Homo_sapiens:0.100000,Pan:0.100000)0.75:0.300000,'Gorilla gorilla':0.100000)1.00:0.100000);", 
+				table.getMajorityRuleConsensus());
+		
+		// frequencies 1.0/1.0 for the hominids, 1.0/0.5 for Homo+Pan and 0.0/0.5 for Homo+Gorilla
+		assertEquals(2.0d * Math.sqrt(0.125d) / 3.0d, table.getAverageStdev(), 1e-12);
+		
+		StringWriter out = new StringWriter();
+		table.writeTable(new PrintWriter(out));
+		String[] lines = out.toString().split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[1].startsWith("1\t..***\t4\t1.000000\t0.000000\t0.100000"));
+		assertTrue(lines[2].startsWith("2\t..**.\t3\t0.750000\t0.353553\t0.300000"));
+		assertTrue(lines[3].startsWith("3\t..*.*\t1\t0.250000\t0.353553\t0.100000"));
+	}
+	
+	public void testMajorityRuleConsensusOfManyTaxa() throws Exception {
+		// a caterpillar of 150 taxa, (1,(2,(3,...))), the deepest case for 
+		// placing each clade under its parent
+		final int ntax = 150;
+		final String[] taxa = new String[ntax];
+		final StringBuilder tree = new StringBuilder("(t0:0.100000,t1:0.100000");
+		for(int t = 0; t < ntax; ++t) {
+			taxa[t] = "t" + t;
+		}
+		for(int t = 2; t < ntax - 1; ++t) {
+			tree.append(",(t").append(t).append(":0.100000");
+		}
+		tree.append(",t").append(ntax - 1).append(":0.100000");
+		for(int t = 2; t < ntax - 1; ++t) {
+			tree.append(")1.00:0.100000");
+		}
+		tree.append(");");
+		
+		final SplitTable table = new SplitTable(taxa, 1);
+		final SplitTable.Batch batch = table.newBatch(0);
+		final Map<Split, Double> splits = new HashMap<Split, Double>();
+		for(int t = 1; t < ntax; ++t) {
+			splits.put(Split.of(ntax, t), Double.valueOf(0.1d));
+			final Split clade = Split.empty(ntax);
+			for(int c = t; c < ntax; ++c) {
+				clade.add(Split.of(ntax, c));
+			}
+			splits.put(clade, Double.valueOf(0.1d));
+		}
+		batch.add(splits);
+		batch.merge();
+		assertEquals(tree.toString(), table.getMajorityRuleConsensus());
+	}
+	
+	public void testCountInParallel() throws Exception {
+		List<File> runs = new ArrayList<File>();
+		for(int r = 0; r < 2; ++r) {
+			StringBuilder trees = new StringBuilder(HEADER);
+			for(int i = 0; i < 1000; ++i) {
+				String tree = (i % 4 == 0 ? "(1,2,((3,5),4));" : "(1,2,((3,4),5));");
+				trees.append("   tree gen." + i + " = [&U] " + tree + "\n");
+			}
+			trees.append("end;\n");
+			runs.add(write("input.nex.run" + (r + 1) + TreeFile.EXTENSION, trees.toString()));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			SplitTable table = new TreeSummarizer("**/*.t", 0.25d).count(runs, executor, 4);
+			assertEquals(750L, table.getTrees(0));
+			assertEquals(1500L, table.getTrees());
+			Split homoPan = Split.of(5, 2);
+			homoPan.add(Split.of(5, 3));
+			assertEquals(0.75d, table.getFrequency(homoPan), 0.01d);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	public void testSplit() {
+		Split split = Split.of(130, 129);
+		split.add(Split.of(130, 64));
+		assertEquals(2, split.size());
+		assertTrue(split.contains(64));
+		assertFalse(split.contains(0));
+		assertTrue(split.isTrivial(3));
+		assertFalse(split.isTrivial(130));
+		Split complement = Split.of(130, 0);
+		complement.add(Split.of(130, 1));
+		assertEquals(128, complement.normalize(130).size());
+		assertTrue(complement.normalize(130).containsAll(split));
+		assertEquals(split, mergeOf(130, 64, 129));
+		assertEquals(64, split.first());
+		assertEquals(64, split.next(0));
+		assertEquals(129, split.next(65));
+		assertEquals(-1, split.next(130));
+		assertEquals(-1, split.next(192));
+	}
+	
+	private Split mergeOf(int ntax, int... taxa) {
+		Split split = Split.empty(ntax);
+		for(int taxon : taxa) {
+			split.add(Split.of(ntax, taxon));
+		}
+		return split;
+	}
+	
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+/**
+ * Tests StallWatchdog.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestStallWatchdog extends MrBayesTestCase {
+
+	private static final long MINUTE = 60L * 1000L;
+	
+	public void testDisabled() throws Exception {
+		assertFalse(new StallWatchdog(0L, 0L, "primates.nex").isEnabled());
+		assertTrue(new StallWatchdog(MINUTE, 0L, "primates.nex").isEnabled());
+		assertTrue(new StallWatchdog(0L, MINUTE, "primates.nex").isEnabled());
+	}
+	
+	public void testStalled() throws Exception {
+		final ProgressMonitor progress = new ProgressMonitor(new ByteArrayOutputStream(), 0L);
+		final StallWatchdog watchdog = new StallWatchdog(MINUTE, 0L, "primates.nex");
+		watchdog.start(progress, dir, 0L);
+		assertNull(watchdog.check(MINUTE));
+		progress.parse("      1000 -- [-5986.357] (-5992.109) -- 0:10:00", 30000L);
+		assertNull(watchdog.check(80000L));
+		assertNotNull(watchdog.check(100000L));
+	}
+	
+	public void testOutputGrowthIsProgress() throws Exception {
+		final ProgressMonitor progress = new ProgressMonitor(new ByteArrayOutputStream(), 0L);
+		final StallWatchdog watchdog = new StallWatchdog(MINUTE, 0L, "primates.nex");
+		watchdog.start(progress, dir, 0L);
+		write("primates.nex.run1.p", "Gen\tLnL\n");
+		assertNull(watchdog.check(50000L));
+		assertNull(watchdog.check(100000L));
+		write("primates.nex.run1.p", "Gen\tLnL\n0\t-9000.0\n");
+		assertNull(watchdog.check(140000L));
+		// other files do not count
+		write("other.nex.run1.p", "Gen\tLnL\n");
+		assertNull(watchdog.check(190000L));
+		assertNotNull(watchdog.check(210000L));
+	}
+	
+	public void testDeadlinePassed() throws Exception {
+		final ProgressMonitor progress = new ProgressMonitor(new ByteArrayOutputStream(), 0L);
+		final StallWatchdog watchdog = new StallWatchdog(0L, 60L * MINUTE, "primates.nex");
+		watchdog.start(progress, dir, 1000L);
+		assertNull(watchdog.check(60L * MINUTE));
+		assertNotNull(watchdog.check(61L * MINUTE));
+	}
+	
+	public void testDeadlineProjected() throws Exception {
+		final ProgressMonitor progress = new ProgressMonitor(new ByteArrayOutputStream(), 0L);
+		final StallWatchdog watchdog = new StallWatchdog(0L, 60L * MINUTE, "primates.nex");
+		watchdog.start(progress, dir, 0L);
+		progress.parse("   Chain results (1000000 generations requested):", 0L);
+		progress.parse("      0 -- [-5986.357] (-5992.109) -- 0:00:00", 0L);
+		// 10000 generations per minute, but not measured long enough
+		progress.parse("      50000 -- [-5986.357] (-5992.109) -- 1:35:00", 5L * MINUTE);
+		assertEquals(-1L, watchdog.getProjectedFinish());
+		assertNull(watchdog.check(5L * MINUTE));
+		progress.parse("      100000 -- [-5986.357] (-5992.109) -- 1:30:00", 10L * MINUTE);
+		assertEquals(100.0d * MINUTE, watchdog.getProjectedFinish(), 1000.0d);
+		assertNotNull(watchdog.check(10L * MINUTE));
+	}
+	
+	public void testDeadlineMet() throws Exception {
+		final ProgressMonitor progress = new ProgressMonitor(new ByteArrayOutputStream(), 0L);
+		final StallWatchdog watchdog = new StallWatchdog(0L, 60L * MINUTE, "primates.nex");
+		watchdog.start(progress, dir, 0L);
+		progress.parse("   Chain results (200000 generations requested):", 0L);
+		progress.parse("      0 -- [-5986.357] (-5992.109) -- 0:00:00", 0L);
+		progress.parse("      100000 -- [-5986.357] (-5992.109) -- 0:10:00", 10L * MINUTE);
+		assertEquals(20.0d * MINUTE, watchdog.getProjectedFinish(), 1000.0d);
+		assertNull(watchdog.check(10L * MINUTE));
+	}
+	
+	public void testSnapshot() throws Exception {
+		final ProgressMonitor progress = new ProgressMonitor(new ByteArrayOutputStream(), 0L);
+		final StallWatchdog watchdog = new StallWatchdog(MINUTE, 0L, "primates.nex");
+		write("primates.nex.run1.p", "Gen\tLnL\n");
+		write("primates.nex.run1.t", "#NEXUS\n");
+		write("other.nex.run1.p", "Gen\tLnL\n");
+		watchdog.start(progress, dir, 0L);
+		progress.parse("      1000 -- [-5986.357] (-5992.109) -- 0:10:00", 30000L);
+		
+		final File[] files = watchdog.getOutputFiles();
+		assertEquals(2, files.length);
+		assertEquals("primates.nex.run1.p", files[0].getName());
+		assertEquals("primates.nex.run1.t", files[1].getName());
+		
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final PrintStream stream = new PrintStream(out, true);
+		watchdog.snapshot("no progress", new ProcessSampler("none"), stream);
+		final String snapshot = out.toString();
+		assertTrue(snapshot, snapshot.contains("no progress"));
+		assertTrue(snapshot, snapshot.contains("primates.nex.run1.t"));
+		assertFalse(snapshot, snapshot.contains("other.nex"));
+		assertTrue(snapshot, snapshot.contains("1000 -- [-5986.357] (-5992.109) -- 0:10:00"));
+	}
+	
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Tests SummaryCommandFile.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestSummaryCommandFile extends MrBayesTestCase {
+
+	public void testRewrite() throws Exception {
+		final String nexus = "#NEXUS\n" + 
+				"begin data;\n" + 
+				"  dimensions ntax=2 nchar=3;\n" + 
+				"  matrix\n  a ACG\n  b ACT\n  ;\n" + 
+				"end;\n" + 
+				"begin mrbayes;\n" + 
+				"  lset nst=6 rates=invgamma;\n" + 
+				"  mcmc ngen=1000000 samplefreq=100;\n" + 
+				"  sump; sumt;\n" + 
+				"  MCMC;\n" + 
+				"end;\n" + 
+				"begin assumptions;\n" + 
+				"  [mcmc outside of the mrbayes block]\n" + 
+				"end;\n";
+		final StringWriter writer = new StringWriter();
+		assertEquals("primates.nex", SummaryCommandFile.rewrite(new BufferedReader(new StringReader(nexus)), writer, "primates.nex"));
+		
+		assertEquals("#NEXUS\n" + 
+				"begin data;\n" + 
+				"  dimensions ntax=2 nchar=3;\n" + 
+				"  matrix\n  a ACG\n  b ACT\n  ;\n" + 
+				"end;\n" + 
+				"begin mrbayes; set autoclose=yes nowarn=yes; mcmcp filename=primates.nex;\n" + 
+				"  lset nst=6 rates=invgamma;\n" + 
+				"  mcmcp ngen=1000000 samplefreq=100;\n" + 
+				"  sump; sumt;\n" + 
+				"  mcmcp;\n" + 
+				"end;\n" + 
+				"begin assumptions;\n" + 
+				"  [mcmc outside of the mrbayes block]\n" + 
+				"end;\n", writer.toString());
+	}
+	
+	public void testCommentsAndQuotes() throws Exception {
+		final String nexus = "#NEXUS\n" + 
+				"begin mrbayes; [mcmc ngen=10;]\n" + 
+				"  log start filename='mcmc; run.log';\n" + 
+				"  [ [nested] mcmc ] mcmc ngen=1000 filename=\"my out\"; sump;\n" + 
+				"end;\n";
+		final StringWriter writer = new StringWriter();
+		assertEquals("my out", SummaryCommandFile.rewrite(new StringReader(nexus), writer, "primates.nex"));
+		
+		assertEquals("#NEXUS\n" + 
+				"begin mrbayes; set autoclose=yes nowarn=yes; mcmcp filename=primates.nex; [mcmc ngen=10;]\n" + 
+				"  log start filename='mcmc; run.log';\n" + 
+				"  [ [nested] mcmc ] mcmcp ngen=1000 filename=\"my out\"; sump;\n" + 
+				"end;\n", writer.toString());
+	}
+	
+	public void testTrimTraceFiles() throws Exception {
+		final File p = write("primates.nex.run1.p", "[ID: 1]\nGen\tLnL\n1000\t-5723.9\n2000\t-57");
+		final File t = write("primates.nex.tree1.run2.t", "#NEXUS\nbegin trees;\n   tree gen.1000 = [&U] (1,2,3);\n   tree gen.2000 = [&U] (1,");
+		final File complete = write("primates.nex.run2.p", "[ID: 1]\nGen\tLnL\n1000\t-5723.9\n");
+		final File other = write("primates.nex.ckp", "[generation: 1000]");
+		
+		assertEquals(2, SummaryCommandFile.trimTraceFiles(dir, "primates.nex"));
+		assertEquals("[ID: 1]\nGen\tLnL\n1000\t-5723.9\n".length(), p.length());
+		assertEquals("#NEXUS\nbegin trees;\n   tree gen.1000 = [&U] (1,2,3);\n".length(), t.length());
+		assertEquals("[ID: 1]\nGen\tLnL\n1000\t-5723.9\n".length(), complete.length());
+		assertEquals("[generation: 1000]".length(), other.length());
+		assertEquals(0, SummaryCommandFile.trimTraceFiles(dir, "primates.nex"));
+	}
+	
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests SwapAcceptance.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestSwapAcceptance extends TestCase {
+
+	private static final String[] OUTPUT = {
+		"   Chain results (1000000 generations requested):",
+		"",
+		"      Chain swap information for run 1:",
+		"",
+		"                 1       2       3       4 ",
+		"           ----------------------------------",
+		"         1 |          0.72    0.48    0.28 ",
+		"         2 |  166665          0.74    0.50 ",
+		"         3 |  166837  166503          0.74 ",
+		"         4 |  166546  166593  166856         ",
+		"",
+		"      Chain swap information for run 2:",
+		"",
+		"                 1       2       3       4 ",
+		"           ----------------------------------",
+		"         1 |          0.70    0.46    0.27 ",
+		"         2 |  166702          0.72    0.49 ",
+		"         3 |  166610  166749          0.76 ",
+		"         4 |  166494  166921  166524         ",
+		"",
+		"      Upper diagonal: Proportion of successful state exchanges between chains",
+		"      Lower diagonal: Number of attempted state exchanges between chains",
+		"",
+		"      Chain information:",
+		"",
+		"        ID -- Heat ",
+		"       -----------",
+		"         1 -- 1.00  (cold chain)",
+		"         2 -- 0.91 ",
+		"         3 -- 0.83 ",
+		"         4 -- 0.77 ",
+		"",
+		"      Heat = 1 / (1 + T * (ID - 1))",
+		"         (where T = 0.10 is the temperature and ID is the chain number)"
+	};
+	
+	public void testParse() {
+		final SwapAcceptance swaps = new SwapAcceptance();
+		for(String line : OUTPUT) {
+			swaps.parse(line);
+		}
+		assertEquals(2, swaps.getRuns().size());
+		assertEquals(0.10d, swaps.getTemperature(), 0.0001d);
+		final double[][] run1 = swaps.getRuns().get(0);
+		assertEquals(4, run1.length);
+		assertEquals(0.72d, run1[0][1], 0.0001d);
+		assertEquals(0.28d, run1[0][3], 0.0001d);
+		assertEquals(0.74d, run1[2][3], 0.0001d);
+		final double[] adjacent = swaps.getAdjacentRates();
+		assertEquals(3, adjacent.length);
+		assertEquals(0.71d, adjacent[0], 0.0001d);
+		assertEquals(0.75d, adjacent[2], 0.0001d);
+		assertEquals((0.72d + 0.74d + 0.74d + 0.70d + 0.72d + 0.76d) / 6.0d, swaps.getMeanAdjacentRate(), 0.0001d);
+	}
+	
+	public void testNoTable() {
+		final SwapAcceptance swaps = new SwapAcceptance();
+		swaps.parse("      Chain swap information for run 1:");
+		swaps.parse("");
+		swaps.parse("   Analysis stopped");
+		assertTrue(swaps.getRuns().isEmpty());
+		assertTrue(Double.isNaN(swaps.getMeanAdjacentRate()));
+		assertEquals(0, swaps.getAdjacentRates().length);
+	}
+	
+	public void testAdd() {
+		final SwapAcceptance run1 = new SwapAcceptance();
+		final SwapAcceptance run2 = new SwapAcceptance();
+		for(int i = 0; i < OUTPUT.length; ++i) {
+			(i < 11 ? run1 : run2).parse(OUTPUT[i]);
+		}
+		assertEquals(1, run1.getRuns().size());
+		assertTrue(run1.getTemperature() < 0.0d);
+		run1.add(run2);
+		run1.add(null);
+		assertEquals(2, run1.getRuns().size());
+		assertEquals(0.10d, run1.getTemperature(), 0.0001d);
+	}
+	
+	public void testPropose() {
+		// in range
+		assertEquals(0.1d, SwapAcceptance.propose(0.1d, 0.45d, 0.2d, 0.6d), 0.0d);
+		// too many swaps, heat more
+		final double hotter = SwapAcceptance.propose(0.1d, 0.73d, 0.2d, 0.6d);
+		assertEquals(0.291d, hotter, 0.0001d);
+		// too few swaps, heat less, by at most 4 times
+		assertEquals(0.025d, SwapAcceptance.propose(0.1d, 0.0001d, 0.2d, 0.6d), 0.0001d);
+		final double colder = SwapAcceptance.propose(0.5d, 0.1d, 0.2d, 0.6d);
+		assertTrue(colder < 0.5d && colder > 0.125d);
+		// unknown
+		assertEquals(-1.0d, SwapAcceptance.propose(-1.0d, 0.73d, 0.2d, 0.6d), 0.0d);
+		assertEquals(-1.0d, SwapAcceptance.propose(0.1d, Double.NaN, 0.2d, 0.6d), 0.0d);
+	}
+	
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.StringReader;
+import java.text.ParseException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests TraceFile.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestTraceFile extends TestCase {
+
+	private static final String TRACE = 
+		"[ID: 9409050143]\n" + 
+		"Gen\tLnL\tLnPr\tTL\talpha\n" + 
+		"1\t-9435.125\t2.302\t1.234\t0.500\n" + 
+		"500\t-7012.310\t3.101\t1.512\t0.612\n" + 
+		"1000\t-6998.002\t3.200\t1.498\t0.598\n";
+	
+	public void testRead() throws Exception {
+		TraceFile trace = TraceFile.read(new StringReader(TRACE));
+		assertEquals(4, trace.getParameters().length);
+		assertEquals("LnL", trace.getParameters()[0]);
+		assertEquals("alpha", trace.getParameters()[3]);
+		assertEquals(3, trace.getSamples());
+		assertEquals(-7012.310d, trace.getColumn(0)[1], 0.0d);
+		assertEquals(0.598d, trace.getColumn(trace.indexOf("alpha"))[2], 0.0d);
+		assertEquals(-1, trace.indexOf("pinvar"));
+	}
+	
+	public void testManySamples() throws Exception {
+		StringBuilder content = new StringBuilder("Gen\tLnL\n");
+		for(int i = 0; i < 5000; ++i) {
+			content.append(i * 100).append('\t').append(-1000.0d - i).append('\n');
+		}
+		TraceFile trace = TraceFile.read(new StringReader(content.toString()));
+		assertEquals(5000, trace.getSamples());
+		assertEquals(-5999.0d, trace.getColumn(0)[4999], 0.0d);
+	}
+	
+	public void testTruncatedLastLine() throws Exception {
+		TraceFile trace = TraceFile.read(new StringReader(TRACE + "1500\t-6990.1\t3.1"));
+		assertEquals(3, trace.getSamples());
+	}
+	
+	public void testInvalidTraces() throws Exception {
+		try {
+			TraceFile.read(new StringReader("#NEXUS\nbegin trees;\nend;\n"));
+			fail("Supposed to throw ParseException before getting here");
+		} catch (ParseException pe) {
+			// OK
+		}
+		
+		try {
+			TraceFile.read(new StringReader("Gen\tLnL\n1\tabc\n2\t-10.0\n"));
+			fail("Supposed to throw ParseException before getting here");
+		} catch (ParseException pe) {
+			// OK
+		}
+	}
+	
+	public void testAnalysis() {
+		assertEquals("input.nex", TraceFile.getAnalysis("input.nex.p"));
+		assertEquals("input.nex", TraceFile.getAnalysis("input.nex.run1.p"));
+		assertEquals("genes/g1.nex", TraceFile.getAnalysis("genes/g1.nex.run12.p"));
+		assertEquals("input.nex.runs", TraceFile.getAnalysis("input.nex.runs.p"));
+		assertNull(TraceFile.getAnalysis("input.nex.t"));
+	}
+	
+}
@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests TraceStatistics and the summaries built with it.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestTraceStatistics extends TestCase {
+
+	private static final int SAMPLES = 20000;
+	
+	/**
+	 * @return an autoregressive series with the given correlation between 
+	 * consecutive values
+	 */
+	private double[] ar1(double rho, double mean, long seed) {
+		return ar1(rho, mean, seed, SAMPLES);
+	}
+	
+	private double[] ar1(double rho, double mean, long seed, int samples) {
+		Random random = new Random(seed);
+		double[] values = new double[samples];
+		double x = 0.0d;
+		for(int i = 0; i < samples; ++i) {
+			x = rho * x + Math.sqrt(1.0d - rho * rho) * random.nextGaussian();
+			values[i] = mean + x;
+		}
+		return values;
+	}
+	
+	public void testMeanAndVariance() {
+		double[] values = {1.0d, 2.0d, 3.0d, 4.0d, 100.0d};
+		assertEquals(2.5d, TraceStatistics.mean(values, 0, 4), 1e-12);
+		assertEquals(5.0d / 3.0d, TraceStatistics.variance(values, 0, 4), 1e-12);
+		assertEquals(0.0d, TraceStatistics.variance(values, 1, 2), 0.0d);
+	}
+	
+	public void testEss() {
+		// independent samples
+		double ess = TraceStatistics.ess(ar1(0.0d, 0.0d, 1L), 0, SAMPLES);
+		assertTrue("ESS " + ess, ess > 0.8d * SAMPLES && ess < 1.2d * SAMPLES);
+		
+		// autocorrelation time of an AR(1) series is (1 + rho) / (1 - rho)
+		ess = TraceStatistics.ess(ar1(0.9d, 0.0d, 2L), 0, SAMPLES);
+		double expected = SAMPLES * 0.1d / 1.9d;
+		assertTrue("ESS " + ess, ess > 0.7d * expected && ess < 1.3d * expected);
+		
+		double[] constant = new double[100];
+		Arrays.fill(constant, 3.0d);
+		assertTrue(Double.isNaN(TraceStatistics.ess(constant, 0, 100)));
+	}
+	
+	public void testAutocovariance() {
+		final double[] values = ar1(0.7d, 1.0d, 5L);
+		final int from = 10;
+		final int to = 1010;
+		final double[] gamma = TraceStatistics.autocovariance(values, from, to);
+		assertEquals(to - from, gamma.length);
+		final double mean = TraceStatistics.mean(values, from, to);
+		for(int lag = 0; lag < gamma.length; lag += 37) {
+			double sum = 0.0d;
+			for(int i = from; i + lag < to; ++i) {
+				sum += (values[i] - mean) * (values[i + lag] - mean);
+			}
+			assertEquals(sum / (to - from), gamma[lag], 1e-9d);
+		}
+	}
+	
+	public void testEssSlowMixing() {
+		// autocorrelation time of about 2000, longer than any fixed lag cap
+		final double rho = 0.999d;
+		final double ess = TraceStatistics.ess(ar1(rho, 0.0d, 6L), 0, SAMPLES);
+		final double expected = SAMPLES * (1.0d - rho) / (1.0d + rho);
+		assertTrue("ESS " + ess, ess < 3.0d * expected);
+	}
+	
+	public void testEssLongRun() {
+		// cut in batches, longer than the series transformed at once
+		final int samples = 5 * TraceStatistics.MAX_SERIES + 123;
+		double ess = TraceStatistics.ess(ar1(0.9d, 0.0d, 8L, samples), 0, samples);
+		double expected = samples * 0.1d / 1.9d;
+		assertTrue("ESS " + ess, ess > 0.7d * expected && ess < 1.3d * expected);
+		
+		ess = TraceStatistics.ess(ar1(0.0d, 0.0d, 9L, samples), 0, samples);
+		assertTrue("ESS " + ess, ess > 0.7d * samples && ess <= samples);
+		
+		ess = TraceStatistics.ess(ar1(0.9999d, 0.0d, 10L, samples), 0, samples);
+		expected = samples * 0.0001d / 1.9999d;
+		assertTrue("ESS " + ess, ess < 3.0d * expected);
+		
+		final double[] constant = new double[samples];
+		Arrays.fill(constant, 3.0d);
+		assertTrue(Double.isNaN(TraceStatistics.ess(constant, 0, samples)));
+	}
+	
+	public void testPsrf() {
+		double[][] runs = {ar1(0.5d, 0.0d, 3L), ar1(0.5d, 0.0d, 4L)};
+		int[] from = {SAMPLES / 4, SAMPLES / 4};
+		int[] to = {SAMPLES, SAMPLES};
+		double psrf = TraceStatistics.psrf(runs, from, to);
+		assertEquals(1.0d, psrf, 0.01d);
+		
+		runs[1] = ar1(0.5d, 2.0d, 4L);
+		psrf = TraceStatistics.psrf(runs, from, to);
+		assertTrue("PSRF " + psrf, psrf > 1.2d);
+		
+		assertTrue(Double.isNaN(TraceStatistics.psrf(new double[][] {runs[0]}, new int[] {0}, new int[] {SAMPLES})));
+	}
+	
+	public void testSummarize() {
+		TraceFile run1 = new TraceFile(new String[] {"LnL", "TL"}, new double[][] {ar1(0.0d, -100.0d, 5L), ar1(0.0d, 1.0d, 6L)}, SAMPLES);
+		TraceFile run2 = new TraceFile(new String[] {"LnL"}, new double[][] {ar1(0.0d, -100.0d, 7L)}, SAMPLES / 2);
+		TraceSummary.Parameter lnl = TraceSummarizer.summarize("LnL", Arrays.asList(run1, run2), 
+				new int[] {SAMPLES / 4, SAMPLES / 8}, new int[] {SAMPLES, SAMPLES / 2});
+		assertEquals("LnL", lnl.getName());
+		assertEquals(-100.0d, lnl.getMean(), 0.05d);
+		assertTrue(lnl.getEss() > 0.8d * (SAMPLES * 3 / 4 + SAMPLES * 3 / 8));
+		assertEquals(1.0d, lnl.getPsrf(), 0.01d);
+		
+		// only in the first run
+		TraceSummary.Parameter tl = TraceSummarizer.summarize("TL", Arrays.asList(run1, run2), 
+				new int[] {SAMPLES / 4, SAMPLES / 8}, new int[] {SAMPLES, SAMPLES / 2});
+		assertEquals(1.0d, tl.getMean(), 0.05d);
+		assertTrue(Double.isNaN(tl.getPsrf()));
+	}
+	
+	public void testSummarizeConstantRun() {
+		final double[] constant = new double[SAMPLES];
+		Arrays.fill(constant, 1.0d);
+		TraceFile run1 = new TraceFile(new String[] {"pinvar"}, new double[][] {ar1(0.0d, 1.0d, 11L)}, SAMPLES);
+		TraceFile run2 = new TraceFile(new String[] {"pinvar"}, new double[][] {constant}, SAMPLES);
+		TraceSummary.Parameter pinvar = TraceSummarizer.summarize("pinvar", Arrays.asList(run1, run2), 
+				new int[] {0, 0}, new int[] {SAMPLES, SAMPLES});
+		assertTrue("ESS " + pinvar.getEss(), pinvar.getEss() > 0.8d * SAMPLES && pinvar.getEss() < 1.2d * SAMPLES);
+		
+		pinvar = TraceSummarizer.summarize("pinvar", Arrays.asList(run2, run2), 
+				new int[] {0, 0}, new int[] {SAMPLES, SAMPLES});
+		assertTrue(Double.isNaN(pinvar.getEss()));
+	}
+	
+	public void testSummarizeBoundsParallelParameters() throws Exception {
+		final int count = 3 * TraceSummarizer.PARALLEL_PARAMETERS + 1;
+		final String[] names = new String[count];
+		final double[][] columns = new double[count][];
+		for(int p = 0; p < count; ++p) {
+			names[p] = "p" + p;
+			columns[p] = ar1(0.0d, p, 12L + p);
+		}
+		// parameters submitted and not summarized yet, when each one is submitted
+		final List<Future<?>> submitted = new ArrayList<Future<?>>();
+		final int[] most = new int[1];
+		final ExecutorService executor = new ThreadPoolExecutor(count, count, 0L, TimeUnit.MILLISECONDS, 
+				new LinkedBlockingQueue<Runnable>()) {
+			@Override
+			public <T> Future<T> submit(Callable<T> task) {
+				int pending = 1;
+				for(Future<?> future : submitted) {
+					pending += (future.isDone() ? 0 : 1);
+				}
+				most[0] = Math.max(most[0], pending);
+				final Future<T> future = super.submit(task);
+				submitted.add(future);
+				return future;
+			}
+		};
+		try {
+			final TraceSummary summary = new TraceSummarizer("**/*.p", 0.25d).summarize("analysis", 
+					Arrays.asList(new TraceFile(names, columns, SAMPLES)), executor);
+			assertEquals(count, summary.getParameters().size());
+			for(int p = 0; p < count; ++p) {
+				assertEquals("p" + p, summary.getParameters().get(p).getName());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertTrue("parallel " + most[0], most[0] <= TraceSummarizer.PARALLEL_PARAMETERS);
+	}
+	
+	public void testLttb() {
+		double[] x = new double[1000];
+		double[] y = new double[1000];
+		for(int i = 0; i < x.length; ++i) {
+			x[i] = i * 100;
+			y[i] = -5000.0d + Math.sin(i / 50.0d);
+		}
+		// a spike that taking every 10th sample would miss
+		y[503] = -4000.0d;
+		int[] kept = TraceStatistics.lttb(x, y, x.length, 100);
+		assertEquals(100, kept.length);
+		assertEquals(0, kept[0]);
+		assertEquals(999, kept[99]);
+		for(int i = 1; i < kept.length; ++i) {
+			assertTrue(kept[i] > kept[i - 1]);
+		}
+		assertTrue(Arrays.binarySearch(kept, 503) >= 0);
+		
+		// nothing to drop
+		assertEquals(3, TraceStatistics.lttb(x, y, 3, 100).length);
+		assertEquals(10, TraceStatistics.lttb(x, y, 10, 2).length);
+	}
+	
+	public void testTracePattern() {
+		assertEquals("input.nex.p,input.nex.run*.p", MrBayesTraceRecorder.getTracePattern("input.nex", TraceFile.EXTENSION));
+		assertEquals("g1.nex.p,g1.nex.run*.p,genes/**/*.nex.p,genes/**/*.nex.run*.p", 
+				MrBayesTraceRecorder.getTracePattern("g1.nex, genes/**/*.nex", TraceFile.EXTENSION));
+		assertEquals(0.25d, new MrBayesTraceRecorder(null, null).getBurninFractionValue(), 0.0d);
+		assertEquals(0.1d, new MrBayesTraceRecorder(null, "0.1").getBurninFractionValue(), 0.0d);
+		assertEquals(0.25d, new MrBayesTraceRecorder(null, "1.5").getBurninFractionValue(), 0.0d);
+	}
+	
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2011> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.mrbayes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the trends of MrBayes analyses, as read from the files of a run and 
+ * written to the build.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 0.1
+ */
+public class TestTraceTrend extends TestCase {
+
+	private static final String TRACE = "[ID: 9409050143]\n" + 
+		"Gen\tLnL\tTL\talpha\n" + 
+		"1\t-6000.5\t1.2\t0.5\n" + 
+		"1000\t-5200.25\t1.3\t0.6\n" + 
+		"2000\t-5100.75\t1.25\t0.55\n" + 
+		"30";
+	
+	private static final String MCMC = "[ID: 9409050143]\n" + 
+		"Gen\trun1\trun2\tAvgStdDev(s)\tMaxStdDev(s)\n" + 
+		"1\t0.5\t0.5\tNA\tNA\n" + 
+		"1000\t0.4\t0.4\t0.08\t0.2\n" + 
+		"2000\t0.3\t0.3\t0.02\t0.1\n";
+	
+	public void testReadColumn() throws IOException {
+		TraceTrend.Series lnl = TrendCollector.read(new StringReader(TRACE), TrendCollector.LNL_COLUMN, "run1", 500);
+		// the last line is cut short
+		assertEquals(3, lnl.size());
+		assertEquals("run1", lnl.getName());
+		assertEquals(1000L, lnl.getGeneration(1));
+		assertEquals(-5200.25f, lnl.getValue(1), 0.0f);
+		assertEquals(-5100.75d, lnl.getLast(), 1e-3);
+		
+		TraceTrend.Series asdsf = TrendCollector.read(new StringReader(MCMC), TrendCollector.ASDSF_COLUMN, "ASDSF", 500);
+		// NA is skipped
+		assertEquals(2, asdsf.size());
+		assertEquals(1000L, asdsf.getGeneration(0));
+		assertEquals(0.02d, asdsf.getLast(), 1e-6);
+		
+		assertNull(TrendCollector.read(new StringReader(TRACE), TrendCollector.ASDSF_COLUMN, "ASDSF", 500));
+		assertNull(TrendCollector.read(new StringReader("not a trace\n"), TrendCollector.LNL_COLUMN, "run1", 500));
+	}
+	
+	public void testDownsample() throws IOException {
+		StringBuilder sb = new StringBuilder("Gen\tLnL\n");
+		for(int i = 0; i < 10000; ++i) {
+			sb.append(i * 100).append('\t').append(-5000.0d - (i % 7)).append('\n');
+		}
+		TraceTrend.Series lnl = TrendCollector.read(new StringReader(sb.toString()), TrendCollector.LNL_COLUMN, "run1", 200);
+		assertEquals(200, lnl.size());
+		assertEquals(0L, lnl.getGeneration(0));
+		assertEquals(999900L, lnl.getGeneration(199));
+	}
+	
+	public void testRunName() {
+		assertEquals("run2", TrendCollector.getRunName("genes/a.nex", "genes/a.nex.run2.p"));
+		assertEquals("run1", TrendCollector.getRunName("a.nex", "a.nex.p"));
+	}
+	
+	public void testWriteAndRead() throws IOException {
+		TraceTrend.Series run1 = new TraceTrend.Series("run1", new long[] {1L, 1000L}, new float[] {-6000.0f, -5100.0f});
+		TraceTrend.Series run2 = new TraceTrend.Series("run2", new long[] {1L, 1000L}, new float[] {-6100.0f, -5200.0f});
+		TraceTrend.Series asdsf = new TraceTrend.Series("ASDSF", new long[] {1000L}, new float[] {0.01f});
+		TraceTrend trend = new TraceTrend("primates.nex", Arrays.asList(run1, run2), asdsf);
+		trend.setGenerationsPerSecond(1234.5d);
+		TraceTrend single = new TraceTrend("single.nex", Collections.singletonList(run1), null);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TraceTrend.write(Arrays.asList(trend, single), out);
+		List<TraceTrend> read = TraceTrend.read(new ByteArrayInputStream(out.toByteArray()));
+		
+		assertEquals(2, read.size());
+		assertEquals("primates.nex", read.get(0).getAnalysis());
+		assertEquals(1234.5d, read.get(0).getGenerationsPerSecond(), 0.0d);
+		assertEquals(2, read.get(0).getRuns().size());
+		assertEquals("run2", read.get(0).getRuns().get(1).getName());
+		assertEquals(1000L, read.get(0).getRuns().get(1).getGeneration(1));
+		assertEquals(-5150.0d, read.get(0).getFinalLnl(), 0.0d);
+		assertEquals(0.01d, read.get(0).getFinalAsdsf(), 1e-6);
+		assertNull(read.get(1).getAsdsf());
+		assertTrue(Double.isNaN(read.get(1).getFinalAsdsf()));
+		assertEquals(-1.0d, read.get(1).getGenerationsPerSecond(), 0.0d);
+		
+		MrBayesTrendAction.Analysis analysis = new MrBayesTrendAction(read).getAnalyses().get(1);
+		assertEquals("single.nex", analysis.getName());
+		assertFalse(analysis.isAsdsf());
+		assertTrue(Double.isNaN(analysis.getGenerationsPerSecond()));
+		
+		try {
+			TraceTrend.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+			fail("Read a file that is not a trend file");
+		} catch (IOException expected) {
+		}
+	}
+	
+}